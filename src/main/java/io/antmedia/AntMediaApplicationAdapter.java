@@ -36,8 +36,8 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.bytedeco.ffmpeg.avcodec.AVCodecParameters;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -61,12 +61,14 @@ import io.antmedia.cluster.ClusterNode;
 import io.antmedia.cluster.IClusterNotifier;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
+import io.antmedia.datastore.db.StreamStatsWriteBehind;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.VoD;
 import io.antmedia.datastore.preference.PreferenceStore;
 import io.antmedia.filter.StreamAcceptFilter;
 import io.antmedia.ipcamera.OnvifCamera;
 import io.antmedia.logger.LoggerUtils;
+import io.antmedia.muxer.AsyncMuxerWriter;
 import io.antmedia.muxer.IAntMediaStreamHandler;
 import io.antmedia.muxer.MuxAdaptor;
 import io.antmedia.muxer.Muxer;
@@ -92,6 +94,8 @@ import io.antmedia.storage.StorageClient;
 import io.antmedia.streamsource.StreamFetcher;
 import io.antmedia.streamsource.StreamFetcherManager;
 import io.antmedia.track.ISubtrackPoller;
+import io.antmedia.webhook.WebhookDispatcher;
+import io.antmedia.webhook.WebhookRequest;
 import io.antmedia.webrtc.api.IWebRTCAdaptor;
 import io.antmedia.webrtc.api.IWebRTCClient;
 import io.antmedia.websocket.WebSocketConstants;
@@ -211,6 +215,12 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 	protected ISubtrackPoller subtrackPoller;
 
 	private Random random = new Random();
+
+	private WebhookDispatcher webhookDispatcher = new WebhookDispatcher(WebhookDispatcher.DEFAULT_THREAD_COUNT);
+
+	private final StreamStatsWriteBehind streamStatsWriteBehind = new StreamStatsWriteBehind(this::getDataStore);
+
+	private long streamStatsFlushTimerId = -1;
 	
 	@Override
 	public boolean appStart(IScope app) {
@@ -221,9 +231,14 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 		//init vertx
 		getVertx();
 
+		//send the webhook retries that are left from the last run
+		webhookDispatcher.loadRetries(new File(WEBAPPS_PATH + app.getName() + "/WEB-INF/webhook-retries"), this::sendPOST);
+
 		//initalize to access the data store directly in the code
 		getDataStore();
 
+		startStreamStatsWriteBehind(app.getName());
+
 		// Create initialized file in application
 		Result result = createInitializationProcess(app.getName());
 
@@ -629,6 +644,7 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 
 		try {
 			logger.info("Closing broadcast stream id: {}", streamId);
+			getStreamStatsWriteBehind().flush(streamId);
 			Broadcast broadcast = getDataStore().get(streamId);
 			if (broadcast != null) {
 
@@ -723,22 +739,29 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 
 	@Override
 	public void streamPlayItemPlay(ISubscriberStream stream, IPlayItem item, boolean isLive) {
-		vertx.setTimer(1, l -> getDataStore().updateRtmpViewerCount(item.getName(), true));
+		getStreamStatsWriteBehind().updateRtmpViewerCount(item.getName(), true);
 	}
 	@Override
 	public void streamPlayItemStop(ISubscriberStream stream, IPlayItem item) {
-		vertx.setTimer(1, l -> getDataStore().updateRtmpViewerCount(item.getName(), false));
+		getStreamStatsWriteBehind().updateRtmpViewerCount(item.getName(), false);
 	}
 
 	@Override
 	public void streamSubscriberClose(ISubscriberStream stream) {
-		vertx.setTimer(1, l -> getDataStore().updateRtmpViewerCount(stream.getBroadcastStreamPublishName(), false));
+		getStreamStatsWriteBehind().updateRtmpViewerCount(stream.getBroadcastStreamPublishName(), false);
+	}
+
+	@Override
+	public void updateWebRTCViewerCount(String streamId, boolean increment) {
+		getStreamStatsWriteBehind().updateWebRTCViewerCount(streamId, increment);
 	}
 
 	@Override
 	public void startPublish(String streamId, long absoluteStartTimeMs, String publishType) {
 		vertx.executeBlocking( () -> {
 			try {
+				//stats of the last session should not be written after the status
+				getStreamStatsWriteBehind().flush(streamId);
 
 				Broadcast broadcast = updateBroadcastStatus(streamId, absoluteStartTimeMs, publishType, getDataStore().get(streamId));
 
@@ -1047,7 +1070,8 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 	public void notifyHook(@NotNull String url, String id, String mainTrackId, String action, String streamName, String category,
 			String vodName, String vodId, String metadata, String subscriberId) {
 
-		vertx.runOnContext(e-> {
+		//hooks of a stream are sent in order
+		webhookDispatcher.submit(url, id, () -> {
 			logger.info("Running notify hook url:{} stream id: {} mainTrackId:{} action:{} vod name:{} vod id:{}", url, id, mainTrackId, action, vodName, vodId);
 
 			Map<String, Object> variables = new HashMap<>();
@@ -1101,7 +1125,9 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 	 */
 	public void sendPOST(String url, Map<String, Object> variables, int retryAttempts, String contentType) {
 		logger.info("Sending POST request to {}", url);
-		try (CloseableHttpClient httpClient = getHttpClient()) {
+		//client is pooled so it's not closed
+		CloseableHttpClient httpClient = getHttpClient();
+		try {
 			HttpPost httpPost = new HttpPost(url);
 			RequestConfig requestConfig = RequestConfig.custom()
 					.setConnectTimeout(2000)
@@ -1131,6 +1157,8 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 			try (CloseableHttpResponse httpResponse = httpClient.execute(httpPost)) {
 				int statusCode = httpResponse.getStatusLine().getStatusCode();
 				logger.info("POST Response Status: {}", statusCode);
+				//consume the response to reuse the connection
+				EntityUtils.consumeQuietly(httpResponse.getEntity());
 
 				if (statusCode != HttpStatus.SC_OK)
 				{
@@ -1138,9 +1166,14 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 					{
 						logger.info("Retry attempt for POST in {} milliseconds due to non-200 response: {}", appSettings.getWebhookRetryDelay(), statusCode);
 						retrySendPostWithDelay(url, variables, retryAttempts - 1, contentType);
-					} else if (appSettings.getWebhookRetryCount() != 0)
+					}
+					else
 					{
-						logger.info("Stopping sending POST because no more retry attempts left. Giving up.");
+						webhookDispatcher.reportDropped();
+						if (appSettings.getWebhookRetryCount() != 0)
+						{
+							logger.info("Stopping sending POST because no more retry attempts left. Giving up.");
+						}
 					}
 				}
 			}
@@ -1150,21 +1183,35 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 				logger.info("Retry attempt for POST in {} milliseconds due to IO exception: {}", appSettings.getWebhookRetryDelay(), e.getMessage());
 				retrySendPostWithDelay(url, variables, retryAttempts - 1, contentType);
 			}
-			else if (appSettings.getWebhookRetryCount() != 0)
+			else
 			{
-				logger.info("Stopping sending POST because no more retry attempts left. Giving up.");
+				webhookDispatcher.reportDropped();
+				if (appSettings.getWebhookRetryCount() != 0)
+				{
+					logger.info("Stopping sending POST because no more retry attempts left. Giving up.");
+				}
 			}
 		}
 	}
 
+	private void sendPOST(WebhookRequest request) {
+		sendPOST(request.getUrl(), request.getVariables(), request.getRetryAttempts(), request.getContentType());
+	}
+
+	/**
+	 * Retry is kept in the retry directory of the application until it's sent, so it's sent after restart as well
+	 */
 	public void retrySendPostWithDelay(String url, Map<String, Object> variables, int retryAttempts, String contentType) {
-		vertx.setTimer(appSettings.getWebhookRetryDelay(), timerId -> {
-			sendPOST(url, variables, retryAttempts, contentType);
-		});
+		webhookDispatcher.scheduleRetry(new WebhookRequest(url, variables, retryAttempts, contentType),
+				appSettings.getWebhookRetryDelay(), this::sendPOST);
 	}
 
 	public CloseableHttpClient getHttpClient() {
-		return HttpClients.createDefault();
+		return webhookDispatcher.getHttpClient();
+	}
+
+	public WebhookDispatcher getWebhookDispatcher() {
+		return webhookDispatcher;
 	}
 
 	public List<IStreamPublishSecurity> getStreamPublishSecurityList() {
@@ -1291,37 +1338,46 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 
 	@Override
 	public void setQualityParameters(String id, String quality, double speed, int pendingPacketSize, long updateTimeMs) {
+		logger.debug("update source quality for stream: {} quality:{} speed:{}", id, quality, speed);
+		getStreamStatsWriteBehind().setQualityParameters(id, quality, speed, pendingPacketSize, updateTimeMs);
+	}
 
-		vertx.runOnContext(h -> {
-
-			Broadcast broadcastLocal = getDataStore().get(id);
-			if (broadcastLocal != null)
-			{
-				//round the number to three decimal places,
-				double roundedSpeed = Math.round(speed * 1000.0) / 1000.0;
-
-				logger.debug("update source quality for stream: {} quality:{} speed:{}", id, quality, speed);
-
-				broadcastLocal.setSpeed(roundedSpeed);
-				broadcastLocal.setPendingPacketSize(pendingPacketSize);
-				broadcastLocal.setUpdateTime(updateTimeMs);
-				broadcastLocal.setQuality(quality);
-				long elapsedTime = System.currentTimeMillis() - broadcastLocal.getStartTime();
-				broadcastLocal.setDuration(elapsedTime);
-				getDataStore().updateBroadcastFields(id, broadcastLocal);
-
-				ViewerCountEvent viewerCountEvent = new ViewerCountEvent();
-				viewerCountEvent.setApp(getScope().getName());
-				viewerCountEvent.setStreamId(id);
-				viewerCountEvent.setDashViewerCount(broadcastLocal.getDashViewerCount());
-				viewerCountEvent.setHlsViewerCount(broadcastLocal.getHlsViewerCount());
-				viewerCountEvent.setWebRTCViewerCount(broadcastLocal.getWebRTCViewerCount());
+	/**
+	 * Starts flushing the stream stats periodically in a worker thread
+	 */
+	private void startStreamStatsWriteBehind(String appName) {
+		streamStatsWriteBehind.registerMBean(appName);
+		streamStatsFlushTimerId = vertx.setPeriodic(StreamStatsWriteBehind.DEFAULT_FLUSH_PERIOD_MS, id ->
+			vertx.executeBlocking(() -> {
+				flushStreamStats();
+				return null;
+			}, false)
+		);
+	}
 
-				LoggerUtils.logAnalyticsFromServer(viewerCountEvent);
+	/**
+	 * @return the write-behind of the quality parameters and the viewer counts. It's flushed periodically in a worker thread
+	 * after the application is started
+	 */
+	public StreamStatsWriteBehind getStreamStatsWriteBehind() {
+		return streamStatsWriteBehind;
+	}
 
-			}
+	/**
+	 * Writes the pending stream stats to the data store
+	 */
+	public void flushStreamStats() {
+		List<Broadcast> broadcasts = getStreamStatsWriteBehind().flush();
+		for (Broadcast broadcast : broadcasts) {
+			ViewerCountEvent viewerCountEvent = new ViewerCountEvent();
+			viewerCountEvent.setApp(getScope().getName());
+			viewerCountEvent.setStreamId(broadcast.getStreamId());
+			viewerCountEvent.setDashViewerCount(broadcast.getDashViewerCount());
+			viewerCountEvent.setHlsViewerCount(broadcast.getHlsViewerCount());
+			viewerCountEvent.setWebRTCViewerCount(broadcast.getWebRTCViewerCount());
 
-		});
+			LoggerUtils.logAnalyticsFromServer(viewerCountEvent);
+		}
 	}
 
 	public DataStore getDataStore() {
@@ -1502,6 +1558,17 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 
 		createShutdownFile(getScope().getName());
 
+		webhookDispatcher.shutdown();
+
+		if (storageClient != null) {
+			storageClient.shutdownSegmentUploadPipeline();
+		}
+
+		if (streamStatsFlushTimerId != -1) {
+			vertx.cancelTimer(streamStatsFlushTimerId);
+		}
+		flushStreamStats();
+		streamStatsWriteBehind.unregisterMBean();
 
 		closeDB(deleteDB);
 
@@ -1770,6 +1837,12 @@ public class AntMediaApplicationAdapter  extends MultiThreadedApplicationAdapter
 			return result;
 		}
 
+		if (AsyncMuxerWriter.OverflowPolicy.parse(newSettings.getAsyncMuxerOverflowPolicy()) == null) {
+			logger.info("Could not save app settings. Async muxer overflow policy:{} is not valid. Valid values are drop_to_next_keyframe and disconnect", 
+					newSettings.getAsyncMuxerOverflowPolicy());
+			return result;
+		}
+
 		//synch again because of string to list mapping- TODO: There is a better way for string to list mapping
 		//in properties files
 		newSettings.setEncoderSettings(encoderSettingsList);
@@ -7,6 +7,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.catalina.util.NetMask;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -28,6 +29,7 @@ import dev.morphia.annotations.Id;
 import dev.morphia.annotations.Index;
 import dev.morphia.annotations.Indexes;
 import io.antmedia.rest.VoDRestService;
+import io.antmedia.security.CIDRMatcher;
 
 /**
  * Application Settings for each application running in Ant Media Server.
@@ -1159,6 +1161,16 @@ public class AppSettings implements Serializable{
 	@Value( "${streamFetcherBufferTime:0}" )
 	private int streamFetcherBufferTime = 0;
 
+	/**
+	 * Duration in milliseconds of the VoD and playlist sources that is sent without waiting for its time 
+	 * when the stream is started. It decreases the time to first frame on the players.
+	 * 
+	 * 0 means all packets are sent at their time,
+	 * Default value is 0
+	 */
+	@Value( "${vodPacingBurstMs:0}" )
+	private int vodPacingBurstMs = 0;
+
 
 	/**
 	 * HLS Flags for FFmpeg HLS Muxer,
@@ -2152,6 +2164,48 @@ public class AppSettings implements Serializable{
 	@Value("${webhookContentType:#{ T(org.apache.http.entity.ContentType).APPLICATION_JSON.getMimeType() }}")
 	private String webhookContentType = ContentType.APPLICATION_JSON.getMimeType();
 
+	/**
+	 * Packets are always written to the muxers that may block(HLS, MP4, RTMP endpoint, etc.) in the writer threads through a bounded queue
+	 * so that a slow muxer does not delay the other muxers of the stream and the other streams.
+	 * If it's true, muxers that declare non-blocking writes are written in the writer threads as well.
+	 * If it's false, they're written one by one in the ingest thread.
+	 */
+	@Value("${asyncMuxerFanOutEnabled:false}")
+	private boolean asyncMuxerFanOutEnabled = false;
+
+	/**
+	 * Number of packets that can wait in the queue of each muxer that is written in the writer threads, see {@link #asyncMuxerFanOutEnabled}.
+	 */
+	@Value("${asyncMuxerQueueSize:512}")
+	private int asyncMuxerQueueSize = 512;
+
+	/**
+	 * What to do when the queue of a muxer that is written in the writer threads is full, see {@link #asyncMuxerFanOutEnabled}.
+	 * Values are drop_to_next_keyframe or disconnect.
+	 * drop_to_next_keyframe drops the packets of that muxer until the next key frame,
+	 * disconnect removes the muxer from the stream.
+	 * Blocking is not a value because packets are written in shared workers. Settings with other values are rejected.
+	 */
+	@Value("${asyncMuxerOverflowPolicy:drop_to_next_keyframe}")
+	private String asyncMuxerOverflowPolicy = "drop_to_next_keyframe";
+
+	/**
+	 * If it's true, HLS playlists and segments are kept in memory and served from memory by the HLS memory servlet
+	 * instead of writing them to the disk. Files are written to the disk in another thread only if
+	 * deleteHLSFilesOnEnded is false or HLS upload to S3 is enabled.
+	 * It does not have any effect if hlsHttpEndpoint is set or io.antmedia.servlet.HLSMemoryServlet is not mapped
+	 * to the streams directory in the web.xml of the application.
+	 */
+	@Value("${hlsInMemoryStoreEnabled:false}")
+	private boolean hlsInMemoryStoreEnabled = false;
+
+	/**
+	 * Max size of the HLS files in memory in MB when {@link #hlsInMemoryStoreEnabled} is true.
+	 * Oldest segments are removed when the limit is exceeded. Memory is shared by all applications in the server
+	 */
+	@Value("${hlsInMemoryStoreMaxSizeMB:512}")
+	private int hlsInMemoryStoreMaxSizeMB = 512;
+
 
 	public void setWriteStatsToDatastore(boolean writeStatsToDatastore) {
 		this.writeStatsToDatastore = writeStatsToDatastore;
@@ -2695,6 +2749,22 @@ public class AppSettings implements Serializable{
 		this.remoteAllowedCIDR = remoteAllowedCIDR;	
 	}
 
+	/**
+	 * Compiled form of {@link #remoteAllowedCIDR}. It's compiled again when the list changes.
+	 * It's final so that it's not a setting. It may be null if the settings are deserialized.
+	 */
+	@JsonIgnore
+	private final transient AtomicReference<CIDRMatcher> allowedCIDRMatcher = new AtomicReference<>();
+
+	/**
+	 * @return matcher of {@link #remoteAllowedCIDR}. It's shared by the callers and compiled once for each change of the list
+	 */
+	@JsonIgnore
+	public CIDRMatcher getAllowedCIDRMatcher() {
+		return allowedCIDRMatcher != null ? CIDRMatcher.getUpToDate(allowedCIDRMatcher, remoteAllowedCIDR)
+				: CIDRMatcher.compile(remoteAllowedCIDR);
+	}
+
 	@JsonIgnore
 	public synchronized Queue<NetMask> getAllowedCIDRList() 
 	{
@@ -3750,4 +3820,52 @@ public class AppSettings implements Serializable{
 	public void setWebhookContentType(String webhookContentType) {
 		this.webhookContentType = webhookContentType;
 	}
+
+	public boolean isAsyncMuxerFanOutEnabled() {
+		return asyncMuxerFanOutEnabled;
+	}
+
+	public void setAsyncMuxerFanOutEnabled(boolean asyncMuxerFanOutEnabled) {
+		this.asyncMuxerFanOutEnabled = asyncMuxerFanOutEnabled;
+	}
+
+	public int getAsyncMuxerQueueSize() {
+		return asyncMuxerQueueSize;
+	}
+
+	public void setAsyncMuxerQueueSize(int asyncMuxerQueueSize) {
+		this.asyncMuxerQueueSize = asyncMuxerQueueSize;
+	}
+
+	public String getAsyncMuxerOverflowPolicy() {
+		return asyncMuxerOverflowPolicy;
+	}
+
+	public void setAsyncMuxerOverflowPolicy(String asyncMuxerOverflowPolicy) {
+		this.asyncMuxerOverflowPolicy = asyncMuxerOverflowPolicy;
+	}
+
+	public boolean isHlsInMemoryStoreEnabled() {
+		return hlsInMemoryStoreEnabled;
+	}
+
+	public void setHlsInMemoryStoreEnabled(boolean hlsInMemoryStoreEnabled) {
+		this.hlsInMemoryStoreEnabled = hlsInMemoryStoreEnabled;
+	}
+
+	public int getHlsInMemoryStoreMaxSizeMB() {
+		return hlsInMemoryStoreMaxSizeMB;
+	}
+
+	public void setHlsInMemoryStoreMaxSizeMB(int hlsInMemoryStoreMaxSizeMB) {
+		this.hlsInMemoryStoreMaxSizeMB = hlsInMemoryStoreMaxSizeMB;
+	}
+
+	public int getVodPacingBurstMs() {
+		return vodPacingBurstMs;
+	}
+
+	public void setVodPacingBurstMs(int vodPacingBurstMs) {
+		this.vodPacingBurstMs = vodPacingBurstMs;
+	}
 }
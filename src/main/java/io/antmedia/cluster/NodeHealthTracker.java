@@ -0,0 +1,208 @@
+package io.antmedia.cluster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passive health of the cluster nodes that requests are forwarded to. Nodes are not probed,
+ * health is taken from the cluster view in {@link IClusterStore} and from the results of the forwarded requests.
+ *
+ * Circuit of a node opens after {@link #FAILURE_THRESHOLD} consecutive failures and requests are not forwarded to the node
+ * for {@link #OPEN_CIRCUIT_DURATION_MS}. After that one request is let through, circuit closes if it succeeds
+ * and opens again if it fails. If the result of the trial request is not reported in {@link #TRIAL_TIMEOUT_MS},
+ * another request is let through.
+ *
+ * Nodes that leave the cluster are evicted when their circuit is closed and nodes that are not checked for
+ * {@link #IDLE_NODE_TIMEOUT_MS} are evicted in any case. Nodes are swept at most once in a node update period.
+ */
+public class NodeHealthTracker {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeHealthTracker.class);
+
+	public static final int FAILURE_THRESHOLD = 3;
+
+	public static final long OPEN_CIRCUIT_DURATION_MS = 10000;
+
+	/**
+	 * It's longer than the connect and socket timeouts of the forwarded requests
+	 */
+	public static final long TRIAL_TIMEOUT_MS = 10000;
+
+	public static final long IDLE_NODE_TIMEOUT_MS = 60000;
+
+	/**
+	 * Cluster status of a node that is not in the cluster store
+	 */
+	private static final String LEFT_CLUSTER = "LEFT_CLUSTER";
+
+	private final Supplier<IClusterStore> clusterStoreSupplier;
+
+	private final Map<String, NodeState> nodes = new ConcurrentHashMap<>();
+
+	private final AtomicLong lastSweepTimeMs = new AtomicLong();
+
+	private static class NodeState {
+		private String clusterStatus;
+		private long clusterStatusTimeMs = -1;
+		private long lastAccessTimeMs;
+		private int consecutiveFailures;
+		private long openUntilMs;
+		private boolean trialInProgress;
+		private long trialStartTimeMs;
+	}
+
+	/**
+	 * @param clusterStoreSupplier returns the cluster store or null if it's not available
+	 */
+	public NodeHealthTracker(Supplier<IClusterStore> clusterStoreSupplier) {
+		this.clusterStoreSupplier = clusterStoreSupplier;
+	}
+
+	/**
+	 * @param address ip address of the node
+	 * @return true if a request can be forwarded to the node
+	 */
+	public boolean isAvailable(String address) {
+		long now = getCurrentTimeMillis();
+		sweepNodes(now);
+		NodeState state = getState(address);
+
+		if (isClusterStatusExpired(state, now)) {
+			//cluster store is read out of the lock, at most once in a node update period for a node in normal operation
+			String clusterStatus = getClusterStatus(address);
+			synchronized (state) {
+				state.clusterStatus = clusterStatus;
+				state.clusterStatusTimeMs = now;
+			}
+		}
+
+		synchronized (state) {
+			state.lastAccessTimeMs = now;
+			if (ClusterNode.DEAD.equals(state.clusterStatus)) {
+				return false;
+			}
+			if (state.openUntilMs == 0) {
+				return true;
+			}
+			if (now < state.openUntilMs || (state.trialInProgress && now - state.trialStartTimeMs < TRIAL_TIMEOUT_MS)) {
+				return false;
+			}
+			//half open, let one request through
+			state.trialInProgress = true;
+			state.trialStartTimeMs = now;
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the nodes that left the cluster and the nodes that are not checked for {@link #IDLE_NODE_TIMEOUT_MS}.
+	 * A node that left the cluster is kept while its circuit is open so that requests are not forwarded to it
+	 */
+	private void sweepNodes(long now) {
+		long lastSweep = lastSweepTimeMs.get();
+		if (now - lastSweep < ClusterNode.NODE_UPDATE_PERIOD || !lastSweepTimeMs.compareAndSet(lastSweep, now)) {
+			return;
+		}
+		nodes.entrySet().removeIf(entry -> {
+			NodeState state = entry.getValue();
+			synchronized (state) {
+				boolean evicted = now - state.lastAccessTimeMs >= IDLE_NODE_TIMEOUT_MS
+						|| (LEFT_CLUSTER.equals(state.clusterStatus) && state.openUntilMs == 0);
+				if (evicted) {
+					logger.debug("Health of node:{} is not tracked anymore", entry.getKey());
+				}
+				return evicted;
+			}
+		});
+	}
+
+	private NodeState getState(String address) {
+		return nodes.computeIfAbsent(address, key -> {
+			NodeState state = new NodeState();
+			state.lastAccessTimeMs = getCurrentTimeMillis();
+			return state;
+		});
+	}
+
+	private boolean isClusterStatusExpired(NodeState state, long now) {
+		synchronized (state) {
+			return state.clusterStatusTimeMs < 0 || now - state.clusterStatusTimeMs >= ClusterNode.NODE_UPDATE_PERIOD;
+		}
+	}
+
+	private String getClusterStatus(String address) {
+		IClusterStore clusterStore = clusterStoreSupplier.get();
+		if (clusterStore == null) {
+			return null;
+		}
+		try {
+			ClusterNode node = clusterStore.getClusterNodeFromIP(address);
+			return node != null ? node.getStatus() : LEFT_CLUSTER;
+		}
+		catch (Exception e) {
+			logger.warn("Cluster status of node:{} cannot be read. Error: {}", address, e.getMessage());
+			return null;
+		}
+	}
+
+	public void reportSuccess(String address) {
+		NodeState state = getState(address);
+		synchronized (state) {
+			if (state.openUntilMs != 0) {
+				logger.info("Circuit of node:{} is closed", address);
+			}
+			state.consecutiveFailures = 0;
+			state.openUntilMs = 0;
+			state.trialInProgress = false;
+		}
+	}
+
+	public void reportFailure(String address) {
+		NodeState state = getState(address);
+		synchronized (state) {
+			state.consecutiveFailures++;
+			if (state.trialInProgress || state.consecutiveFailures >= FAILURE_THRESHOLD) {
+				state.openUntilMs = getCurrentTimeMillis() + OPEN_CIRCUIT_DURATION_MS;
+				state.trialInProgress = false;
+				logger.warn("Circuit of node:{} is open for {}ms after {} consecutive failures", address, OPEN_CIRCUIT_DURATION_MS,
+						state.consecutiveFailures);
+			}
+		}
+	}
+
+	protected long getCurrentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	public boolean isCircuitOpen(String address) {
+		NodeState state = nodes.get(address);
+		if (state == null) {
+			return false;
+		}
+		synchronized (state) {
+			return state.openUntilMs != 0;
+		}
+	}
+
+	/**
+	 * @return number of the nodes whose health is tracked
+	 */
+	public int getNodeCount() {
+		return nodes.size();
+	}
+
+	public int getConsecutiveFailures(String address) {
+		NodeState state = nodes.get(address);
+		if (state == null) {
+			return 0;
+		}
+		synchronized (state) {
+			return state.consecutiveFailures;
+		}
+	}
+}
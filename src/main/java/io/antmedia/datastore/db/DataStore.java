@@ -9,6 +9,7 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiPredicate;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -19,6 +20,7 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import io.antmedia.datastore.db.codec.IValueCodec;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.ConferenceRoom;
 import io.antmedia.datastore.db.types.ConnectionEvent;
@@ -80,14 +82,14 @@ public abstract class DataStore {
 	 */
 	public abstract Broadcast get(String id);
 	
-	public Broadcast get(Map<String, String> broadcastMap, String streamId, Gson gson) {
+	public Broadcast get(Map<String, String> broadcastMap, String streamId, IValueCodec codec) {
 		synchronized (this) {
 			Broadcast broadcast = null;
 			String jsonString = null;
 			if (streamId != null) {
 				jsonString = broadcastMap.get(streamId);
 				if(jsonString != null) {
-					return gson.fromJson(jsonString, Broadcast.class);
+					return codec.decode(jsonString, Broadcast.class);
 				}
 				return broadcast;
 			}
@@ -102,14 +104,14 @@ public abstract class DataStore {
 	 */
 	public abstract VoD getVoD(String id);
 	
-	public VoD getVoD(Map<String, String> vodMap, String vodId, Gson gson) {
+	public VoD getVoD(Map<String, String> vodMap, String vodId, IValueCodec codec) {
 		synchronized (this) {
 			if (vodId != null) {
 				String jsonString = null;
 				jsonString = vodMap.get(vodId);
 
 				if (jsonString != null) {
-					return gson.fromJson(jsonString, VoD.class);
+					return codec.decode(jsonString, VoD.class);
 				}
 			}
 		}
@@ -210,14 +212,14 @@ public abstract class DataStore {
 	 */
 	public abstract List<VoD> getVodList(int offset, int size, String sortBy, String orderBy, String filterStreamId, String search);
 
-	public List<VoD> getVodListV2(Map<String, String> vodMap, String streamId, String search, Gson gson, String dbName) {
+	public List<VoD> getVodListV2(Map<String, String> vodMap, String streamId, String search, IValueCodec codec, String dbName) {
 		ArrayList<VoD> vods = new ArrayList<>();
 		synchronized (this) {
 
 			int length = vodMap.size();
 			int i = 0;
 			for (String vodString : vodMap.values()) {
-				VoD vod = gson.fromJson(vodString, VoD.class);
+				VoD vod = codec.decode(vodString, VoD.class);
 				if (streamId != null && !streamId.isEmpty()) {
 					if (vod.getStreamId().equals(streamId)) {
 						vods.add(vod);
@@ -328,7 +330,7 @@ public abstract class DataStore {
 	 */
 	public abstract List<Token> listAllTokens (String streamId, int offset, int size);
 
-	public List<Token> listAllTokens (Map<String, String> tokenMap, String streamId, int offset, int size, Gson gson) {
+	public List<Token> listAllTokens (Map<String, String> tokenMap, String streamId, int offset, int size, IValueCodec codec) {
 
 		List<Token> list = new ArrayList<>();
 		List<Token> listToken = new ArrayList<>();
@@ -347,7 +349,7 @@ public abstract class DataStore {
 			Iterator<String> iterator = values.iterator();
 
 			while (iterator.hasNext()) {
-				Token token = gson.fromJson(iterator.next(), Token.class);
+				Token token = codec.decode(iterator.next(), Token.class);
 
 				if (token.getStreamId().equals(streamId)) {
 					list.add(token);
@@ -402,13 +404,13 @@ public abstract class DataStore {
 	public abstract Token getToken (String tokenId);
 
 	public Token getToken(Map<String, String> tokenMap, String tokenId,
-			Gson gson) {
+			IValueCodec codec) {
 		Token token = null;
 		synchronized (this) {
 			if (tokenId != null) {
 				String jsonString = tokenMap.get(tokenId);
 				if (jsonString != null) {
-					token = gson.fromJson(jsonString, Token.class);
+					token = codec.decode(jsonString, Token.class);
 				}
 			}
 		}
@@ -424,7 +426,7 @@ public abstract class DataStore {
 	 */	
 	public abstract List<Subscriber> listAllSubscribers(String streamId, int offset, int size);
 
-	public List<Subscriber> listAllSubscribers(Map<String, String> subscriberMap, String streamId, int offset, int size, Gson gson) {
+	public List<Subscriber> listAllSubscribers(Map<String, String> subscriberMap, String streamId, int offset, int size, IValueCodec codec) {
 		List<Subscriber> list = new ArrayList<>();
 		List<Subscriber> listSubscriber = new ArrayList<>();
 
@@ -442,7 +444,7 @@ public abstract class DataStore {
 			Iterator<String> iterator = values.iterator();
 
 			while (iterator.hasNext()) {
-				Subscriber subscriber = gson.fromJson(iterator.next(), Subscriber.class);
+				Subscriber subscriber = codec.decode(iterator.next(), Subscriber.class);
 
 				if (subscriber.getStreamId().equals(streamId)) {
 					list.add(subscriber);
@@ -532,13 +534,13 @@ public abstract class DataStore {
 	 */	
 	public abstract Subscriber getSubscriber (String streamId, String subscriberId);
 
-	public Subscriber getSubscriber(Map<String, String> subscriberMap, String streamId, String subscriberId, Gson gson) {
+	public Subscriber getSubscriber(Map<String, String> subscriberMap, String streamId, String subscriberId, IValueCodec codec) {
 		Subscriber subscriber = null;
 		synchronized (this) {
 			if (subscriberId != null && streamId != null) {
 				String jsonString = subscriberMap.get(Subscriber.getDBKey(streamId, subscriberId));
 				if (jsonString != null) {
-					subscriber = gson.fromJson(jsonString, Subscriber.class);
+					subscriber = codec.decode(jsonString, Subscriber.class);
 				}
 			}
 		}
@@ -580,6 +582,20 @@ public abstract class DataStore {
 		return result;
 	}
 
+	/**
+	 * Applies the connection events to the subscriber in order and writes the subscriber once
+	 *
+	 * @param streamId
+	 * @param subscriber subscriber that is read from the datastore or a new one
+	 * @param events connection events of the subscriber in the order they happened
+	 */
+	public void addSubscriberConnectionEvents(String streamId, Subscriber subscriber, List<ConnectionEvent> events) {
+		for (ConnectionEvent event : events) {
+			handleConnectionEvent(subscriber, event);
+		}
+		addSubscriber(streamId, subscriber);
+	}
+
 	// helper method used by all datastores
 	protected void handleConnectionEvent(Subscriber subscriber, ConnectionEvent event) {
 		if(ConnectionEvent.CONNECTED_EVENT.equals(event.getEventType())) {
@@ -653,14 +669,14 @@ public abstract class DataStore {
 	 */
 	public abstract long getActiveBroadcastCount();
 
-	public long getActiveBroadcastCount(Map<String, String> broadcastMap, Gson gson, String hostAddress) {
+	public long getActiveBroadcastCount(Map<String, String> broadcastMap, IValueCodec codec, String hostAddress) {
 		int activeBroadcastCount = 0;
 		synchronized (this) {
 			
 			Collection<String> values = broadcastMap.values();
 			for (String broadcastString : values) 
 			{
-				Broadcast broadcast = gson.fromJson(broadcastString, Broadcast.class);
+				Broadcast broadcast = codec.decode(broadcastString, Broadcast.class);
 				String status = broadcast.getStatus();
 				if (IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING.equals(status) && 
 						(StringUtils.isAnyBlank(hostAddress, broadcast.getOriginAdress()) || hostAddress.equals(broadcast.getOriginAdress()))) 
@@ -672,14 +688,14 @@ public abstract class DataStore {
 		return activeBroadcastCount;
 	}
 	
-	public List<Broadcast> getActiveBroadcastList(Map<String, String> broadcastMap, Gson gson, String hostAddress) {
+	public List<Broadcast> getActiveBroadcastList(Map<String, String> broadcastMap, IValueCodec codec, String hostAddress) {
 		List<Broadcast> broadcastList = new ArrayList<>();
 		synchronized (this) {
 			
 			Collection<String> values = broadcastMap.values();
 			for (String broadcastString : values) 
 			{
-				Broadcast broadcast = gson.fromJson(broadcastString, Broadcast.class);
+				Broadcast broadcast = codec.decode(broadcastString, Broadcast.class);
 				String status = broadcast.getStatus();
 				if (IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING.equals(status) && 
 					  (StringUtils.isAnyBlank(hostAddress, broadcast.getOriginAdress()) || hostAddress.equals(broadcast.getOriginAdress())))
@@ -755,7 +771,9 @@ public abstract class DataStore {
 	}
 
 	/**
-	 * Update the WebRTC viewer count
+	 * Update the WebRTC viewer count. It writes each change to the datastore. Viewers of the applications should
+	 * be counted with {@link io.antmedia.muxer.IAntMediaStreamHandler#updateWebRTCViewerCount(String, boolean)}
+	 * so that the changes are merged
 	 * @param streamId
 	 * @param increment if it is true, increment viewer count by one
 	 * if it is false, decrement viewer count by one
@@ -785,6 +803,41 @@ public abstract class DataStore {
 
 	protected abstract boolean updateRtmpViewerCountLocal(String streamId, boolean increment);
 
+	/**
+	 * Writes the stats that are merged by {@link StreamStatsWriteBehind}. Viewer counts are updated
+	 * if stats are written to the datastore. Stores that have a bulk write override this method
+	 * @param updates
+	 * @return the broadcasts that are updated
+	 */
+	public List<Broadcast> updateStreamStats(List<StreamStatsUpdate> updates) {
+		List<Broadcast> broadcasts = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		for (StreamStatsUpdate update : updates) {
+			Broadcast broadcast = get(update.getStreamId());
+			if (broadcast == null) {
+				continue;
+			}
+			if (update.isQualityUpdated()) {
+				update.applyQualityParameters(broadcast, now);
+				updateBroadcastFields(update.getStreamId(), broadcast);
+			}
+			if (writeStatsToDatastore) {
+				updateViewerCountLocal(update.getStreamId(), update.getRtmpViewerDiff(), this::updateRtmpViewerCountLocal);
+				updateViewerCountLocal(update.getStreamId(), update.getWebRTCViewerDiff(), this::updateWebRTCViewerCountLocal);
+			}
+			broadcasts.add(broadcast);
+		}
+		return broadcasts;
+	}
+
+	private void updateViewerCountLocal(String streamId, int diff, BiPredicate<String, Boolean> updater) {
+		for (int i = 0; i < Math.abs(diff); i++) {
+			if (!updater.test(streamId, diff > 0)) {
+				break;
+			}
+		}
+	}
+
 
 	/**
 	 * Saves the stream info to the db
@@ -1166,13 +1219,13 @@ public abstract class DataStore {
 	 */
 	public abstract int getTotalWebRTCViewersCount();
 
-	public int getTotalWebRTCViewersCount(Map<String, String> broadcastMap, Gson gson) {
+	public int getTotalWebRTCViewersCount(Map<String, String> broadcastMap, IValueCodec codec) {
 		long now = System.currentTimeMillis();
 		if (now - totalWebRTCViewerCountLastUpdateTime > TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME) {
 			int total = 0;
 			synchronized (this) {
 				for (String json : broadcastMap.values()) {
-					Broadcast broadcast = gson.fromJson(json, Broadcast.class);
+					Broadcast broadcast = codec.decode(json, Broadcast.class);
 					total += broadcast.getWebRTCViewerCount();
 				}
 			}
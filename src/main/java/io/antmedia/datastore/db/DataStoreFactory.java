@@ -8,6 +8,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
 import io.antmedia.AppSettings;
+import io.antmedia.datastore.db.codec.JsonValueCodec;
 import io.antmedia.muxer.IAntMediaStreamHandler;
 import io.antmedia.settings.ServerSettings;
 import io.vertx.core.Vertx;
@@ -26,6 +27,8 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 	public static final String SETTINGS_DB_HOST = "db.host";
 	public static final String SETTINGS_DB_USER = "db.user";
 	public static final String SETTINGS_DB_PASS = "db.password";
+	public static final String SETTINGS_DB_VALUE_CODEC = "db.valueCodec";
+	public static final String SETTINGS_DB_OBJECT_CACHE_SIZE = "db.objectCacheSize";
 
 
 	private static Logger logger = LoggerFactory.getLogger(DataStoreFactory.class);
@@ -52,6 +55,18 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 	@Value( "${"+SETTINGS_DB_PASS+":#{null}}" )
 	private String dbPassword;
 
+	/**
+	 * Codec of the records in mapdb and redis. One of the "json" or "binary"
+	 */
+	@Value( "${"+SETTINGS_DB_VALUE_CODEC+":" + JsonValueCodec.NAME + "}" )
+	private String dbValueCodec = JsonValueCodec.NAME;
+
+	/**
+	 * Number of the decoded records that are cached by mapdb for each type. Zero disables the cache and it's the default
+	 */
+	@Value( "${"+SETTINGS_DB_OBJECT_CACHE_SIZE+":" + MapDBStore.DEFAULT_OBJECT_CACHE_SIZE + "}" )
+	private int dbObjectCacheSize = MapDBStore.DEFAULT_OBJECT_CACHE_SIZE;
+
 	private String hostAddress;
 	
 	private Vertx vertx;
@@ -93,6 +108,22 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 		this.dbPassword = dbPassword;
 	}
 
+	public String getDbValueCodec() {
+		return dbValueCodec;
+	}
+
+	public void setDbValueCodec(String dbValueCodec) {
+		this.dbValueCodec = dbValueCodec;
+	}
+
+	public int getDbObjectCacheSize() {
+		return dbObjectCacheSize;
+	}
+
+	public void setDbObjectCacheSize(int dbObjectCacheSize) {
+		this.dbObjectCacheSize = dbObjectCacheSize;
+	}
+
 	public void init()  
 	{
 		if(dbType.contentEquals(DB_TYPE_MONGODB))
@@ -101,11 +132,11 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 		}
 		else if(dbType .contentEquals(DB_TYPE_MAPDB))
 		{
-			dataStore = new MapDBStore(dbName+".db", vertx);
+			dataStore = new MapDBStore(dbName+".db", vertx, dbValueCodec, dbObjectCacheSize);
 		}
 		else if(dbType .contentEquals(DB_TYPE_REDISDB))
 		{
-			dataStore = new RedisStore(dbHost, dbName);
+			dataStore = new RedisStore(dbHost, dbName, dbValueCodec);
 		}
 		else if(dbType .contentEquals(DB_TYPE_MEMORYDB))
 		{
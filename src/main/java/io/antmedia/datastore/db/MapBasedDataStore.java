@@ -4,6 +4,7 @@ import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,11 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.codec.BinaryValueCodec;
+import io.antmedia.datastore.db.codec.DecodedObjectCache;
+import io.antmedia.datastore.db.codec.IValueCodec;
+import io.antmedia.datastore.db.codec.JsonValueCodec;
+import io.antmedia.datastore.db.index.BroadcastIndex;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.ConferenceRoom;
 import io.antmedia.datastore.db.types.Endpoint;
@@ -52,20 +58,65 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	protected Gson gson;
 	protected String dbName;
+
+	/**
+	 * Codec of the broadcast, VoD, token and subscriber records. Other records are kept as JSON
+	 */
+	protected IValueCodec valueCodec;
+
+	/**
+	 * Write-through caches of the decoded records. They're null if the cache is disabled
+	 */
+	protected DecodedObjectCache<Broadcast> broadcastCache;
+	protected DecodedObjectCache<Token> tokenCache;
+	protected DecodedObjectCache<Subscriber> subscriberCache;
+
+	/**
+	 * Secondary indexes of the broadcast map. It's null if the map is written by other processes as well
+	 */
+	protected BroadcastIndex broadcastIndex;
 	
 	protected static Logger logger = LoggerFactory.getLogger(MapBasedDataStore.class);
 
 
 	public MapBasedDataStore(String dbName) {
+		this(dbName, JsonValueCodec.NAME, 0);
+	}
+
+	/**
+	 * @param dbName
+	 * @param valueCodecName one of the {@link JsonValueCodec#NAME} or {@link BinaryValueCodec#NAME}
+	 * @param objectCacheSize maximum number of the decoded records that are cached for each of the broadcast, token and
+	 * subscriber maps. Zero disables the cache. It should not be enabled if another process writes to the same maps
+	 */
+	public MapBasedDataStore(String dbName, String valueCodecName, int objectCacheSize) {
 		this.dbName = dbName;
 		
 
 		GsonBuilder builder = new GsonBuilder();
 		gson = builder.create();
 
+		valueCodec = createValueCodec(valueCodecName, gson);
+
+		if (objectCacheSize > 0) {
+			broadcastCache = new DecodedObjectCache<>(gson, objectCacheSize);
+			tokenCache = new DecodedObjectCache<>(gson, objectCacheSize);
+			subscriberCache = new DecodedObjectCache<>(gson, objectCacheSize);
+		}
+
 		available = true;
 	}
 
+	public static IValueCodec createValueCodec(String valueCodecName, Gson gson) {
+		if (BinaryValueCodec.NAME.equals(valueCodecName)) {
+			return new BinaryValueCodec(gson);
+		}
+		if (valueCodecName != null && !JsonValueCodec.NAME.equals(valueCodecName)) {
+			logger.warn("Unknown value codec:{}. {} codec is used", valueCodecName, JsonValueCodec.NAME);
+		}
+		return new JsonValueCodec(gson);
+	}
+
 	@Override
 	public String save(Broadcast broadcast) {
     	String streamId = null;
@@ -73,7 +124,7 @@ public abstract class MapBasedDataStore extends DataStore {
 			if (broadcast != null) {
 				Broadcast updatedBroadcast = super.saveBroadcast(broadcast);
 				streamId = updatedBroadcast.getStreamId();
-				map.put(updatedBroadcast.getStreamId(), gson.toJson(updatedBroadcast));
+				putBroadcastToMap(streamId, updatedBroadcast);
 			}
 	    	return streamId;
 		}
@@ -81,12 +132,12 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	@Override
 	public Broadcast get(String id) {
-		return super.get(map, id, gson);
+		return getBroadcastFromMap(id);
 	}
 
 	@Override
 	public VoD getVoD(String id) {
-		return super.getVoD(vodMap, id, gson);
+		return super.getVoD(vodMap, id, valueCodec);
 	}
 
 	@Override
@@ -214,18 +265,28 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	@Override
 	public long getActiveBroadcastCount() {
-		return super.getActiveBroadcastCount(map, gson, null);
+		if (broadcastIndex != null) {
+			synchronized (this) {
+				return broadcastIndex.getActiveBroadcastCount(null);
+			}
+		}
+		return super.getActiveBroadcastCount(map, valueCodec, null);
 	}
 	 
 	public List<Broadcast> getActiveBroadcastList(String hostAddress) {
-		return super.getActiveBroadcastList(map, gson, hostAddress);
+		if (broadcastIndex != null) {
+			synchronized (this) {
+				return getBroadcastsFromMap(broadcastIndex.getActiveBroadcastIds(hostAddress));
+			}
+		}
+		return super.getActiveBroadcastList(map, valueCodec, hostAddress);
 	}
 
 	@Override
 	public boolean delete(String id) {
 		boolean result = false;
 		synchronized (this) {			
-			result = map.remove(id) != null;
+			result = removeBroadcastFromMap(id);
 		}
 		return result;
 	}
@@ -241,7 +302,7 @@ public abstract class MapBasedDataStore extends DataStore {
 			if (type != null && !type.isEmpty()) {
 				for (String broadcastString : map.values()) {
 					count++;
-					Broadcast broadcast = gson.fromJson(broadcastString, Broadcast.class);
+					Broadcast broadcast = valueCodec.decode(broadcastString, Broadcast.class);
 
 					if (broadcast.getType().equals(type)) {
 						list.add(broadcast);
@@ -255,7 +316,7 @@ public abstract class MapBasedDataStore extends DataStore {
 			} else {
 				for (String broadcastString : map.values()) {
 					count++;
-					Broadcast broadcast = gson.fromJson(broadcastString, Broadcast.class);
+					Broadcast broadcast = valueCodec.decode(broadcastString, Broadcast.class);
 					list.add(broadcast);
 
 					if(count > size) {
@@ -275,13 +336,22 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	@Override
 	public List<Broadcast> getBroadcastList(int offset, int size, String type, String sortBy, String orderBy, String search) {
+		if (broadcastIndex != null) {
+			if (search != null && !search.isEmpty()) {
+				search = search.replaceAll(REPLACE_CHARS_REGEX, "_");
+				logger.info("server side search called for Broadcast searchString = {}", search);
+			}
+			synchronized (this) {
+				return getBroadcastsFromMap(broadcastIndex.getBroadcastIds(offset, size, type, sortBy, orderBy, search));
+			}
+		}
 		List<Broadcast> list = null;
 		list = getBroadcastListV2(type ,search);
 		return sortAndCropBroadcastList(list, offset, size, sortBy, orderBy);
 	}
 
 	public List<VoD> getVodListV2(String streamId, String search) {
-		return super.getVodListV2(vodMap, streamId, search, gson, dbName);
+		return super.getVodListV2(vodMap, streamId, search, valueCodec, dbName);
 	}
 
 	/**
@@ -303,7 +373,7 @@ public abstract class MapBasedDataStore extends DataStore {
 					vod.setVodId(RandomStringUtils.randomNumeric(24));
 				}
 				id = vod.getVodId();
-				vodMap.put(vod.getVodId(), gson.toJson(vod));
+				vodMap.put(vod.getVodId(), valueCodec.encode(vod));
 
 				logger.warn("VoD is saved to DB {} with voID {}", vod.getVodName(), id);
 
@@ -324,14 +394,14 @@ public abstract class MapBasedDataStore extends DataStore {
 			Object[] objectArray = map.values().toArray();
 			Broadcast[] broadcastArray = new Broadcast[objectArray.length];
 			for (int i = 0; i < objectArray.length; i++) {
-				broadcastArray[i] = gson.fromJson((String) objectArray[i], Broadcast.class);
+				broadcastArray[i] = valueCodec.decode((String) objectArray[i], Broadcast.class);
 			}
 			for (int i = 0; i < broadcastArray.length; i++) {
 				String type = broadcastArray[i].getType();
 				String status = broadcastArray[i].getStatus();
 
 				if ((type.equals(AntMediaApplicationAdapter.IP_CAMERA) || type.equals(AntMediaApplicationAdapter.STREAM_SOURCE)) && (!status.equals(IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING) && !status.equals(IAntMediaStreamHandler.BROADCAST_STATUS_PREPARING)) ) {
-					streamsList.add(gson.fromJson((String) objectArray[i], Broadcast.class));
+					streamsList.add(valueCodec.decode((String) objectArray[i], Broadcast.class));
 					broadcastArray[i].setStatus(IAntMediaStreamHandler.BROADCAST_STATUS_PREPARING);
 					setBroadcastToMap(broadcastArray[i], broadcastArray[i].getStreamId());
 				}
@@ -384,7 +454,7 @@ public abstract class MapBasedDataStore extends DataStore {
 
 			for (String vodString : vodFiles) {
 				i++;
-				vodList.add(gson.fromJson(vodString, VoD.class));
+				vodList.add(valueCodec.decode(vodString, VoD.class));
 				if (i > size) {
 					logger.error(INCONSISTENCY_MESSAGE, dbName);
 					break;
@@ -464,6 +534,14 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	@Override
 	public long getPartialBroadcastNumber(String search) {
+		if (broadcastIndex != null) {
+			if (search != null && !search.isEmpty()) {
+				search = search.replaceAll(REPLACE_CHARS_REGEX, "_");
+			}
+			synchronized (this) {
+				return broadcastIndex.getBroadcastCount(null, search);
+			}
+		}
 		return getBroadcastListV2(null ,search).size();
 	}
 	
@@ -608,7 +686,7 @@ public abstract class MapBasedDataStore extends DataStore {
 					}
 					if (rtmpViewerCount >= 0) {
 						broadcast.setRtmpViewerCount(rtmpViewerCount);
-						map.replace(streamId, gson.toJson(broadcast));
+						setBroadcastToMap(broadcast, streamId);
 						result = true;
 					}
 				}
@@ -616,7 +694,43 @@ public abstract class MapBasedDataStore extends DataStore {
 		}
 		return result;
 	}
-	
+
+	/**
+	 * Writes the stats of all streams with one putAll, it's one round trip for Redis
+	 */
+	@Override
+	public List<Broadcast> updateStreamStats(List<StreamStatsUpdate> updates) {
+		List<Broadcast> broadcasts = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Map<String, String> encodedBroadcasts = new HashMap<>();
+			for (StreamStatsUpdate update : updates) {
+				Broadcast broadcast = get(update.getStreamId());
+				if (broadcast == null) {
+					continue;
+				}
+				update.applyQualityParameters(broadcast, now);
+				if (isWriteStatsToDatastore()) {
+					update.applyViewerCounts(broadcast);
+				}
+				encodedBroadcasts.put(update.getStreamId(), valueCodec.encode(broadcast));
+				broadcasts.add(broadcast);
+			}
+			if (!encodedBroadcasts.isEmpty()) {
+				map.putAll(encodedBroadcasts);
+				for (Broadcast broadcast : broadcasts) {
+					if (broadcastCache != null) {
+						broadcastCache.put(broadcast.getStreamId(), broadcast);
+					}
+					if (broadcastIndex != null) {
+						broadcastIndex.update(broadcast.getStreamId(), broadcast);
+					}
+				}
+			}
+		}
+		return broadcasts;
+	}
+
 	public void clearStreamInfoList(String streamId) {
 		//used in mongo for cluster mode. useless here.
 	}
@@ -635,7 +749,7 @@ public abstract class MapBasedDataStore extends DataStore {
 			if (token.getStreamId() != null && token.getTokenId() != null) {
 
 				try {
-					tokenMap.put(token.getTokenId(), gson.toJson(token));
+					putObject(tokenMap, tokenCache, token.getTokenId(), token);
 					result = true;
 				} catch (Exception e) {
 					logger.error(ExceptionUtils.getStackTrace(e));
@@ -652,9 +766,8 @@ public abstract class MapBasedDataStore extends DataStore {
 
 		synchronized (this) {
 			if (token.getTokenId() != null) {
-				String jsonToken = tokenMap.get(token.getTokenId());
-				if (jsonToken != null) {
-					fetchedToken = gson.fromJson(jsonToken, Token.class);
+				fetchedToken = getObject(tokenMap, tokenCache, token.getTokenId(), Token.class);
+				if (fetchedToken != null) {
 
 					if (fetchedToken.getType().equals(token.getType())
 							&& Instant.now().getEpochSecond() < fetchedToken.getExpireDate()) {
@@ -662,7 +775,7 @@ public abstract class MapBasedDataStore extends DataStore {
 						if (token.getRoomId() == null || token.getRoomId().isEmpty()) {
 							if (fetchedToken.getStreamId().equals(token.getStreamId())) {
 
-								tokenMap.remove(token.getTokenId());
+								removeObject(tokenMap, tokenCache, token.getTokenId());
 
 							} else {
 								fetchedToken = null;
@@ -688,12 +801,12 @@ public abstract class MapBasedDataStore extends DataStore {
 			Token[] tokenArray = new Token[objectArray.length];
 
 			for (int i = 0; i < objectArray.length; i++) {
-				tokenArray[i] = gson.fromJson((String) objectArray[i], Token.class);
+				tokenArray[i] = valueCodec.decode((String) objectArray[i], Token.class);
 			}
 
 			for (int i = 0; i < tokenArray.length; i++) {
 				if (tokenArray[i].getStreamId().equals(streamId)) {
-					result = tokenMap.remove(tokenArray[i].getTokenId()) != null;
+					result = removeObject(tokenMap, tokenCache, tokenArray[i].getTokenId());
 					if (!result) {
 						break;
 					}
@@ -706,12 +819,12 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	@Override
 	public List<Token> listAllTokens(String streamId, int offset, int size) {
-		return super.listAllTokens(tokenMap, streamId, offset, size, gson);
+		return super.listAllTokens(tokenMap, streamId, offset, size, valueCodec);
 	}
 
 	@Override
 	public List<Subscriber> listAllSubscribers(String streamId, int offset, int size) {
-		return super.listAllSubscribers(subscriberMap, streamId, offset, size, gson);
+		return super.listAllSubscribers(subscriberMap, streamId, offset, size, valueCodec);
 	}
 
 	@Override
@@ -723,7 +836,7 @@ public abstract class MapBasedDataStore extends DataStore {
 
 				if (subscriber.getStreamId() != null && subscriber.getSubscriberId() != null) {
 					try {
-						subscriberMap.put(subscriber.getSubscriberKey(), gson.toJson(subscriber));
+						putObject(subscriberMap, subscriberCache, subscriber.getSubscriberKey(), subscriber);
 
 						result = true;
 					} catch (Exception e) {
@@ -742,7 +855,7 @@ public abstract class MapBasedDataStore extends DataStore {
 
 				if (streamId != null && subscriberId != null) {
 					try {
-						Subscriber subscriber = gson.fromJson(subscriberMap.get(Subscriber.getDBKey(streamId, subscriberId)), Subscriber.class);
+						Subscriber subscriber = getObject(subscriberMap, subscriberCache, Subscriber.getDBKey(streamId, subscriberId), Subscriber.class);
 						if (subscriber == null) {
 							subscriber = new Subscriber();
 							subscriber.setStreamId(streamId);
@@ -752,7 +865,7 @@ public abstract class MapBasedDataStore extends DataStore {
 						subscriber.setBlockedUntilUnitTimeStampMs(System.currentTimeMillis() + (seconds * 1000));
 
 
-						subscriberMap.put(subscriber.getSubscriberKey(), gson.toJson(subscriber));
+						putObject(subscriberMap, subscriberCache, subscriber.getSubscriberKey(), subscriber);
 
 						result = true;
 					} catch (Exception e) {
@@ -771,7 +884,7 @@ public abstract class MapBasedDataStore extends DataStore {
 
 		synchronized (this) {
 			try {
-				result = subscriberMap.remove(Subscriber.getDBKey(streamId, subscriberId)) != null;
+				result = removeObject(subscriberMap, subscriberCache, Subscriber.getDBKey(streamId, subscriberId));
 			} catch (Exception e) {
 				logger.error(ExceptionUtils.getStackTrace(e));
 			}
@@ -788,13 +901,13 @@ public abstract class MapBasedDataStore extends DataStore {
 			Subscriber[] subscriberArray = new Subscriber[objectArray.length];
 
 			for (int i = 0; i < objectArray.length; i++) {
-				subscriberArray[i] = gson.fromJson((String) objectArray[i], Subscriber.class);
+				subscriberArray[i] = valueCodec.decode((String) objectArray[i], Subscriber.class);
 			}
 
 			for (int i = 0; i < subscriberArray.length; i++) {
 				String subscriberStreamId = subscriberArray[i].getStreamId();
 				if (subscriberStreamId != null && subscriberStreamId.equals(streamId)) {
-					result = subscriberMap.remove(subscriberArray[i].getSubscriberKey()) != null;
+					result = removeObject(subscriberMap, subscriberCache, subscriberArray[i].getSubscriberKey());
 					if (!result) {
 						break;
 					}
@@ -808,7 +921,11 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	@Override
 	public Subscriber getSubscriber(String streamId, String subscriberId) {
-		return super.getSubscriber(subscriberMap, streamId, subscriberId, gson);
+		Subscriber subscriber = null;
+		if (subscriberId != null && streamId != null) {
+			subscriber = getObject(subscriberMap, subscriberCache, Subscriber.getDBKey(streamId, subscriberId), Subscriber.class);
+		}
+		return subscriber;
 	}		
 
 	@Override
@@ -819,11 +936,11 @@ public abstract class MapBasedDataStore extends DataStore {
 
 				for (String subscriberRaw : subcribersRaw) {
 					if (subscriberRaw != null) {
-						Subscriber subscriber = gson.fromJson(subscriberRaw, Subscriber.class);
+						Subscriber subscriber = valueCodec.decode(subscriberRaw, Subscriber.class);
 						if (subscriber != null) {
 							subscriber.setConnected(false);
 							subscriber.setCurrentConcurrentConnections(0);
-							subscriberMap.put(subscriber.getSubscriberKey(), gson.toJson(subscriber));
+							putObject(subscriberMap, subscriberCache, subscriber.getSubscriberKey(), subscriber);
 						}
 					}
 				}
@@ -852,7 +969,7 @@ public abstract class MapBasedDataStore extends DataStore {
 				Entry<String, String> next = iterator.next();
 				
 				if (next != null) {
-					Broadcast broadcast = gson.fromJson(next.getValue(), Broadcast.class);
+					Broadcast broadcast = valueCodec.decode(next.getValue(), Broadcast.class);
 					i++;
 					
 					if (broadcast.getOriginAdress() == null || broadcast.getOriginAdress().isEmpty() ||
@@ -860,6 +977,12 @@ public abstract class MapBasedDataStore extends DataStore {
 					{
 						if (broadcast.isZombi()) {
 							iterator.remove();
+							if (broadcastCache != null) {
+								broadcastCache.remove(next.getKey());
+							}
+							if (broadcastIndex != null) {
+								broadcastIndex.remove(next.getKey());
+							}
 							zombieStreamCount++;
 						}
 						else
@@ -869,7 +992,7 @@ public abstract class MapBasedDataStore extends DataStore {
 							broadcast.setHlsViewerCount(0);
 							broadcast.setRtmpViewerCount(0);
 							broadcast.setDashViewerCount(0);
-							map.put(broadcast.getStreamId(), gson.toJson(broadcast));
+							putBroadcastToMap(broadcast.getStreamId(), broadcast);
 							updateOperations++;
 						}
 					}
@@ -938,14 +1061,18 @@ public abstract class MapBasedDataStore extends DataStore {
 		boolean result = false;
 
 		synchronized (this) {
-			result = tokenMap.remove(tokenId) != null;
+			result = removeObject(tokenMap, tokenCache, tokenId);
 		}
 		return result;
 	}
 
 	@Override
 	public Token getToken(String tokenId) {
-		return super.getToken(tokenMap, tokenId, gson);
+		Token token = null;
+		if (tokenId != null) {
+			token = getObject(tokenMap, tokenCache, tokenId, Token.class);
+		}
+		return token;
 	}	
 
 	@Override
@@ -1007,7 +1134,17 @@ public abstract class MapBasedDataStore extends DataStore {
 
 	@Override
 	public int getTotalWebRTCViewersCount() {
-		return super.getTotalWebRTCViewersCount(map, gson);
+		if (broadcastIndex != null) {
+			long now = System.currentTimeMillis();
+			if (now - totalWebRTCViewerCountLastUpdateTime > TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME) {
+				synchronized (this) {
+					totalWebRTCViewerCount = broadcastIndex.getTotalWebRTCViewerCount();
+				}
+				totalWebRTCViewerCountLastUpdateTime = now;
+			}
+			return totalWebRTCViewerCount;
+		}
+		return super.getTotalWebRTCViewersCount(map, valueCodec);
 	}
 
 	@Override
@@ -1055,10 +1192,18 @@ public abstract class MapBasedDataStore extends DataStore {
 	
 	public void setBroadcastToMap(Broadcast broadcast, String streamId){
 		
-		String jsonVal = gson.toJson(broadcast);
+		String jsonVal = valueCodec.encode(broadcast);
 		String previousValue = null;
 
 		previousValue = map.replace(streamId, jsonVal);
+		if (previousValue != null) {
+			if (broadcastCache != null) {
+				broadcastCache.put(streamId, broadcast);
+			}
+			if (broadcastIndex != null) {
+				broadcastIndex.update(streamId, broadcast);
+			}
+		}
 		
 		streamId = streamId.replaceAll(REPLACE_CHARS_REGEX, "_");
 		logger.debug("replacing id {} having value {} to {}", streamId,
@@ -1067,11 +1212,161 @@ public abstract class MapBasedDataStore extends DataStore {
 	
 	public Broadcast getBroadcastFromMap(String streamId) 
 	{
-		String jsonString = map.get(streamId);
-		if(jsonString != null) {
-			return gson.fromJson(jsonString, Broadcast.class);
+		return getObject(map, broadcastCache, streamId, Broadcast.class);
+	}
+
+	/**
+	 * Writes the broadcast to the map, the cache and the index. It should be called in the lock
+	 */
+	protected void putBroadcastToMap(String streamId, Broadcast broadcast) {
+		putObject(map, broadcastCache, streamId, broadcast);
+		if (broadcastIndex != null) {
+			broadcastIndex.update(streamId, broadcast);
 		}
-		return null;
+	}
+
+	/**
+	 * Removes the broadcast from the map, the cache and the index. It should be called in the lock
+	 */
+	protected boolean removeBroadcastFromMap(String streamId) {
+		boolean result = removeObject(map, broadcastCache, streamId);
+		if (broadcastIndex != null) {
+			broadcastIndex.remove(streamId);
+		}
+		return result;
+	}
+
+	/**
+	 * @param streamIds
+	 * @return broadcasts of the stream ids in the same order. Missing ones are skipped
+	 */
+	protected List<Broadcast> getBroadcastsFromMap(List<String> streamIds) {
+		List<Broadcast> broadcasts = new ArrayList<>(streamIds.size());
+		for (String streamId : streamIds) {
+			Broadcast broadcast = getBroadcastFromMap(streamId);
+			if (broadcast != null) {
+				broadcasts.add(broadcast);
+			}
+		}
+		return broadcasts;
+	}
+
+	/**
+	 * Builds the broadcast index from the records in the map. Map order of the index should be same with the map
+	 * 
+	 * @param keyOrdered true if the map is sorted by the stream id
+	 */
+	protected void buildBroadcastIndex(boolean keyOrdered) {
+		synchronized (this) {
+			long startTime = System.currentTimeMillis();
+			BroadcastIndex index = new BroadcastIndex(keyOrdered);
+			for (Entry<String, String> entry : map.entrySet()) {
+				try {
+					index.update(entry.getKey(), valueCodec.decode(entry.getValue(), Broadcast.class));
+				} catch (Exception e) {
+					logger.error("Broadcast:{} cannot be indexed. {}", entry.getKey(), ExceptionUtils.getStackTrace(e));
+				}
+			}
+			broadcastIndex = index;
+			logger.info("{} broadcasts are indexed in {}ms for db:{}", index.size(), System.currentTimeMillis() - startTime, dbName);
+		}
+	}
+
+	public BroadcastIndex getBroadcastIndex() {
+		return broadcastIndex;
+	}
+
+	/**
+	 * Returns the decoded record from the cache if it's there. Otherwise decodes the record in the map
+	 * and puts it to the cache. Cache is filled in the lock so that it's not filled with a value that's just replaced
+	 */
+	protected <T> T getObject(Map<String, String> objectMap, DecodedObjectCache<T> cache, String key, Class<T> type) {
+		if (key == null) {
+			return null;
+		}
+		if (cache != null) {
+			T object = cache.get(key);
+			if (object != null) {
+				return object;
+			}
+		}
+		synchronized (this) {
+			String value = objectMap.get(key);
+			if (value == null) {
+				return null;
+			}
+			T object = valueCodec.decode(value, type);
+			if (cache != null) {
+				cache.put(key, object);
+			}
+			return object;
+		}
+	}
+
+	/**
+	 * Writes the record to the map and the cache. It should be called in the lock
+	 */
+	protected <T> void putObject(Map<String, String> objectMap, DecodedObjectCache<T> cache, String key, T object) {
+		objectMap.put(key, valueCodec.encode(object));
+		if (cache != null) {
+			cache.put(key, object);
+		}
+	}
+
+	/**
+	 * Removes the record from the map and the cache. It should be called in the lock
+	 */
+	protected boolean removeObject(Map<String, String> objectMap, DecodedObjectCache<?> cache, String key) {
+		boolean result = objectMap.remove(key) != null;
+		if (cache != null) {
+			cache.remove(key);
+		}
+		return result;
+	}
+
+	/**
+	 * Re-encodes the broadcast, VoD, token and subscriber records that are not encoded with the current codec.
+	 * Records are readable without this because codecs decode each other's values. It's called when the codec is changed
+	 * so that the records take less space and are decoded faster
+	 * 
+	 * @return number of the records that are re-encoded
+	 */
+	public int migrateValuesToCurrentCodec() {
+		synchronized (this) {
+			return migrateValues(map, Broadcast.class) + migrateValues(vodMap, VoD.class)
+					+ migrateValues(tokenMap, Token.class) + migrateValues(subscriberMap, Subscriber.class);
+		}
+	}
+
+	private <T> int migrateValues(Map<String, String> objectMap, Class<T> type) {
+		List<String> keys = new ArrayList<>();
+		for (Entry<String, String> entry : objectMap.entrySet()) {
+			if (!valueCodec.isEncoded(entry.getValue())) {
+				keys.add(entry.getKey());
+			}
+		}
+
+		int count = 0;
+		for (String key : keys) {
+			try {
+				String value = objectMap.get(key);
+				if (value != null) {
+					objectMap.put(key, valueCodec.encode(valueCodec.decode(value, type)));
+					count++;
+				}
+			} catch (Exception e) {
+				logger.error("{} record:{} cannot be migrated to {} codec. {}", type.getSimpleName(), key, valueCodec.getName(), ExceptionUtils.getStackTrace(e));
+			}
+		}
+		return count;
+	}
+
+	public IValueCodec getValueCodec() {
+		return valueCodec;
+	}
+
+	public DecodedObjectCache<Broadcast> getBroadcastCache() {
+		return broadcastCache;
 	}
 	
 	@Override
@@ -12,12 +12,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.Map.Entry;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.mapdb.Atomic;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.antmedia.datastore.db.codec.JsonValueCodec;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.ConferenceRoom;
 import io.antmedia.datastore.db.types.PushNotificationToken;
@@ -44,11 +46,26 @@ public class MapDBStore extends MapBasedDataStore {
 	private static final String CONFERENCE_ROOM_MAP_NAME = "CONFERENCE_ROOM";
 	private static final String WEBRTC_VIEWER = "WEBRTC_VIEWER";
 	private static final String SUBSCRIBER_METADATA = "SUBSCRIBER_METADATA";
+	private static final String VALUE_CODEC = "VALUE_CODEC";
 
+	/**
+	 * Decoded object cache is disabled by default because it's only safe if no other process writes to the same file.
+	 * It's enabled with the db.objectCacheSize setting
+	 */
+	public static final int DEFAULT_OBJECT_CACHE_SIZE = 0;
 
 
+
+	/**
+	 * Values are kept as JSON and decoded objects are not cached. Both are opt-in with the db.valueCodec and
+	 * db.objectCacheSize settings because the binary values cannot be read by the older versions
+	 */
 	public MapDBStore(String dbName, Vertx vertx) {
-		super(dbName);
+		this(dbName, vertx, JsonValueCodec.NAME, DEFAULT_OBJECT_CACHE_SIZE);
+	}
+
+	public MapDBStore(String dbName, Vertx vertx, String valueCodecName, int objectCacheSize) {
+		super(dbName, valueCodecName, objectCacheSize);
 		this.vertx = vertx;
 		
 		db = DBMaker
@@ -111,14 +128,38 @@ public class MapDBStore extends MapBasedDataStore {
 			false));
 
 		available = true;
-		
+
+		migrateValueCodec();
 		
 		//migrate from conferenceRoomMap to Broadcast
 		// May 11, 2024
 		// we may remove this code after some time and ConferenceRoom class
 		// mekya
 		migrateConferenceRoomsToBroadcasts();
-		
+
+		//BTreeMap of mapdb is sorted by the key
+		buildBroadcastIndex(true);
+	}
+
+	/**
+	 * Re-encodes the records if the codec is changed since the last time db is opened.
+	 * Records of the db files that are created before the codec setting are JSON
+	 */
+	private void migrateValueCodec() {
+		Atomic.String storedCodec = db.atomicString(VALUE_CODEC).createOrOpen();
+		String storedCodecName = storedCodec.get();
+		if (storedCodecName == null || storedCodecName.isEmpty()) {
+			storedCodecName = JsonValueCodec.NAME;
+		}
+
+		if (!storedCodecName.equals(valueCodec.getName())) {
+			long startTime = System.currentTimeMillis();
+			int count = migrateValuesToCurrentCodec();
+			logger.info("{} records are migrated from {} to {} codec in {}ms for db:{}", count, storedCodecName, 
+					valueCodec.getName(), System.currentTimeMillis() - startTime, dbName);
+		}
+		storedCodec.set(valueCodec.getName());
+		db.commit();
 	}
 
 	@Override
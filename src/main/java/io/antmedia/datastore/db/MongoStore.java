@@ -9,18 +9,25 @@ import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -911,6 +918,62 @@ public class MongoStore extends DataStore {
 		return updateViewerField(streamId, increment, RTMP_VIEWER_COUNT);
 	}
 
+	/**
+	 * Reads the broadcasts with one query and writes the stats with one bulk write.
+	 * Viewer counts are incremented, so the changes of the other nodes are not overwritten
+	 */
+	@Override
+	public List<Broadcast> updateStreamStats(List<StreamStatsUpdate> updates) {
+		List<Broadcast> broadcasts = new ArrayList<>();
+		synchronized(this) {
+			try {
+				Map<String, StreamStatsUpdate> updateMap = new HashMap<>();
+				for (StreamStatsUpdate update : updates) {
+					updateMap.put(update.getStreamId(), update);
+				}
+				List<Broadcast> broadcastList = datastore.find(Broadcast.class).filter(Filters.in(STREAM_ID, updateMap.keySet())).iterator().toList();
+
+				long now = System.currentTimeMillis();
+				List<WriteModel<Broadcast>> writeModels = new ArrayList<>();
+				for (Broadcast broadcast : broadcastList) {
+					StreamStatsUpdate update = updateMap.get(broadcast.getStreamId());
+					if (update == null) {
+						continue;
+					}
+					List<Bson> fieldUpdates = new ArrayList<>();
+					if (update.isQualityUpdated()) {
+						update.applyQualityParameters(broadcast, now);
+						fieldUpdates.add(Updates.set("speed", broadcast.getSpeed()));
+						fieldUpdates.add(Updates.set("pendingPacketSize", broadcast.getPendingPacketSize()));
+						fieldUpdates.add(Updates.set("updateTime", broadcast.getUpdateTime()));
+						fieldUpdates.add(Updates.set(DURATION, broadcast.getDuration()));
+						if (update.getQuality() != null) {
+							fieldUpdates.add(Updates.set("quality", update.getQuality()));
+						}
+					}
+					if (isWriteStatsToDatastore() && update.hasViewerDiff()) {
+						int rtmpViewerDiff = update.getRtmpViewerDiff(broadcast);
+						int webRTCViewerDiff = update.getWebRTCViewerDiff(broadcast);
+						update.applyViewerCounts(broadcast);
+						fieldUpdates.add(Updates.inc(RTMP_VIEWER_COUNT, rtmpViewerDiff));
+						fieldUpdates.add(Updates.inc(WEBRTC_VIEWER_COUNT, webRTCViewerDiff));
+					}
+					if (!fieldUpdates.isEmpty()) {
+						writeModels.add(new UpdateOneModel<>(new Document(STREAM_ID, broadcast.getStreamId()), Updates.combine(fieldUpdates)));
+						broadcasts.add(broadcast);
+					}
+				}
+				if (!writeModels.isEmpty()) {
+					datastore.getCollection(Broadcast.class).bulkWrite(writeModels, new BulkWriteOptions().ordered(false));
+				}
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				broadcasts.clear();
+			}
+		}
+		return broadcasts;
+	}
+
 	private boolean updateViewerField(String streamId, boolean increment, String fieldName) {
 		synchronized(this) {
 			try {
@@ -17,6 +17,7 @@ import org.redisson.config.Config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.antmedia.datastore.db.codec.JsonValueCodec;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.P2PConnection;
 import io.antmedia.datastore.db.types.PushNotificationToken;
@@ -35,7 +36,14 @@ public class RedisStore extends MapBasedDataStore {
 	private RMap<Object, Object> p2pMap;
     
     public RedisStore(String redisConnectionUrl, String dbName) {
-    	super(dbName);
+    	this(redisConnectionUrl, dbName, JsonValueCodec.NAME);
+    }
+
+    /**
+     * Decoded object cache is not used because other nodes in the cluster write to the same maps
+     */
+    public RedisStore(String redisConnectionUrl, String dbName, String valueCodecName) {
+    	super(dbName, valueCodecName, 0);
     	try {
 	    	File file = new File(redisConnectionUrl);
 	
@@ -182,7 +190,7 @@ public class RedisStore extends MapBasedDataStore {
 	}
 	
 	public long getLocalLiveBroadcastCount(String hostAddress) {
-		return getActiveBroadcastCount(map, gson, hostAddress);
+		return getActiveBroadcastCount(map, valueCodec, hostAddress);
 	}
 	
 	@Override
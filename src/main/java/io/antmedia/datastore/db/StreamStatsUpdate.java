@@ -0,0 +1,135 @@
+package io.antmedia.datastore.db;
+
+import io.antmedia.datastore.db.types.Broadcast;
+
+/**
+ * Stats of a stream that are merged in {@link StreamStatsWriteBehind} until they're written to the datastore.
+ * Quality parameters are overwritten by the last update and viewer counts are kept as the sum of the changes
+ */
+public class StreamStatsUpdate {
+
+	private final String streamId;
+
+	private boolean qualityUpdated = false;
+
+	private String quality;
+
+	private double speed;
+
+	private int pendingPacketSize;
+
+	private long updateTime;
+
+	private int rtmpViewerDiff;
+
+	private int webRTCViewerDiff;
+
+	/**
+	 * Number of the updates that are merged into this one
+	 */
+	private int mergedCount;
+
+	public StreamStatsUpdate(String streamId) {
+		this.streamId = streamId;
+	}
+
+	public void setQualityParameters(String quality, double speed, int pendingPacketSize, long updateTimeMs) {
+		this.qualityUpdated = true;
+		this.quality = quality;
+		this.speed = speed;
+		this.pendingPacketSize = pendingPacketSize;
+		this.updateTime = updateTimeMs;
+		mergedCount++;
+	}
+
+	public void addRtmpViewerDiff(int diff) {
+		rtmpViewerDiff += diff;
+		mergedCount++;
+	}
+
+	public void addWebRTCViewerDiff(int diff) {
+		webRTCViewerDiff += diff;
+		mergedCount++;
+	}
+
+	/**
+	 * Sets the quality parameters and the duration of the broadcast
+	 * @param broadcast
+	 * @param now current time in milliseconds
+	 */
+	public void applyQualityParameters(Broadcast broadcast, long now) {
+		if (qualityUpdated) {
+			//round the number to three decimal places,
+			broadcast.setSpeed(Math.round(speed * 1000.0) / 1000.0);
+			broadcast.setPendingPacketSize(pendingPacketSize);
+			broadcast.setUpdateTime(updateTime);
+			if (quality != null) {
+				broadcast.setQuality(quality);
+			}
+			broadcast.setDuration(now - broadcast.getStartTime());
+		}
+	}
+
+	/**
+	 * Adds the viewer count changes to the broadcast. Viewer counts don't go below zero
+	 * @param broadcast
+	 */
+	public void applyViewerCounts(Broadcast broadcast) {
+		broadcast.setRtmpViewerCount(broadcast.getRtmpViewerCount() + getRtmpViewerDiff(broadcast));
+		broadcast.setWebRTCViewerCount(broadcast.getWebRTCViewerCount() + getWebRTCViewerDiff(broadcast));
+	}
+
+	/**
+	 * @return change of the RTMP viewer count that is limited so the count doesn't go below zero
+	 */
+	public int getRtmpViewerDiff(Broadcast broadcast) {
+		return Math.max(rtmpViewerDiff, -broadcast.getRtmpViewerCount());
+	}
+
+	/**
+	 * @return change of the WebRTC viewer count that is limited so the count doesn't go below zero
+	 */
+	public int getWebRTCViewerDiff(Broadcast broadcast) {
+		return Math.max(webRTCViewerDiff, -broadcast.getWebRTCViewerCount());
+	}
+
+	public boolean hasViewerDiff() {
+		return rtmpViewerDiff != 0 || webRTCViewerDiff != 0;
+	}
+
+	public String getStreamId() {
+		return streamId;
+	}
+
+	public boolean isQualityUpdated() {
+		return qualityUpdated;
+	}
+
+	public String getQuality() {
+		return quality;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public int getPendingPacketSize() {
+		return pendingPacketSize;
+	}
+
+	public long getUpdateTime() {
+		return updateTime;
+	}
+
+	public int getRtmpViewerDiff() {
+		return rtmpViewerDiff;
+	}
+
+	public int getWebRTCViewerDiff() {
+		return webRTCViewerDiff;
+	}
+
+	public int getMergedCount() {
+		return mergedCount;
+	}
+}
@@ -0,0 +1,200 @@
+package io.antmedia.datastore.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.datastore.db.types.Broadcast;
+
+/**
+ * Keeps the frequently overwritten stats of the streams, quality parameters and viewer count changes,
+ * in memory and writes them to the datastore in one batch with {@link DataStore#updateStreamStats(List)}.
+ *
+ * {@link #flush()} should be called periodically and {@link #flush(String)} should be called before the status
+ * of a stream is changed, so the stats of the stream are not written after its status.
+ * Flush latency and coalescing are registered to JMX with {@link #registerMBean(String)}.
+ */
+public class StreamStatsWriteBehind implements StreamStatsWriteBehindMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(StreamStatsWriteBehind.class);
+
+	public static final long DEFAULT_FLUSH_PERIOD_MS = 2000;
+
+	private final Supplier<DataStore> dataStore;
+
+	private final Map<String, StreamStatsUpdate> pendingUpdates = new ConcurrentHashMap<>();
+
+	private final LongAdder receivedCount = new LongAdder();
+
+	private final LongAdder writtenCount = new LongAdder();
+
+	private final LongAdder flushCount = new LongAdder();
+
+	private final AtomicLong lastFlushLatencyMs = new AtomicLong();
+
+	private final AtomicLong maxFlushLatencyMs = new AtomicLong();
+
+	private ObjectName objectName;
+
+	/**
+	 * @param dataStore supplies the datastore when the stats are written
+	 */
+	public StreamStatsWriteBehind(Supplier<DataStore> dataStore) {
+		this.dataStore = dataStore;
+	}
+
+	public void setQualityParameters(String streamId, String quality, double speed, int pendingPacketSize, long updateTimeMs) {
+		merge(streamId, update -> update.setQualityParameters(quality, speed, pendingPacketSize, updateTimeMs));
+	}
+
+	public void updateRtmpViewerCount(String streamId, boolean increment) {
+		merge(streamId, update -> update.addRtmpViewerDiff(increment ? 1 : -1));
+	}
+
+	public void updateWebRTCViewerCount(String streamId, boolean increment) {
+		merge(streamId, update -> update.addWebRTCViewerDiff(increment ? 1 : -1));
+	}
+
+	private void merge(String streamId, Consumer<StreamStatsUpdate> merger) {
+		if (streamId == null) {
+			return;
+		}
+		receivedCount.increment();
+		pendingUpdates.compute(streamId, (id, update) -> {
+			if (update == null) {
+				update = new StreamStatsUpdate(id);
+			}
+			merger.accept(update);
+			return update;
+		});
+	}
+
+	/**
+	 * Writes the pending stats of all streams
+	 * @return the broadcasts that are updated
+	 */
+	public List<Broadcast> flush() {
+		List<StreamStatsUpdate> updates = new ArrayList<>(pendingUpdates.size());
+		for (String streamId : pendingUpdates.keySet()) {
+			StreamStatsUpdate update = pendingUpdates.remove(streamId);
+			if (update != null) {
+				updates.add(update);
+			}
+		}
+		return write(updates);
+	}
+
+	/**
+	 * Writes the pending stats of the stream
+	 * @param streamId
+	 * @return the broadcast if it's updated
+	 */
+	public Broadcast flush(String streamId) {
+		StreamStatsUpdate update = streamId != null ? pendingUpdates.remove(streamId) : null;
+		if (update == null) {
+			return null;
+		}
+		List<Broadcast> broadcasts = write(Collections.singletonList(update));
+		return broadcasts.isEmpty() ? null : broadcasts.get(0);
+	}
+
+	private List<Broadcast> write(List<StreamStatsUpdate> updates) {
+		if (updates.isEmpty()) {
+			return Collections.emptyList();
+		}
+		long startTime = System.currentTimeMillis();
+		List<Broadcast> broadcasts = Collections.emptyList();
+		try {
+			broadcasts = dataStore.get().updateStreamStats(updates);
+		}
+		catch (Exception e) {
+			logger.error("Stats of {} streams cannot be written: {}", updates.size(), ExceptionUtils.getStackTrace(e));
+		}
+		long latencyMs = System.currentTimeMillis() - startTime;
+		lastFlushLatencyMs.set(latencyMs);
+		maxFlushLatencyMs.accumulateAndGet(latencyMs, Math::max);
+		flushCount.increment();
+		writtenCount.add(updates.size());
+		logger.debug("Stats of {} streams are written in {}ms", updates.size(), latencyMs);
+		return broadcasts;
+	}
+
+	/**
+	 * Registers the stats of the write-behind to JMX
+	 * @param applicationName
+	 */
+	public void registerMBean(String applicationName) {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName("io.antmedia:type=StreamStatsWriteBehind,name=" + ObjectName.quote(applicationName));
+			if (!mbs.isRegistered(name)) {
+				mbs.registerMBean(new StandardMBean(this, StreamStatsWriteBehindMXBean.class, true), name);
+				objectName = name;
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				logger.warn("Error on jmx unregistration", e);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public int getPendingCount() {
+		return pendingUpdates.size();
+	}
+
+	@Override
+	public long getReceivedCount() {
+		return receivedCount.sum();
+	}
+
+	@Override
+	public long getWrittenCount() {
+		return writtenCount.sum();
+	}
+
+	@Override
+	public long getFlushCount() {
+		return flushCount.sum();
+	}
+
+	@Override
+	public double getCoalescingRatio() {
+		long written = writtenCount.sum();
+		return written == 0 ? 0 : (double) receivedCount.sum() / written;
+	}
+
+	@Override
+	public long getLastFlushLatencyMs() {
+		return lastFlushLatencyMs.get();
+	}
+
+	@Override
+	public long getMaxFlushLatencyMs() {
+		return maxFlushLatencyMs.get();
+	}
+}
@@ -0,0 +1,45 @@
+package io.antmedia.datastore.db;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the {@link StreamStatsWriteBehind}
+ */
+@MXBean
+public interface StreamStatsWriteBehindMXBean {
+
+	/**
+	 * @return number of the streams whose stats are waiting to be written
+	 */
+	public int getPendingCount();
+
+	/**
+	 * @return number of the updates that are received
+	 */
+	public long getReceivedCount();
+
+	/**
+	 * @return number of the stream updates that are written to the datastore
+	 */
+	public long getWrittenCount();
+
+	/**
+	 * @return number of the batches that are written to the datastore
+	 */
+	public long getFlushCount();
+
+	/**
+	 * @return number of the received updates per written update. It's 0 if nothing is written
+	 */
+	public double getCoalescingRatio();
+
+	/**
+	 * @return duration of the last batch write in milliseconds
+	 */
+	public long getLastFlushLatencyMs();
+
+	/**
+	 * @return longest batch write in milliseconds
+	 */
+	public long getMaxFlushLatencyMs();
+}
@@ -0,0 +1,416 @@
+package io.antmedia.datastore.db.codec;
+
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_BEGIN_ARRAY;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_BEGIN_OBJECT;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_DOUBLE;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_END;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_FALSE;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_INTEGER;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_NAME_HASH;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_NAME_REF;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_NAME_STRING;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_NULL;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_NUMBER_STRING;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_STRING;
+import static io.antmedia.datastore.db.codec.BinaryJsonWriter.TAG_TRUE;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Reads the tokens that are written by {@link BinaryJsonWriter}.
+ *
+ * Map type adapters of gson are not supported because they need the internals of {@link JsonReader}.
+ * Stored types do not have map fields.
+ */
+public class BinaryJsonReader extends JsonReader {
+
+	private static final Reader UNREADABLE_READER = new Reader() {
+		@Override
+		public int read(char[] buffer, int offset, int count) {
+			throw new AssertionError();
+		}
+
+		@Override
+		public void close() {
+			throw new AssertionError();
+		}
+	};
+
+	private static final int SCOPE_ARRAY = 1;
+	private static final int SCOPE_OBJECT_NAME = 2;
+	private static final int SCOPE_OBJECT_VALUE = 3;
+
+	private final byte[] data;
+
+	private int position;
+
+	private final FieldNameRegistry registry;
+
+	private final List<String> names = new ArrayList<>();
+
+	private int[] scopes = new int[32];
+
+	private int scopeSize = 0;
+
+	public BinaryJsonReader(byte[] data, FieldNameRegistry registry) {
+		super(UNREADABLE_READER);
+		this.data = data;
+		this.registry = registry;
+	}
+
+	/**
+	 * @return true if all of the data is read
+	 */
+	public boolean isFullyConsumed() {
+		return position == data.length && scopeSize == 0;
+	}
+
+	@Override
+	public void beginArray() throws IOException {
+		expectTag(TAG_BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+		push(SCOPE_ARRAY);
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		if (scopeSize == 0 || scopes[scopeSize - 1] != SCOPE_ARRAY) {
+			throw new IllegalStateException("Expected END_ARRAY but was " + peek());
+		}
+		expectTag(TAG_END, JsonToken.END_ARRAY);
+		scopeSize--;
+		valueRead();
+	}
+
+	@Override
+	public void beginObject() throws IOException {
+		expectTag(TAG_BEGIN_OBJECT, JsonToken.BEGIN_OBJECT);
+		push(SCOPE_OBJECT_NAME);
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		if (scopeSize == 0 || scopes[scopeSize - 1] != SCOPE_OBJECT_NAME) {
+			throw new IllegalStateException("Expected END_OBJECT but was " + peek());
+		}
+		expectTag(TAG_END, JsonToken.END_OBJECT);
+		scopeSize--;
+		valueRead();
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		JsonToken token = peek();
+		return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+	}
+
+	@Override
+	public JsonToken peek() throws IOException {
+		if (position >= data.length) {
+			if (scopeSize > 0) {
+				throw new MalformedJsonException("Unexpected end of data");
+			}
+			return JsonToken.END_DOCUMENT;
+		}
+		int tag = data[position];
+		int scope = scopeSize > 0 ? scopes[scopeSize - 1] : 0;
+
+		if (tag == TAG_END) {
+			if (scope == SCOPE_ARRAY) {
+				return JsonToken.END_ARRAY;
+			}
+			if (scope == SCOPE_OBJECT_NAME) {
+				return JsonToken.END_OBJECT;
+			}
+			throw new MalformedJsonException("Unexpected end tag at " + position);
+		}
+
+		if (scope == SCOPE_OBJECT_NAME) {
+			if (tag == TAG_NAME_HASH || tag == TAG_NAME_STRING || tag == TAG_NAME_REF) {
+				return JsonToken.NAME;
+			}
+			throw new MalformedJsonException("Expected name tag at " + position + " but was " + tag);
+		}
+
+		switch (tag) {
+		case TAG_BEGIN_OBJECT:
+			return JsonToken.BEGIN_OBJECT;
+		case TAG_BEGIN_ARRAY:
+			return JsonToken.BEGIN_ARRAY;
+		case TAG_NULL:
+			return JsonToken.NULL;
+		case TAG_TRUE:
+		case TAG_FALSE:
+			return JsonToken.BOOLEAN;
+		case TAG_INTEGER:
+		case TAG_DOUBLE:
+		case TAG_NUMBER_STRING:
+			return JsonToken.NUMBER;
+		case TAG_STRING:
+			return JsonToken.STRING;
+		default:
+			throw new MalformedJsonException("Unknown tag " + tag + " at " + position);
+		}
+	}
+
+	@Override
+	public String nextName() throws IOException {
+		if (peek() != JsonToken.NAME) {
+			throw new IllegalStateException("Expected a name but was " + peek());
+		}
+		int tag = data[position++];
+		String name;
+		if (tag == TAG_NAME_HASH) {
+			require(4);
+			int hash = ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+					| ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+			position += 4;
+			name = registry.resolve(hash);
+		}
+		else if (tag == TAG_NAME_STRING) {
+			name = readString();
+			names.add(name);
+		}
+		else {
+			int index = (int) readVarLong();
+			if (index < 0 || index >= names.size()) {
+				throw new MalformedJsonException("Invalid name reference " + index);
+			}
+			name = names.get(index);
+		}
+		scopes[scopeSize - 1] = SCOPE_OBJECT_VALUE;
+		return name;
+	}
+
+	@Override
+	public String nextString() throws IOException {
+		JsonToken token = peek();
+		int tag = valueTag(token);
+		String value;
+		if (tag == TAG_STRING || tag == TAG_NUMBER_STRING) {
+			position++;
+			value = readString();
+		}
+		else if (tag == TAG_INTEGER) {
+			position++;
+			value = Long.toString(readZigZag());
+		}
+		else if (tag == TAG_DOUBLE) {
+			position++;
+			value = Double.toString(readDouble());
+		}
+		else {
+			throw new IllegalStateException("Expected a string but was " + token);
+		}
+		valueRead();
+		return value;
+	}
+
+	@Override
+	public boolean nextBoolean() throws IOException {
+		JsonToken token = peek();
+		if (token != JsonToken.BOOLEAN) {
+			throw new IllegalStateException("Expected a boolean but was " + token);
+		}
+		boolean value = data[position++] == TAG_TRUE;
+		valueRead();
+		return value;
+	}
+
+	@Override
+	public void nextNull() throws IOException {
+		expectTag(TAG_NULL, JsonToken.NULL);
+		valueRead();
+	}
+
+	@Override
+	public double nextDouble() throws IOException {
+		JsonToken token = peek();
+		int tag = valueTag(token);
+		double value;
+		if (tag == TAG_DOUBLE) {
+			position++;
+			value = readDouble();
+		}
+		else if (tag == TAG_INTEGER) {
+			position++;
+			value = readZigZag();
+		}
+		else if (tag == TAG_STRING || tag == TAG_NUMBER_STRING) {
+			position++;
+			value = Double.parseDouble(readString());
+		}
+		else {
+			throw new IllegalStateException("Expected a double but was " + token);
+		}
+		valueRead();
+		return value;
+	}
+
+	@Override
+	public long nextLong() throws IOException {
+		JsonToken token = peek();
+		int tag = valueTag(token);
+		long value;
+		if (tag == TAG_INTEGER) {
+			position++;
+			value = readZigZag();
+		}
+		else if (tag == TAG_DOUBLE) {
+			position++;
+			double doubleValue = readDouble();
+			value = (long) doubleValue;
+			if (value != doubleValue) {
+				throw new NumberFormatException("Expected a long but was " + doubleValue);
+			}
+		}
+		else if (tag == TAG_STRING || tag == TAG_NUMBER_STRING) {
+			position++;
+			value = new BigDecimal(readString()).longValueExact();
+		}
+		else {
+			throw new IllegalStateException("Expected a long but was " + token);
+		}
+		valueRead();
+		return value;
+	}
+
+	@Override
+	public int nextInt() throws IOException {
+		long value = nextLong();
+		if ((int) value != value) {
+			throw new NumberFormatException("Expected an int but was " + value);
+		}
+		return (int) value;
+	}
+
+	@Override
+	public void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			JsonToken token = peek();
+			switch (token) {
+			case BEGIN_ARRAY:
+				beginArray();
+				depth++;
+				break;
+			case BEGIN_OBJECT:
+				beginObject();
+				depth++;
+				break;
+			case END_ARRAY:
+				endArray();
+				depth--;
+				break;
+			case END_OBJECT:
+				endObject();
+				depth--;
+				break;
+			case NAME:
+				nextName();
+				//name is skipped with its value
+				continue;
+			case STRING:
+			case NUMBER:
+				nextString();
+				break;
+			case BOOLEAN:
+				nextBoolean();
+				break;
+			case NULL:
+				nextNull();
+				break;
+			default:
+				return;
+			}
+		} while (depth > 0);
+	}
+
+	@Override
+	public void close() {
+		//nothing to close
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " at " + position;
+	}
+
+	private void push(int scope) {
+		if (scopeSize == scopes.length) {
+			scopes = Arrays.copyOf(scopes, scopeSize * 2);
+		}
+		scopes[scopeSize++] = scope;
+	}
+
+	private void valueRead() {
+		if (scopeSize > 0 && scopes[scopeSize - 1] == SCOPE_OBJECT_VALUE) {
+			scopes[scopeSize - 1] = SCOPE_OBJECT_NAME;
+		}
+	}
+
+	private void expectTag(int tag, JsonToken expected) throws IOException {
+		JsonToken token = peek();
+		if (token != expected || data[position] != tag) {
+			throw new IllegalStateException("Expected " + expected + " but was " + token);
+		}
+		position++;
+	}
+
+	private int valueTag(JsonToken token) {
+		if (token == JsonToken.END_DOCUMENT || token == JsonToken.NAME) {
+			throw new IllegalStateException("Expected a value but was " + token);
+		}
+		return data[position];
+	}
+
+	private void require(int length) throws MalformedJsonException {
+		if (length < 0 || position + length > data.length) {
+			throw new MalformedJsonException("Unexpected end of data at " + position);
+		}
+	}
+
+	private String readString() throws IOException {
+		int length = (int) readVarLong();
+		require(length);
+		String value = new String(data, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	private double readDouble() throws MalformedJsonException {
+		require(8);
+		long bits = 0;
+		for (int i = 0; i < 8; i++) {
+			bits = (bits << 8) | (data[position++] & 0xFF);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	private long readZigZag() throws MalformedJsonException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private long readVarLong() throws MalformedJsonException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			require(1);
+			int b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new MalformedJsonException("Malformed varint at " + position);
+	}
+}
@@ -0,0 +1,319 @@
+package io.antmedia.datastore.db.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Writes the gson tokens in a compact binary format instead of JSON text so that
+ * same type adapters are used for both formats.
+ *
+ * Every token starts with a tag byte. Integers are zigzag varints, strings are length prefixed UTF-8.
+ * Field names that are in the {@link FieldNameRegistry} are written as 4 bytes hash. Other names are written
+ * as string for the first time and then as index of that string.
+ */
+public class BinaryJsonWriter extends JsonWriter {
+
+	static final int TAG_END = 0;
+	static final int TAG_BEGIN_OBJECT = 1;
+	static final int TAG_BEGIN_ARRAY = 2;
+	static final int TAG_NULL = 3;
+	static final int TAG_TRUE = 4;
+	static final int TAG_FALSE = 5;
+	static final int TAG_INTEGER = 6;
+	static final int TAG_DOUBLE = 7;
+	static final int TAG_STRING = 8;
+	static final int TAG_NUMBER_STRING = 9;
+	static final int TAG_NAME_HASH = 10;
+	static final int TAG_NAME_STRING = 11;
+	static final int TAG_NAME_REF = 12;
+
+	private static final Writer UNWRITABLE_WRITER = new Writer() {
+		@Override
+		public void write(char[] buffer, int offset, int counter) {
+			throw new AssertionError();
+		}
+
+		@Override
+		public void flush() {
+			throw new AssertionError();
+		}
+
+		@Override
+		public void close() {
+			throw new AssertionError();
+		}
+	};
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+	private final FieldNameRegistry registry;
+
+	private final Map<String, Integer> nameRefs = new HashMap<>();
+
+	/**
+	 * Name is written with the value because name of a null value is not written if serializeNulls is false
+	 */
+	private String deferredName;
+
+	public BinaryJsonWriter(FieldNameRegistry registry) {
+		super(UNWRITABLE_WRITER);
+		this.registry = registry;
+	}
+
+	public byte[] toByteArray() {
+		return out.toByteArray();
+	}
+
+	@Override
+	public JsonWriter beginArray() throws IOException {
+		writeDeferredName();
+		out.write(TAG_BEGIN_ARRAY);
+		return this;
+	}
+
+	@Override
+	public JsonWriter endArray() throws IOException {
+		out.write(TAG_END);
+		return this;
+	}
+
+	@Override
+	public JsonWriter beginObject() throws IOException {
+		writeDeferredName();
+		out.write(TAG_BEGIN_OBJECT);
+		return this;
+	}
+
+	@Override
+	public JsonWriter endObject() throws IOException {
+		out.write(TAG_END);
+		return this;
+	}
+
+	@Override
+	public JsonWriter name(String name) throws IOException {
+		if (name == null) {
+			throw new NullPointerException("name == null");
+		}
+		if (deferredName != null) {
+			throw new IllegalStateException("Name is already written: " + deferredName);
+		}
+		deferredName = name;
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+		writeDeferredName();
+		out.write(TAG_STRING);
+		writeString(value);
+		return this;
+	}
+
+	/**
+	 * Raw JSON value is parsed and written as binary tokens so that it's read back as the same value
+	 */
+	@Override
+	public JsonWriter jsonValue(String value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+		JsonReader reader = new JsonReader(new StringReader(value));
+		int depth = 0;
+		do {
+			switch (reader.peek()) {
+			case BEGIN_ARRAY:
+				reader.beginArray();
+				beginArray();
+				depth++;
+				break;
+			case END_ARRAY:
+				reader.endArray();
+				endArray();
+				depth--;
+				break;
+			case BEGIN_OBJECT:
+				reader.beginObject();
+				beginObject();
+				depth++;
+				break;
+			case END_OBJECT:
+				reader.endObject();
+				endObject();
+				depth--;
+				break;
+			case NAME:
+				name(reader.nextName());
+				break;
+			case STRING:
+				value(reader.nextString());
+				break;
+			case NUMBER:
+				writeNumber(reader.nextString());
+				break;
+			case BOOLEAN:
+				value(reader.nextBoolean());
+				break;
+			case NULL:
+				reader.nextNull();
+				nullValue();
+				break;
+			default:
+				throw new MalformedJsonException("Unexpected end of raw JSON value: " + value);
+			}
+		} while (depth > 0);
+
+		if (reader.peek() != JsonToken.END_DOCUMENT) {
+			throw new MalformedJsonException("Raw JSON value has more than one value: " + value);
+		}
+		return this;
+	}
+
+	private void writeNumber(String text) throws IOException {
+		try {
+			value(Long.parseLong(text));
+		}
+		catch (NumberFormatException e) {
+			value(new BigDecimal(text));
+		}
+	}
+
+	@Override
+	public JsonWriter nullValue() throws IOException {
+		if (deferredName != null) {
+			if (!getSerializeNulls()) {
+				//skip the name and the value
+				deferredName = null;
+				return this;
+			}
+			writeDeferredName();
+		}
+		out.write(TAG_NULL);
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(boolean value) throws IOException {
+		writeDeferredName();
+		out.write(value ? TAG_TRUE : TAG_FALSE);
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(Boolean value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+		return value(value.booleanValue());
+	}
+
+	@Override
+	public JsonWriter value(double value) throws IOException {
+		writeDeferredName();
+		out.write(TAG_DOUBLE);
+		long bits = Double.doubleToLongBits(value);
+		for (int i = 56; i >= 0; i -= 8) {
+			out.write((int) (bits >>> i));
+		}
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(long value) throws IOException {
+		writeDeferredName();
+		out.write(TAG_INTEGER);
+		writeVarLong((value << 1) ^ (value >> 63));
+		return this;
+	}
+
+	@Override
+	public JsonWriter value(Number value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			return value(value.longValue());
+		}
+		if (value instanceof Double || value instanceof Float) {
+			return value(value.doubleValue());
+		}
+		if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+			return value(value.longValue());
+		}
+
+		//BigDecimal and lazily parsed numbers keep their text
+		String text = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+		writeDeferredName();
+		out.write(TAG_NUMBER_STRING);
+		writeString(text);
+		return this;
+	}
+
+	@Override
+	public void flush() {
+		//nothing to flush
+	}
+
+	@Override
+	public void close() {
+		//nothing to close
+	}
+
+	private void writeDeferredName() {
+		if (deferredName == null) {
+			return;
+		}
+		String name = deferredName;
+		deferredName = null;
+
+		if (registry.isResolvable(name)) {
+			out.write(TAG_NAME_HASH);
+			int hash = FieldNameRegistry.hash(name);
+			out.write(hash >>> 24);
+			out.write(hash >>> 16);
+			out.write(hash >>> 8);
+			out.write(hash);
+		}
+		else {
+			Integer ref = nameRefs.get(name);
+			if (ref != null) {
+				out.write(TAG_NAME_REF);
+				writeVarLong(ref);
+			}
+			else {
+				nameRefs.put(name, nameRefs.size());
+				out.write(TAG_NAME_STRING);
+				writeString(name);
+			}
+		}
+	}
+
+	private void writeString(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private void writeVarLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+}
@@ -0,0 +1,109 @@
+package io.antmedia.datastore.db.codec;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.datastore.db.types.Subscriber;
+import io.antmedia.datastore.db.types.Token;
+import io.antmedia.datastore.db.types.VoD;
+
+/**
+ * Encodes the objects with {@link BinaryJsonWriter} and keeps them as Base64 text with {@link #PREFIX}
+ * because maps of the data stores keep string values.
+ *
+ * Same gson type adapters are used with the {@link JsonValueCodec} so that a field added to or removed from a class
+ * is handled in the same way. Values that do not start with {@link #PREFIX} are decoded as JSON.
+ */
+public class BinaryValueCodec implements IValueCodec {
+
+	public static final String NAME = "binary";
+
+	/**
+	 * JSON values never start with this prefix. Number is the format version
+	 */
+	public static final String PREFIX = "#1";
+
+	private final Gson gson;
+
+	/**
+	 * Types that are encoded with this codec in the data stores
+	 */
+	public static final List<Class<?>> PERSISTED_TYPES = Collections.unmodifiableList(
+			Arrays.asList(Broadcast.class, VoD.class, Token.class, Subscriber.class));
+
+	private final Map<Class<?>, FieldNameRegistry> registries = new ConcurrentHashMap<>();
+
+	/**
+	 * Registries of the {@link #PERSISTED_TYPES} are built here, so a field name collision stops the data store
+	 * while it's created instead of the first write of that type
+	 *
+	 * @throws IllegalStateException if two field names of a persisted type have the same hash
+	 */
+	public BinaryValueCodec(Gson gson) {
+		this.gson = gson;
+		for (Class<?> type : PERSISTED_TYPES) {
+			getRegistry(type);
+		}
+	}
+
+	public static boolean isBinary(String value) {
+		return value != null && value.startsWith(PREFIX);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String encode(Object value) {
+		if (value == null) {
+			return gson.toJson(null);
+		}
+		BinaryJsonWriter writer = new BinaryJsonWriter(getRegistry(value.getClass()));
+		gson.toJson(value, value.getClass(), writer);
+		return PREFIX + Base64.getEncoder().withoutPadding().encodeToString(writer.toByteArray());
+	}
+
+	@Override
+	public <T> T decode(String value, Class<T> type) {
+		if (value == null) {
+			return null;
+		}
+		if (!isBinary(value)) {
+			return gson.fromJson(value, type);
+		}
+
+		byte[] data;
+		try {
+			data = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+		}
+		catch (IllegalArgumentException e) {
+			throw new JsonSyntaxException("Value is not valid Base64", e);
+		}
+
+		BinaryJsonReader reader = new BinaryJsonReader(data, getRegistry(type));
+		T object = gson.fromJson(reader, type);
+		if (!reader.isFullyConsumed()) {
+			throw new JsonSyntaxException("Value is not fully consumed for " + type.getName());
+		}
+		return object;
+	}
+
+	@Override
+	public boolean isEncoded(String value) {
+		return isBinary(value);
+	}
+
+	private FieldNameRegistry getRegistry(Class<?> type) {
+		return registries.computeIfAbsent(type, FieldNameRegistry::new);
+	}
+}
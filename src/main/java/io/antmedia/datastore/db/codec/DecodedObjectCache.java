@@ -0,0 +1,92 @@
+package io.antmedia.datastore.db.codec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.Gson;
+
+/**
+ * Least recently used cache of the decoded objects of a data store map. It's updated with write-through
+ * by the data store so it should only be used if no other process writes to the same map.
+ *
+ * Objects are copied when they are put and returned because callers update the objects they get from the data store.
+ * Copy is done field by field with {@link ObjectCopier}, so a hit does not pay the cost of decoding the record.
+ */
+public class DecodedObjectCache<T> {
+
+	private final ObjectCopier copier;
+
+	private final Map<String, T> objects;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	public DecodedObjectCache(Gson gson, int maxEntries) {
+		this.copier = new ObjectCopier(gson);
+		this.objects = new LinkedHashMap<String, T>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param key
+	 * @return copy of the cached object or null if it's not in the cache
+	 */
+	public T get(String key) {
+		T object;
+		synchronized (objects) {
+			object = objects.get(key);
+		}
+		if (object == null) {
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		//cached objects are never modified, so they can be copied out of the lock
+		return copier.copy(object);
+	}
+
+	public void put(String key, T object) {
+		if (object == null) {
+			remove(key);
+			return;
+		}
+		T copy = copier.copy(object);
+		synchronized (objects) {
+			objects.put(key, copy);
+		}
+	}
+
+	public void remove(String key) {
+		synchronized (objects) {
+			objects.remove(key);
+		}
+	}
+
+	public void clear() {
+		synchronized (objects) {
+			objects.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (objects) {
+			return objects.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+}
@@ -0,0 +1,121 @@
+package io.antmedia.datastore.db.codec;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Keeps the field names of a type and the types of its fields so that {@link BinaryJsonWriter} writes
+ * 4 bytes hash of the name instead of the name itself.
+ *
+ * Registry is built from the current classes. A hash written by another version of the class that is not
+ * in the registry is resolved to a name that does not match any field, so it's skipped like an unknown field in JSON.
+ * If two field names of the type have the same hash, registry cannot be built because the records written before the
+ * collision would be read with the wrong name. One of the fields should be renamed or annotated with {@link SerializedName}.
+ */
+public class FieldNameRegistry {
+
+	private static final String UNKNOWN_NAME_PREFIX = "#unknown-";
+
+	private final Map<Integer, String> names = new HashMap<>();
+
+	private final Set<Class<?>> visitedTypes = new HashSet<>();
+
+	/**
+	 * @throws IllegalStateException if two field names have the same hash
+	 */
+	public FieldNameRegistry(Type type) {
+		register(type);
+	}
+
+	public static int hash(String name) {
+		//hashCode of the String is specified in the javadoc so it's same in all versions
+		return name.hashCode();
+	}
+
+	public boolean isResolvable(String name) {
+		return name.equals(names.get(hash(name)));
+	}
+
+	public String resolve(int hash) {
+		String name = names.get(hash);
+		if (name == null) {
+			name = UNKNOWN_NAME_PREFIX + Integer.toHexString(hash);
+		}
+		return name;
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	private void register(Type type) {
+		if (type instanceof Class) {
+			Class<?> clazz = (Class<?>) type;
+			if (clazz.isArray()) {
+				register(clazz.getComponentType());
+			}
+			else if (!clazz.isPrimitive() && !clazz.isEnum() && !isJdkClass(clazz) && visitedTypes.add(clazz)) {
+				registerFields(clazz);
+			}
+		}
+		else if (type instanceof ParameterizedType) {
+			register(((ParameterizedType) type).getRawType());
+			for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				register(argument);
+			}
+		}
+		else if (type instanceof GenericArrayType) {
+			register(((GenericArrayType) type).getGenericComponentType());
+		}
+		else if (type instanceof WildcardType) {
+			for (Type bound : ((WildcardType) type).getUpperBounds()) {
+				register(bound);
+			}
+		}
+	}
+
+	private void registerFields(Class<?> clazz) {
+		for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				//gson excludes static and transient fields by default
+				if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0) {
+					continue;
+				}
+				SerializedName serializedName = field.getAnnotation(SerializedName.class);
+				if (serializedName != null) {
+					addName(serializedName.value());
+					for (String alternate : serializedName.alternate()) {
+						addName(alternate);
+					}
+				}
+				else {
+					addName(field.getName());
+				}
+				register(field.getGenericType());
+			}
+		}
+	}
+
+	private void addName(String name) {
+		int hash = hash(name);
+		String existing = names.putIfAbsent(hash, name);
+		if (existing != null && !existing.equals(name)) {
+			throw new IllegalStateException("Field names " + existing + " and " + name + " have the same hash:" + hash);
+		}
+	}
+
+	private static boolean isJdkClass(Class<?> clazz) {
+		String name = clazz.getName();
+		return name.startsWith("java.") || name.startsWith("javax.");
+	}
+}
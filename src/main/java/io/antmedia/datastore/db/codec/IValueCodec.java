@@ -0,0 +1,35 @@
+package io.antmedia.datastore.db.codec;
+
+/**
+ * Converts the objects that are kept in the string valued maps of the map based data stores
+ */
+public interface IValueCodec {
+
+	/**
+	 * @return name of the codec that is used in the settings
+	 */
+	public String getName();
+
+	/**
+	 * Encodes the object to the string that is stored in the map
+	 * @param value
+	 * @return encoded value
+	 */
+	public String encode(Object value);
+
+	/**
+	 * Decodes the stored value. Implementations should decode the values of the other codecs as well
+	 * so that existing records are still readable after the codec is changed
+	 *
+	 * @param value
+	 * @param type
+	 * @return decoded object or null if value is null
+	 */
+	public <T> T decode(String value, Class<T> type);
+
+	/**
+	 * @param value
+	 * @return true if value is already encoded with this codec. It's used to migrate the existing records
+	 */
+	public boolean isEncoded(String value);
+}
@@ -0,0 +1,44 @@
+package io.antmedia.datastore.db.codec;
+
+import com.google.gson.Gson;
+
+/**
+ * Default codec that keeps values as JSON. Values that are written by {@link BinaryValueCodec} are still readable
+ * so that binary codec can be disabled without losing the records.
+ */
+public class JsonValueCodec implements IValueCodec {
+
+	public static final String NAME = "json";
+
+	private final Gson gson;
+
+	private final BinaryValueCodec binaryValueCodec;
+
+	public JsonValueCodec(Gson gson) {
+		this.gson = gson;
+		this.binaryValueCodec = new BinaryValueCodec(gson);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String encode(Object value) {
+		return gson.toJson(value);
+	}
+
+	@Override
+	public <T> T decode(String value, Class<T> type) {
+		if (BinaryValueCodec.isBinary(value)) {
+			return binaryValueCodec.decode(value, type);
+		}
+		return gson.fromJson(value, type);
+	}
+
+	@Override
+	public boolean isEncoded(String value) {
+		return value != null && !BinaryValueCodec.isBinary(value);
+	}
+}
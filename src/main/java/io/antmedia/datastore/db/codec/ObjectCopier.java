@@ -0,0 +1,161 @@
+package io.antmedia.datastore.db.codec;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.types.ObjectId;
+
+import com.google.gson.Gson;
+
+/**
+ * Deep copies the records field by field so that a copy does not cost as much as encoding and decoding the record.
+ *
+ * Fields of a class are looked up once. Like gson, static and transient fields are not copied, so they keep the values
+ * set by the no-arg constructor. Strings, boxed primitives and enums are shared because they are immutable. Lists,
+ * sets, maps and arrays are copied with their elements. Other JDK classes and the classes without a no-arg constructor
+ * are copied with gson.
+ */
+public class ObjectCopier {
+
+	private final Gson gson;
+
+	private final Map<Class<?>, ClassCopier> copiers = new ConcurrentHashMap<>();
+
+	private static class ClassCopier {
+		final Constructor<?> constructor;
+		final Field[] fields;
+
+		ClassCopier(Constructor<?> constructor, Field[] fields) {
+			this.constructor = constructor;
+			this.fields = fields;
+		}
+	}
+
+	/**
+	 * Marks the classes that are copied with gson
+	 */
+	private static final ClassCopier GSON_COPIER = new ClassCopier(null, new Field[0]);
+
+	public ObjectCopier(Gson gson) {
+		this.gson = gson;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T copy(T object) {
+		return (T) copyValue(object);
+	}
+
+	private Object copyValue(Object value) {
+		if (value == null || isImmutable(value)) {
+			return value;
+		}
+		if (value instanceof List) {
+			return copyElements((List<?>) value, new ArrayList<>(((List<?>) value).size()));
+		}
+		if (value instanceof Set) {
+			return copyElements((Set<?>) value, new LinkedHashSet<>());
+		}
+		if (value instanceof Map) {
+			Map<Object, Object> copy = new LinkedHashMap<>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				copy.put(copyValue(entry.getKey()), copyValue(entry.getValue()));
+			}
+			return copy;
+		}
+		Class<?> clazz = value.getClass();
+		if (clazz.isArray()) {
+			return copyArray(value, clazz);
+		}
+		return copyObject(value, clazz);
+	}
+
+	private Collection<Object> copyElements(Collection<?> source, Collection<Object> target) {
+		for (Object element : source) {
+			target.add(copyValue(element));
+		}
+		return target;
+	}
+
+	private Object copyArray(Object array, Class<?> clazz) {
+		int length = Array.getLength(array);
+		Class<?> componentType = clazz.getComponentType();
+		Object copy = Array.newInstance(componentType, length);
+		if (componentType.isPrimitive()) {
+			System.arraycopy(array, 0, copy, 0, length);
+		}
+		else {
+			for (int i = 0; i < length; i++) {
+				Array.set(copy, i, copyValue(Array.get(array, i)));
+			}
+		}
+		return copy;
+	}
+
+	private Object copyObject(Object object, Class<?> clazz) {
+		ClassCopier copier = copiers.computeIfAbsent(clazz, ObjectCopier::createCopier);
+		if (copier == GSON_COPIER) {
+			return gson.fromJson(gson.toJsonTree(object, clazz), clazz);
+		}
+		try {
+			Object copy = copier.constructor.newInstance();
+			for (Field field : copier.fields) {
+				Object fieldValue = field.get(object);
+				field.set(copy, field.getType().isPrimitive() ? fieldValue : copyValue(fieldValue));
+			}
+			return copy;
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Object of " + clazz.getName() + " cannot be copied", e);
+		}
+	}
+
+	private static ClassCopier createCopier(Class<?> clazz) {
+		if (isJdkClass(clazz)) {
+			return GSON_COPIER;
+		}
+		Constructor<?> constructor;
+		try {
+			constructor = clazz.getDeclaredConstructor();
+			constructor.setAccessible(true);
+		}
+		catch (NoSuchMethodException e) {
+			return GSON_COPIER;
+		}
+
+		List<Field> fields = new ArrayList<>();
+		for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0) {
+					continue;
+				}
+				field.setAccessible(true);
+				fields.add(field);
+			}
+		}
+		return new ClassCopier(constructor, fields.toArray(new Field[0]));
+	}
+
+	private static boolean isImmutable(Object value) {
+		return value instanceof String || value instanceof Boolean || value instanceof Character
+				|| value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Float
+				|| value instanceof Short || value instanceof Byte || value instanceof BigDecimal || value instanceof BigInteger
+				|| value instanceof Enum || value instanceof ObjectId;
+	}
+
+	private static boolean isJdkClass(Class<?> clazz) {
+		String name = clazz.getName();
+		return name.startsWith("java.") || name.startsWith("javax.");
+	}
+}
@@ -0,0 +1,392 @@
+package io.antmedia.datastore.db.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+
+import io.antmedia.datastore.db.DataStore;
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.muxer.IAntMediaStreamHandler;
+
+/**
+ * Secondary indexes of the broadcasts for the data stores that keep the records in a map.
+ * Live broadcasts are indexed by origin address, listing is indexed by name, date and status,
+ * and name and stream id are indexed with trigrams for search. So counts and paged lists do not read all the records.
+ *
+ * Data store should call {@link #update(String, Broadcast)} and {@link #remove(String)} whenever the map is changed.
+ * Results are same as the ones of {@link DataStore#searchOnServer} and {@link DataStore#sortAndCropBroadcastList}.
+ * Records that are equal in the sort order are returned in the map order.
+ */
+public class BroadcastIndex {
+
+	public static final String SORT_BY_NAME = "name";
+	public static final String SORT_BY_DATE = "date";
+	public static final String SORT_BY_STATUS = "status";
+	public static final String ORDER_BY_DESC = "desc";
+
+	private static class Entry {
+		private final String streamId;
+		private final long sequence;
+		private String streamIdLowerCase;
+		private String nameLowerCase;
+		private String type;
+		private String status;
+		private String originAddress;
+		private long date;
+		private int webRTCViewerCount;
+
+		Entry(String streamId, long sequence) {
+			this.streamId = streamId;
+			this.sequence = sequence;
+		}
+	}
+
+	private class SortIndex {
+		private final Function<Entry, Comparable<?>> keyFunction;
+		private final TreeMap<Comparable<?>, TreeSet<Entry>> values = new TreeMap<>();
+
+		SortIndex(Function<Entry, Comparable<?>> keyFunction) {
+			this.keyFunction = keyFunction;
+		}
+
+		Comparable<?> key(Entry entry) {
+			return keyFunction.apply(entry);
+		}
+
+		void add(Entry entry) {
+			values.computeIfAbsent(key(entry), k -> new TreeSet<>(mapOrder)).add(entry);
+		}
+
+		void remove(Entry entry) {
+			Comparable<?> key = key(entry);
+			TreeSet<Entry> entries = values.get(key);
+			if (entries != null) {
+				entries.remove(entry);
+				if (entries.isEmpty()) {
+					values.remove(key);
+				}
+			}
+		}
+
+		/**
+		 * Equal records are always in the map order like the stable sort
+		 */
+		Iterator<Entry> iterator(boolean descending) {
+			NavigableMap<Comparable<?>, TreeSet<Entry>> map = descending ? values.descendingMap() : values;
+			return map.values().stream().flatMap(Collection::stream).iterator();
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Comparator<Entry> comparator(boolean descending) {
+			Comparator<Entry> comparator = (e1, e2) -> ((Comparable) key(e1)).compareTo(key(e2));
+			if (descending) {
+				comparator = comparator.reversed();
+			}
+			return comparator.thenComparing(mapOrder);
+		}
+	}
+
+	private final boolean keyOrdered;
+
+	/**
+	 * Order of the records in the data store map. It's key order for sorted maps and insertion order for the others
+	 */
+	private final Comparator<Entry> mapOrder;
+
+	private final Map<String, Entry> entries;
+
+	private long nextSequence = 0;
+
+	/**
+	 * Live stream ids by origin address. Blank origin addresses are kept with empty string
+	 */
+	private final Map<String, TreeSet<Entry>> liveEntries = new HashMap<>();
+
+	private int liveCount = 0;
+
+	private long totalWebRTCViewerCount = 0;
+
+	private final SortIndex nameIndex = new SortIndex(entry -> entry.nameLowerCase == null ? "" : entry.nameLowerCase);
+	private final SortIndex dateIndex = new SortIndex(entry -> entry.date);
+	private final SortIndex statusIndex = new SortIndex(entry -> entry.status == null ? "" : entry.status);
+
+	private final NGramIndex searchIndex = new NGramIndex();
+
+	/**
+	 * @param keyOrdered true if map of the data store is sorted by the key
+	 */
+	public BroadcastIndex(boolean keyOrdered) {
+		this.keyOrdered = keyOrdered;
+		if (keyOrdered) {
+			mapOrder = (e1, e2) -> e1.streamId.compareTo(e2.streamId);
+			entries = new TreeMap<>();
+		}
+		else {
+			mapOrder = (e1, e2) -> Long.compare(e1.sequence, e2.sequence);
+			entries = new LinkedHashMap<>();
+		}
+	}
+
+	public synchronized void update(String streamId, Broadcast broadcast) {
+		if (streamId == null || broadcast == null) {
+			return;
+		}
+
+		Entry entry = entries.get(streamId);
+		if (entry != null) {
+			unindex(entry);
+		}
+		else {
+			entry = new Entry(streamId, nextSequence++);
+			entries.put(streamId, entry);
+		}
+
+		entry.streamIdLowerCase = streamId.toLowerCase();
+		entry.nameLowerCase = broadcast.getName() != null ? broadcast.getName().toLowerCase() : null;
+		entry.type = broadcast.getType();
+		entry.status = broadcast.getStatus();
+		entry.originAddress = StringUtils.isBlank(broadcast.getOriginAdress()) ? "" : broadcast.getOriginAdress();
+		entry.date = broadcast.getDate();
+		entry.webRTCViewerCount = broadcast.getWebRTCViewerCount();
+
+		index(entry);
+	}
+
+	public synchronized void remove(String streamId) {
+		Entry entry = entries.remove(streamId);
+		if (entry != null) {
+			unindex(entry);
+			searchIndex.remove(streamId);
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		liveEntries.clear();
+		liveCount = 0;
+		totalWebRTCViewerCount = 0;
+		nameIndex.values.clear();
+		dateIndex.values.clear();
+		statusIndex.values.clear();
+		searchIndex.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public boolean isKeyOrdered() {
+		return keyOrdered;
+	}
+
+	private void index(Entry entry) {
+		if (IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING.equals(entry.status)) {
+			liveEntries.computeIfAbsent(entry.originAddress, k -> new TreeSet<>(mapOrder)).add(entry);
+			liveCount++;
+		}
+		totalWebRTCViewerCount += entry.webRTCViewerCount;
+		nameIndex.add(entry);
+		dateIndex.add(entry);
+		statusIndex.add(entry);
+		//name and stream id are searched together, results are checked in matches
+		searchIndex.put(entry.streamId, entry.nameLowerCase != null ? entry.nameLowerCase + "\n" + entry.streamIdLowerCase : entry.streamIdLowerCase);
+	}
+
+	private void unindex(Entry entry) {
+		if (IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING.equals(entry.status)) {
+			TreeSet<Entry> live = liveEntries.get(entry.originAddress);
+			if (live != null && live.remove(entry)) {
+				liveCount--;
+				if (live.isEmpty()) {
+					liveEntries.remove(entry.originAddress);
+				}
+			}
+		}
+		totalWebRTCViewerCount -= entry.webRTCViewerCount;
+		nameIndex.remove(entry);
+		dateIndex.remove(entry);
+		statusIndex.remove(entry);
+	}
+
+	/**
+	 * @param hostAddress if it's blank, all live streams are counted. Otherwise live streams of the host
+	 * and the ones without origin address are counted
+	 * @return number of the live streams
+	 */
+	public synchronized long getActiveBroadcastCount(String hostAddress) {
+		if (StringUtils.isBlank(hostAddress)) {
+			return liveCount;
+		}
+		return sizeOf(liveEntries.get(hostAddress)) + sizeOf(liveEntries.get(""));
+	}
+
+	/**
+	 * @param hostAddress see {@link #getActiveBroadcastCount(String)}
+	 * @return stream ids of the live streams in the map order
+	 */
+	public synchronized List<String> getActiveBroadcastIds(String hostAddress) {
+		List<Entry> live = new ArrayList<>();
+		if (StringUtils.isBlank(hostAddress)) {
+			for (TreeSet<Entry> originEntries : liveEntries.values()) {
+				live.addAll(originEntries);
+			}
+		}
+		else {
+			addAll(live, liveEntries.get(hostAddress));
+			addAll(live, liveEntries.get(""));
+		}
+		live.sort(mapOrder);
+		return toStreamIds(live);
+	}
+
+	public synchronized int getTotalWebRTCViewerCount() {
+		return (int) totalWebRTCViewerCount;
+	}
+
+	/**
+	 * @param type if it's not empty, only broadcasts of the type are counted
+	 * @param search if it's not empty, only broadcasts whose name or stream id contains it are counted. It's case insensitive
+	 * @return number of the broadcasts
+	 */
+	public synchronized long getBroadcastCount(String type, String search) {
+		boolean hasType = type != null && !type.isEmpty();
+		if (search == null || search.isEmpty()) {
+			if (!hasType) {
+				return entries.size();
+			}
+			long count = 0;
+			for (Entry entry : entries.values()) {
+				if (type.equals(entry.type)) {
+					count++;
+				}
+			}
+			return count;
+		}
+		return searchEntries(type, search).size();
+	}
+
+	/**
+	 * Returns the stream ids of a page of the broadcast list
+	 *
+	 * @param offset
+	 * @param size it's limited to {@link DataStore#MAX_ITEM_IN_ONE_LIST}
+	 * @param type if it's not empty, only broadcasts of the type are returned
+	 * @param sortBy one of the "name", "date" or "status". Map order is used if it's something else or orderBy is null
+	 * @param orderBy "desc" or "asc"
+	 * @param search if it's not empty, only broadcasts whose name or stream id contains it are returned
+	 * @return stream ids in the requested order
+	 */
+	public synchronized List<String> getBroadcastIds(int offset, int size, String type, String sortBy, String orderBy, String search) {
+		if (size > DataStore.MAX_ITEM_IN_ONE_LIST) {
+			size = DataStore.MAX_ITEM_IN_ONE_LIST;
+		}
+		if (offset < 0) {
+			offset = 0;
+		}
+
+		SortIndex sortIndex = null;
+		if (orderBy != null) {
+			if (SORT_BY_NAME.equals(sortBy)) {
+				sortIndex = nameIndex;
+			}
+			else if (SORT_BY_DATE.equals(sortBy)) {
+				sortIndex = dateIndex;
+			}
+			else if (SORT_BY_STATUS.equals(sortBy)) {
+				sortIndex = statusIndex;
+			}
+		}
+		boolean descending = ORDER_BY_DESC.equals(orderBy);
+
+		if (search != null && !search.isEmpty()) {
+			//search results are expected to be small, so they're sorted instead of walking the sort index
+			List<Entry> result = searchEntries(type, search);
+			result.sort(sortIndex != null ? sortIndex.comparator(descending) : mapOrder);
+			int toIndex = Math.min(offset + size, result.size());
+			if (offset >= toIndex) {
+				return new ArrayList<>();
+			}
+			return toStreamIds(result.subList(offset, toIndex));
+		}
+
+		Iterator<Entry> iterator = sortIndex != null ? sortIndex.iterator(descending) : entries.values().iterator();
+		boolean hasType = type != null && !type.isEmpty();
+		List<String> streamIds = new ArrayList<>();
+		int skipped = 0;
+		while (streamIds.size() < size && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (hasType && !type.equals(entry.type)) {
+				continue;
+			}
+			if (skipped < offset) {
+				skipped++;
+			}
+			else {
+				streamIds.add(entry.streamId);
+			}
+		}
+		return streamIds;
+	}
+
+	private List<Entry> searchEntries(String type, String search) {
+		String query = search.toLowerCase();
+		Collection<Entry> candidates;
+		List<String> candidateIds = searchIndex.getCandidates(query);
+		if (candidateIds != null) {
+			candidates = new ArrayList<>(candidateIds.size());
+			for (String streamId : candidateIds) {
+				candidates.add(entries.get(streamId));
+			}
+		}
+		else {
+			//query is shorter than a trigram, check all of them
+			candidates = entries.values();
+		}
+
+		boolean hasType = type != null && !type.isEmpty();
+		List<Entry> result = new ArrayList<>();
+		for (Entry entry : candidates) {
+			if ((!hasType || type.equals(entry.type)) && matches(entry, query)) {
+				result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	private static boolean matches(Entry entry, String query) {
+		return entry.streamIdLowerCase.contains(query) || (entry.nameLowerCase != null && entry.nameLowerCase.contains(query));
+	}
+
+	private static int sizeOf(Collection<?> collection) {
+		return collection != null ? collection.size() : 0;
+	}
+
+	private static void addAll(List<Entry> list, Collection<Entry> collection) {
+		if (collection != null) {
+			list.addAll(collection);
+		}
+	}
+
+	private static List<String> toStreamIds(List<Entry> entryList) {
+		if (entryList.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<String> streamIds = new ArrayList<>(entryList.size());
+		for (Entry entry : entryList) {
+			streamIds.add(entry.streamId);
+		}
+		return streamIds;
+	}
+}
@@ -0,0 +1,176 @@
+package io.antmedia.datastore.db.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index for substring search. Each key gets an ordinal and every trigram of its text keeps
+ * the sorted ordinals that contain it. A query returns the keys that have all trigrams of the search string,
+ * so the result should be checked by the caller. Queries shorter than a trigram cannot use the index.
+ *
+ * Removed keys leave their ordinals in the postings, and postings are compacted when most of the ordinals are removed.
+ * It's not thread safe.
+ */
+public class NGramIndex {
+
+	public static final int GRAM_LENGTH = 3;
+
+	private static final int MIN_COMPACT_COUNT = 1024;
+
+	private static class Posting {
+		private int[] ordinals = new int[4];
+		private int size;
+
+		void add(int ordinal) {
+			if (size == ordinals.length) {
+				ordinals = Arrays.copyOf(ordinals, size * 2);
+			}
+			ordinals[size++] = ordinal;
+		}
+
+		boolean contains(int ordinal) {
+			return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+		}
+	}
+
+	private final Map<String, Posting> postings = new HashMap<>();
+
+	private final Map<String, Integer> keyOrdinals = new HashMap<>();
+
+	/**
+	 * Key of each ordinal, it's null if the key is removed
+	 */
+	private final List<String> ordinalKeys = new ArrayList<>();
+
+	private int removedCount = 0;
+
+	/**
+	 * Adds or replaces the text of the key
+	 * @param key
+	 * @param text that should be in lowercase if search is case insensitive
+	 */
+	public void put(String key, String text) {
+		remove(key);
+		int ordinal = ordinalKeys.size();
+		ordinalKeys.add(key);
+		keyOrdinals.put(key, ordinal);
+
+		for (String gram : grams(text)) {
+			//ordinals are increasing, so postings stay sorted
+			postings.computeIfAbsent(gram, g -> new Posting()).add(ordinal);
+		}
+	}
+
+	public void remove(String key) {
+		Integer ordinal = keyOrdinals.remove(key);
+		if (ordinal != null) {
+			ordinalKeys.set(ordinal, null);
+			removedCount++;
+			if (removedCount > MIN_COMPACT_COUNT && removedCount > keyOrdinals.size()) {
+				compact();
+			}
+		}
+	}
+
+	public void clear() {
+		postings.clear();
+		keyOrdinals.clear();
+		ordinalKeys.clear();
+		removedCount = 0;
+	}
+
+	public int size() {
+		return keyOrdinals.size();
+	}
+
+	/**
+	 * @param query
+	 * @return keys that have all trigrams of the query or null if query is shorter than {@link #GRAM_LENGTH}
+	 */
+	public List<String> getCandidates(String query) {
+		Set<String> grams = grams(query);
+		if (grams.isEmpty()) {
+			return null;
+		}
+
+		Posting[] queryPostings = new Posting[grams.size()];
+		int i = 0;
+		for (String gram : grams) {
+			Posting posting = postings.get(gram);
+			if (posting == null) {
+				return new ArrayList<>();
+			}
+			queryPostings[i++] = posting;
+		}
+		//start with the shortest posting
+		Arrays.sort(queryPostings, (p1, p2) -> Integer.compare(p1.size, p2.size));
+
+		List<String> keys = new ArrayList<>();
+		Posting shortest = queryPostings[0];
+		for (int j = 0; j < shortest.size; j++) {
+			int ordinal = shortest.ordinals[j];
+			String key = ordinalKeys.get(ordinal);
+			if (key != null && containsAll(queryPostings, ordinal)) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	private static boolean containsAll(Posting[] queryPostings, int ordinal) {
+		for (int i = 1; i < queryPostings.length; i++) {
+			if (!queryPostings[i].contains(ordinal)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void compact() {
+		int[] newOrdinals = new int[ordinalKeys.size()];
+		List<String> newOrdinalKeys = new ArrayList<>(keyOrdinals.size());
+		for (int i = 0; i < ordinalKeys.size(); i++) {
+			String key = ordinalKeys.get(i);
+			if (key != null) {
+				newOrdinals[i] = newOrdinalKeys.size();
+				keyOrdinals.put(key, newOrdinalKeys.size());
+				newOrdinalKeys.add(key);
+			}
+			else {
+				newOrdinals[i] = -1;
+			}
+		}
+
+		postings.entrySet().removeIf(entry -> {
+			Posting posting = entry.getValue();
+			int size = 0;
+			for (int i = 0; i < posting.size; i++) {
+				int ordinal = newOrdinals[posting.ordinals[i]];
+				if (ordinal >= 0) {
+					posting.ordinals[size++] = ordinal;
+				}
+			}
+			posting.size = size;
+			return size == 0;
+		});
+
+		ordinalKeys.clear();
+		ordinalKeys.addAll(newOrdinalKeys);
+		removedCount = 0;
+	}
+
+	private static Set<String> grams(String text) {
+		Set<String> grams = new HashSet<>();
+		if (text != null) {
+			for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+				grams.add(text.substring(i, i + GRAM_LENGTH));
+			}
+		}
+		return grams;
+	}
+}
@@ -24,6 +24,7 @@ import io.antmedia.statistic.HlsViewerStats;
 import io.antmedia.statistic.IStreamStats;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -31,6 +32,8 @@ public abstract class AbstractFilter implements Filter{
 	
 	public static final String BROADCAST_OBJECT = "broadcast";
 
+	public static final String MEDIA_REQUEST_PATH = "mediaRequestPath";
+
 	protected static Logger logger = LoggerFactory.getLogger(AbstractFilter.class);
 	protected FilterConfig config;
 	
@@ -124,6 +127,15 @@ public abstract class AbstractFilter implements Filter{
 		return config;
 	}
 
+	/**
+	 * @return context path of the application and name of the filter. It's used to register the stats of the filter to JMX
+	 */
+	protected String getFilterInstanceName() {
+		ServletContext servletContext = config.getServletContext();
+		String contextPath = servletContext != null ? servletContext.getContextPath() : null;
+		return contextPath + "/" + config.getFilterName();
+	}
+
 	public void setConfig(FilterConfig config) {
 		this.config = config;
 	}
@@ -166,6 +178,21 @@ public abstract class AbstractFilter implements Filter{
 		return broadcast;
 	}
 
+	/**
+	 * Parses the request path once and keeps it in the request for the other filters in the chain.
+	 * It's parsed again if the request is forwarded to another path
+	 */
+	public static MediaRequestPath getMediaRequestPath(HttpServletRequest request) {
+		String requestURI = request.getRequestURI();
+		Object attribute = request.getAttribute(MEDIA_REQUEST_PATH);
+		if (attribute instanceof MediaRequestPath && ((MediaRequestPath) attribute).getRequestURI().equals(requestURI)) {
+			return (MediaRequestPath) attribute;
+		}
+		MediaRequestPath mediaRequestPath = MediaRequestPath.parse(requestURI);
+		request.setAttribute(MEDIA_REQUEST_PATH, mediaRequestPath);
+		return mediaRequestPath;
+	}
+
 	public AntMediaApplicationAdapter getAntMediaApplicationAdapter(){
 		AntMediaApplicationAdapter antMediaApplicationAdapter = null;
 		ApplicationContext context = getAppContext();
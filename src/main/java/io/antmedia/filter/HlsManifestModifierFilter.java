@@ -1,12 +1,7 @@
 package io.antmedia.filter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.amazonaws.util.StringUtils;
 import io.antmedia.websocket.WebSocketConstants;
@@ -20,11 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.ws.rs.HttpMethod;
 
-import org.springframework.util.StreamUtils;
 import org.springframework.web.util.ContentCachingResponseWrapper;
-import io.lindstrom.m3u8.model.MediaPlaylist;
-import io.lindstrom.m3u8.model.MediaSegment;
-import io.lindstrom.m3u8.parser.MediaPlaylistParser;
 
 import static io.antmedia.muxer.MuxAdaptor.ADAPTIVE_SUFFIX;
 
@@ -34,6 +25,8 @@ public class HlsManifestModifierFilter extends AbstractFilter {
 	public static final String END = "end";
 	protected static Logger logger = LoggerFactory.getLogger(HlsManifestModifierFilter.class);
 
+	private final HlsPlaylistRewriteCache rewriteCache = new HlsPlaylistRewriteCache(HlsPlaylistRewriteCache.DEFAULT_MAX_ENTRIES);
+
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
 			throws IOException, ServletException {
@@ -52,16 +45,19 @@ public class HlsManifestModifierFilter extends AbstractFilter {
 					(!StringUtils.isNullOrEmpty(subscriberId) ||
 					!StringUtils.isNullOrEmpty(subscriberCode) ||
 					!StringUtils.isNullOrEmpty(token))){
+				//adaptive playlist doesn't have segments, so it's not windowed
 				addSecurityParametersToAdaptiveM3u8File(token, subscriberId, subscriberCode, request, response, chain);
 			}
-
-			if(StringUtils.isNullOrEmpty(startDate) || StringUtils.isNullOrEmpty(endDate)) {
+			else if(StringUtils.isNullOrEmpty(startDate) || StringUtils.isNullOrEmpty(endDate)) {
 				chain.doFilter(httpRequest, response);
 			}
 			else {
 				long start = Long.parseLong(startDate);
 				long end = Long.parseLong(endDate);
 
+				String playlistKey = httpRequest.getRequestURI();
+				String cacheKey = playlistKey + "\n" + start + "\n" + end;
+
 				ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper((HttpServletResponse) response);
 
 				chain.doFilter(request, responseWrapper);
@@ -73,44 +69,21 @@ public class HlsManifestModifierFilter extends AbstractFilter {
 					try {
 						// Get the original response data
 						final byte[] originalData = responseWrapper.getContentAsByteArray();
-						String original = new String(originalData);
-
-						MediaPlaylistParser parser = new MediaPlaylistParser();
-						MediaPlaylist playList = parser.readPlaylist(original);
-
-						List<MediaSegment> segments = new ArrayList<>();
-
-						for (MediaSegment segment : playList.mediaSegments()) {
-							segment.programDateTime().ifPresent(dateTime -> {
-								long time = dateTime.toEpochSecond();
-								if(time >= start && time <= end) {
-									segments.add(MediaSegment.builder()
-											.duration(segment.duration())
-											.uri(segment.uri())
-											.build());
-								}
-							});
 
+						//same playlist content is rewritten once
+						byte[] newData = rewriteCache.getRewrittenPlaylist(cacheKey, originalData);
+						if (newData == null) {
+							HlsPlaylistRewriteCache.ParsedPlaylist playList = rewriteCache.parse(playlistKey, originalData);
+							newData = playList.writeTimeWindow(start, end);
+							rewriteCache.putRewrittenPlaylist(cacheKey, originalData, newData);
 						}
 
-						MediaPlaylist newPlayList = MediaPlaylist.builder()
-								.version(playList.version())
-								.targetDuration(playList.targetDuration())
-								.ongoing(false)
-								.addAllMediaSegments(segments)
-								.build();
-
-						// Modify the original data
-						MediaPlaylistParser parser2 = new MediaPlaylistParser();
-
-						final String newData = parser2.writePlaylistAsString(newPlayList);
-
 						// Write the data into the output stream
-						response.setContentLength(newData.length());
-						response.getOutputStream().write(newData.getBytes());
+						response.setContentLength(newData.length);
+						response.getOutputStream().write(newData);
 
 						// Commit the written data
-						response.getWriter().flush();
+						response.flushBuffer();
 
 
 					} catch (Exception e) {
@@ -129,7 +102,24 @@ public class HlsManifestModifierFilter extends AbstractFilter {
 	}
 
 	public void addSecurityParametersToAdaptiveM3u8File(String token, String subscriberId, String subscriberCode, ServletRequest request, ServletResponse response, FilterChain chain) throws IOException {
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
 		HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+		String query = "?";
+		if (!StringUtils.isNullOrEmpty(subscriberCode)) {
+			query += WebSocketConstants.SUBSCRIBER_CODE + "=" + subscriberCode;
+		}
+
+		if (!StringUtils.isNullOrEmpty(subscriberId)) {
+			query += "&"+ WebSocketConstants.SUBSCRIBER_ID + "=" + subscriberId;
+		}
+
+		if (!StringUtils.isNullOrEmpty(token)) {
+			query += "&"+ WebSocketConstants.TOKEN + "=" + token;
+		}
+
+		String cacheKey = httpRequest.getRequestURI();
+
 		ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(httpResponse);
 
 		try {
@@ -138,36 +128,17 @@ public class HlsManifestModifierFilter extends AbstractFilter {
 
 			if (status >= HttpServletResponse.SC_OK && status <= HttpServletResponse.SC_BAD_REQUEST) {
 				byte[] originalData = responseWrapper.getContentAsByteArray();
-				String original = new String(originalData);
 
-				String regex = "\\b\\S+\\.m3u8\\b";
-				Pattern pattern = Pattern.compile(regex);
-				Matcher matcher = pattern.matcher(original);
-
-				StringBuffer result = new StringBuffer();
-				while (matcher.find()) {
-					String replacementString = matcher.group() + "?";
-
-					if (!StringUtils.isNullOrEmpty(subscriberCode)) {
-						replacementString += WebSocketConstants.SUBSCRIBER_CODE + "=" + subscriberCode;
-					}
-
-					if (!StringUtils.isNullOrEmpty(subscriberId)) {
-						replacementString += "&"+ WebSocketConstants.SUBSCRIBER_ID + "=" + subscriberId;
-					}
-
-					if (!StringUtils.isNullOrEmpty(token)) {
-						replacementString += "&"+ WebSocketConstants.TOKEN + "=" + token;
-					}
-
-					matcher.appendReplacement(result, replacementString);
+				HlsPlaylistRewriteCache.AdaptivePlaylistTemplate template = rewriteCache.getAdaptiveTemplate(cacheKey, originalData);
+				if (template == null) {
+					template = HlsPlaylistRewriteCache.AdaptivePlaylistTemplate.compile(new String(originalData, StandardCharsets.UTF_8));
+					rewriteCache.putAdaptiveTemplate(cacheKey, originalData, template);
 				}
-				matcher.appendTail(result);
 
-				String modifiedContent = result.toString();
-				response.setContentLength(modifiedContent.length());
-				response.getOutputStream().write(modifiedContent.getBytes());
-				response.getWriter().flush();
+				byte[] modifiedContent = template.apply(query);
+				response.setContentLength(modifiedContent.length);
+				response.getOutputStream().write(modifiedContent);
+				response.flushBuffer();
 			}
 		} catch (Exception e) {
 			logger.error(ExceptionUtils.getStackTrace(e));
@@ -179,5 +150,8 @@ public class HlsManifestModifierFilter extends AbstractFilter {
 		}
 	}
 
+	public HlsPlaylistRewriteCache getRewriteCache() {
+		return rewriteCache;
+	}
 
-}
\ No newline at end of file
+}
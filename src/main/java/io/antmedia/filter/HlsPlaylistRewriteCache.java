@@ -0,0 +1,310 @@
+package io.antmedia.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.lindstrom.m3u8.model.MediaPlaylist;
+import io.lindstrom.m3u8.model.MediaSegment;
+import io.lindstrom.m3u8.parser.MediaPlaylistParser;
+import io.lindstrom.m3u8.parser.PlaylistParserException;
+
+/**
+ * Cache of the playlists that are rewritten by {@link HlsManifestModifierFilter}.
+ *
+ * Playlist is always read through the filter chain so that authentication and statistics filters run for each request.
+ * Rewritten playlists are kept with the original content they are created from, so the same content is not parsed and
+ * written again. Cache entry is used only if the original content is the same, so a changed playlist is never served
+ * from the cache. Adaptive playlists are kept as templates because their parameters are different for each viewer. Parsed media playlists are kept to parse only the new segments when a live playlist is appended.
+ */
+public class HlsPlaylistRewriteCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private static final Pattern M3U8_URI_PATTERN = Pattern.compile("\\b\\S+\\.m3u8\\b");
+
+	private final Map<String, CacheEntry<byte[]>> rewrittenPlaylists;
+
+	private final Map<String, CacheEntry<AdaptivePlaylistTemplate>> adaptiveTemplates;
+
+	private final Map<String, ParsedPlaylist> parsedPlaylists;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder incrementalParseCount = new LongAdder();
+
+	/**
+	 * Value that is created from the original content of a playlist
+	 */
+	private static final class CacheEntry<V> {
+		private final byte[] original;
+		private final V value;
+
+		private CacheEntry(byte[] original, V value) {
+			this.original = original;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Media playlist that is parsed from {@link #content}. Its segments are not modified after it's created
+	 */
+	public static final class ParsedPlaylist {
+		private final byte[] content;
+		private final Optional<Integer> version;
+		private final int targetDuration;
+		private final boolean ongoing;
+		private final List<MediaSegment> segments;
+
+		private ParsedPlaylist(byte[] content, Optional<Integer> version, int targetDuration, boolean ongoing, List<MediaSegment> segments) {
+			this.content = content;
+			this.version = version;
+			this.targetDuration = targetDuration;
+			this.ongoing = ongoing;
+			this.segments = segments;
+		}
+
+		/**
+		 * @param start start time in seconds
+		 * @param end end time in seconds
+		 * @return ended playlist of the segments whose program date time is in the window
+		 */
+		public byte[] writeTimeWindow(long start, long end) {
+			List<MediaSegment> windowSegments = new ArrayList<>();
+			for (MediaSegment segment : segments) {
+				segment.programDateTime().ifPresent(dateTime -> {
+					long time = dateTime.toEpochSecond();
+					if (time >= start && time <= end) {
+						windowSegments.add(MediaSegment.builder()
+								.duration(segment.duration())
+								.uri(segment.uri())
+								.build());
+					}
+				});
+			}
+
+			MediaPlaylist playList = MediaPlaylist.builder()
+					.version(version)
+					.targetDuration(targetDuration)
+					.ongoing(false)
+					.addAllMediaSegments(windowSegments)
+					.build();
+
+			return new MediaPlaylistParser().writePlaylistAsString(playList).getBytes(StandardCharsets.UTF_8);
+		}
+
+		public List<MediaSegment> getSegments() {
+			return segments;
+		}
+	}
+
+	/**
+	 * Adaptive playlist that is split at the variant playlist uris, so the query of a viewer is added
+	 * without matching the playlist again
+	 */
+	public static final class AdaptivePlaylistTemplate {
+		private final List<String> parts;
+
+		private AdaptivePlaylistTemplate(List<String> parts) {
+			this.parts = parts;
+		}
+
+		public static AdaptivePlaylistTemplate compile(String playlist) {
+			List<String> parts = new ArrayList<>();
+			Matcher matcher = M3U8_URI_PATTERN.matcher(playlist);
+			int position = 0;
+			while (matcher.find()) {
+				parts.add(playlist.substring(position, matcher.end()));
+				position = matcher.end();
+			}
+			parts.add(playlist.substring(position));
+			return new AdaptivePlaylistTemplate(parts);
+		}
+
+		/**
+		 * @param query query with the leading '?' that is added to each variant playlist uri
+		 */
+		public byte[] apply(String query) {
+			StringBuilder playlist = new StringBuilder(parts.size() * (query.length() + 64));
+			int lastIndex = parts.size() - 1;
+			for (int i = 0; i < lastIndex; i++) {
+				playlist.append(parts.get(i)).append(query);
+			}
+			playlist.append(parts.get(lastIndex));
+			return playlist.toString().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	public HlsPlaylistRewriteCache(int maxEntries) {
+		rewrittenPlaylists = createMap(maxEntries);
+		adaptiveTemplates = createMap(maxEntries);
+		parsedPlaylists = createMap(maxEntries);
+	}
+
+	private static <V> Map<String, V> createMap(int maxEntries) {
+		return new LinkedHashMap<String, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param key key of the playlist that includes the rewrite parameters
+	 * @param original content of the playlist that is read for this request
+	 * @return rewritten playlist or null if it's not in the cache for this content. Returned array should not be modified
+	 */
+	public byte[] getRewrittenPlaylist(String key, byte[] original) {
+		CacheEntry<byte[]> entry;
+		synchronized (rewrittenPlaylists) {
+			entry = rewrittenPlaylists.get(key);
+		}
+		return getValue(entry, original);
+	}
+
+	public void putRewrittenPlaylist(String key, byte[] original, byte[] playlist) {
+		synchronized (rewrittenPlaylists) {
+			rewrittenPlaylists.put(key, new CacheEntry<>(original, playlist));
+		}
+	}
+
+	/**
+	 * @param key key of the adaptive playlist
+	 * @param original content of the playlist that is read for this request
+	 * @return template or null if it's not in the cache for this content
+	 */
+	public AdaptivePlaylistTemplate getAdaptiveTemplate(String key, byte[] original) {
+		CacheEntry<AdaptivePlaylistTemplate> entry;
+		synchronized (adaptiveTemplates) {
+			entry = adaptiveTemplates.get(key);
+		}
+		return getValue(entry, original);
+	}
+
+	public void putAdaptiveTemplate(String key, byte[] original, AdaptivePlaylistTemplate template) {
+		synchronized (adaptiveTemplates) {
+			adaptiveTemplates.put(key, new CacheEntry<>(original, template));
+		}
+	}
+
+	private <V> V getValue(CacheEntry<V> entry, byte[] original) {
+		V value = entry != null && Arrays.equals(entry.original, original) ? entry.value : null;
+		count(value != null);
+		return value;
+	}
+
+	private void count(boolean hit) {
+		if (hit) {
+			hitCount.increment();
+		}
+		else {
+			missCount.increment();
+		}
+	}
+
+	/**
+	 * Parses the media playlist. If the playlist is the last parsed content of the same key with new segments
+	 * appended, only the appended segments are parsed.
+	 *
+	 * @param key key of the playlist like its file path
+	 * @param content content of the playlist
+	 */
+	public ParsedPlaylist parse(String key, byte[] content) throws PlaylistParserException {
+		ParsedPlaylist previous;
+		synchronized (parsedPlaylists) {
+			previous = parsedPlaylists.get(key);
+		}
+
+		ParsedPlaylist playlist;
+		if (previous != null && Arrays.equals(previous.content, content)) {
+			return previous;
+		}
+		else if (isAppended(previous, content)) {
+			int previousLength = previous.content.length;
+			String appendedLines = new String(content, previousLength, content.length - previousLength, StandardCharsets.UTF_8);
+			//appended segments are parsed as a playlist with the header of the previous one
+			MediaPlaylist appendedPlaylist = new MediaPlaylistParser().readPlaylist("#EXTM3U\n#EXT-X-TARGETDURATION:"
+					+ previous.targetDuration + "\n" + appendedLines);
+
+			List<MediaSegment> segments = new ArrayList<>(previous.segments.size() + appendedPlaylist.mediaSegments().size());
+			segments.addAll(previous.segments);
+			segments.addAll(appendedPlaylist.mediaSegments());
+			playlist = new ParsedPlaylist(content, previous.version, previous.targetDuration, appendedPlaylist.ongoing(),
+					Collections.unmodifiableList(segments));
+			incrementalParseCount.increment();
+		}
+		else {
+			MediaPlaylist mediaPlaylist = new MediaPlaylistParser().readPlaylist(new String(content, StandardCharsets.UTF_8));
+			playlist = new ParsedPlaylist(content, mediaPlaylist.version(), mediaPlaylist.targetDuration(), mediaPlaylist.ongoing(),
+					Collections.unmodifiableList(new ArrayList<>(mediaPlaylist.mediaSegments())));
+		}
+
+		synchronized (parsedPlaylists) {
+			parsedPlaylists.put(key, playlist);
+		}
+		return playlist;
+	}
+
+	/**
+	 * @return true if the content starts with the previous content of an ongoing playlist and the previous content
+	 * ends after a segment uri, so the appended part starts with a new segment
+	 */
+	private static boolean isAppended(ParsedPlaylist previous, byte[] content) {
+		if (previous == null || !previous.ongoing) {
+			return false;
+		}
+		byte[] previousContent = previous.content;
+		int length = previousContent.length;
+		if (length == 0 || content.length <= length || previousContent[length - 1] != '\n'
+				|| !Arrays.equals(previousContent, 0, length, content, 0, length))
+		{
+			return false;
+		}
+		int lineEnd = length - 1;
+		while (lineEnd > 0 && (previousContent[lineEnd - 1] == '\n' || previousContent[lineEnd - 1] == '\r')) {
+			lineEnd--;
+		}
+		int lineStart = lineEnd;
+		while (lineStart > 0 && previousContent[lineStart - 1] != '\n') {
+			lineStart--;
+		}
+		return lineStart < lineEnd && previousContent[lineStart] != '#';
+	}
+
+	public void clear() {
+		synchronized (rewrittenPlaylists) {
+			rewrittenPlaylists.clear();
+		}
+		synchronized (adaptiveTemplates) {
+			adaptiveTemplates.clear();
+		}
+		synchronized (parsedPlaylists) {
+			parsedPlaylists.clear();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	public long getIncrementalParseCount() {
+		return incrementalParseCount.sum();
+	}
+}
@@ -54,7 +54,7 @@ public class IPFilter extends AbstractFilter {
 		if(appSettings != null) 
 		{
 			if (appSettings.isIpFilterEnabled()) {
-				result = checkCIDRList(appSettings.getAllowedCIDRList(),remoteIPAdrress);
+				result = appSettings.getAllowedCIDRMatcher().matches(remoteIPAdrress);
 			}
 			else {
 				result = true;
@@ -31,7 +31,7 @@ public class IPFilterDashboard extends AbstractFilter{
 	public boolean isAllowedDashboard(final String remoteIPAdrress){
 		ServerSettings serverSettings = getServerSettings();
 		if (serverSettings != null){
-			return checkCIDRList(serverSettings.getAllowedCIDRList(),remoteIPAdrress);
+			return serverSettings.getAllowedDashboardCIDRMatcher().matches(remoteIPAdrress);
 		}
 		// Deny this request
 		return false;
@@ -6,6 +6,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.util.Date;
 
 import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
@@ -18,8 +19,6 @@ import org.slf4j.LoggerFactory;
 
 import com.auth0.jwk.Jwk;
 import com.auth0.jwk.JwkException;
-import com.auth0.jwk.JwkProvider;
-import com.auth0.jwk.UrlJwkProvider;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
@@ -27,6 +26,8 @@ import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 
 import io.antmedia.AppSettings;
+import io.antmedia.security.JwksKeyCache;
+import io.antmedia.security.TokenVerificationCache;
 
 public class JWTFilter extends AbstractFilter {
 
@@ -36,6 +37,22 @@ public class JWTFilter extends AbstractFilter {
 
 	private AppSettings appSettings;
 
+	/**
+	 * REST clients send the same token with each request, so verified tokens are not verified again until they expire
+	 */
+	private final TokenVerificationCache verificationCache = new TokenVerificationCache();
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		super.init(filterConfig);
+		verificationCache.registerMBean(getFilterInstanceName());
+	}
+
+	@Override
+	public void destroy() {
+		verificationCache.unregisterMBean();
+	}
+
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
 
 		appSettings = getAppSettings();
@@ -57,24 +74,38 @@ public class JWTFilter extends AbstractFilter {
 		boolean result = false;
 
 		String jwksURL = appSettings.getJwksURL();
+		boolean jwks = jwksURL != null && !jwksURL.isEmpty();
+		//key source is a part of the cache key so that the tokens are verified again when the jwks url or the secret changes
+		String keySource = jwks ? "jwks\n" + jwksURL : "secret\n" + appSettings.getJwtSecretKey();
 
-		if (jwksURL != null && !jwksURL.isEmpty()) {
-			result = isJWKSTokenValid(appSettings.getJwksURL(), jwtString);
+		if (verificationCache.isVerified(keySource, jwtString, null, null)) {
+			return true;
+		}
+
+		if (jwks) {
+			result = isJWKSTokenValid(jwksURL, jwtString);
 		}
 		else {
 			result = isJWTTokenValid(appSettings.getJwtSecretKey(), jwtString);
 		}
 
+		if (result) {
+			verificationCache.putVerified(keySource, jwtString, null, null);
+		}
+
 		return result;
 	}
 
+	public TokenVerificationCache getVerificationCache() {
+		return verificationCache;
+	}
+
 	private static boolean isJWKSTokenValid(String jwksURL, String jwtString)  {
 
 		boolean result = false;
 		try {
 			DecodedJWT jwt = JWT.decode(jwtString);
-			JwkProvider provider = new UrlJwkProvider(jwksURL);
-			Jwk jwk = provider.get(jwt.getKeyId());
+			Jwk jwk = JwksKeyCache.getInstance().get(jwksURL, jwt.getKeyId());
 			Algorithm algorithm = Algorithm.RSA256((RSAPublicKey) jwk.getPublicKey(), null);
 			algorithm.verify(jwt);
 			result = true;
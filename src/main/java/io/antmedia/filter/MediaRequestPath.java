@@ -0,0 +1,281 @@
+package io.antmedia.filter;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.antmedia.muxer.MuxAdaptor;
+import io.antmedia.muxer.Muxer;
+
+/**
+ * Parsed form of the HLS, DASH and VoD request paths. The path is parsed once for a request and it's kept
+ * as a request attribute, so that the filters in the chain don't parse the same path again.
+ * See {@link AbstractFilter#getMediaRequestPath(jakarta.servlet.http.HttpServletRequest)}
+ *
+ * Patterns are compiled once and the path is sanitized without a regex.
+ */
+public class MediaRequestPath {
+
+	public enum Type {
+		HLS_PLAYLIST,
+		HLS_ADAPTIVE_PLAYLIST,
+		HLS_SEGMENT,
+		CHUNKED,
+		DASH_MANIFEST,
+		DASH_SEGMENT,
+		VOD,
+		UNKNOWN
+	}
+
+	private static final String RENDITION_REGEX = "[0-9]+p|[0-9]+kbps|[0-9]+p[0-9]+kbps";
+
+	// matches ending with _[resolution]p[bitrate]kbps.m3u8 or _[resolution]p.m3u8 or _[bitrate]kbps.m3u8
+	private static final Pattern HLS_RENDITION_PATTERN = Pattern.compile("(.*)_(" + RENDITION_REGEX + ").m3u8$");
+
+	// matches ending with _[_240p300kbps000000000].ts or _[_300kbps000000000].ts or _[_240p000000000].ts
+	private static final Pattern TS_RENDITION_PATTERN = Pattern.compile("(.*)_((?:" + RENDITION_REGEX + ")+)([0-9]{" + Muxer.SEGMENT_INDEX_LENGTH + "}).ts$");
+
+	//for backward compatibility, segment index has 4 digits
+	private static final Pattern TS_RENDITION_PATTERN_LEGACY = Pattern.compile("(.*)_((?:" + RENDITION_REGEX + ")+)([0-9]{4}).ts$");
+
+	// matches default ts file extension [000000000].ts
+	private static final Pattern TS_PATTERN = Pattern.compile("(.*)([0-9]{" + Muxer.SEGMENT_INDEX_LENGTH + "}).ts$");
+
+	private static final Pattern TS_PATTERN_LEGACY = Pattern.compile("(.*)([0-9]{4}).ts$");
+
+	/**
+	 * Segment index with more digits does not fit in a long, so the path is not parsed as a segment
+	 */
+	private static final int MAX_SEGMENT_INDEX_DIGITS = 18;
+
+	// matches [streamId]_[representation]segment[index].m4s
+	private static final Pattern DASH_SEGMENT_PATTERN = Pattern.compile(".*_([0-9]+)segment([0-9]{1," + MAX_SEGMENT_INDEX_DIGITS + "}).m4s$");
+
+	/*
+	 * Following patterns are used with find instead of matching the whole path with leading and trailing (.*)+
+	 * They match the same paths without backtracking on the whole path
+	 */
+
+	//streamId_underline_test-2021-05-18_11-26-26.842.mp4 and streamId_underline_test-2021-05-18_11-26-26.842_360p500kbps.mp4
+	private static final Pattern VOD_DATETIME_PATTERN = Pattern.compile("-20[0-9][0-9]+-+[0-9][0-9]");
+
+	private static final Pattern VOD_RESOLUTION_BITRATE_PATTERN = Pattern.compile("_[0-9]+p+[0-9]+kbps");
+
+	private static final Pattern UNDERSCORE_PATTERN = Pattern.compile("_[0-9]");
+
+	private static final String ADAPTIVE_PLAYLIST_SUFFIX = MuxAdaptor.ADAPTIVE_SUFFIX + ".m3u8";
+
+	private final String requestURI;
+
+	private final String streamId;
+
+	private final Type type;
+
+	private final String rendition;
+
+	private final long segmentIndex;
+
+	private MediaRequestPath(String requestURI, String streamId, Type type, String rendition, long segmentIndex) {
+		this.requestURI = requestURI;
+		this.streamId = streamId;
+		this.type = type;
+		this.rendition = rendition;
+		this.segmentIndex = segmentIndex;
+	}
+
+	private static MediaRequestPath of(String requestURI, String streamId, Type type) {
+		return new MediaRequestPath(requestURI, streamId, type, null, -1);
+	}
+
+	/**
+	 * @param requestURI
+	 * @return parsed path. Stream id is null if it's not a media request
+	 */
+	public static MediaRequestPath parse(String requestURI) {
+		String originalURI = requestURI;
+		requestURI = sanitize(requestURI);
+
+		int endIndex;
+		int startIndex;
+
+		int streamsIndex = requestURI.indexOf("streams");
+		if (streamsIndex != -1) {
+			requestURI = requestURI.substring(streamsIndex + "streams".length());
+		}
+
+		if (requestURI.contains("m4s") || requestURI.contains("mpd")) {
+			Type type = requestURI.endsWith("m4s") ? Type.DASH_SEGMENT : Type.DASH_MANIFEST;
+			startIndex = requestURI.indexOf('/');
+			endIndex = requestURI.lastIndexOf('/');
+			if (endIndex == 0) {
+				return of(originalURI, requestURI, type);
+			}
+			String streamId = requestURI.substring(startIndex + 1, endIndex);
+			if (type == Type.DASH_SEGMENT) {
+				Matcher matcher = DASH_SEGMENT_PATTERN.matcher(requestURI);
+				if (matcher.matches()) {
+					return new MediaRequestPath(originalURI, streamId, type, matcher.group(1), Long.parseLong(matcher.group(2)));
+				}
+			}
+			return of(originalURI, streamId, type);
+		}
+		else if (requestURI.contains("chunked")) {
+			requestURI = requestURI.substring(requestURI.indexOf("chunked") + "chunked".length());
+			startIndex = requestURI.indexOf('/');
+			endIndex = requestURI.lastIndexOf('/');
+			return of(originalURI, requestURI.substring(startIndex + 1, endIndex), Type.CHUNKED);
+		}
+
+		int lastSlashIndex = requestURI.lastIndexOf('/');
+
+		//if request is adaptive file (ending with _adaptive.m3u8)
+		endIndex = requestURI.lastIndexOf(ADAPTIVE_PLAYLIST_SUFFIX);
+		if (endIndex != -1) {
+			return of(originalURI, requestURI.substring(lastSlashIndex + 1, endIndex), Type.HLS_ADAPTIVE_PLAYLIST);
+		}
+
+		boolean playlist = requestURI.endsWith("m3u8");
+		boolean segment = requestURI.endsWith("ts");
+
+		//if specific bitrate is requested
+		if (playlist) {
+			Matcher matcher = HLS_RENDITION_PATTERN.matcher(requestURI);
+			if (matcher.matches()) {
+				//because file format is [NAME]_[RESOLUTION]p[bitrate]kbps.m3u8 or [NAME]_[RESOLUTION]p.m3u8 or _[bitrate]kbps.m3u8
+				endIndex = requestURI.lastIndexOf('_');
+				return new MediaRequestPath(originalURI, requestURI.substring(lastSlashIndex + 1, endIndex), Type.HLS_PLAYLIST, matcher.group(2), -1);
+			}
+		}
+
+		//if just the m3u8 file
+		endIndex = requestURI.lastIndexOf(".m3u8");
+		if (endIndex != -1) {
+			return of(originalURI, requestURI.substring(lastSlashIndex + 1, endIndex), Type.HLS_PLAYLIST);
+		}
+
+		if (segment) {
+			//if specific ts file requested, file format is [NAME]_[RESOLUTION]p[bitrate]kbps[000000000].ts
+			Matcher matcher = TS_RENDITION_PATTERN.matcher(requestURI);
+			if (!matcher.matches()) {
+				matcher = TS_RENDITION_PATTERN_LEGACY.matcher(requestURI);
+			}
+			if (matcher.matches()) {
+				endIndex = requestURI.lastIndexOf('_');
+				return new MediaRequestPath(originalURI, requestURI.substring(lastSlashIndex + 1, endIndex), Type.HLS_SEGMENT,
+						matcher.group(2), Long.parseLong(matcher.group(3)));
+			}
+
+			//file format is [NAME][000000000].ts
+			matcher = TS_PATTERN.matcher(requestURI);
+			if (!matcher.matches()) {
+				matcher = TS_PATTERN_LEGACY.matcher(requestURI);
+			}
+			if (matcher.matches()) {
+				String index = matcher.group(2);
+				endIndex = requestURI.lastIndexOf('.');
+				return new MediaRequestPath(originalURI, requestURI.substring(lastSlashIndex + 1, endIndex - index.length()), Type.HLS_SEGMENT,
+						null, Long.parseLong(index));
+			}
+		}
+
+		boolean resolutionBitrate = VOD_RESOLUTION_BITRATE_PATTERN.matcher(requestURI).find();
+		if (VOD_DATETIME_PATTERN.matcher(requestURI).find())
+		{
+			endIndex = requestURI.lastIndexOf('_'); //if multiple files with same id requested such as : 541211332342978513714151_480p_1.mp4
+			startIndex = lastSlashIndex;
+			//_480p regex
+			if (resolutionBitrate) {
+				requestURI = requestURI.substring(startIndex, endIndex);
+				endIndex = requestURI.lastIndexOf('.');
+				//Remove -2021-05-18_11-26-26 character size
+				endIndex -= Muxer.DATE_TIME_PATTERN.length()-3;
+				startIndex = 0;
+			}
+			else {
+				//Remove -2021-05-18 character size
+				endIndex -= Muxer.DATE_TIME_PATTERN.length()-12;
+			}
+			return of(originalURI, requestURI.substring(startIndex+1, endIndex), Type.VOD);
+		}
+
+		//if multiple files with same id requested such as : 541211332342978513714151_480p5000kbps_1.mp4 or 541211332342978513714151_480p500kbps.mp4
+		if (resolutionBitrate)
+		{
+			endIndex = requestURI.lastIndexOf('_'); //if multiple files with same id requested such as : 541211332342978513714151_480p500kbps_1.mp4
+			startIndex = lastSlashIndex;
+			if (VOD_RESOLUTION_BITRATE_PATTERN.matcher(requestURI.substring(startIndex+1, endIndex)).find())
+			{
+				requestURI = requestURI.substring(startIndex, endIndex);
+				endIndex = requestURI.lastIndexOf('_');
+				startIndex = 0;
+			}
+			return of(originalURI, requestURI.substring(startIndex+1, endIndex), Type.VOD);
+		}
+
+		//if default mp4 file requested such as: 541211332342978513714151.mp4, 541211332342978513714151_23.mp4
+		endIndex = requestURI.lastIndexOf(".mp4");
+		if (endIndex == -1)
+		{
+			//if default webm file requested such as: 541211332342978513714151.webm
+			endIndex = requestURI.lastIndexOf(".webm");
+		}
+
+		if (endIndex != -1)
+		{
+			if (UNDERSCORE_PATTERN.matcher(requestURI).find())
+			{
+				endIndex = requestURI.lastIndexOf('_');
+			}
+			return of(originalURI, requestURI.substring(lastSlashIndex+1, endIndex), Type.VOD);
+		}
+
+		return of(originalURI, null, Type.UNKNOWN);
+	}
+
+	/**
+	 * Replaces the characters in {@link TokenFilterManager#REPLACE_CHARS_REGEX} with underscore.
+	 * Same string is returned if there is no character to replace
+	 */
+	static String sanitize(String requestURI) {
+		char[] chars = null;
+		for (int i = 0; i < requestURI.length(); i++) {
+			char c = requestURI.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\t' || c == '|') {
+				if (chars == null) {
+					chars = requestURI.toCharArray();
+				}
+				chars[i] = '_';
+			}
+		}
+		return chars == null ? requestURI : new String(chars);
+	}
+
+	public String getRequestURI() {
+		return requestURI;
+	}
+
+	/**
+	 * @return stream id of the request or null if it's not a media request
+	 */
+	public String getStreamId() {
+		return streamId;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return rendition in the file name like 240p, 500kbps, 240p500kbps or representation index for DASH segments.
+	 * It's null if it's not in the path
+	 */
+	public String getRendition() {
+		return rendition;
+	}
+
+	/**
+	 * @return index of the HLS or DASH segment or -1 if it's not a segment request
+	 */
+	public long getSegmentIndex() {
+		return segmentIndex;
+	}
+}
@@ -2,9 +2,6 @@ package io.antmedia.filter;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketAddress;
 import java.util.Date;
 import java.util.Enumeration;
 
@@ -24,10 +21,12 @@ import com.auth0.jwt.algorithms.Algorithm;
 import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.AppSettings;
 import io.antmedia.cluster.IClusterNotifier;
+import io.antmedia.cluster.IClusterStore;
+import io.antmedia.cluster.NodeHealthTracker;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.Subscriber;
-import io.antmedia.rest.servlet.EndpointProxy;
+import io.antmedia.rest.servlet.NodeRequestForwarder;
 import io.antmedia.settings.ServerSettings;
 import jakarta.ws.rs.HttpMethod;
 
@@ -43,6 +42,8 @@ public class RestProxyFilter extends AbstractFilter {
 
 	protected static Logger log = LoggerFactory.getLogger(RestProxyFilter.class);
 
+	private NodeRequestForwarder nodeRequestForwarder;
+
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException
 	{
 		HttpServletRequest httpRequest =(HttpServletRequest)request;
@@ -75,7 +76,9 @@ public class RestProxyFilter extends AbstractFilter {
 									&& !isRequestDestinedForThisNode(request.getRemoteAddr(), subscriber.getRegisteredNodeIp())
 									&& isHostRunning(subscriber.getRegisteredNodeIp(), getServerSettings().getDefaultHttpPort())) 
 							{
-								forwardRequestToNode(request, response, subscriber.getRegisteredNodeIp());
+								if (!forwardRequestToNode(request, response, subscriber.getRegisteredNodeIp())) {
+									chain.doFilter(request, response);
+								}
 							} 
 							else 
 							{
@@ -103,7 +106,10 @@ public class RestProxyFilter extends AbstractFilter {
 				{
 
 
-					forwardRequestToNode(request, response, broadcast.getOriginAdress());
+					if (!forwardRequestToNode(request, response, broadcast.getOriginAdress())) {
+						//node cannot be reached, it's handled in this node as if the node is not running
+						chain.doFilter(request, response);
+					}
 				}
 				else 
 				{
@@ -135,32 +141,47 @@ public class RestProxyFilter extends AbstractFilter {
 	}
 
 
+	/**
+	 * Checks the node with its status in the cluster and the results of the requests that are forwarded to it.
+	 * It doesn't connect to the node, see {@link NodeHealthTracker}
+	 *
+	 * @param address
+	 * @param port
+	 * @return true if the requests can be forwarded to the node
+	 */
 	public boolean isHostRunning(String address, int port) {
-
-		try(Socket socket = new Socket()) {
-			
-			SocketAddress sockaddr = new InetSocketAddress(address, port);
-			socket.connect(sockaddr, 5000);
-		}
-		catch (NumberFormatException | IOException e) {
-			return false;
-		}
-		return true;
+		return getNodeRequestForwarder().isNodeAvailable(address);
 	}
 
 
-	public void forwardRequestToNode(ServletRequest request, ServletResponse response, String registeredNodeIp) throws IOException, ServletException 
+	/**
+	 * @return false if the request cannot be executed on the node and it should be handled in this node
+	 */
+	public boolean forwardRequestToNode(ServletRequest request, ServletResponse response, String registeredNodeIp) throws IOException, ServletException 
 	{
-		//token validity is 5 seconds -> 5000
-		String jwtToken = JWTFilter.generateJwtToken(getAppSettings().getClusterCommunicationKey(), System.currentTimeMillis() + 5000);
 		AppSettings appSettings = getAppSettings();
 		ServerSettings serverSettings = getServerSettings();
 		String restRouteOfSubscriberNode = "http://" + registeredNodeIp + ":" + serverSettings.getDefaultHttpPort()  + File.separator + appSettings.getAppName() + File.separator+ "rest";
 		log.info("Redirecting the request({}) to node {}", ((HttpServletRequest)request).getRequestURI(), registeredNodeIp);
-		EndpointProxy endpointProxy = new EndpointProxy(jwtToken);
-		ServletConfig config = getServletConfig(restRouteOfSubscriberNode);
-		endpointProxy.init(config);
-		endpointProxy.service(request, response);
+		return getNodeRequestForwarder().forward(request, response, registeredNodeIp, restRouteOfSubscriberNode, appSettings.getClusterCommunicationKey());
+	}
+
+	public synchronized NodeRequestForwarder getNodeRequestForwarder() {
+		if (nodeRequestForwarder == null) {
+			nodeRequestForwarder = new NodeRequestForwarder(new NodeHealthTracker(this::getClusterStore));
+		}
+		return nodeRequestForwarder;
+	}
+
+	private IClusterStore getClusterStore() {
+		ApplicationContext context = getAppContext();
+		if (context != null && context.containsBean(IClusterNotifier.BEAN_NAME)) {
+			IClusterNotifier clusterNotifier = (IClusterNotifier) context.getBean(IClusterNotifier.BEAN_NAME);
+			if (clusterNotifier != null) {
+				return clusterNotifier.getClusterStore();
+			}
+		}
+		return null;
 	}
 
 	public static ServletConfig getServletConfig(String targetUri) {
@@ -190,15 +211,16 @@ public class RestProxyFilter extends AbstractFilter {
 	}
 
 	public String getStreamId(String reqURI){
-		try{
-			reqURI = reqURI.split("broadcasts/")[1];
-		}
-		catch (ArrayIndexOutOfBoundsException e){
+		int startIndex = reqURI.indexOf("broadcasts/");
+		if (startIndex == -1) {
 			return null;
 		}
-		if(reqURI.contains("/"))
-			reqURI = reqURI.substring(0, reqURI.indexOf("/"));
-		return reqURI;
+		startIndex += "broadcasts/".length();
+		int endIndex = reqURI.indexOf('/', startIndex);
+		if (endIndex == -1) {
+			endIndex = reqURI.length();
+		}
+		return endIndex > startIndex ? reqURI.substring(startIndex, endIndex) : null;
 	}
 
 	/**
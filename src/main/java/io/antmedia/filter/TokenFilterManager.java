@@ -8,10 +8,10 @@ import org.slf4j.LoggerFactory;
 import io.antmedia.AppSettings;
 import io.antmedia.datastore.db.types.Subscriber;
 import io.antmedia.datastore.db.types.Token;
-import io.antmedia.muxer.MuxAdaptor;
-import io.antmedia.muxer.Muxer;
 import io.antmedia.security.ITokenService;
+import io.antmedia.security.TokenVerificationCache;
 import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
@@ -26,6 +26,28 @@ public class TokenFilterManager extends AbstractFilter   {
 	protected static Logger logger = LoggerFactory.getLogger(TokenFilterManager.class);
 	public static final String TOKEN_HEADER_FOR_NODE_COMMUNICATION = "ClusterAuthorization";
 
+	private static final String HASH_TYPE = "hash";
+
+	private static final String JWT_TYPE = "jwt";
+
+	/**
+	 * Players request playlists and segments with the same token every few seconds. Successful hash and JWT verifications
+	 * are cached for the session so that the token is not verified for each segment. Play tokens are not cached because
+	 * they're records in the datastore that may expire or be deleted, and time based subscriber codes are not cached
+	 * because they change in time.
+	 */
+	private final TokenVerificationCache verificationCache = new TokenVerificationCache();
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		super.init(filterConfig);
+		verificationCache.registerMBean(getFilterInstanceName());
+	}
+
+	@Override
+	public void destroy() {
+		verificationCache.unregisterMBean();
+	}
 
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
@@ -50,7 +72,7 @@ public class TokenFilterManager extends AbstractFilter   {
 		}
 
 		String sessionId = httpRequest.getSession().getId();
-		String streamId = getStreamId(httpRequest.getRequestURI());
+		String streamId = getMediaRequestPath(httpRequest).getStreamId();
 
 		String clientIP = httpRequest.getRemoteAddr().replaceAll(REPLACE_CHARS_REGEX, "_");
 
@@ -121,19 +143,20 @@ public class TokenFilterManager extends AbstractFilter   {
 					return; 					
 				}
 
+				//play token is not cached, it's checked against the datastore for every request so that its expiry and deletion take effect immediately
 				if (appSettings.isPlayTokenControlEnabled() && !tokenServiceTmp.checkToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN)) {
 					httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN, "Invalid Token for streamId:" + streamId);
 					logger.warn("token {} is not valid for stream id:{}", tokenId, streamId);
 					return; 
 				}
 
-				if (appSettings.isHashControlPlayEnabled() && !tokenServiceTmp.checkHash(tokenId, streamId, sessionId, Token.PLAY_TOKEN)) {
+				if (appSettings.isHashControlPlayEnabled() && !checkHash(tokenServiceTmp, tokenId, streamId, sessionId)) {
 					httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN,"Invalid Hash");
 					logger.warn("hash {} is not valid", tokenId);
 					return; 
 				}
 
-				if (appSettings.isPlayJwtControlEnabled() && !tokenServiceTmp.checkJwtToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN)) {
+				if (appSettings.isPlayJwtControlEnabled() && !checkJwtToken(tokenServiceTmp, tokenId, streamId, sessionId)) {
 					httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN,"Invalid JWT Token");
 					logger.warn("JWT token is not valid");
 					return; 
@@ -148,136 +171,34 @@ public class TokenFilterManager extends AbstractFilter   {
 	}
 
 
-	public static String getStreamId(String requestURI) {
-		requestURI = requestURI.replaceAll(REPLACE_CHARS_REGEX, "_");
-
-		int endIndex;
-		int startIndex = requestURI.indexOf('/');
-
-		if(requestURI.contains("streams")) {
-			requestURI = requestURI.split("streams")[1];
-		}
-
-		if(requestURI.contains("m4s") || requestURI.contains("mpd")) {
-			startIndex = requestURI.indexOf("/");
-			endIndex = requestURI.lastIndexOf("/");
-			if(endIndex == 0){
-				return requestURI;
-			}
-			return requestURI.substring(startIndex+1, endIndex);
-		}
-
-
-		else if(requestURI.contains("chunked")) {
-			requestURI = requestURI.split("chunked")[1];
-			startIndex = requestURI.indexOf("/");
-			endIndex = requestURI.lastIndexOf("/");
-			return requestURI.substring(startIndex+1, endIndex);
-		}
-
-
-		//if request is adaptive file (ending with _adaptive.m3u8)
-		endIndex = requestURI.lastIndexOf(MuxAdaptor.ADAPTIVE_SUFFIX + ".m3u8");
-		if (endIndex != -1) {
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex);
-		}
-
-		//if specific bitrate is requested
-		String hlsRegex = "(.*)_([0-9]+p|[0-9]+kbps|[0-9]+p[0-9]+kbps).m3u8$"; // matches ending with _[resolution]p[bitrate]kbps.m3u8 or _[resolution]p.m3u8 or _[bitrate]kbps.m3u8
-		if (requestURI.matches(hlsRegex)) {
-			endIndex = requestURI.lastIndexOf('_'); //because file format is [NAME]_[RESOLUTION]p[bitrate]kbps.m3u8 or [NAME]_[RESOLUTION]p.m3u8 or _[bitrate]kbps.m3u8
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex);
-		}
-
-		//if just the m3u8 file
-		endIndex = requestURI.lastIndexOf(".m3u8");
-		if (endIndex != -1) {
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex);
-		}
-
-		//if specific ts file requested
-		String tsRegex = "(.*)_([0-9]+p|[0-9]+kbps|[0-9]+p[0-9]+kbps)+[0-9]{" + Muxer.SEGMENT_INDEX_LENGTH + "}.ts$";  // matches ending with _[_240p300kbps0000].ts or _[_300kbps0000].ts or _[_240p0000].ts default ts file extension _[0000].ts
-		if (requestURI.matches(tsRegex)) {
-			endIndex = requestURI.lastIndexOf('_'); //because file format is [NAME]_[RESOLUTION]p[0000].ts
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex);
-		}
-
-		//for backward compatibility
-		tsRegex = "(.*)_([0-9]+p|[0-9]+kbps|[0-9]+p[0-9]+kbps)+[0-9]{4}.ts$";  // matches ending with _[_240p300kbps0000].ts or _[_300kbps0000].ts or _[_240p0000].ts default ts file extension _[0000].ts
-		if (requestURI.matches(tsRegex)) {
-			endIndex = requestURI.lastIndexOf('_'); //because file format is [NAME]_[RESOLUTION]p[0000].ts
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex);
+	private boolean checkHash(ITokenService tokenService, String tokenId, String streamId, String sessionId) {
+		if (verificationCache.isVerified(HASH_TYPE, tokenId, streamId, sessionId)) {
+			return true;
 		}
-
-		tsRegex = "(.*)[0-9]{"+ Muxer.SEGMENT_INDEX_LENGTH +"}.ts$";  // matches default ts file extension  [0000].ts
-		if (requestURI.matches(tsRegex)) {
-			endIndex = requestURI.lastIndexOf('.'); //because file format is [NAME][0000].ts
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex-Muxer.SEGMENT_INDEX_LENGTH);
-		}
-
-		//for backward compatibility
-		tsRegex = "(.*)[0-9]{4}.ts$";  // matches default ts file extension  [0000].ts
-		if (requestURI.matches(tsRegex)) {
-			endIndex = requestURI.lastIndexOf('.'); //because file format is [NAME][0000].ts
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex-4);
-		}
-
-		//streamId_underline_test-2021-05-18_11-26-26.842.mp4 and streamId_underline_test-2021-05-18_11-26-26.842_360p500kbps.mp4 
-		String vodDatetimeRegex = "(.*)+(-20)[0-9][0-9]+(-)+([0-9][0-9])+(.*)";
-		String vodResolutionBitrateRegex = "(.*)+_[0-9]+p+[0-9]+kbps+(.*)";
-		if (requestURI.matches(vodDatetimeRegex)) 
-		{
-			endIndex = requestURI.lastIndexOf('_'); //if multiple files with same id requested such as : 541211332342978513714151_480p_1.mp4 
-			startIndex = requestURI.lastIndexOf("/");
-			//_480p regex
-			if(requestURI.matches(vodResolutionBitrateRegex)) {
-				requestURI = requestURI.substring(startIndex, endIndex);
-				endIndex = requestURI.lastIndexOf('.');
-				//Remove -2021-05-18_11-26-26 character size
-				endIndex -= Muxer.DATE_TIME_PATTERN.length()-3; 
-				startIndex = 0;
-			}
-			else {
-				//Remove -2021-05-18 character size
-				endIndex -= Muxer.DATE_TIME_PATTERN.length()-12;
-			}
-			return requestURI.substring(startIndex+1, endIndex);
-		}
-
-		//if multiple files with same id requested such as : 541211332342978513714151_480p5000kbps_1.mp4 or 541211332342978513714151_480p500kbps.mp4 
-		if (requestURI.matches(vodResolutionBitrateRegex)) 
-		{
-			endIndex = requestURI.lastIndexOf('_'); //if multiple files with same id requested such as : 541211332342978513714151_480p500kbps_1.mp4 
-			startIndex = requestURI.lastIndexOf("/");
-			if(requestURI.substring(startIndex+1, endIndex).matches(vodResolutionBitrateRegex)) 
-			{
-				requestURI = requestURI.substring(startIndex, endIndex);
-				endIndex = requestURI.lastIndexOf('_');
-				startIndex = 0;
-			}
-			return requestURI.substring(startIndex+1, endIndex);
+		boolean result = tokenService.checkHash(tokenId, streamId, sessionId, Token.PLAY_TOKEN);
+		if (result) {
+			verificationCache.putVerified(HASH_TYPE, tokenId, streamId, sessionId);
 		}
+		return result;
+	}
 
-		//if default mp4 file requested such as: 541211332342978513714151.mp4, 541211332342978513714151_23.mp4
-		String underScoreRegex = "(.*)_[0-9]+(.*)";
-		endIndex = requestURI.lastIndexOf(".mp4");
-		if (endIndex == -1) 
-		{
-			//if default webm file requested such as: 541211332342978513714151.webm
-			endIndex = requestURI.lastIndexOf(".webm");
+	private boolean checkJwtToken(ITokenService tokenService, String tokenId, String streamId, String sessionId) {
+		if (verificationCache.isVerified(JWT_TYPE, tokenId, streamId, sessionId)) {
+			return true;
 		}
-
-		if (endIndex != -1) 
-		{
-			if (requestURI.matches(underScoreRegex)) 
-			{
-				endIndex = requestURI.lastIndexOf("_");
-			}
-			return requestURI.substring(requestURI.lastIndexOf("/")+1, endIndex);
+		boolean result = tokenService.checkJwtToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN);
+		if (result) {
+			verificationCache.putVerified(JWT_TYPE, tokenId, streamId, sessionId);
 		}
+		return result;
+	}
 
+	public TokenVerificationCache getVerificationCache() {
+		return verificationCache;
+	}
 
-		return null;
+	public static String getStreamId(String requestURI) {
+		return MediaRequestPath.parse(requestURI).getStreamId();
 	}
 
 
@@ -0,0 +1,427 @@
+package io.antmedia.muxer;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_clone;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avutil.AVMEDIA_TYPE_VIDEO;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.muxer.buffer.PooledBuffer;
+
+/**
+ * Writes the packets of a stream to a single {@link Muxer} in another thread.
+ *
+ * {@link MuxAdaptor} puts the packets into a bounded single-producer/single-consumer ring and returns immediately
+ * so that a slow muxer(slow RTMP endpoint, slow disk, etc.) does not delay the other muxers of the stream.
+ * What happens when the ring is full is decided by {@link OverflowPolicy}
+ *
+ * Producer methods(offer*) should be called from a single thread which is the drain worker of the stream
+ */
+public class AsyncMuxerWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncMuxerWriter.class);
+
+	public enum OverflowPolicy {
+		/**
+		 * Drop the packets until the next video key frame when the queue is full
+		 */
+		DROP_TO_NEXT_KEYFRAME,
+		/**
+		 * Remove the muxer from the stream when the queue is full
+		 */
+		DISCONNECT;
+
+		/**
+		 * Blocking the producer is not a policy because packets are offered in the shared workers of
+		 * {@link PacketDrainScheduler} and it would stop the other streams of the same worker
+		 *
+		 * @return the policy or null if the value is not a policy
+		 */
+		public static OverflowPolicy parse(String value) {
+			if (value != null) {
+				for (OverflowPolicy policy : values()) {
+					if (policy.name().equalsIgnoreCase(value.trim())) {
+						return policy;
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return the policy or {@link #DROP_TO_NEXT_KEYFRAME} if the value is not a policy
+		 */
+		public static OverflowPolicy fromString(String value) {
+			OverflowPolicy policy = parse(value);
+			return policy != null ? policy : DROP_TO_NEXT_KEYFRAME;
+		}
+	}
+
+	private static final int TYPE_VIDEO_BUFFER = 1;
+	private static final int TYPE_AUDIO_BUFFER = 2;
+	private static final int TYPE_PACKET = 3;
+
+	/**
+	 * Max number of the writer threads. It's more than the number of cores because writing to a network
+	 * endpoint or to the disk may block the thread
+	 */
+	public static final int MAX_WRITER_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	/**
+	 * Threads are created on demand up to {@link #MAX_WRITER_THREADS} and they're stopped when they're idle.
+	 * Writers that are scheduled when all threads are busy wait in the queue. There is at most one entry
+	 * for each writer in the queue
+	 */
+	private static final ThreadPoolExecutor executor = createExecutor();
+
+	/**
+	 * Disconnect listeners close the writer and wait for its drain job, so they're not run in the writer threads.
+	 * Otherwise they may wait for a drain job that is queued behind them
+	 */
+	private static final ExecutorService disconnectExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "muxer-writer-disconnect");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Slots of the ring are allocated once and reused
+	 */
+	private static class Entry {
+		int type;
+		PooledBuffer buffer;
+		AVPacket packet;
+		AVStream stream;
+		long dts;
+		long pts;
+		int streamIndex;
+		boolean keyFrame;
+
+		void clear() {
+			if (buffer != null) {
+				buffer.release();
+				buffer = null;
+			}
+			if (packet != null) {
+				av_packet_free(packet);
+				packet = null;
+			}
+			stream = null;
+		}
+	}
+
+	private final Muxer muxer;
+	private final Entry[] ring;
+	private final int mask;
+	private final OverflowPolicy overflowPolicy;
+
+	/**
+	 * Index of the next entry to be read by the consumer
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * Index of the next entry to be written by the producer
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	private final LongAdder droppedPacketCount = new LongAdder();
+
+	private final Consumer<AsyncMuxerWriter> disconnectListener;
+
+	private volatile boolean closed = false;
+	/**
+	 * It's true if the writer does not accept packets because it's stopped or closed normally
+	 */
+	private volatile boolean stopped = false;
+	/**
+	 * It's true only if the muxer is disconnected because it cannot keep up with the stream
+	 */
+	private volatile boolean disconnected = false;
+
+	/**
+	 * Accessed only by the producer
+	 */
+	private boolean waitingForKeyFrame = false;
+
+	private static ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(MAX_WRITER_THREADS, MAX_WRITER_THREADS, 60, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<>(), r -> {
+					Thread thread = new Thread(r, "muxer-writer-" + threadCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		threadPoolExecutor.allowCoreThreadTimeOut(true);
+		return threadPoolExecutor;
+	}
+
+	/**
+	 * @param muxer to write the packets
+	 * @param capacity of the queue. It's rounded up to the power of two
+	 * @param overflowPolicy what to do when the queue is full
+	 * @param disconnectListener is called when the muxer is disconnected due to {@link OverflowPolicy#DISCONNECT}
+	 */
+	public AsyncMuxerWriter(Muxer muxer, int capacity, OverflowPolicy overflowPolicy, Consumer<AsyncMuxerWriter> disconnectListener) {
+		this.muxer = muxer;
+		this.overflowPolicy = overflowPolicy;
+		this.disconnectListener = disconnectListener;
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		ring = new Entry[size];
+		for (int i = 0; i < size; i++) {
+			ring[i] = new Entry();
+		}
+		mask = size - 1;
+	}
+
+	public boolean offerVideoBuffer(PooledBuffer buffer, long dts, int streamIndex, boolean isKeyFrame, long pts) {
+		long index = claim(true, isKeyFrame);
+		if (index < 0) {
+			return false;
+		}
+		Entry entry = ring[(int)(index & mask)];
+		entry.type = TYPE_VIDEO_BUFFER;
+		entry.buffer = buffer.retain();
+		entry.dts = dts;
+		entry.pts = pts;
+		entry.streamIndex = streamIndex;
+		entry.keyFrame = isKeyFrame;
+		publish(index);
+		return true;
+	}
+
+	public boolean offerAudioBuffer(PooledBuffer buffer, int streamIndex, long timestamp) {
+		long index = claim(false, false);
+		if (index < 0) {
+			return false;
+		}
+		Entry entry = ring[(int)(index & mask)];
+		entry.type = TYPE_AUDIO_BUFFER;
+		entry.buffer = buffer.retain();
+		entry.dts = timestamp;
+		entry.pts = timestamp;
+		entry.streamIndex = streamIndex;
+		publish(index);
+		return true;
+	}
+
+	/**
+	 * Packet is cloned so that caller can unref the packet after this method returns
+	 */
+	public boolean offerPacket(AVPacket pkt, AVStream stream) {
+		boolean isVideo = stream.codecpar().codec_type() == AVMEDIA_TYPE_VIDEO;
+		long index = claim(isVideo, isVideo && (pkt.flags() & AV_PKT_FLAG_KEY) != 0);
+		if (index < 0) {
+			return false;
+		}
+		Entry entry = ring[(int)(index & mask)];
+		entry.type = TYPE_PACKET;
+		entry.packet = av_packet_clone(pkt);
+		entry.stream = stream;
+		publish(index);
+		return true;
+	}
+
+	/**
+	 * Only video packets wait for the key frame after an overflow. Other packets do not depend on
+	 * the previous ones so they're dropped one by one when the queue is full
+	 *
+	 * @return index of the slot to write or -1 if the packet should be dropped
+	 */
+	private long claim(boolean isVideo, boolean isKeyFrame) {
+		if (closed || stopped || disconnected) {
+			droppedPacketCount.increment();
+			return -1;
+		}
+
+		if (isVideo && waitingForKeyFrame && !isKeyFrame) {
+			droppedPacketCount.increment();
+			return -1;
+		}
+
+		long index = tail.get();
+		if (index - head.get() >= ring.length)
+		{
+			droppedPacketCount.increment();
+			if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+				disconnect();
+			}
+			else if (isVideo) {
+				if (!waitingForKeyFrame) {
+					logger.warn("Queue is full for muxer:{} and url:{}. Dropping video packets until next key frame", muxer.getFormat(), muxer.getOutputURL());
+				}
+				waitingForKeyFrame = true;
+			}
+			return -1;
+		}
+		if (isVideo) {
+			waitingForKeyFrame = false;
+		}
+		return index;
+	}
+
+	private void publish(long index) {
+		tail.lazySet(index + 1);
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(this::drain);
+		}
+	}
+
+	private void drain() {
+		try {
+			long index;
+			while (!closed && (index = head.get()) != tail.get())
+			{
+				Entry entry = ring[(int)(index & mask)];
+				try {
+					write(entry);
+				}
+				catch (Exception e) {
+					logger.error("Exception in writing to muxer:{} url:{} {}", muxer.getFormat(), muxer.getOutputURL(), ExceptionUtils.getStackTrace(e));
+				}
+				finally {
+					entry.clear();
+					head.lazySet(index + 1);
+				}
+			}
+		}
+		finally {
+			scheduled.set(false);
+		}
+
+		//there may be new entries that are published after the loop and before resetting scheduled
+		if (!closed && head.get() != tail.get()) {
+			schedule();
+		}
+	}
+
+	private void write(Entry entry) {
+		if (entry.type == TYPE_VIDEO_BUFFER) {
+			muxer.writeVideoBuffer(entry.buffer, entry.dts, 0, entry.streamIndex, entry.keyFrame, 0, entry.pts);
+		}
+		else if (entry.type == TYPE_AUDIO_BUFFER) {
+			muxer.writeAudioBuffer(entry.buffer, entry.streamIndex, entry.dts);
+		}
+		else if (entry.type == TYPE_PACKET) {
+			muxer.writePacket(entry.packet, entry.stream);
+		}
+	}
+
+	private void disconnect() {
+		if (!disconnected) {
+			disconnected = true;
+			logger.warn("Queue is full for muxer:{} and url:{}. Muxer is being disconnected", muxer.getFormat(), muxer.getOutputURL());
+			if (disconnectListener != null) {
+				disconnectExecutor.execute(() -> disconnectListener.accept(this));
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting packets. Queued packets continue to be written in the writer thread.
+	 * It lets the writers of a stream flush their queues in parallel before they're closed one by one
+	 */
+	public void stop() {
+		stopped = true;
+		schedule();
+	}
+
+	/**
+	 * Stop accepting packets and wait for the queued packets to be written.
+	 * The packets that cannot be written in time are dropped. It always waits for the packet that is
+	 * being written so that the muxer is not used by the writer thread after this method returns.
+	 *
+	 * It does not write the trailer. Caller should write the trailer after this method returns
+	 *
+	 * @param timeoutMs max time to wait for the queued packets
+	 */
+	public void close(long timeoutMs) {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		//let the consumer write the remaining packets
+		stopped = true;
+		while (head.get() != tail.get() && System.currentTimeMillis() < deadline) {
+			schedule();
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		closed = true;
+
+		//writer thread stops after the packet that it's writing
+		boolean logged = false;
+		while (scheduled.get()) {
+			if (!logged && System.currentTimeMillis() >= deadline) {
+				logger.warn("Muxer:{} url:{} is still writing after {}ms while it's being closed. Waiting for it to finish", muxer.getFormat(), muxer.getOutputURL(), timeoutMs);
+				logged = true;
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+
+		//release the packets that cannot be written in time
+		long index;
+		while ((index = head.get()) != tail.get()) {
+			ring[(int)(index & mask)].clear();
+			head.lazySet(index + 1);
+			droppedPacketCount.increment();
+		}
+	}
+
+	public Muxer getMuxer() {
+		return muxer;
+	}
+
+	public int getQueueSize() {
+		return (int)(tail.get() - head.get());
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	public long getDroppedPacketCount() {
+		return droppedPacketCount.sum();
+	}
+
+	/**
+	 * @return true if the muxer is disconnected because its queue is full. It's false if the writer is stopped or closed normally
+	 */
+	public boolean isDisconnected() {
+		return disconnected;
+	}
+
+	public boolean isStopped() {
+		return stopped || closed;
+	}
+
+	/**
+	 * @return number of the threads that are writing to the muxers at the moment
+	 */
+	public static int getActiveWriterThreadCount() {
+		return executor.getActiveCount();
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+}
@@ -0,0 +1,136 @@
+package io.antmedia.muxer;
+
+import static org.bytedeco.ffmpeg.global.avformat.AVIO_FLAG_WRITE;
+import static org.bytedeco.ffmpeg.global.avformat.avio_close;
+import static org.bytedeco.ffmpeg.global.avformat.avio_open2;
+import static org.bytedeco.ffmpeg.global.avutil.AVERROR_EXTERNAL;
+import static org.bytedeco.ffmpeg.global.avutil.av_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_malloc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVIOContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Notifies when FFmpeg closes a file that HLS muxer writes to the disk(segments, playlist and init file).
+ *
+ * HLS muxer opens each file through AVFormatContext.io_open and closes it through io_close2. These callbacks are replaced
+ * with the ones in this class. Files are opened and closed as FFmpeg does by default and the listener is called with the url
+ * of each written file after it's closed, so that a segment is known to be completed without checking the playlist.
+ *
+ * Callbacks are static because JavaCPP has a limited number of callback instances for each type.
+ * Notifier of a context is found with AVFormatContext.opaque as in {@link InMemoryHLSOutput}.
+ *
+ * Listener is called in the muxer thread so it should not block.
+ */
+public class FileCloseNotifier {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileCloseNotifier.class);
+
+	/**
+	 * Notifiers by the address of AVFormatContext.opaque
+	 */
+	private static final Map<Long, FileCloseNotifier> notifiers = new ConcurrentHashMap<>();
+
+	/**
+	 * Open files by the address of their AVIOContext
+	 */
+	private static final Map<Long, OpenFile> openFiles = new ConcurrentHashMap<>();
+
+	private static final IoOpenCallback ioOpenCallback = new IoOpenCallback().retainReference();
+
+	private static final IoCloseCallback ioCloseCallback = new IoCloseCallback().retainReference();
+
+	private final Consumer<String> listener;
+
+	private Pointer token;
+
+	private static class OpenFile {
+		final FileCloseNotifier notifier;
+		final String url;
+
+		OpenFile(FileCloseNotifier notifier, String url) {
+			this.notifier = notifier;
+			this.url = url;
+		}
+	}
+
+	static class IoOpenCallback extends AVFormatContext.Io_open_AVFormatContext_PointerPointer_BytePointer_int_PointerPointer {
+		@Override
+		public int call(AVFormatContext s, PointerPointer pb, BytePointer url, int flags, PointerPointer options) {
+			try {
+				int ret = avio_open2(pb, url, flags, s.interrupt_callback(), options);
+				if (ret >= 0 && (flags & AVIO_FLAG_WRITE) != 0 && s.opaque() != null) {
+					FileCloseNotifier notifier = notifiers.get(s.opaque().address());
+					if (notifier != null) {
+						openFiles.put(pb.get(0).address(), new OpenFile(notifier, url.getString()));
+					}
+				}
+				return ret;
+			}
+			catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				return AVERROR_EXTERNAL();
+			}
+		}
+	}
+
+	static class IoCloseCallback extends AVFormatContext.Io_close2_AVFormatContext_AVIOContext {
+		@Override
+		public int call(AVFormatContext s, AVIOContext pb) {
+			if (pb == null || pb.isNull()) {
+				return 0;
+			}
+			OpenFile file = openFiles.remove(pb.address());
+			int ret = avio_close(pb);
+			if (file != null) {
+				try {
+					file.notifier.listener.accept(file.url);
+				}
+				catch (Exception e) {
+					logger.error("Exception in file close listener for {} {}", file.url, ExceptionUtils.getStackTrace(e));
+				}
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * @param listener is called with the url of each file after it's closed
+	 */
+	public FileCloseNotifier(Consumer<String> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Start getting the close events of the files of the context. It should be called before writing the header
+	 */
+	public void attach(AVFormatContext context) {
+		token = av_malloc(1);
+		notifiers.put(token.address(), this);
+		context.opaque(token);
+		context.io_open(ioOpenCallback);
+		context.io_close2(ioCloseCallback);
+	}
+
+	/**
+	 * Stop notifying. Files that are open are still closed by the callbacks
+	 */
+	public void detach() {
+		if (token != null) {
+			notifiers.remove(token.address());
+			openFiles.entrySet().removeIf(entry -> entry.getValue().notifier == this);
+			av_free(token);
+			token = null;
+		}
+	}
+}
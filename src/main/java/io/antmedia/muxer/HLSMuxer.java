@@ -8,8 +8,19 @@ import static org.bytedeco.ffmpeg.global.avutil.AV_OPT_SEARCH_CHILDREN;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bytedeco.ffmpeg.avcodec.*;
@@ -24,6 +35,7 @@ import org.red5.server.api.scope.IScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.antmedia.storage.SegmentUploadPipeline;
 import io.antmedia.storage.StorageClient;
 import io.vertx.core.Vertx;
 
@@ -86,6 +98,87 @@ public class HLSMuxer extends Muxer  {
 
 	private AVPacket tmpData;
 
+	/**
+	 * If it's true, playlist and segments are written to {@link InMemorySegmentStore} instead of the disk
+	 */
+	private boolean inMemoryStoreEnabled = false;
+
+	private InMemoryHLSOutput inMemoryOutput;
+
+	/**
+	 * It's true if hls flags has delete_segments and it's removed from the flags. Old segments are deleted 
+	 * by {@link InMemoryHLSOutput} in memory mode and by the muxer after they're uploaded if uploading is enabled
+	 */
+	private boolean deleteSegmentsFlag = false;
+
+	/**
+	 * Playlist is checked again in this interval if the storage falls behind while the stream is running
+	 */
+	public static final int PLAYLIST_CHECK_INTERVAL_MS = 200;
+
+	private static final Pattern SEGMENT_INDEX_PATTERN = Pattern.compile("^([0-9]{1,18})\\.(?:ts|m4s)$");
+
+	/**
+	 * Uploads the closed segments and the playlist while the stream is running. It's null if uploading is not enabled
+	 */
+	private SegmentUploadPipeline uploadPipeline;
+
+	/**
+	 * Signals the upload check when FFmpeg closes a segment or the playlist on the disk
+	 */
+	private FileCloseNotifier fileCloseNotifier;
+
+	/**
+	 * It's true if an upload check is waiting to be run. Signals are coalesced so there is at most one waiting check
+	 */
+	private final AtomicBoolean uploadCheckPending = new AtomicBoolean(false);
+
+	/**
+	 * Name of the segments without the index and the extension. Index is parsed after it
+	 */
+	private String segmentNamePrefix;
+
+	private final Object uploadLock = new Object();
+
+	private long lastQueuedSegmentIndex = -1;
+
+	private boolean initFileQueued = false;
+
+	private long lastQueuedPlaylistModified = 0;
+
+	private long lastQueuedPlaylistLength = 0;
+
+	/**
+	 * Number of segments that are kept after they leave the playlist for the players that have the previous playlist.
+	 * It's the default value of the hls_delete_threshold option of FFmpeg
+	 */
+	public static final int SEGMENT_DELETE_THRESHOLD = 1;
+
+	/**
+	 * Segments in the last queued playlist by their index and whether they're queued to upload
+	 */
+	private final TreeMap<Long, SegmentFile> playlistSegments = new TreeMap<>();
+
+	/**
+	 * Segments that left the playlist and are waiting for {@link #SEGMENT_DELETE_THRESHOLD}
+	 */
+	private final Deque<SegmentFile> removedSegments = new ArrayDeque<>();
+
+	private static class SegmentFile {
+		final String name;
+		final boolean queued;
+
+		SegmentFile(String name, boolean queued) {
+			this.name = name;
+			this.queued = queued;
+		}
+	}
+
+	/**
+	 * Names of the files that are queued but could not be uploaded. They're uploaded again when the stream is finished
+	 */
+	private final Set<String> failedUploads = ConcurrentHashMap.newKeySet();
+
 	public HLSMuxer(Vertx vertx, StorageClient storageClient, String s3StreamsFolderPath, int uploadExtensionsToS3, String httpEndpoint, boolean addDateTimeToResourceName) {
 		super(vertx);
 		this.storageClient = storageClient;
@@ -187,17 +280,28 @@ public class HLSMuxer extends Muxer  {
 			
 					
 			options.put("hls_segment_filename", segmentFilename);
+			segmentNamePrefix = segmentFilename.substring(segmentFilename.lastIndexOf('/') + 1, segmentFilename.lastIndexOf("%0"));
 
 			if (hlsPlayListType != null && (hlsPlayListType.equals("event") || hlsPlayListType.equals("vod"))) 
 			{
 				options.put("hls_playlist_type", hlsPlayListType);
 			}
 
+			if (StringUtils.isBlank(httpEndpoint) && uploadHLSToS3 && storageClient != null && storageClient.isEnabled()) {
+				uploadPipeline = storageClient.getSegmentUploadPipeline();
+			}
+
+			if (isInMemory()) {
+				this.hlsFlags = removeFlagsNotSupportedInMemory(this.hlsFlags);
+			}
+			else if (uploadPipeline != null) {
+				//FFmpeg may delete a segment before it's uploaded so the muxer deletes them
+				this.hlsFlags = removeDeleteSegmentsFlag(this.hlsFlags);
+			}
+
 			if (this.hlsFlags != null && !this.hlsFlags.isEmpty()) {
 				options.put("hls_flags", this.hlsFlags);
 			}
-			
-			
 
 			isInitialized = true;
 		}
@@ -224,10 +328,40 @@ public class HLSMuxer extends Muxer  {
 				logger.info("Could not create output context for {}",  getOutputURL());
 				return null;
 			}
+
+			if (isInMemory()) {
+				boolean persistenceEnabled = !deleteFileOnExit || (uploadHLSToS3 && storageClient != null && storageClient.isEnabled());
+				//persisted segments are deleted by the muxer after they're uploaded if uploading is enabled
+				inMemoryOutput = new InMemoryHLSOutput(InMemorySegmentStore.getInstance(), streamId, getMaxSegmentCountInMemory(), 
+						persistenceEnabled, deleteSegmentsFlag && uploadPipeline == null);
+				inMemoryOutput.attach(outputFormatContext);
+				if (uploadPipeline != null) {
+					//segments are persisted before the playlist that refers to them
+					inMemoryOutput.setPersistenceListener(key -> {
+						if (key.endsWith(extension)) {
+							queueClosedSegments();
+						}
+					});
+				}
+				logger.info("HLS files are written to memory for stream:{} persistence to disk:{}", streamId, persistenceEnabled);
+			}
+			else if (uploadPipeline != null) {
+				//segments are uploaded when they're closed instead of checking the playlist for each packet
+				fileCloseNotifier = new FileCloseNotifier(this::fileClosed);
+				fileCloseNotifier.attach(outputFormatContext);
+			}
 		}
 		return outputFormatContext;
 	}
 
+	/**
+	 * Frames are passed to FFmpeg in the write call and FFmpeg copies the non ref-counted packets
+	 */
+	@Override
+	public boolean isPooledWriteSupported() {
+		return true;
+	}
+
 	@Override
 	public boolean isCodecSupported(int codecId) {
 		return (codecId == AV_CODEC_ID_H264 
@@ -297,7 +431,179 @@ public class HLSMuxer extends Muxer  {
 		else {
 			super.writePacket(pkt, inputTimebase, outputTimebase, codecType);
 		}
+	}
+
+	/**
+	 * Called in the muxer thread when FFmpeg closes a file. Playlist is read and the uploads are queued in a vertx worker
+	 */
+	private void fileClosed(String url) {
+		signalUploadCheck();
+		if (url.endsWith(".tmp")) {
+			//playlist is written to a temp file when temp_file flag is set, it's renamed after it's closed
+			vertx.setTimer(PLAYLIST_CHECK_INTERVAL_MS, l -> signalUploadCheck());
+		}
+	}
+
+	/**
+	 * Schedule {@link #queueClosedSegments()} in a vertx worker. It does nothing if a check is already waiting.
+	 * If the storage falls behind, it's checked again after {@link #PLAYLIST_CHECK_INTERVAL_MS} while the stream is running
+	 */
+	private void signalUploadCheck() {
+		if (uploadCheckPending.compareAndSet(false, true)) {
+			vertx.executeBlocking(() -> {
+				//reset before checking so that files closed during the check are not missed
+				uploadCheckPending.set(false);
+				if (!queueClosedSegments() && isRunning.get()) {
+					vertx.setTimer(PLAYLIST_CHECK_INTERVAL_MS, l -> signalUploadCheck());
+				}
+				return null;
+			}, false);
+		}
+	}
+
+	/**
+	 * Queue the segments in the playlist that are not queued yet and then the playlist itself to upload.
+	 * Segments in the playlist are closed, so they are uploaded completely.
+	 * If delete_segments flag is set, segments that leave the playlist are deleted from the storage and the disk
+	 * after the playlist is uploaded.
+	 * 
+	 * @return false if the storage falls behind. Remaining segments and the playlist are queued in the next call
+	 */
+	public boolean queueClosedSegments() {
+		synchronized (uploadLock) {
+			if (uploadPipeline == null) {
+				return false;
+			}
+			long modified = file.lastModified();
+			long length = file.length();
+			if (modified == 0 || (modified == lastQueuedPlaylistModified && length == lastQueuedPlaylistLength)) {
+				return true;
+			}
+
+			byte[] playlist;
+			try {
+				playlist = Files.readAllBytes(file.toPath());
+			}
+			catch (IOException e) {
+				logger.warn("Cannot read the playlist {} to upload for stream:{} error:{}", file, streamId, e.getMessage());
+				return false;
+			}
+
+			String uploadId = file.getAbsolutePath();
+			long firstSegmentIndex = -1;
+			for (String line : new String(playlist, StandardCharsets.UTF_8).split("\n")) {
+				line = line.trim();
+				if (line.startsWith("#EXT-X-MAP:")) {
+					if (!initFileQueued && segmentInitFilename != null) {
+						if (!queueUpload(uploadId, segmentInitFilename)) {
+							return false;
+						}
+						initFileQueued = true;
+					}
+				}
+				else if (!line.isEmpty() && !line.startsWith("#")) {
+					String segmentName = line.substring(line.lastIndexOf('/') + 1);
+					long index = getSegmentIndex(segmentName);
+					if (firstSegmentIndex == -1) {
+						firstSegmentIndex = index;
+					}
+					if (index > lastQueuedSegmentIndex) {
+						if (!queueUpload(uploadId, segmentName)) {
+							return false;
+						}
+						lastQueuedSegmentIndex = index;
+						playlistSegments.put(index, new SegmentFile(segmentName, true));
+					}
+				}
+			}
+
+			String playlistName = file.getName();
+			uploadPipeline.uploadPlaylist(uploadId, getStorageKey(playlistName), playlist)
+				.thenAccept(uploaded -> trackUpload(playlistName, uploaded));
+			lastQueuedPlaylistModified = modified;
+			lastQueuedPlaylistLength = length;
 
+			if (deleteSegmentsFlag && firstSegmentIndex != -1) {
+				deleteRemovedSegments(uploadId, firstSegmentIndex);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Deletes the segments that are before the first segment of the playlist except the last {@link #SEGMENT_DELETE_THRESHOLD}
+	 * of them. It's called with the upload lock
+	 */
+	private void deleteRemovedSegments(String uploadId, long firstSegmentIndex) {
+		Map<Long, SegmentFile> removed = playlistSegments.headMap(firstSegmentIndex);
+		removedSegments.addAll(removed.values());
+		removed.clear();
+
+		while (removedSegments.size() > SEGMENT_DELETE_THRESHOLD) {
+			SegmentFile segment = removedSegments.poll();
+			failedUploads.remove(segment.name);
+			uploadPipeline.deleteSegment(uploadId, getStorageKey(segment.name), new File(file.getParentFile(), segment.name), segment.queued);
+		}
+	}
+
+	private boolean queueUpload(String uploadId, String fileName) {
+		CompletableFuture<Boolean> upload = uploadPipeline.uploadSegment(uploadId, getStorageKey(fileName), new File(file.getParentFile(), fileName));
+		if (upload == null) {
+			logger.debug("Storage falls behind for stream:{}. {} will be uploaded later", streamId, fileName);
+			return false;
+		}
+		upload.thenAccept(uploaded -> trackUpload(fileName, uploaded));
+		return true;
+	}
+
+	private void trackUpload(String fileName, boolean uploaded) {
+		if (uploaded) {
+			failedUploads.remove(fileName);
+		}
+		else {
+			failedUploads.add(fileName);
+		}
+	}
+
+	/**
+	 * @return index of the segment of this muxer or -1 if it's not a segment of this muxer
+	 */
+	public long getSegmentIndex(String segmentName) {
+		return getSegmentIndex(segmentName, segmentNamePrefix);
+	}
+
+	/**
+	 * @param segmentName name of the segment file
+	 * @param segmentNamePrefix name of the segments without the index and the extension. Digits in the prefix, i.e. in
+	 * the stream name, are not part of the index
+	 * @return index of the segment or -1 if it's not a segment with this prefix
+	 */
+	public static long getSegmentIndex(String segmentName, String segmentNamePrefix) {
+		if (segmentNamePrefix == null || !segmentName.startsWith(segmentNamePrefix)) {
+			return -1;
+		}
+		Matcher matcher = SEGMENT_INDEX_PATTERN.matcher(segmentName.substring(segmentNamePrefix.length()));
+		return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+	}
+
+	/**
+	 * @return true if the latest version of the file is uploaded by the pipeline
+	 */
+	private boolean isUploaded(File hlsFile) {
+		String name = hlsFile.getName();
+		if (uploadPipeline == null || failedUploads.contains(name)) {
+			return false;
+		}
+		synchronized (uploadLock) {
+			if (name.equals(file.getName())) {
+				return hlsFile.lastModified() == lastQueuedPlaylistModified;
+			}
+			if (name.equals(segmentInitFilename)) {
+				return initFileQueued;
+			}
+			long index = getSegmentIndex(name);
+			return index != -1 && index <= lastQueuedSegmentIndex;
+		}
 	}
 
 	public synchronized void addID3Data(String data) {
@@ -372,41 +678,24 @@ public class HLSMuxer extends Muxer  {
 			logger.info("Delete File onexit:{} upload to S3:{} stream:{} hls time:{} hlslist size:{}",
 					deleteFileOnExit, uploadHLSToS3, streamId, hlsTime, hlsListSize);
 			
+			if (uploadPipeline != null && !isInMemory()) {
+				//final segment and playlist are uploaded now, local files are kept for the players until the timer
+				queueClosedSegments();
+			}
+			
+			final InMemoryHLSOutput memoryOutput = inMemoryOutput;
 			vertx.setTimer(Integer.parseInt(hlsTime) * Integer.parseInt(hlsListSize) * 1000l, l -> 
 			{
-				final String filenameWithoutExtension = file.getName().substring(0, file.getName().lastIndexOf(extension));
-	
-				//SEGMENT_SUFFIX_TS is %09d.ts
-				//convert segmentFileName to regular expression
-				
-				int indexOfSuffix = 0;
-				if (HLS_SEGMENT_TYPE_FMP4.equals(hlsSegmentType)) {
-					indexOfSuffix = segmentFilename.indexOf(SEGMENT_SUFFIX_FMP4);
-				}
-				else {
-					indexOfSuffix = segmentFilename.indexOf(SEGMENT_SUFFIX_TS);
+				if (memoryOutput != null) {
+					memoryOutput.removeAll();
 				}
 				
-				String segmentFileWithoutSuffix = segmentFilename.substring(segmentFilename.lastIndexOf("/")+1, indexOfSuffix);
-				String regularExpression = segmentFileWithoutSuffix + "[0-9]*\\.(?:ts|m4s)$";
-				File[] files = getHLSFilesInDirectory(regularExpression);
-	
-				if (files != null)
-				{
-	
-					for (int i = 0; i < files.length; i++) 
-					{
-						
-						handleFinalization(files[i]);
-					}
+				if (uploadPipeline != null) {
+					uploadPipeline.finish(file.getAbsolutePath()).thenRun(this::finalizeFiles);
 				}
-				
-				if (segmentInitFilename != null) {
-					handleFinalization(new File(file.getParentFile() + File.separator + segmentInitFilename));					
+				else {
+					finalizeFiles();
 				}
-				
-				
-				
 			});
 		}
 		else {
@@ -416,14 +705,51 @@ public class HLSMuxer extends Muxer  {
 
 	}
 
+	private void finalizeFiles() {
+		
+		//SEGMENT_SUFFIX_TS is %09d.ts
+		//convert segmentFileName to regular expression
+		
+		int indexOfSuffix = 0;
+		if (HLS_SEGMENT_TYPE_FMP4.equals(hlsSegmentType)) {
+			indexOfSuffix = segmentFilename.indexOf(SEGMENT_SUFFIX_FMP4);
+		}
+		else {
+			indexOfSuffix = segmentFilename.indexOf(SEGMENT_SUFFIX_TS);
+		}
+		
+		String segmentFileWithoutSuffix = segmentFilename.substring(segmentFilename.lastIndexOf("/")+1, indexOfSuffix);
+		String regularExpression = segmentFileWithoutSuffix + "[0-9]*\\.(?:ts|m4s)$";
+		File[] files = getHLSFilesInDirectory(regularExpression);
+
+		if (files != null)
+		{
+
+			for (int i = 0; i < files.length; i++) 
+			{
+				
+				handleFinalization(files[i]);
+			}
+		}
+		
+		if (segmentInitFilename != null) {
+			handleFinalization(new File(file.getParentFile() + File.separator + segmentInitFilename));					
+		}
+	}
+
 	private void handleFinalization(File file) {
 		
 		try {
-			if (uploadHLSToS3 && storageClient.isEnabled()) 
+			if (isUploaded(file)) 
+			{
+				//it's already uploaded while the stream is running
+				if (deleteFileOnExit) {
+					Files.deleteIfExists(file.toPath());
+				}
+			}
+			else if (uploadHLSToS3 && storageClient.isEnabled()) 
 			{
-				String path = replaceDoubleSlashesWithSingleSlash(s3StreamsFolderPath + File.separator
-						+ (subFolder != null ? subFolder : "") + File.separator + file.getName());
-				storageClient.save(path, file, deleteFileOnExit);
+				storageClient.save(getStorageKey(file.getName()), file, deleteFileOnExit);
 			} else if (deleteFileOnExit) {
 				Files.deleteIfExists(file.toPath());
 			}
@@ -432,6 +758,11 @@ public class HLSMuxer extends Muxer  {
 		}
 	}
 
+	private String getStorageKey(String fileName) {
+		return replaceDoubleSlashesWithSingleSlash(s3StreamsFolderPath + File.separator
+				+ (subFolder != null ? subFolder : "") + File.separator + fileName);
+	}
+
 	public File[] getHLSFilesInDirectory(String regularExpression) {
 		return file.getParentFile().listFiles((dir, name) -> 
 		
@@ -627,10 +958,82 @@ public class HLSMuxer extends Muxer  {
 			av_packet_free(id3DataPkt);
 			id3DataPkt = null;
 		}
+		if (inMemoryOutput != null) {
+			inMemoryOutput.detach();
+		}
+		if (fileCloseNotifier != null) {
+			fileCloseNotifier.detach();
+			fileCloseNotifier = null;
+		}
 
 	}
 	
 	public ByteBuffer getPendingSEIData() {
 		return pendingSEIData;
 	}
+
+	/**
+	 * Files are written to memory if it's enabled and there is no http endpoint
+	 */
+	public boolean isInMemory() {
+		return inMemoryStoreEnabled && StringUtils.isBlank(httpEndpoint);
+	}
+
+	/**
+	 * FFmpeg cannot delete or rename the files in memory so that delete_segments and temp_file flags are removed.
+	 * Old segments are deleted by {@link InMemoryHLSOutput}
+	 */
+	public String removeFlagsNotSupportedInMemory(String flags) {
+		return removeFlags(flags, true);
+	}
+
+	/**
+	 * FFmpeg deletes the segments when they leave the playlist even if they're not uploaded yet so that delete_segments 
+	 * flag is removed. Old segments are deleted by the muxer after they're uploaded
+	 */
+	public String removeDeleteSegmentsFlag(String flags) {
+		return removeFlags(flags, false);
+	}
+
+	private String removeFlags(String flags, boolean removeTempFile) {
+		if (StringUtils.isBlank(flags)) {
+			return flags;
+		}
+		StringBuilder result = new StringBuilder();
+		for (String flag : flags.split("\\+")) {
+			if (flag.equals("delete_segments")) {
+				deleteSegmentsFlag = true;
+			}
+			else if (!flag.isEmpty() && !(removeTempFile && flag.equals("temp_file"))) {
+				result.append("+").append(flag);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return number of segments to keep in memory. Zero means all segments are kept for event and vod playlists
+	 */
+	public int getMaxSegmentCountInMemory() {
+		if ("event".equals(hlsPlayListType) || "vod".equals(hlsPlayListType)) {
+			return 0;
+		}
+		return Integer.parseInt(hlsListSize) + InMemoryHLSOutput.EXTRA_SEGMENT_COUNT;
+	}
+
+	public boolean isInMemoryStoreEnabled() {
+		return inMemoryStoreEnabled;
+	}
+
+	public void setInMemoryStoreEnabled(boolean inMemoryStoreEnabled) {
+		this.inMemoryStoreEnabled = inMemoryStoreEnabled;
+	}
+
+	public InMemoryHLSOutput getInMemoryOutput() {
+		return inMemoryOutput;
+	}
+
+	public SegmentUploadPipeline getUploadPipeline() {
+		return uploadPipeline;
+	}
 }
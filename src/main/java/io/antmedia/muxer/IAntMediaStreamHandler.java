@@ -59,6 +59,16 @@ public interface IAntMediaStreamHandler {
 	 */
 	public void setQualityParameters(String streamId, String quality, double speed, int inputQueueSize, long currentTimeMillis);
 
+	/**
+	 * Updates the WebRTC viewer count of the stream. Changes are merged and written to the datastore periodically
+	 * so it should be used instead of writing each change to the datastore
+	 * 
+	 * @param streamId
+	 * @param increment if it is true, increment viewer count by one
+	 * if it is false, decrement viewer count by one
+	 */
+	public void updateWebRTCViewerCount(String streamId, boolean increment);
+
     /***
      * Adds a MuxAdaptor when a muxAdaptor is created
      *
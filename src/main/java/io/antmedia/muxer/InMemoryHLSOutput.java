@@ -0,0 +1,384 @@
+package io.antmedia.muxer;
+
+import static org.bytedeco.ffmpeg.global.avformat.AVIO_FLAG_WRITE;
+import static org.bytedeco.ffmpeg.global.avformat.avio_alloc_context;
+import static org.bytedeco.ffmpeg.global.avformat.avio_close;
+import static org.bytedeco.ffmpeg.global.avformat.avio_context_free;
+import static org.bytedeco.ffmpeg.global.avformat.avio_flush;
+import static org.bytedeco.ffmpeg.global.avformat.avio_open2;
+import static org.bytedeco.ffmpeg.global.avutil.AVERROR_EXTERNAL;
+import static org.bytedeco.ffmpeg.global.avutil.av_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_malloc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVIOContext;
+import org.bytedeco.ffmpeg.avformat.Write_packet_Pointer_BytePointer_int;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Redirects the files that FFmpeg HLS muxer writes(playlist, segments and init file) to {@link InMemorySegmentStore}.
+ *
+ * HLS muxer opens each file through AVFormatContext.io_open and closes it through io_close2.
+ * These callbacks are replaced with the ones in this class and each file is written to memory through a custom AVIOContext.
+ * File is committed to the store when it's closed so that viewers never get a partial segment or playlist.
+ *
+ * Files that are opened for reading, i.e. hlsEncryptionKeyInfoFile, are opened from the file system as FFmpeg does by default.
+ *
+ * Callbacks are static because JavaCPP has a limited number of callback instances for each type.
+ * Output of a context is found with AVFormatContext.opaque which is copied to the segment contexts by HLS muxer.
+ *
+ * If persistence is enabled, committed files are also written to the disk in another thread. It's used when recording
+ * or uploading to S3 is wanted, otherwise disk is not touched at all.
+ */
+public class InMemoryHLSOutput {
+
+	private static final Logger logger = LoggerFactory.getLogger(InMemoryHLSOutput.class);
+
+	private static final int IO_BUFFER_SIZE = 32 * 1024;
+
+	/**
+	 * Number of extra segments that are kept after they are removed from the playlist
+	 * because players may still be downloading them
+	 */
+	public static final int EXTRA_SEGMENT_COUNT = 2;
+
+	/**
+	 * Outputs by the address of AVFormatContext.opaque
+	 */
+	private static final Map<Long, InMemoryHLSOutput> outputs = new ConcurrentHashMap<>();
+
+	/**
+	 * Open files by the address of AVIOContext.opaque
+	 */
+	private static final Map<Long, OpenFile> openFiles = new ConcurrentHashMap<>();
+
+	/**
+	 * Addresses of the AVIOContexts that are opened from the file system for reading
+	 */
+	private static final Set<Long> fileContexts = ConcurrentHashMap.newKeySet();
+
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	/**
+	 * Disk writes of a stream are executed in the same thread to keep their order
+	 */
+	private static final ExecutorService[] persistenceExecutors = new ExecutorService[Math.max(1, Runtime.getRuntime().availableProcessors() / 2)];
+
+	static {
+		for (int i = 0; i < persistenceExecutors.length; i++) {
+			persistenceExecutors[i] = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "hls-persist-" + threadCounter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	private static final IoOpenCallback ioOpenCallback = new IoOpenCallback().retainReference();
+
+	private static final IoCloseCallback ioCloseCallback = new IoCloseCallback().retainReference();
+
+	private static final WriteCallback writeCallback = new WriteCallback().retainReference();
+
+	private final InMemorySegmentStore store;
+
+	private final String streamId;
+
+	/**
+	 * Number of segments kept in memory. Zero means the segments are removed only by the size limit of the store
+	 */
+	private final int maxSegmentCount;
+
+	private final boolean persistenceEnabled;
+
+	private final boolean deleteOldSegmentsOnDisk;
+
+	private final ExecutorService persistenceExecutor;
+
+	/**
+	 * Segment keys in creation order. It's accessed in the muxer thread and in {@link #removeAll()}
+	 */
+	private final Deque<String> segments = new ArrayDeque<>();
+
+	/**
+	 * Playlist and init file keys
+	 */
+	private final Set<String> otherFiles = ConcurrentHashMap.newKeySet();
+
+	private Pointer token;
+
+	/**
+	 * Called in the persistence thread with the key of each file after it's written to the disk
+	 */
+	private Consumer<String> persistenceListener;
+
+	private static class OpenFile {
+		final InMemoryHLSOutput output;
+		final InMemorySegmentStore.Builder builder;
+
+		OpenFile(InMemoryHLSOutput output, InMemorySegmentStore.Builder builder) {
+			this.output = output;
+			this.builder = builder;
+		}
+	}
+
+	static class IoOpenCallback extends AVFormatContext.Io_open_AVFormatContext_PointerPointer_BytePointer_int_PointerPointer {
+		@Override
+		public int call(AVFormatContext s, PointerPointer pb, BytePointer url, int flags, PointerPointer options) {
+			try {
+				if ((flags & AVIO_FLAG_WRITE) == 0) {
+					//files that are read by the muxer like key info file are not in memory
+					int ret = avio_open2(pb, url, flags, s.interrupt_callback(), options);
+					if (ret >= 0) {
+						fileContexts.add(pb.get(0).address());
+					}
+					return ret;
+				}
+				InMemoryHLSOutput output = s.opaque() != null ? outputs.get(s.opaque().address()) : null;
+				if (output == null) {
+					logger.warn("Cannot open {} in memory because output is detached", url.getString());
+					return AVERROR_EXTERNAL();
+				}
+				pb.put(0, output.open(url.getString()));
+				return 0;
+			}
+			catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				return AVERROR_EXTERNAL();
+			}
+		}
+	}
+
+	static class IoCloseCallback extends AVFormatContext.Io_close2_AVFormatContext_AVIOContext {
+		@Override
+		public int call(AVFormatContext s, AVIOContext pb) {
+			if (pb == null || pb.isNull()) {
+				return 0;
+			}
+			try {
+				if (fileContexts.remove(pb.address())) {
+					return avio_close(pb);
+				}
+				avio_flush(pb);
+				Pointer opaque = pb.opaque();
+				OpenFile file = openFiles.remove(opaque.address());
+				if (file != null) {
+					file.output.close(file.builder);
+				}
+				av_free(pb.buffer());
+				avio_context_free(pb);
+				av_free(opaque);
+				return 0;
+			}
+			catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				return AVERROR_EXTERNAL();
+			}
+		}
+	}
+
+	static class WriteCallback extends Write_packet_Pointer_BytePointer_int {
+		@Override
+		public int call(Pointer opaque, BytePointer buf, int bufSize) {
+			OpenFile file = openFiles.get(opaque.address());
+			if (file == null) {
+				return AVERROR_EXTERNAL();
+			}
+			file.builder.write(buf.position(0).limit(bufSize).asByteBuffer());
+			return bufSize;
+		}
+	}
+
+	/**
+	 * @param store to keep the files
+	 * @param streamId owner of the files
+	 * @param maxSegmentCount number of segments to keep in memory. Zero means no limit
+	 * @param persistenceEnabled write the files to the disk as well
+	 * @param deleteOldSegmentsOnDisk delete the persisted segments when they are removed from memory as delete_segments flag does
+	 */
+	public InMemoryHLSOutput(InMemorySegmentStore store, String streamId, int maxSegmentCount, boolean persistenceEnabled, boolean deleteOldSegmentsOnDisk) {
+		this.store = store;
+		this.streamId = streamId;
+		this.maxSegmentCount = maxSegmentCount;
+		this.persistenceEnabled = persistenceEnabled;
+		this.deleteOldSegmentsOnDisk = deleteOldSegmentsOnDisk;
+		this.persistenceExecutor = persistenceExecutors[Math.abs(streamId.hashCode() % persistenceExecutors.length)];
+	}
+
+	/**
+	 * Redirect the files of the context to memory. It should be called before writing the header
+	 */
+	public void attach(AVFormatContext context) {
+		token = av_malloc(1);
+		outputs.put(token.address(), this);
+		context.opaque(token);
+		context.io_open(ioOpenCallback);
+		context.io_close2(ioCloseCallback);
+	}
+
+	/**
+	 * Stop redirecting. Files in memory are not removed. Call {@link #removeAll()} to remove them
+	 */
+	public void detach() {
+		if (token != null) {
+			outputs.remove(token.address());
+			openFiles.entrySet().removeIf(entry -> {
+				if (entry.getValue().output == this) {
+					entry.getValue().builder.abort();
+					return true;
+				}
+				return false;
+			});
+			av_free(token);
+			token = null;
+		}
+	}
+
+	private AVIOContext open(String url) {
+		Pointer opaque = av_malloc(1);
+		BytePointer buffer = new BytePointer(av_malloc(IO_BUFFER_SIZE));
+		AVIOContext avioContext = avio_alloc_context(buffer, IO_BUFFER_SIZE, 1, opaque, null, writeCallback, null);
+		avioContext.seekable(0);
+		openFiles.put(opaque.address(), new OpenFile(this, store.newBuilder(url, streamId)));
+		return avioContext;
+	}
+
+	private void close(InMemorySegmentStore.Builder builder) {
+		InMemorySegmentStore.Entry entry = builder.commit();
+
+		if (entry.isPlaylist() || isInitFile(entry.getKey())) {
+			otherFiles.add(entry.getKey());
+		}
+		else {
+			String removedSegment = null;
+			synchronized (segments) {
+				segments.add(entry.getKey());
+				if (maxSegmentCount > 0 && segments.size() > maxSegmentCount) {
+					removedSegment = segments.poll();
+				}
+			}
+			if (removedSegment != null) {
+				store.remove(removedSegment);
+				if (persistenceEnabled && deleteOldSegmentsOnDisk) {
+					String segmentToDelete = removedSegment;
+					persistenceExecutor.execute(() -> deleteFile(segmentToDelete));
+				}
+			}
+		}
+
+		if (persistenceEnabled && entry.retain()) {
+			persistenceExecutor.execute(() -> {
+				try {
+					persist(entry);
+				}
+				finally {
+					entry.release();
+				}
+			});
+		}
+	}
+
+	private static boolean isInitFile(String key) {
+		return key.endsWith(".mp4");
+	}
+
+	private void persist(InMemorySegmentStore.Entry entry) {
+		Path target = Paths.get(entry.getKey());
+		//write to a temporary file and move it so that readers don't get a partial file
+		Path tmp = Paths.get(entry.getKey() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer[] buffers = entry.getBuffers();
+			long remaining = entry.getLength();
+			while (remaining > 0) {
+				remaining -= channel.write(buffers);
+			}
+		}
+		catch (IOException e) {
+			logger.error("Cannot write {} to disk for stream:{} error:{}", entry.getKey(), streamId, e.getMessage());
+			return;
+		}
+
+		try {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			logger.error("Cannot move {} to {} for stream:{} error:{}", tmp, target, streamId, e.getMessage());
+			return;
+		}
+
+		if (persistenceListener != null) {
+			persistenceListener.accept(entry.getKey());
+		}
+	}
+
+	private void deleteFile(String key) {
+		try {
+			Files.deleteIfExists(new File(key).toPath());
+		}
+		catch (IOException e) {
+			logger.error("Cannot delete {} for stream:{} error:{}", key, streamId, e.getMessage());
+		}
+	}
+
+	/**
+	 * Remove all files of this output from memory. Persisted files are not touched
+	 */
+	public void removeAll() {
+		synchronized (segments) {
+			for (String segment : segments) {
+				store.remove(segment);
+			}
+			segments.clear();
+		}
+		for (String file : otherFiles) {
+			store.remove(file);
+		}
+		otherFiles.clear();
+	}
+
+	public int getSegmentCount() {
+		synchronized (segments) {
+			return segments.size();
+		}
+	}
+
+	public boolean isPersistenceEnabled() {
+		return persistenceEnabled;
+	}
+
+	public int getMaxSegmentCount() {
+		return maxSegmentCount;
+	}
+
+	public InMemorySegmentStore getStore() {
+		return store;
+	}
+
+	public void setPersistenceListener(Consumer<String> persistenceListener) {
+		this.persistenceListener = persistenceListener;
+	}
+}
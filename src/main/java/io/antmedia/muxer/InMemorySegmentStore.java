@@ -0,0 +1,385 @@
+package io.antmedia.muxer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.muxer.buffer.DirectBufferPool;
+import io.antmedia.muxer.buffer.PooledBuffer;
+
+/**
+ * Keeps the HLS segments and playlists in off-heap memory so that they are served to the viewers without touching the disk.
+ *
+ * Files are keyed by their normalized absolute path, which is the same path they would have on the disk.
+ * In this way the servlet finds them with ServletContext.getRealPath and falls back to the disk for the files that are not in memory.
+ *
+ * A file is written with a {@link Builder} and it becomes visible atomically when it's committed.
+ * Content of a committed {@link Entry} never changes, a new version replaces the old one.
+ * Memory is borrowed from {@link DirectBufferPool} in fixed size chunks and it's returned to the pool
+ * when the entry is removed and the last reader releases it.
+ *
+ * Total size is limited by {@link #setMaxBytes(long)}. Oldest segments are removed when the limit is exceeded.
+ * Playlists are not counted for eviction because they are small and they are replaced all the time.
+ */
+public class InMemorySegmentStore implements InMemorySegmentStoreMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(InMemorySegmentStore.class);
+
+	public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+	public static final int CHUNK_SIZE = 64 * 1024;
+
+	private static InMemorySegmentStore instance;
+
+	/**
+	 * Unique for each JVM start so that ETags of the previous run are not matched
+	 */
+	private static final String ETAG_PREFIX = Long.toHexString(System.currentTimeMillis());
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Segment keys in the order they are committed. It's used to find the oldest segments on eviction
+	 */
+	private final Queue<Entry> segmentOrder = new ConcurrentLinkedQueue<>();
+
+	private final DirectBufferPool bufferPool;
+
+	private final AtomicLong totalBytes = new AtomicLong();
+
+	private final AtomicLong version = new AtomicLong();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	private volatile long maxBytes;
+
+	/**
+	 * Immutable content of a file in memory.
+	 * Readers should call {@link #release()} after they get it with {@link InMemorySegmentStore#acquire(String)}
+	 */
+	public static class Entry {
+
+		private final String key;
+		private final String streamId;
+		private final List<PooledBuffer> chunks;
+		private final long length;
+		private final long memorySize;
+		private final String etag;
+		private final long lastModified;
+		private final boolean playlist;
+		private final AtomicInteger refCount = new AtomicInteger(1);
+
+		Entry(String key, String streamId, List<PooledBuffer> chunks, long length, String etag, boolean playlist) {
+			this.key = key;
+			this.streamId = streamId;
+			this.chunks = chunks;
+			this.length = length;
+			this.memorySize = (long)chunks.size() * CHUNK_SIZE;
+			this.etag = etag;
+			this.lastModified = System.currentTimeMillis();
+			this.playlist = playlist;
+		}
+
+		/**
+		 * @return false if the entry is already freed
+		 */
+		boolean retain() {
+			int count;
+			do {
+				count = refCount.get();
+				if (count <= 0) {
+					return false;
+				}
+			} while (!refCount.compareAndSet(count, count + 1));
+			return true;
+		}
+
+		public void release() {
+			if (refCount.decrementAndGet() == 0) {
+				for (PooledBuffer chunk : chunks) {
+					chunk.release();
+				}
+			}
+		}
+
+		/**
+		 * @return read only buffers of the content. Each call returns new buffers so that they can be consumed independently
+		 */
+		public ByteBuffer[] getBuffers() {
+			ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+			long remaining = length;
+			for (int i = 0; i < buffers.length; i++) {
+				ByteBuffer buffer = chunks.get(i).getBuffer().asReadOnlyBuffer();
+				buffer.clear();
+				buffer.limit((int)Math.min(CHUNK_SIZE, remaining));
+				remaining -= buffer.limit();
+				buffers[i] = buffer;
+			}
+			return buffers;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getStreamId() {
+			return streamId;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public boolean isPlaylist() {
+			return playlist;
+		}
+	}
+
+	/**
+	 * Collects the content of a file until it's committed. It's not thread safe
+	 */
+	public class Builder {
+
+		private final String key;
+		private final String streamId;
+		private final List<PooledBuffer> chunks = new ArrayList<>();
+		private long length = 0;
+		private boolean finished = false;
+
+		Builder(String key, String streamId) {
+			this.key = key;
+			this.streamId = streamId;
+		}
+
+		public void write(ByteBuffer data) {
+			while (data.hasRemaining()) {
+				int offset = (int)(length % CHUNK_SIZE);
+				if (offset == 0 && length / CHUNK_SIZE == chunks.size()) {
+					chunks.add(bufferPool.acquire(CHUNK_SIZE, streamId));
+				}
+				ByteBuffer chunk = chunks.get(chunks.size() - 1).getBuffer();
+				int count = Math.min(CHUNK_SIZE - offset, data.remaining());
+				ByteBuffer source = data.duplicate();
+				source.limit(source.position() + count);
+				chunk.position(offset);
+				chunk.put(source);
+				data.position(data.position() + count);
+				length += count;
+			}
+		}
+
+		/**
+		 * Replace the file in the store with the written content
+		 * @return committed entry
+		 */
+		public Entry commit() {
+			finished = true;
+			String etag = "\"" + ETAG_PREFIX + "-" + Long.toHexString(version.incrementAndGet()) + "\"";
+			Entry entry = new Entry(key, streamId, chunks, length, etag, isPlaylist(key));
+			put(entry);
+			return entry;
+		}
+
+		/**
+		 * Discard the written content
+		 */
+		public void abort() {
+			if (!finished) {
+				finished = true;
+				for (PooledBuffer chunk : chunks) {
+					chunk.release();
+				}
+				chunks.clear();
+			}
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	public static synchronized InMemorySegmentStore getInstance() {
+		if (instance == null) {
+			instance = new InMemorySegmentStore(DirectBufferPool.getInstance(), DEFAULT_MAX_BYTES);
+			instance.registerMBean();
+		}
+		return instance;
+	}
+
+	public InMemorySegmentStore(DirectBufferPool bufferPool, long maxBytes) {
+		this.bufferPool = bufferPool;
+		this.maxBytes = maxBytes;
+	}
+
+	private void registerMBean() {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName("io.antmedia:type=InMemorySegmentStore");
+			if (!mbs.isRegistered(objectName)) {
+				mbs.registerMBean(new StandardMBean(this, InMemorySegmentStoreMXBean.class, true), objectName);
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	public static String normalizeKey(String path) {
+		return Paths.get(path).normalize().toString();
+	}
+
+	public static boolean isPlaylist(String key) {
+		return key.endsWith(".m3u8");
+	}
+
+	/**
+	 * @param path absolute path of the file
+	 * @param streamId owner of the file. It's used for memory accounting
+	 */
+	public Builder newBuilder(String path, String streamId) {
+		return new Builder(normalizeKey(path), streamId);
+	}
+
+	private void put(Entry entry) {
+		Entry previous = entries.put(entry.key, entry);
+		totalBytes.addAndGet(entry.memorySize);
+		if (previous != null) {
+			free(previous);
+		}
+		if (!entry.playlist) {
+			removeStaleHeads();
+			segmentOrder.add(entry);
+			evictIfRequired();
+		}
+	}
+
+	/**
+	 * Segments are removed by the muxers in the order they are created,
+	 * so that removed ones are mostly at the head of the queue
+	 */
+	private void removeStaleHeads() {
+		Entry head;
+		while ((head = segmentOrder.peek()) != null && entries.get(head.key) != head) {
+			segmentOrder.remove(head);
+		}
+	}
+
+	private void evictIfRequired() {
+		Entry oldest;
+		while (totalBytes.get() > maxBytes && (oldest = segmentOrder.poll()) != null) {
+			//entry may be already removed or replaced
+			if (entries.remove(oldest.key, oldest)) {
+				evictionCount.increment();
+				logger.debug("Evicting {} from memory because size limit {} is exceeded", oldest.key, maxBytes);
+				free(oldest);
+			}
+		}
+	}
+
+	private void free(Entry entry) {
+		totalBytes.addAndGet(-entry.memorySize);
+		entry.release();
+	}
+
+	/**
+	 * Get the file for reading. Caller should release the entry after it's consumed
+	 * @param path absolute path of the file
+	 * @return entry or null if it does not exist in memory
+	 */
+	public Entry acquire(String path) {
+		Entry entry = entries.get(normalizeKey(path));
+		//it may be freed after it's got from the map
+		if (entry != null && entry.retain()) {
+			hitCount.increment();
+			return entry;
+		}
+		missCount.increment();
+		return null;
+	}
+
+	public boolean contains(String path) {
+		return entries.containsKey(normalizeKey(path));
+	}
+
+	/**
+	 * @param path absolute path of the file
+	 * @return true if the file is removed
+	 */
+	public boolean remove(String path) {
+		Entry entry = entries.remove(normalizeKey(path));
+		if (entry != null) {
+			free(entry);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public long getTotalBytes() {
+		return totalBytes.get();
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Limit is for the whole server because memory is shared by all applications
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evictIfRequired();
+	}
+
+	@Override
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+}
@@ -0,0 +1,22 @@
+package io.antmedia.muxer;
+
+public interface InMemorySegmentStoreMXBean {
+
+	/**
+	 * @return total bytes of the segments and playlists kept in memory
+	 */
+	long getTotalBytes();
+
+	long getMaxBytes();
+
+	int getEntryCount();
+
+	long getHitCount();
+
+	long getMissCount();
+
+	/**
+	 * @return number of segments removed because the size limit is exceeded
+	 */
+	long getEvictionCount();
+}
@@ -0,0 +1,38 @@
+package io.antmedia.muxer;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Statistics of the ingest jitter buffer that is kept by {@link PacketJitterBuffer}
+ */
+@Schema(description = "Statistics of the ingest jitter buffer")
+public class JitterBufferStats {
+
+	@Schema(description = "Target buffer duration in milliseconds")
+	public final long bufferTimeMs;
+
+	@Schema(description = "Duration between the first and the last packet in the buffer in milliseconds")
+	public final long bufferedDurationMs;
+
+	@Schema(description = "True if the buffer is being filled and the packets are not released")
+	public final boolean buffering;
+
+	@Schema(description = "Number of packets dropped because the buffer exceeded 5 times of the buffer time")
+	public final long droppedPacketCount;
+
+	@Schema(description = "Upper bounds of the occupancy histogram buckets in milliseconds. Last bucket is for the bigger values")
+	public final long[] occupancyBucketBoundsMs;
+
+	@Schema(description = "Number of the buffered duration samples in each occupancy bucket. It's sampled whenever a packet is received")
+	public final long[] occupancyHistogram;
+
+	public JitterBufferStats(long bufferTimeMs, long bufferedDurationMs, boolean buffering, long droppedPacketCount,
+			long[] occupancyBucketBoundsMs, long[] occupancyHistogram) {
+		this.bufferTimeMs = bufferTimeMs;
+		this.bufferedDurationMs = bufferedDurationMs;
+		this.buffering = buffering;
+		this.droppedPacketCount = droppedPacketCount;
+		this.occupancyBucketBoundsMs = occupancyBucketBoundsMs;
+		this.occupancyHistogram = occupancyHistogram;
+	}
+}
@@ -4,21 +4,22 @@ import static io.antmedia.muxer.IAntMediaStreamHandler.BROADCAST_STATUS_BROADCAS
 import static org.bytedeco.ffmpeg.global.avcodec.*;
 import static org.bytedeco.ffmpeg.global.avutil.*;
 
-import java.nio.ByteBuffer;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
 import io.antmedia.logger.LoggerUtils;
 
 import org.apache.commons.lang3.StringUtils;
@@ -61,6 +62,8 @@ import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.IDataStoreFactory;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.Endpoint;
+import io.antmedia.muxer.buffer.DirectBufferPool;
+import io.antmedia.muxer.buffer.PooledBuffer;
 import io.antmedia.muxer.parser.AACConfigParser;
 import io.antmedia.muxer.parser.AACConfigParser.AudioObjectTypes;
 import io.antmedia.muxer.parser.SpsParser;
@@ -69,6 +72,7 @@ import io.antmedia.plugin.PacketFeeder;
 import io.antmedia.plugin.api.IPacketListener;
 import io.antmedia.plugin.api.StreamParametersInfo;
 import io.antmedia.rest.model.Result;
+import io.antmedia.servlet.HLSMemoryServlet;
 import io.antmedia.settings.ServerSettings;
 import io.antmedia.storage.StorageClient;
 import io.vertx.core.Vertx;
@@ -86,6 +90,10 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	protected ConcurrentLinkedQueue<IStreamPacket> streamPacketQueue = new ConcurrentLinkedQueue<>();
 	protected AtomicBoolean isPipeReaderJobRunning = new AtomicBoolean(false);
 	private   AtomicBoolean isBufferedWriterRunning = new AtomicBoolean(false);
+	/**
+	 * It's true while the stream is being prepared in a vertx worker. Packets wait in the queue until it's done
+	 */
+	private   AtomicBoolean isPreparing = new AtomicBoolean(false);
 
 	protected List<Muxer> muxerList =  Collections.synchronizedList(new ArrayList<Muxer>());
 	protected boolean deleteHLSFilesOnExit = true;
@@ -103,9 +111,16 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	boolean firstAudioPacketSkipped = false;
 	boolean firstVideoPacketSkipped = false;
 
-	private long packetPollerId = -1;
+	/**
+	 * Drain job of this stream. It's signalled when a packet is received instead of polling the queue periodically
+	 */
+	private volatile PacketDrainScheduler.DrainTask drainTask;
 
-	private ConcurrentSkipListSet<IStreamPacket> bufferQueue = new ConcurrentSkipListSet<>((a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+	/**
+	 * Jitter buffer for the incoming packets when rtmpIngestBufferTime is bigger than zero. 
+	 * It's accessed in the drain worker of the stream
+	 */
+	private PacketJitterBuffer<IStreamPacket> bufferQueue = new PacketJitterBuffer<>(0, IStreamPacket::getTimestamp);
 
 
 	private volatile boolean stopRequestExist = false;
@@ -149,7 +164,6 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	 * then below should be flag in advance
 	 */
 	private boolean firstKeyFrameReceivedChecked = false;
-	private long lastKeyFramePTS =0;
 	protected String streamId;
 	protected long startTime;
 
@@ -178,12 +192,14 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	protected ServerSettings serverSettings;
 
 	/**
-	 * Packet times in ordered way to calculate streaming health
-	 * Key is the packet ime
-	 * Value is the system time at that moment
-	 *
+	 * Calculates the streaming health from the last packets
 	 */
-	private LinkedList<PacketTime> packetTimeList = new LinkedList<PacketTime>();
+	private final StreamHealthEstimator streamHealthEstimator = new StreamHealthEstimator();
+
+	/**
+	 * JMX name of the stream health. It's null if it's not registered
+	 */
+	private ObjectName streamHealthObjectName;
 
 	public boolean addID3Data(String data) {
 		for (Muxer muxer : muxerList) {
@@ -205,37 +221,17 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		return false;
 	}
 
-	public static class PacketTime {
-		public final long packetTimeMs;
-		public final long systemTimeMs;
-		public PacketTime(long packetTimeMs, long systemTimeMs) {
-			this.packetTimeMs = packetTimeMs;
-			this.systemTimeMs = systemTimeMs;
-		}
-	}
-
 	protected Vertx vertx;
 
-	/**
-	 * Accessed from multiple threads so make it volatile
-	 */
-	private AtomicBoolean buffering = new AtomicBoolean(false);
 	private int bufferLogCounter;
 
-	/**
-	 * The time when buffering has been finished. It's volatile because it's accessed from multiple threads
-	 */
-	private volatile long bufferingFinishTimeMs = 0;
-
 	/**
 	 * Mux adaptor is generally used in RTMP.
 	 * However it can be also used to stream RTSP Pull so that isAVC can be false
 	 */
 	private boolean avc = true;
 
-	private long bufferedPacketWriterId = -1;
 	private volatile long lastPacketTimeMsInQueue = 0;
-	private volatile long firstPacketReadyToSentTimeMs = 0;
 	protected String dataChannelWebHookURL = null;
 	protected long absoluteTotalIngestTime = 0;
 	/**
@@ -268,6 +264,26 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 	protected PacketFeeder packetFeeder;
 
+	/**
+	 * Direct buffers for the incoming packets are borrowed from this pool instead of allocating for each packet
+	 */
+	protected DirectBufferPool bufferPool = DirectBufferPool.getInstance();
+
+	/**
+	 * If it's true, non-blocking muxers are also written in the writer threads through {@link AsyncMuxerWriter}.
+	 * Muxers that may block are always written through {@link AsyncMuxerWriter}, see {@link #isWrittenAsync(Muxer)}
+	 */
+	protected boolean asyncMuxerFanOutEnabled = false;
+	protected int asyncMuxerQueueSize;
+	protected AsyncMuxerWriter.OverflowPolicy asyncMuxerOverflowPolicy;
+
+	/**
+	 * Max time to wait for the queued packets of a muxer before writing its trailer
+	 */
+	private static final long ASYNC_MUXER_CLOSE_TIMEOUT_MS = 5000;
+
+	protected Map<Muxer, AsyncMuxerWriter> asyncMuxerWriters = new ConcurrentHashMap<>();
+
 	private static final int COUNT_TO_LOG_BUFFER = 500;
 
 	static {
@@ -361,7 +377,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		boolean result = false;
 		if (muxerList.remove(muxer)) 
 		{
-			muxer.writeTrailer();
+			writeTrailer(muxer);
 			result = true;
 		}
 		return result;
@@ -372,6 +388,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		boolean result = false;
 		if (!muxerList.contains(muxer)) 
 		{
+			createAsyncMuxerWriter(muxer);
 			result = muxerList.add(muxer);
 		}
 		return result;
@@ -427,7 +444,16 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		maxAnalyzeDurationMS = appSettingsLocal.getMaxAnalyzeDurationMS();
 		generatePreview = appSettingsLocal.isGeneratePreview();
 		previewHeight = appSettingsLocal.getPreviewHeight();
-		bufferTimeMs = appSettingsLocal.getRtmpIngestBufferTimeMs();
+		setBufferTimeMs(appSettingsLocal.getRtmpIngestBufferTimeMs());
+		asyncMuxerFanOutEnabled = appSettingsLocal.isAsyncMuxerFanOutEnabled();
+		asyncMuxerQueueSize = appSettingsLocal.getAsyncMuxerQueueSize();
+		asyncMuxerOverflowPolicy = AsyncMuxerWriter.OverflowPolicy.parse(appSettingsLocal.getAsyncMuxerOverflowPolicy());
+		if (asyncMuxerOverflowPolicy == null) {
+			//settings that are updated through the REST are validated, this is for the settings in the file
+			asyncMuxerOverflowPolicy = AsyncMuxerWriter.OverflowPolicy.DROP_TO_NEXT_KEYFRAME;
+			logger.error("Async muxer overflow policy:{} is not valid. Valid values are drop_to_next_keyframe and disconnect. Using {} for stream:{}", 
+					appSettingsLocal.getAsyncMuxerOverflowPolicy(), asyncMuxerOverflowPolicy, streamId);
+		}
 		dataChannelWebHookURL = appSettingsLocal.getDataChannelWebHookURL();
 
 		rtmpEndpointRetryLimit = appSettingsLocal.getEndpointRepublishLimit();
@@ -476,15 +502,57 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		for (Muxer muxer : muxerList) {
 			muxer.init(scope, streamId, 0, broadcast.getSubFolder(), 0);
 		}
+		registerStreamHealthJMX();
 		getStreamHandler().muxAdaptorAdded(this);
 		return true;
 	}
 
+	protected void registerStreamHealthJMX() {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(String.format("io.antmedia:type=StreamHealth,app=%s,streamId=%s", 
+					ObjectName.quote(scope.getName()), ObjectName.quote(streamId)));
+			if (!mbs.isRegistered(objectName)) {
+				mbs.registerMBean(new StandardMBean(streamHealthEstimator, StreamHealthMXBean.class, true), objectName);
+				streamHealthObjectName = objectName;
+			}
+			else {
+				logger.debug("Stream health of {} is already registered in JMX", streamId);
+			}
+		}
+		catch (Exception e) {
+			logger.warn("Stream health of {} cannot be registered in JMX: {}", streamId, e.getMessage());
+		}
+	}
+
+	protected void unregisterStreamHealthJMX() {
+		ObjectName objectName = streamHealthObjectName;
+		if (objectName != null) {
+			streamHealthObjectName = null;
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+			catch (Exception e) {
+				logger.warn("Stream health of {} cannot be unregistered from JMX: {}", streamId, e.getMessage());
+			}
+		}
+	}
+
 	public HLSMuxer addHLSMuxer() {
 		HLSMuxer hlsMuxer = new HLSMuxer(vertx, storageClient, getAppSettings().getS3StreamsFolderPath(), getAppSettings().getUploadExtensionsToS3(), getAppSettings().getHlsHttpEndpoint(), getAppSettings().isAddDateTimeToHlsFileName());
 		hlsMuxer.setHlsParameters( hlsListSize, hlsTime, hlsPlayListType, getAppSettings().getHlsflags(), getAppSettings().getHlsEncryptionKeyInfoFile(), getAppSettings().getHlsSegmentType());
 		hlsMuxer.setDeleteFileOnExit(deleteHLSFilesOnExit);
 		hlsMuxer.setId3Enabled(appSettings.isId3TagEnabled());
+		if (getAppSettings().isHlsInMemoryStoreEnabled()) {
+			if (HLSMemoryServlet.isRegistered(scope.getName())) {
+				InMemorySegmentStore.getInstance().setMaxBytes(getAppSettings().getHlsInMemoryStoreMaxSizeMB() * 1024L * 1024L);
+				hlsMuxer.setInMemoryStoreEnabled(true);
+			}
+			else {
+				//files in memory cannot be served without the servlet
+				logger.warn("HLS in-memory store is enabled but HLSMemoryServlet is not mapped in application:{}. HLS files are written to the disk for stream:{}", scope.getName(), streamId);
+			}
+		}
 		addMuxer(hlsMuxer);
 		logger.info("adding HLS Muxer for {}", streamId);
 
@@ -879,6 +947,11 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 					iterator.remove();
 					logger.error("prepareIO returns false {} for stream: {}", muxer.getFormat(), streamId);
 				}
+				else 
+				{
+					//settings may be enabled after the muxer is added
+					createAsyncMuxerWriter(muxer);
+				}
 			}
 		}
 		startTime = System.currentTimeMillis();
@@ -977,19 +1050,34 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			long pts = dts + compositionTimeOffset;
 
 			//we get 5 less bytes because first 5 bytes is related to the video tag. It's not part of the generic packet
-			ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bodySize-5);
-			byteBuffer.put(packet.getData().buf().position(5));
-
-
-			synchronized (muxerList) 
-			{
-				packetFeeder.writeVideoBuffer(byteBuffer, dts, 0, videoStreamIndex, (frameType & 0xF0) == IVideoStreamCodec.FLV_FRAME_KEY, 0, pts);
+			//buffer is borrowed from the pool and it's released after the last muxer consumes it.
+			//Muxers that keep the buffer after the call retain it or detach it from the pool, see Muxer#writeVideoBuffer(PooledBuffer...)
+			PooledBuffer pooledBuffer = bufferPool.acquire(bodySize-5, streamId);
+			pooledBuffer.getBuffer().put(packet.getData().buf().position(5));
 
-				for (Muxer muxer : muxerList) 
+			try {
+				synchronized (muxerList) 
 				{
-					muxer.writeVideoBuffer(byteBuffer, dts, 0, videoStreamIndex, (frameType & 0xF0) == IVideoStreamCodec.FLV_FRAME_KEY, 0, pts);
+					boolean isKeyFrame = (frameType & 0xF0) == IVideoStreamCodec.FLV_FRAME_KEY;
+					packetFeeder.writeVideoBuffer(pooledBuffer, dts, 0, videoStreamIndex, isKeyFrame, 0, pts);
+
+					for (Muxer muxer : muxerList) 
+					{
+						if (isWrittenAsync(muxer)) {
+							AsyncMuxerWriter writer = getAsyncMuxerWriter(muxer);
+							if (writer != null) {
+								writer.offerVideoBuffer(pooledBuffer, dts, videoStreamIndex, isKeyFrame, pts);
+							}
+						}
+						else {
+							muxer.writeVideoBuffer(pooledBuffer, dts, 0, videoStreamIndex, isKeyFrame, 0, pts);
+						}
+					}
 				}
 			}
+			finally {
+				pooledBuffer.release();
+			}
 
 
 		}
@@ -1006,21 +1094,33 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			}
 			int bodySize = packet.getData().limit();
 			//we get 2 less bytes because first 2 bytes is related to the audio tag. It's not part of the generic packet
-			ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bodySize-2);
-			byteBuffer.put(packet.getData().buf().position(2));
+			PooledBuffer pooledBuffer = bufferPool.acquire(bodySize-2, streamId);
+			pooledBuffer.getBuffer().put(packet.getData().buf().position(2));
 
 			logger.trace("writeAudioBuffer video data packet timestamp:{} and packet timestamp:{} streamId:{}", dts, packet.getTimestamp(), streamId);
 
-
-			synchronized (muxerList) 
-			{
-				packetFeeder.writeAudioBuffer(byteBuffer, audioStreamIndex, dts);
-
-				for (Muxer muxer : muxerList) 
+			try {
+				synchronized (muxerList) 
 				{
-					muxer.writeAudioBuffer(byteBuffer, audioStreamIndex, dts);
+					packetFeeder.writeAudioBuffer(pooledBuffer, audioStreamIndex, dts);
+
+					for (Muxer muxer : muxerList) 
+					{
+						if (isWrittenAsync(muxer)) {
+							AsyncMuxerWriter writer = getAsyncMuxerWriter(muxer);
+							if (writer != null) {
+								writer.offerAudioBuffer(pooledBuffer, audioStreamIndex, dts);
+							}
+						}
+						else {
+							muxer.writeAudioBuffer(pooledBuffer, audioStreamIndex, dts);
+						}
+					}
 				}
 			}
+			finally {
+				pooledBuffer.release();
+			}
 
 		}
 	}
@@ -1042,7 +1142,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			logger.info("Streams for {} enableVideo:{} enableAudio:{} total spend time: {} elapsed frame timestamp:{} stop request exists: {}", streamId, enableVideo, enableAudio, totalTime, elapsedFrameTimeStamp, stopRequestExist);
 
 			if (enableAudio || enableVideo) {
-				prepareParameters();
+				prepareParametersOutOfDrainWorker();
 			}
 			else {
 				logger.error("There is no video and audio in the incoming stream: {} closing rtmp connection", streamId);
@@ -1062,6 +1162,11 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			{
 				if (!isRecording.get()) {				
 
+					if (isPreparing.get()) {
+						//drain task is signaled again when preparing is finished
+						return;
+					}
+
 					if (checkStreamsStartTime == -1) {
 						checkStreamsStartTime  = System.currentTimeMillis();
 					}
@@ -1069,11 +1174,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 					if (stopRequestExist) {
 						logger.info("Stop request exists for stream:{}", streamId);
-						broadcastStream.removeStreamListener(MuxAdaptor.this);
-						logger.warn("closing adaptor for {} ", streamId);
-						closeResources();
-						logger.warn("closed adaptor for {}", streamId);
-						getStreamHandler().stopPublish(streamId);
+						closeAdaptor();
 						//finally code execute and reset the isPipeReaderJobRunning
 						return;
 
@@ -1091,7 +1192,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 					if (enableVideo && enableAudio && getAudioCodecParameters() != null)
 					{
 						logger.info("Video and audio is enabled in stream:{} queue size: {}", streamId, queueSize.get());
-						prepareParameters();
+						prepareParametersOutOfDrainWorker();
 					}
 					else {
 						checkMaxAnalyzeTotalTime();
@@ -1126,9 +1227,10 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 								}
 							} else {
 								logger.warn("First video packet is not key frame. It will drop for direct muxing. Stream {}", streamId);
-								// return if firstKeyFrameReceived is not received
-								// below return is important otherwise it does not work with like some encoders(vidiu)
-								return;
+								// drop the packets until the first key frame is received
+								// it's important otherwise it does not work with like some encoders(vidiu)
+								// continue with the queued packets because there may not be another signal for them
+								continue;
 							}
 						}
 					}
@@ -1136,7 +1238,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 					//TODO: if server does not accept packets, it does not update the quality
 					long dts = packet.getTimestamp() & 0xffffffffL;
 
-					updateQualityParameters(dts, TIME_BASE_FOR_MS, 0, isKeyFrame);
+					updateQualityParameters(dts, TIME_BASE_FOR_MS, packet.getData().limit(), isKeyFrame);
 
 
 					if (bufferTimeMs == 0) 
@@ -1151,11 +1253,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 				}
 
 				if (stopRequestExist) {
-					broadcastStream.removeStreamListener(MuxAdaptor.this);
-					logger.warn("closing adaptor for {} ", streamId);
-					closeResources();
-					logger.warn("closed adaptor for {}", streamId);
-					getStreamHandler().stopPublish(streamId);
+					closeAdaptor();
 				}	
 			}
 			finally {
@@ -1167,67 +1265,50 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	}
 
 
-	public void addBufferQueue(IStreamPacket packet) {
-		//it's a ordered queue according to timestamp
-
-		bufferQueue.add(packet);
-
-		try {
-			IStreamPacket pktHead = bufferQueue.first();
-			IStreamPacket pktTrailer = bufferQueue.last();
-
-			int bufferedDuration = pktTrailer.getTimestamp() - pktHead.getTimestamp();
-
-			if (bufferedDuration > bufferTimeMs*5) {
-				//if buffered duration is more than 5 times of the buffer time, remove packets from the head until it reach bufferTimeMs * 2
-
-				//set buffering true to not let writeBufferedPacket method work
-				buffering.set(true);
-
-				Iterator<IStreamPacket> iterator = bufferQueue.iterator();
-
-				while (iterator.hasNext()) 
-				{
-					pktHead = iterator.next();
+	/**
+	 * Closes the adaptor when stop is requested. If it's called in the drain worker of the stream, drain task is cancelled 
+	 * and resources are closed in a vertx worker because writing the trailers(RTMP endpoints, MP4 finalization) may block
+	 * the other streams of the same drain worker
+	 */
+	private void closeAdaptor() {
+		broadcastStream.removeStreamListener(MuxAdaptor.this);
+		logger.warn("closing adaptor for {} ", streamId);
+
+		PacketDrainScheduler.DrainTask task = drainTask;
+		if (task != null && vertx != null) {
+			//drain task does not run anymore so that closeResources is not called concurrently with the draining
+			task.cancel();
+			vertx.executeBlocking(() -> {
+				closeResourcesAndStopPublish();
+				return null;
+			}, false);
+		}
+		else {
+			closeResourcesAndStopPublish();
+		}
+	}
 
-					bufferedDuration = pktTrailer.getTimestamp() - pktHead.getTimestamp();
-					if (bufferedDuration < bufferTimeMs * 2) {
-						break;
-					}
-					iterator.remove();
-				} 
-			}
+	private void closeResourcesAndStopPublish() {
+		closeResources();
+		logger.warn("closed adaptor for {}", streamId);
+		getStreamHandler().stopPublish(streamId);
+	}
 
-			bufferedDuration = pktTrailer.getTimestamp() - pktHead.getTimestamp();
+	public void addBufferQueue(IStreamPacket packet) {
+		//it's a ordered queue according to timestamp
+		boolean wasBuffering = bufferQueue.isBuffering();
 
-			logger.trace("bufferedDuration:{} trailer timestamp:{} head timestamp:{}", bufferedDuration, pktTrailer.getTimestamp(), pktHead.getTimestamp());
-			if (bufferedDuration > bufferTimeMs) 
-			{ 
-				if (buffering.get()) 
-				{
-					//have the buffering finish time ms
-					bufferingFinishTimeMs = System.currentTimeMillis();
-					//have the first packet sent time
-					firstPacketReadyToSentTimeMs  = pktTrailer.getTimestamp();
-					logger.info("Switching buffering from true to false for stream: {}", streamId);
-				}
-				//make buffering false whenever bufferDuration is bigger than bufferTimeMS
-				//buffering is set to true when there is no packet left in the queue
-				buffering.set(false);
-			}
+		bufferQueue.put(packet, System.currentTimeMillis());
 
-			bufferLogCounter++;
-			if (bufferLogCounter % COUNT_TO_LOG_BUFFER == 0) {
-				logger.info("ReadPacket -> Buffering status {}, buffer duration {}ms buffer time {}ms stream: {}", buffering, bufferedDuration, bufferTimeMs, streamId);
-				bufferLogCounter = 0;
-			}
+		if (wasBuffering && !bufferQueue.isBuffering()) {
+			logger.info("Switching buffering from true to false for stream: {}", streamId);
 		}
-		catch (NoSuchElementException e) {
-			//You may or may not ignore this exception @mekya
-			logger.warn("You may or may not ignore this exception. I mean It can happen time to time in multithread environment -> {}", e.getMessage());
-		}
-
 
+		bufferLogCounter++;
+		if (bufferLogCounter % COUNT_TO_LOG_BUFFER == 0) {
+			logger.info("ReadPacket -> Buffering status {}, buffer duration {}ms buffer time {}ms stream: {}", bufferQueue.isBuffering(), bufferQueue.getBufferedDurationMs(), bufferTimeMs, streamId);
+			bufferLogCounter = 0;
+		}
 	}
 
 
@@ -1267,6 +1348,32 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		}
 	}
 
+	/**
+	 * Prepares the stream in a vertx worker if it's called in the drain worker of the stream because preparing the muxers
+	 * (opening the files, connecting to the endpoints) and starting the publish may block the other streams of the same drain worker.
+	 * Drain task is signaled when it's done so that the queued packets are written
+	 */
+	private void prepareParametersOutOfDrainWorker() {
+		PacketDrainScheduler.DrainTask task = drainTask;
+		if (task != null && vertx != null) {
+			if (isPreparing.compareAndSet(false, true)) {
+				vertx.executeBlocking(() -> {
+					try {
+						prepareParameters();
+					}
+					finally {
+						isPreparing.set(false);
+						task.signal();
+					}
+					return null;
+				}, false);
+			}
+		}
+		else {
+			prepareParameters();
+		}
+	}
+
 	private void prepareParameters() {
 		try {
 			prepare();
@@ -1307,46 +1414,23 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	public void updateQualityParameters(long pts, AVRational timebase, long packetSize, boolean isKeyFrame) {
 
 		long packetTime = av_rescale_q(pts, timebase, TIME_BASE_FOR_MS);
-		packetTimeList.add(new PacketTime(packetTime, System.currentTimeMillis()));
-
-
-		if (packetTimeList.size() > 300) {
-			//limit the size.
-			packetTimeList.remove(0);
-		}
-
-		PacketTime firstPacket = packetTimeList.getFirst();
-		PacketTime lastPacket = packetTimeList.getLast();
-
-		long elapsedTime = lastPacket.systemTimeMs - firstPacket.systemTimeMs;
-		long packetTimeDiff = lastPacket.packetTimeMs - firstPacket.packetTimeMs;
+		long now = System.currentTimeMillis();
+		streamHealthEstimator.addPacket(packetTime, now, (int) packetSize, isKeyFrame);
 
 		if(lastKeyFrameStatsTimeMs == -1){
-			lastKeyFrameStatsTimeMs = firstPacket.systemTimeMs;
-		}
-		double speed = 0L;
-		if (elapsedTime > 0)
-		{
-			speed = (double) packetTimeDiff / elapsedTime;
-			if (logger.isWarnEnabled() && Double.isNaN(speed)) {
-				logger.warn("speed is NaN, packetTime: {}, first item packetTime: {}, elapsedTime:{}", packetTime, firstPacket.packetTimeMs, elapsedTime);
-			}
+			lastKeyFrameStatsTimeMs = now;
 		}
+		double speed = streamHealthEstimator.getSpeed();
 
 		// duration from one key frame to another
 		if(isKeyFrame) {
-			long timeDiff=0;
-			if(lastKeyFramePTS != 0) {
-				long keyFrameDiff = pts - lastKeyFramePTS;
-				timeDiff = av_rescale_q(keyFrameDiff, getVideoTimeBase(), TIME_BASE_FOR_MS);
-				logger.debug("KeyFrame time difference ms:{} for streamId:{}", timeDiff, streamId);
-			}
-			
-			lastKeyFramePTS = pts;
+			long timeDiff = streamHealthEstimator.getGopDurationMs();
+			logger.debug("KeyFrame time difference ms:{} for streamId:{}", timeDiff, streamId);
+
 			if (timeDiff > 30) {
 				keyFramePerMin += 1;
 			}
-			if(lastPacket.systemTimeMs - lastKeyFrameStatsTimeMs > 60000)
+			if(now - lastKeyFrameStatsTimeMs > 60000)
 			{
 				KeyFrameStatsEvent keyFrameStatsEvent = new KeyFrameStatsEvent();
 				keyFrameStatsEvent.setStreamId(streamId);
@@ -1357,7 +1441,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 				LoggerUtils.logAnalyticsFromServer(keyFrameStatsEvent);
 				
 				keyFramePerMin = 0;
-				lastKeyFrameStatsTimeMs = lastPacket.systemTimeMs;
+				lastKeyFrameStatsTimeMs = now;
 			}
 		}
 
@@ -1411,16 +1495,111 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			{
 				if (!(muxer instanceof WebMMuxer))
 				{
-					muxer.writePacket(pkt, stream);
+					if (isWrittenAsync(muxer)) {
+						AsyncMuxerWriter writer = getAsyncMuxerWriter(muxer);
+						if (writer != null) {
+							writer.offerPacket(pkt, stream);
+						}
+					}
+					else {
+						muxer.writePacket(pkt, stream);
+					}
 				}
 			}
 		}
 	}
 
+	/**
+	 * Packets are drained in the shared workers of {@link PacketDrainScheduler} so only the muxers whose writes do not block
+	 * are written there, see {@link Muxer#isNonBlockingWrite()}. Other muxers(RTMP endpoints, HLS, MP4, etc.) write to the network
+	 * or to the disk, so they're always written in the writer threads. Otherwise a slow endpoint or disk would block the
+	 * other streams of the same worker. If async fan-out is enabled, non-blocking muxers are written in the writer threads as well
+	 *
+	 * @return true if the packets of the muxer are written through {@link AsyncMuxerWriter}
+	 */
+	protected boolean isWrittenAsync(Muxer muxer) {
+		return asyncMuxerFanOutEnabled || !muxer.isNonBlockingWrite();
+	}
+
+	/**
+	 * Returns the writer of the muxer that is written asynchronously. Writers are created when the muxers are added
+	 * to the stream, so it returns null for a muxer that is removed and closed. Late packets of that muxer are not written
+	 */
+	protected AsyncMuxerWriter getAsyncMuxerWriter(Muxer muxer) {
+		return asyncMuxerWriters.get(muxer);
+	}
+
+	/**
+	 * Creates the writer of the muxer if it's written asynchronously. It's called when the muxer is added to the stream
+	 */
+	protected void createAsyncMuxerWriter(Muxer muxer) {
+		if (isWrittenAsync(muxer)) {
+			asyncMuxerWriters.computeIfAbsent(muxer, 
+					m -> new AsyncMuxerWriter(m, asyncMuxerQueueSize, getAsyncMuxerOverflowPolicy(), this::asyncMuxerDisconnected));
+		}
+	}
+
+	public AsyncMuxerWriter.OverflowPolicy getAsyncMuxerOverflowPolicy() {
+		return asyncMuxerOverflowPolicy;
+	}
+
+	/**
+	 * Called when the queue of the muxer is full and overflow policy is disconnect
+	 */
+	protected void asyncMuxerDisconnected(AsyncMuxerWriter writer) {
+		Muxer muxer = writer.getMuxer();
+		logger.warn("Removing muxer:{} url:{} from stream:{} because it cannot keep up with the stream", muxer.getFormat(), muxer.getOutputURL(), streamId);
+		if (muxerList.remove(muxer)) 
+		{
+			writeTrailer(muxer);
+			if (muxer instanceof RtmpMuxer) {
+				endpointStatusUpdated(muxer.getOutputURL(), IAntMediaStreamHandler.BROADCAST_STATUS_ERROR);
+			}
+		}
+	}
+
+	/**
+	 * Writes the trailer of the muxer. If the muxer is written asynchronously, it waits for its queued packets first
+	 */
+	protected void writeTrailer(Muxer muxer) {
+		writeTrailer(muxer, System.currentTimeMillis() + ASYNC_MUXER_CLOSE_TIMEOUT_MS);
+	}
+
+	/**
+	 * @param deadline time until the queued packets of the muxer are written if it's written asynchronously
+	 */
+	private void writeTrailer(Muxer muxer, long deadline) {
+		AsyncMuxerWriter writer = asyncMuxerWriters.remove(muxer);
+		if (writer != null) {
+			writer.close(Math.max(0, deadline - System.currentTimeMillis()));
+		}
+		muxer.writeTrailer();
+	}
+
+	/**
+	 * @return queue statistics of the muxers that are written asynchronously. Muxers that may block are always included
+	 */
+	public List<MuxerQueueStats> getAsyncMuxerStats() {
+		List<MuxerQueueStats> statsList = new ArrayList<>();
+		for (AsyncMuxerWriter writer : asyncMuxerWriters.values()) {
+			Muxer muxer = writer.getMuxer();
+			statsList.add(new MuxerQueueStats(muxer.getFormat(), muxer.getOutputURL(), writer.getQueueSize(), 
+					writer.getCapacity(), writer.getDroppedPacketCount(), writer.isDisconnected()));
+		}
+		return statsList;
+	}
+
 	public synchronized void writeTrailer() {
+		unregisterStreamHealthJMX();
 		packetFeeder.writeTrailer();
+
+		//let the async writers flush their queues in parallel so that the muxers share the same close timeout
+		for (AsyncMuxerWriter writer : asyncMuxerWriters.values()) {
+			writer.stop();
+		}
+		long deadline = System.currentTimeMillis() + ASYNC_MUXER_CLOSE_TIMEOUT_MS;
 		for (Muxer muxer : muxerList) {
-			muxer.writeTrailer();
+			writeTrailer(muxer, deadline);
 		}
 		
 		long byteTransferred = totalByteReceived - lastTotalByteReceived;
@@ -1440,18 +1619,15 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		logger.info("close resources for streamId -> {}", streamId);
 
 
-		if (packetPollerId != -1) {
-			vertx.cancelTimer(packetPollerId);
-			logger.info("Cancelling packet poller task(id:{}) for streamId: {}", packetPollerId, streamId);
-			packetPollerId = -1;
-
-		}
+		PacketDrainScheduler.DrainTask task = drainTask;
+		if (task != null) {
+			logger.info("Cancelling packet drain task for streamId: {}", streamId);
+			task.cancel();
+			drainTask = null;
 
-		if (bufferedPacketWriterId != -1) {
-			logger.info("Removing buffered packet writer id {} for stream: {}", bufferedPacketWriterId, streamId);
-			vertx.cancelTimer(bufferedPacketWriterId);
-			bufferedPacketWriterId = -1;
-			writeAllBufferedPackets();
+			if (bufferTimeMs > 0) {
+				writeAllBufferedPackets();
+			}
 		}
 
 		writeTrailer();
@@ -1468,6 +1644,8 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			audioExtraDataPointer = null;
 		}
 
+		bufferPool.removeStream(streamId);
+
 		updateStreamQualityParameters(this.streamId, null, 0, getInputQueueSize());
 		getStreamHandler().muxAdaptorRemoved(this);
 
@@ -1496,62 +1674,70 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	public void start() {
 		logger.info("Number of items in the queue while adaptor is being started to prepare is {}", getInputQueueSize());
 
-		vertx.executeBlocking(() -> {
-			logger.info("before prepare for {}", streamId);
-			Boolean successful = false;
-			try {
-
-				packetPollerId = vertx.setPeriodic(10, t-> 
-				vertx.executeBlocking(()-> {
-					try {
-						execute();
-					}
-					catch (Exception e) {
-						logger.error(ExceptionUtils.getStackTrace(e));
-					}
-					return null;
-				}, false));
-
+		if (bufferTimeMs > 0) {
+			logger.info("Buffered packet writer is enabled for stream: {} buffer duration:{}ms", streamId, bufferTimeMs);
+		}
 
+		drainTask = PacketDrainScheduler.getInstance().register(streamId, this::drainPackets);
+		//drain the packets that are received before start
+		drainTask.signal();
 
-				if (bufferTimeMs > 0)  
-				{
-					//this is just a simple hack to run in different context(different thread).
-					logger.info("Scheduling the buffered packet writer for stream: {} buffer duration:{}ms", streamId, bufferTimeMs);
-					bufferedPacketWriterId = vertx.setPeriodic(10, k -> 
+		logger.info("Number of items in the queue while starting: {} for stream: {}", getInputQueueSize(), streamId);
+	}
 
-					vertx.executeBlocking(()-> {
-						try {
-							writeBufferedPacket();
-						}
-						catch (Exception e) {
-							logger.error(ExceptionUtils.getStackTrace(e));
-						}
-						return null;
-					}, false)
-							);
+	/**
+	 * It's called in the worker of the stream in {@link PacketDrainScheduler} whenever a packet is received or 
+	 * stop is requested. Both {@link #execute()} and {@link #writeBufferedPacket()} run in the same thread in order
+	 */
+	public void drainPackets() {
+		execute();
 
-				}
+		PacketDrainScheduler.DrainTask task = drainTask;
+		if (task == null || task.isCancelled()) {
+			//adaptor is being closed
+			return;
+		}
 
-				logger.info("Number of items in the queue while starting: {} for stream: {}", 
-						getInputQueueSize(), streamId);
+		if (bufferTimeMs > 0) {
+			writeBufferedPacket();
+		}
 
-				successful = true;
+		//analyze timeout and buffered packet writing depend on time so wake up at their deadline even if there is no new packet
+		long wakeUpTimeMs = getNextDrainTimeMs();
+		if (wakeUpTimeMs != Long.MAX_VALUE) 
+		{
+			task.signalDelayed(Math.max(0, wakeUpTimeMs - System.currentTimeMillis()));
+		}
+	}
 
+	/**
+	 * @return the time when the packets should be drained again without a new packet or Long.MAX_VALUE 
+	 * if it's only needed when a new packet is received
+	 */
+	public long getNextDrainTimeMs() {
+		long wakeUpTimeMs = Long.MAX_VALUE;
+		if (!isRecording.get() && checkStreamsStartTime != -1) {
+			//max analyze time is checked in checkMaxAnalyzeTotalTime. It's not checked again after the deadline
+			long analyzeDeadlineMs = checkStreamsStartTime + 2 * maxAnalyzeDurationMS;
+			if (analyzeDeadlineMs > System.currentTimeMillis()) {
+				wakeUpTimeMs = analyzeDeadlineMs;
 			}
-			catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
-			return successful;
-
-		}, false  // run unordered
-				);
+		}
+		if (bufferTimeMs > 0) {
+			//it's Long.MAX_VALUE while buffering because only new packets can end buffering
+			wakeUpTimeMs = Math.min(wakeUpTimeMs, bufferQueue.getNextReleaseTimeMs());
+		}
+		return wakeUpTimeMs;
 	}
 
 	@Override
 	public void stop(boolean shutdownCompletely) {
 		logger.info("Calling stop for {} input queue size:{}", streamId, getInputQueueSize());
 		stopRequestExist = true;
+		PacketDrainScheduler.DrainTask task = drainTask;
+		if (task != null) {
+			task.signal();
+		}
 	}
 
 	public int getInputQueueSize() {
@@ -1568,76 +1754,40 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 
 	/**
-	 * This method is called when rtmpIngestBufferTime is bigger than zero
+	 * This method is called when rtmpIngestBufferTime is bigger than zero. 
+	 * It writes the packets whose time has come according to the playout clock of the jitter buffer
 	 */
 	public void writeBufferedPacket()
 	{
-		synchronized (this) {
-
-			if (isBufferedWriterRunning.compareAndSet(false, true)) {
-				try {
-					if (!buffering.get())
-					{
-						while(!bufferQueue.isEmpty())
-						{
-							IStreamPacket tempPacket = bufferQueue.first();
-
-							long now = System.currentTimeMillis();
-
-							//elapsed time since the buffering  finished 
-							long passedTime = now - bufferingFinishTimeMs;
-
-							//time difference between this packet and the packet's timestamp when buffer is big enough to send
-							long pktTimeDifferenceMs = tempPacket.getTimestamp() - firstPacketReadyToSentTimeMs;
-
-							if (pktTimeDifferenceMs < passedTime)
-							{
-								writeStreamPacket(tempPacket);
-
-								bufferQueue.remove(tempPacket); //remove the packet from the queue
-							}
-							else {
-								break;
-							}
-
-						}
-
-						//update buffering. If bufferQueue is empty, it should start buffering
-						buffering.set(bufferQueue.isEmpty());
-
-					}
-					bufferLogCounter++; //we use this parameter in execute method as well
-					if (bufferLogCounter % COUNT_TO_LOG_BUFFER  == 0) 
-					{
-						IStreamPacket streamPacket = !bufferQueue.isEmpty() ? bufferQueue.first() : null;
-						int bufferedDuration = 0;
-						if (streamPacket != null) {
-							bufferedDuration = bufferQueue.last().getTimestamp() - streamPacket.getTimestamp();
-						}
-						logger.info("WriteBufferedPacket -> Buffering status {}, buffer duration {}ms buffer time {}ms stream: {}", buffering, bufferedDuration, bufferTimeMs, streamId);
-						bufferLogCounter = 0;
-					}
+		if (isBufferedWriterRunning.compareAndSet(false, true)) {
+			try {
+				IStreamPacket packet;
+				while ((packet = bufferQueue.pollReady(System.currentTimeMillis())) != null) 
+				{
+					writeStreamPacket(packet);
 				}
-				finally {
-					isBufferedWriterRunning.compareAndSet(true, false);
+
+				bufferLogCounter++; //we use this parameter in execute method as well
+				if (bufferLogCounter % COUNT_TO_LOG_BUFFER  == 0) 
+				{
+					logger.info("WriteBufferedPacket -> Buffering status {}, buffer duration {}ms buffer time {}ms stream: {}", bufferQueue.isBuffering(), bufferQueue.getBufferedDurationMs(), bufferTimeMs, streamId);
+					bufferLogCounter = 0;
 				}
 			}
+			finally {
+				isBufferedWriterRunning.compareAndSet(true, false);
+			}
 		}
 	}
 
 
 	private void writeAllBufferedPackets()
 	{
-		synchronized (this) {
-			logger.info("write all buffered packets for stream: {} ", streamId);
-			while (!bufferQueue.isEmpty()) {
-
-				IStreamPacket tempPacket = bufferQueue.first();
-				writeStreamPacket(tempPacket);
-				bufferQueue.remove(tempPacket);
-			}
+		logger.info("write all buffered packets for stream: {} ", streamId);
+		IStreamPacket packet;
+		while ((packet = bufferQueue.pollFirst()) != null) {
+			writeStreamPacket(packet);
 		}
-
 	}
 
 	@Override
@@ -1670,6 +1820,10 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 		streamPacketQueue.add(event);
 
+		PacketDrainScheduler.DrainTask task = drainTask;
+		if (task != null) {
+			task.signal();
+		}
 	}
 
 	@Override
@@ -1973,7 +2127,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		if (muxer != null && recordType == RecordType.MP4)
 		{
 			muxerList.remove(muxer);
-			muxer.writeTrailer();
+			writeTrailer(muxer);
 			return (RecordMuxer) muxer;
 		}
 		return null;
@@ -2194,7 +2348,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			{
 				muxerList.remove(rtmpMuxer);
 				statusMap.remove(rtmpUrl);
-				rtmpMuxer.writeTrailer();
+				writeTrailer(rtmpMuxer);
 				result.setSuccess(true);
 			}
 			else if(status == null
@@ -2250,11 +2404,11 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	}
 
 	public boolean isBuffering() {
-		return buffering.get();
+		return bufferQueue.isBuffering();
 	}
 
 	public void setBuffering(boolean buffering) {
-		this.buffering.set(buffering);
+		bufferQueue.setBuffering(buffering);
 	}
 
 	public String getDataChannelWebHookURL() {
@@ -2278,16 +2432,51 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		this.avc = avc;
 	}
 
-	public ConcurrentSkipListSet<IStreamPacket> getBufferQueue() {
+	public PacketJitterBuffer<IStreamPacket> getBufferQueue() {
 		return bufferQueue;
 	}
 
+	public boolean isAsyncMuxerFanOutEnabled() {
+		return asyncMuxerFanOutEnabled;
+	}
+
+	public void setAsyncMuxerFanOutEnabled(boolean asyncMuxerFanOutEnabled) {
+		this.asyncMuxerFanOutEnabled = asyncMuxerFanOutEnabled;
+	}
+
+	public void setAsyncMuxerQueueSize(int asyncMuxerQueueSize) {
+		this.asyncMuxerQueueSize = asyncMuxerQueueSize;
+	}
+
+	public void setAsyncMuxerOverflowPolicy(AsyncMuxerWriter.OverflowPolicy asyncMuxerOverflowPolicy) {
+		this.asyncMuxerOverflowPolicy = asyncMuxerOverflowPolicy;
+	}
+
+	public DirectBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	public void setBufferPool(DirectBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	public PacketDrainScheduler.DrainTask getDrainTask() {
+		return drainTask;
+	}
+
 	public void setBufferingFinishTimeMs(long bufferingFinishTimeMs) {
-		this.bufferingFinishTimeMs = bufferingFinishTimeMs;
+		bufferQueue.setPlayoutStartTimeMs(bufferingFinishTimeMs);
 	}
 
-	public LinkedList<PacketTime> getPacketTimeList() {
-		return packetTimeList;
+	public StreamHealthEstimator getStreamHealthEstimator() {
+		return streamHealthEstimator;
+	}
+
+	/**
+	 * @return statistics of the ingest jitter buffer or null if the buffered packet writer is not enabled
+	 */
+	public JitterBufferStats getJitterBufferStats() {
+		return bufferTimeMs > 0 ? bufferQueue.getStats() : null;
 	}
 
 	public int getVideoStreamIndex() {
@@ -2388,6 +2577,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 	public void setBufferTimeMs(long bufferTimeMs) {
 		this.bufferTimeMs = bufferTimeMs;
+		bufferQueue.setBufferTimeMs(bufferTimeMs);
 	}
 
 
@@ -60,6 +60,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
 
 import io.antmedia.AppSettings;
+import io.antmedia.muxer.buffer.PooledBuffer;
 import io.vertx.core.Vertx;
 import io.vertx.core.impl.ConcurrentHashSet;
 
@@ -1006,6 +1007,57 @@ public abstract class Muxer {
 		av_packet_unref(videoPkt);
 	}
 
+	/**
+	 * Muxers whose write methods never block, i.e. they don't write to the disk or to the network, can override this method
+	 * and return true so that they're written directly in the shared packet drain workers of the stream.
+	 * Other muxers are written in the writer threads through {@link AsyncMuxerWriter}
+	 *
+	 * @return true if the write methods of the muxer never block
+	 */
+	public boolean isNonBlockingWrite() {
+		return false;
+	}
+
+	/**
+	 * Muxers that pass the frame to FFmpeg in the write call and do not keep the ByteBuffer after the call returns
+	 * should override this method and return true, so that they write the pooled buffer directly.
+	 * For other muxers, buffer is detached from the pool and it's freed by GC when they drop it.
+	 *
+	 * @return true if the muxer does not keep the buffers passed to write methods after the call returns
+	 */
+	public boolean isPooledWriteSupported() {
+		return false;
+	}
+
+	/**
+	 * Write the video frame that is borrowed from the DirectBufferPool. Buffer is valid only until this method returns
+	 * if {@link #isPooledWriteSupported()} is true. Muxers that keep the {@link PooledBuffer} itself should override
+	 * this method and {@link PooledBuffer#retain()} it
+	 */
+	public void writeVideoBuffer(PooledBuffer encodedVideoFrame, long dts, int frameRotation, int streamIndex, boolean isKeyFrame, long firstFrameTimeStamp, long pts) {
+		writeVideoBuffer(getBufferForWrite(encodedVideoFrame), dts, frameRotation, streamIndex, isKeyFrame, firstFrameTimeStamp, pts);
+	}
+
+	/**
+	 * Write the audio frame that is borrowed from the DirectBufferPool. Buffer is valid only until this method returns
+	 * if {@link #isPooledWriteSupported()} is true. Muxers that keep the {@link PooledBuffer} itself should override
+	 * this method and {@link PooledBuffer#retain()} it
+	 */
+	public void writeAudioBuffer(PooledBuffer audioFrame, int streamIndex, long timestamp) {
+		writeAudioBuffer(getBufferForWrite(audioFrame), streamIndex, timestamp);
+	}
+
+	private ByteBuffer getBufferForWrite(PooledBuffer pooledBuffer) {
+		if (!isPooledWriteSupported()) {
+			//muxer may keep the buffer, don't let the pool reuse the memory
+			pooledBuffer.detach();
+		}
+		//duplicate has its own position and limit so that consumers do not affect each other
+		ByteBuffer buffer = pooledBuffer.getBuffer().duplicate();
+		buffer.rewind();
+		return buffer;
+	}
+
 	public synchronized void writeAudioBuffer(ByteBuffer audioFrame, int streamIndex, long timestamp) {
 		if (!isRunning.get()) {
 			logPacketIssue("Not writing AudioBuffer for {} because Is running:{}", streamId, isRunning.get());
@@ -0,0 +1,38 @@
+package io.antmedia.muxer;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Queue statistics of a muxer that is written by {@link AsyncMuxerWriter}
+ */
+@Schema(description = "Queue statistics of a muxer in async fan-out mode")
+public class MuxerQueueStats {
+
+	@Schema(description = "Format of the muxer such as hls, mp4, flv")
+	public final String format;
+
+	@Schema(description = "Output url of the muxer")
+	public final String url;
+
+	@Schema(description = "Number of packets waiting in the queue")
+	public final int queueSize;
+
+	@Schema(description = "Capacity of the queue")
+	public final int queueCapacity;
+
+	@Schema(description = "Number of packets dropped for this muxer")
+	public final long droppedPacketCount;
+
+	@Schema(description = "True if the muxer is disconnected because it could not keep up with the stream")
+	public final boolean disconnected;
+
+	public MuxerQueueStats(String format, String url, int queueSize, int queueCapacity, long droppedPacketCount,
+			boolean disconnected) {
+		this.format = format;
+		this.url = url;
+		this.queueSize = queueSize;
+		this.queueCapacity = queueCapacity;
+		this.droppedPacketCount = droppedPacketCount;
+		this.disconnected = disconnected;
+	}
+}
@@ -0,0 +1,297 @@
+package io.antmedia.muxer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the packet draining jobs of the streams in a fixed number of workers.
+ *
+ * Streams are not polled periodically. Instead, a stream signals its {@link DrainTask} when a packet is received
+ * and the task is run in the worker of the stream. Signals that come while the task is waiting to be run are coalesced.
+ * Jobs that depend on time schedule a single delayed signal at their deadline.
+ *
+ * Workers are shared by the streams so the jobs should not block. Blocking work is done in other threads:
+ * <ul>
+ * <li>Packets are written to the muxers that may block(RTMP endpoints, HLS, MP4, etc.) through {@link AsyncMuxerWriter}.
+ * Only the muxers that declare {@link Muxer#isNonBlockingWrite()} are written in the workers</li>
+ * <li>Muxers are prepared and the trailers are written in vertx workers</li>
+ * </ul>
+ *
+ * Each stream is assigned to a single worker by the hash of its stream id so that the packets of a stream
+ * are always drained in the same thread and in order.
+ */
+public class PacketDrainScheduler implements PacketDrainSchedulerMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(PacketDrainScheduler.class);
+
+	private static PacketDrainScheduler instance;
+
+	private final ScheduledThreadPoolExecutor[] workers;
+
+	private final WorkerStats[] workerStats;
+
+	private static class WorkerStats {
+		private final AtomicInteger streamCount = new AtomicInteger();
+		private final AtomicInteger backlog = new AtomicInteger();
+		private final LongAdder drainCount = new LongAdder();
+		private final LongAdder totalLatencyNs = new LongAdder();
+		private final AtomicLong maxLatencyNs = new AtomicLong();
+
+		private void addLatency(long latencyNs) {
+			drainCount.increment();
+			totalLatencyNs.add(latencyNs);
+			long max;
+			while (latencyNs > (max = maxLatencyNs.get()) && !maxLatencyNs.compareAndSet(max, latencyNs)) {
+				//try again
+			}
+		}
+	}
+
+	/**
+	 * Drain job of a stream. It's created by {@link PacketDrainScheduler#register(String, Runnable)}
+	 */
+	public class DrainTask implements Runnable {
+
+		private final String streamId;
+		private final Runnable job;
+		private final int workerIndex;
+		private final AtomicBoolean pending = new AtomicBoolean(false);
+		private volatile boolean cancelled = false;
+		private volatile long signalTimeNs;
+
+		/**
+		 * Time of the scheduled delayed signal in nanoTime or Long.MAX_VALUE if there is none. Guarded by this task
+		 */
+		private long wakeUpTimeNs = Long.MAX_VALUE;
+		private ScheduledFuture<?> wakeUpFuture;
+
+		private DrainTask(String streamId, Runnable job, int workerIndex) {
+			this.streamId = streamId;
+			this.job = job;
+			this.workerIndex = workerIndex;
+		}
+
+		/**
+		 * Schedule the drain job to run as soon as possible in the worker of the stream.
+		 * It does nothing if the job is already waiting to be run
+		 */
+		public void signal() {
+			if (!cancelled && pending.compareAndSet(false, true)) {
+				signalTimeNs = System.nanoTime();
+				workerStats[workerIndex].backlog.incrementAndGet();
+				workers[workerIndex].execute(this);
+			}
+		}
+
+		/**
+		 * Schedule the drain job to run after delay. It's used for the jobs that depend on time, not on the incoming packets
+		 * such as the analyze timeout and buffered packet writing.
+		 * Only the earliest delayed signal is kept. It does nothing if there is an earlier or same time signal already
+		 * @param delayMs
+		 */
+		public void signalDelayed(long delayMs) {
+			if (cancelled) {
+				return;
+			}
+			long wakeUpTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+			synchronized (this) {
+				if (wakeUpTimeNs <= wakeUpTime) {
+					return;
+				}
+				if (wakeUpFuture != null) {
+					wakeUpFuture.cancel(false);
+				}
+				wakeUpTimeNs = wakeUpTime;
+				wakeUpFuture = workers[workerIndex].schedule(this::wakeUp, delayMs, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private void wakeUp() {
+			synchronized (this) {
+				if (System.nanoTime() >= wakeUpTimeNs) {
+					wakeUpTimeNs = Long.MAX_VALUE;
+					wakeUpFuture = null;
+				}
+			}
+			signal();
+		}
+
+		@Override
+		public void run() {
+			WorkerStats stats = workerStats[workerIndex];
+			stats.backlog.decrementAndGet();
+			stats.addLatency(System.nanoTime() - signalTimeNs);
+			//reset pending before running the job so that signals during the job are not lost
+			pending.set(false);
+			if (cancelled) {
+				return;
+			}
+			try {
+				job.run();
+			}
+			catch (Exception e) {
+				logger.error("Exception in draining packets for stream:{} {}", streamId, ExceptionUtils.getStackTrace(e));
+			}
+		}
+
+		/**
+		 * Stop scheduling the job. Job that is already running is not interrupted
+		 */
+		public void cancel() {
+			if (!cancelled) {
+				cancelled = true;
+				workerStats[workerIndex].streamCount.decrementAndGet();
+				synchronized (this) {
+					if (wakeUpFuture != null) {
+						wakeUpFuture.cancel(false);
+						wakeUpFuture = null;
+					}
+				}
+			}
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public int getWorkerIndex() {
+			return workerIndex;
+		}
+	}
+
+	public static synchronized PacketDrainScheduler getInstance() {
+		if (instance == null) {
+			instance = new PacketDrainScheduler(Runtime.getRuntime().availableProcessors());
+			instance.registerMBean();
+		}
+		return instance;
+	}
+
+	public PacketDrainScheduler(int workerCount) {
+		workers = new ScheduledThreadPoolExecutor[workerCount];
+		workerStats = new WorkerStats[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			final int index = i;
+			ThreadFactory threadFactory = r -> {
+				Thread thread = new Thread(r, "packet-drain-" + index);
+				thread.setDaemon(true);
+				return thread;
+			};
+			workers[i] = new ScheduledThreadPoolExecutor(1, threadFactory);
+			workers[i].setRemoveOnCancelPolicy(true);
+			workerStats[i] = new WorkerStats();
+		}
+	}
+
+	private void registerMBean() {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName("io.antmedia:type=PacketDrainScheduler");
+			if (!mbs.isRegistered(objectName)) {
+				mbs.registerMBean(new StandardMBean(this, PacketDrainSchedulerMXBean.class, true), objectName);
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	/**
+	 * Register the drain job of a stream.
+	 * @param streamId is used to choose the worker so that the jobs of the same stream run in order
+	 * @param job is run in the worker thread after each signal
+	 * @return task to signal
+	 */
+	public DrainTask register(String streamId, Runnable job) {
+		int workerIndex = getWorkerIndex(streamId);
+		workerStats[workerIndex].streamCount.incrementAndGet();
+		return new DrainTask(streamId, job, workerIndex);
+	}
+
+	public int getWorkerIndex(String streamId) {
+		int hash = streamId != null ? streamId.hashCode() : 0;
+		//spread the bits like HashMap does
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % workers.length;
+	}
+
+	public void shutdown() {
+		for (ScheduledThreadPoolExecutor worker : workers) {
+			worker.shutdownNow();
+		}
+	}
+
+	@Override
+	public int getWorkerCount() {
+		return workers.length;
+	}
+
+	@Override
+	public int[] getStreamCounts() {
+		int[] result = new int[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			result[i] = workerStats[i].streamCount.get();
+		}
+		return result;
+	}
+
+	@Override
+	public int[] getBacklogs() {
+		int[] result = new int[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			result[i] = workerStats[i].backlog.get();
+		}
+		return result;
+	}
+
+	@Override
+	public long[] getDrainCounts() {
+		long[] result = new long[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			result[i] = workerStats[i].drainCount.sum();
+		}
+		return result;
+	}
+
+	@Override
+	public long[] getAverageLatencyMicros() {
+		long[] result = new long[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			long count = workerStats[i].drainCount.sum();
+			result[i] = count > 0 ? TimeUnit.NANOSECONDS.toMicros(workerStats[i].totalLatencyNs.sum() / count) : 0;
+		}
+		return result;
+	}
+
+	@Override
+	public long[] getMaxLatencyMicros() {
+		long[] result = new long[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			result[i] = TimeUnit.NANOSECONDS.toMicros(workerStats[i].maxLatencyNs.get());
+		}
+		return result;
+	}
+
+	@Override
+	public void resetStats() {
+		for (WorkerStats stats : workerStats) {
+			stats.drainCount.reset();
+			stats.totalLatencyNs.reset();
+			stats.maxLatencyNs.set(0);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package io.antmedia.muxer;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the {@link PacketDrainScheduler}. Arrays are indexed by the worker index
+ */
+@MXBean
+public interface PacketDrainSchedulerMXBean {
+
+	public int getWorkerCount();
+
+	/**
+	 * @return number of streams that are assigned to each worker
+	 */
+	public int[] getStreamCounts();
+
+	/**
+	 * @return number of drain jobs that are waiting to be run in each worker
+	 */
+	public int[] getBacklogs();
+
+	/**
+	 * @return number of drain jobs that are run in each worker
+	 */
+	public long[] getDrainCounts();
+
+	/**
+	 * @return average time in microseconds between signal and the start of the drain job in each worker
+	 */
+	public long[] getAverageLatencyMicros();
+
+	/**
+	 * @return max time in microseconds between signal and the start of the drain job in each worker
+	 * since the last reset
+	 */
+	public long[] getMaxLatencyMicros();
+
+	public void resetStats();
+}
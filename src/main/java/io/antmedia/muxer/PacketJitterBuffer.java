@@ -0,0 +1,320 @@
+package io.antmedia.muxer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * Jitter buffer that keeps the packets in timestamp order and releases them according to its own playout clock.
+ *
+ * Packets are kept in an array ring. Packets are generally received in order, so adding a packet is O(1)
+ * and out of order packets are moved back to their places with insertion. Packets with the same timestamp
+ * are kept in the order they are received, so that audio and video packets with the same timestamp are not lost.
+ * Removing packets from the head is O(1).
+ *
+ * Buffering works as follows
+ * - It's in buffering state at the beginning and whenever the buffer is empty
+ * - When buffered duration exceeds the buffer time, playout clock starts from the last packet's timestamp
+ * - A packet is ready when the elapsed time of its timestamp is less than the elapsed wall clock time since the playout start
+ * - If buffered duration exceeds 5 times of the buffer time, packets are dropped from the head until
+ *   buffered duration is less than 2 times of the buffer time
+ *
+ * This class is not thread safe except the statistics getters. It's accessed in the drain worker of the stream
+ *
+ * @param <T> type of the packet
+ */
+public class PacketJitterBuffer<T> {
+
+	/**
+	 * Upper bounds of the buffer occupancy histogram buckets in milliseconds. Last bucket is for the bigger values
+	 */
+	public static final long[] OCCUPANCY_BUCKET_BOUNDS_MS = {100, 250, 500, 1000, 2000, 3000, 5000};
+
+	private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+	private final ToLongFunction<T> timestampFunction;
+
+	private volatile long bufferTimeMs;
+
+	private Object[] items;
+
+	private long[] timestamps;
+
+	private int head = 0;
+
+	private int size = 0;
+
+	private int mask;
+
+	private volatile boolean buffering = true;
+
+	/**
+	 * Wall clock time when playout is started
+	 */
+	private volatile long playoutStartTimeMs = 0;
+
+	/**
+	 * Packet timestamp at the playout start
+	 */
+	private volatile long playoutStartTimestamp = 0;
+
+	private final AtomicLongArray occupancyHistogram = new AtomicLongArray(OCCUPANCY_BUCKET_BOUNDS_MS.length + 1);
+
+	private volatile long droppedPacketCount = 0;
+
+	private volatile long bufferedDurationMs = 0;
+
+	/**
+	 * @param bufferTimeMs target buffer duration
+	 * @param timestampFunction returns the timestamp of the packet in milliseconds
+	 */
+	public PacketJitterBuffer(long bufferTimeMs, ToLongFunction<T> timestampFunction) {
+		this(bufferTimeMs, timestampFunction, DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity is rounded up to power of two. Buffer grows if it's not enough
+	 */
+	public PacketJitterBuffer(long bufferTimeMs, ToLongFunction<T> timestampFunction, int initialCapacity) {
+		this.bufferTimeMs = bufferTimeMs;
+		this.timestampFunction = timestampFunction;
+		int capacity = Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1;
+		items = new Object[capacity];
+		timestamps = new long[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Inserts the packet to its place according to its timestamp without updating buffering state.
+	 * Packets with the same timestamp are kept in the insertion order
+	 */
+	public void add(T packet) {
+		if (size == items.length) {
+			grow();
+		}
+
+		long timestamp = timestampFunction.applyAsLong(packet);
+		int position = size;
+		//move the bigger ones one step towards tail
+		while (position > 0 && timestamps[(head + position - 1) & mask] > timestamp) {
+			int from = (head + position - 1) & mask;
+			int to = (head + position) & mask;
+			items[to] = items[from];
+			timestamps[to] = timestamps[from];
+			position--;
+		}
+		int index = (head + position) & mask;
+		items[index] = packet;
+		timestamps[index] = timestamp;
+		size++;
+		bufferedDurationMs = getDurationInternal();
+	}
+
+	/**
+	 * Adds the packet and updates the buffering state.
+	 * @param packet
+	 * @param nowMs current wall clock time
+	 */
+	public void put(T packet, long nowMs) {
+		add(packet);
+
+		long bufferedDuration = getDurationInternal();
+		if (bufferedDuration > bufferTimeMs * 5) {
+			//set buffering true to not let packets be released until the buffer is filled again
+			buffering = true;
+			long lastTimestamp = timestamps[(head + size - 1) & mask];
+			while (size > 0 && (lastTimestamp - timestamps[head]) >= bufferTimeMs * 2) {
+				removeHead();
+				droppedPacketCount++;
+			}
+			bufferedDuration = getDurationInternal();
+		}
+
+		if (bufferedDuration > bufferTimeMs && buffering) {
+			playoutStartTimeMs = nowMs;
+			playoutStartTimestamp = timestamps[(head + size - 1) & mask];
+			buffering = false;
+		}
+
+		bufferedDurationMs = bufferedDuration;
+		addToHistogram(bufferedDuration);
+	}
+
+	/**
+	 * @param nowMs current wall clock time
+	 * @return the head packet if it's time to release it according to the playout clock, null otherwise.
+	 * It switches to buffering if buffer is empty
+	 */
+	public T pollReady(long nowMs) {
+		if (buffering) {
+			return null;
+		}
+		if (size == 0) {
+			buffering = true;
+			return null;
+		}
+
+		long elapsedTimeMs = nowMs - playoutStartTimeMs;
+		long elapsedPacketTimeMs = timestamps[head] - playoutStartTimestamp;
+		if (elapsedPacketTimeMs < elapsedTimeMs) {
+			T packet = removeHead();
+			bufferedDurationMs = getDurationInternal();
+			if (size == 0) {
+				buffering = true;
+			}
+			return packet;
+		}
+		return null;
+	}
+
+	/**
+	 * @return wall clock time when the head packet is ready to be released by {@link #pollReady(long)} or
+	 * Long.MAX_VALUE if it's buffering or empty
+	 */
+	public long getNextReleaseTimeMs() {
+		if (buffering || size == 0) {
+			return Long.MAX_VALUE;
+		}
+		return playoutStartTimeMs + (timestamps[head] - playoutStartTimestamp) + 1;
+	}
+
+	/**
+	 * Removes and returns the head packet regardless of the playout clock
+	 */
+	public T pollFirst() {
+		if (size == 0) {
+			return null;
+		}
+		T packet = removeHead();
+		bufferedDurationMs = getDurationInternal();
+		return packet;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T first() {
+		return size > 0 ? (T) items[head] : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T last() {
+		return size > 0 ? (T) items[(head + size - 1) & mask] : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T removeHead() {
+		T packet = (T) items[head];
+		items[head] = null;
+		head = (head + 1) & mask;
+		size--;
+		return packet;
+	}
+
+	private void grow() {
+		int newCapacity = items.length << 1;
+		Object[] newItems = new Object[newCapacity];
+		long[] newTimestamps = new long[newCapacity];
+		for (int i = 0; i < size; i++) {
+			newItems[i] = items[(head + i) & mask];
+			newTimestamps[i] = timestamps[(head + i) & mask];
+		}
+		items = newItems;
+		timestamps = newTimestamps;
+		head = 0;
+		mask = newCapacity - 1;
+	}
+
+	private long getDurationInternal() {
+		return size > 1 ? timestamps[(head + size - 1) & mask] - timestamps[head] : 0;
+	}
+
+	private void addToHistogram(long bufferedDuration) {
+		int bucket = 0;
+		while (bucket < OCCUPANCY_BUCKET_BOUNDS_MS.length && bufferedDuration >= OCCUPANCY_BUCKET_BOUNDS_MS[bucket]) {
+			bucket++;
+		}
+		occupancyHistogram.incrementAndGet(bucket);
+	}
+
+	public void clear() {
+		Arrays.fill(items, null);
+		head = 0;
+		size = 0;
+		bufferedDurationMs = 0;
+		buffering = true;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return items.length;
+	}
+
+	/**
+	 * @return duration between the first and the last packet in the buffer
+	 */
+	public long getBufferedDurationMs() {
+		return bufferedDurationMs;
+	}
+
+	public boolean isBuffering() {
+		return buffering;
+	}
+
+	public void setBuffering(boolean buffering) {
+		this.buffering = buffering;
+	}
+
+	public long getPlayoutStartTimeMs() {
+		return playoutStartTimeMs;
+	}
+
+	public void setPlayoutStartTimeMs(long playoutStartTimeMs) {
+		this.playoutStartTimeMs = playoutStartTimeMs;
+	}
+
+	public long getPlayoutStartTimestamp() {
+		return playoutStartTimestamp;
+	}
+
+	public void setPlayoutStartTimestamp(long playoutStartTimestamp) {
+		this.playoutStartTimestamp = playoutStartTimestamp;
+	}
+
+	public long getBufferTimeMs() {
+		return bufferTimeMs;
+	}
+
+	public void setBufferTimeMs(long bufferTimeMs) {
+		this.bufferTimeMs = bufferTimeMs;
+	}
+
+	/**
+	 * @return number of packets dropped because buffer exceeded 5 times of the buffer time
+	 */
+	public long getDroppedPacketCount() {
+		return droppedPacketCount;
+	}
+
+	/**
+	 * @return number of samples in each bucket of {@link #OCCUPANCY_BUCKET_BOUNDS_MS}.
+	 * Buffered duration is sampled whenever a packet is put
+	 */
+	public long[] getOccupancyHistogram() {
+		long[] histogram = new long[occupancyHistogram.length()];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = occupancyHistogram.get(i);
+		}
+		return histogram;
+	}
+
+	public JitterBufferStats getStats() {
+		return new JitterBufferStats(bufferTimeMs, bufferedDurationMs, buffering, droppedPacketCount,
+				OCCUPANCY_BUCKET_BOUNDS_MS.clone(), getOccupancyHistogram());
+	}
+}
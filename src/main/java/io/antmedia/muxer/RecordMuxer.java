@@ -55,6 +55,14 @@ public abstract class RecordMuxer extends Muxer {
 
 	protected int[] SUPPORTED_CODECS;
 
+	/**
+	 * Frames are passed to FFmpeg in the write call and FFmpeg copies the non ref-counted packets
+	 */
+	@Override
+	public boolean isPooledWriteSupported() {
+		return true;
+	}
+
 	public boolean isCodecSupported(int codecId) {
 		for (int i=0; i< SUPPORTED_CODECS.length; i++) {
 			if (codecId == SUPPORTED_CODECS[i]) {
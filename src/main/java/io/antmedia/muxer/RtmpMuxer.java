@@ -404,6 +404,14 @@ public class RtmpMuxer extends Muxer {
 		}
 	}
 
+	/**
+	 * Frames are passed to FFmpeg in the write call and FFmpeg copies the non ref-counted packets
+	 */
+	@Override
+	public boolean isPooledWriteSupported() {
+		return true;
+	}
+
 	@Override
 	public boolean isCodecSupported(int codecId) {
 		return (codecId == AV_CODEC_ID_H264 || codecId == AV_CODEC_ID_AAC);
@@ -0,0 +1,275 @@
+package io.antmedia.muxer;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the health of an ingested stream from the last packets without allocating per packet.
+ *
+ * Packet times, sizes and flags are kept in a primitive ring. Speed, bitrate, jitter and GOP duration
+ * are updated incrementally with each packet. Ingest delay of a packet is relative to the packet that arrived earliest
+ * for its timestamp since the start, and its percentiles are kept in a histogram of the window. When that earliest packet
+ * changes, histogram is rebuilt the next time it's read instead of on every packet.
+ */
+public class StreamHealthEstimator implements StreamHealthMXBean {
+
+	public static final int DEFAULT_WINDOW_SIZE = 300;
+
+	public static final int DELAY_BUCKET_MS = 10;
+
+	/**
+	 * Delays longer than this are counted in the last bucket
+	 */
+	public static final int MAX_DELAY_MS = 5000;
+
+	private static final int DELAY_BUCKET_COUNT = MAX_DELAY_MS / DELAY_BUCKET_MS + 1;
+
+	private static final byte FLAG_KEY_FRAME = 1;
+
+	private final int capacity;
+
+	private final long[] packetTimeMs;
+
+	private final long[] systemTimeMs;
+
+	private final int[] packetSize;
+
+	private final byte[] flags;
+
+	/**
+	 * Delay bucket of each packet in the ring, it's used to remove the packet from the histogram
+	 */
+	private final short[] delayBucket;
+
+	private final int[] delayHistogram = new int[DELAY_BUCKET_COUNT];
+
+	private int head = 0;
+
+	private int count = 0;
+
+	private long windowBytes = 0;
+
+	/**
+	 * Minimum of the system time minus packet time since the start. Delays are relative to it
+	 */
+	private long delayBaseMs = Long.MAX_VALUE;
+
+	/**
+	 * True if the delay base is changed after the histogram is built. Histogram is rebuilt when it's read
+	 */
+	private boolean delayHistogramStale = false;
+
+	private double jitterMs = 0;
+
+	private long lastKeyFrameTimeMs = -1;
+
+	private long gopDurationMs = 0;
+
+	private long totalPacketCount = 0;
+
+	public StreamHealthEstimator() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	public StreamHealthEstimator(int capacity) {
+		this.capacity = capacity;
+		packetTimeMs = new long[capacity];
+		systemTimeMs = new long[capacity];
+		packetSize = new int[capacity];
+		flags = new byte[capacity];
+		delayBucket = new short[capacity];
+	}
+
+	/**
+	 * @param ptsMs presentation time of the packet in milliseconds
+	 * @param wallClockMs system time that the packet is received
+	 * @param size size of the packet in bytes
+	 * @param keyFrame true if the packet is a video key frame
+	 */
+	public synchronized void addPacket(long ptsMs, long wallClockMs, int size, boolean keyFrame) {
+		if (count > 0) {
+			int last = index(count - 1);
+			//interarrival jitter as in RFC 3550
+			long transitDiff = (wallClockMs - systemTimeMs[last]) - (ptsMs - packetTimeMs[last]);
+			jitterMs += (Math.abs(transitDiff) - jitterMs) / 16.0;
+		}
+
+		if (count == capacity) {
+			windowBytes -= packetSize[head];
+			if (!delayHistogramStale) {
+				delayHistogram[delayBucket[head]]--;
+			}
+			head = (head + 1) % capacity;
+			count--;
+		}
+
+		int slot = index(count);
+		packetTimeMs[slot] = ptsMs;
+		systemTimeMs[slot] = wallClockMs;
+		packetSize[slot] = size;
+		flags[slot] = keyFrame ? FLAG_KEY_FRAME : 0;
+		count++;
+		windowBytes += size;
+		totalPacketCount++;
+
+		long transit = wallClockMs - ptsMs;
+		if (transit < delayBaseMs) {
+			//streams with fast timestamps set a new base on almost every packet, so the histogram is rebuilt lazily
+			delayBaseMs = transit;
+			delayHistogramStale = true;
+		}
+		else if (!delayHistogramStale) {
+			delayBucket[slot] = toBucket(transit - delayBaseMs);
+			delayHistogram[delayBucket[slot]]++;
+		}
+
+		if (keyFrame) {
+			if (lastKeyFrameTimeMs != -1) {
+				gopDurationMs = ptsMs - lastKeyFrameTimeMs;
+			}
+			lastKeyFrameTimeMs = ptsMs;
+		}
+	}
+
+	private int index(int offset) {
+		return (head + offset) % capacity;
+	}
+
+	private static short toBucket(long delayMs) {
+		return (short) Math.min(delayMs / DELAY_BUCKET_MS, DELAY_BUCKET_COUNT - 1L);
+	}
+
+	private void rebuildDelayHistogram() {
+		delayHistogramStale = false;
+		Arrays.fill(delayHistogram, 0);
+		for (int i = 0; i < count; i++) {
+			int slot = index(i);
+			delayBucket[slot] = toBucket(systemTimeMs[slot] - packetTimeMs[slot] - delayBaseMs);
+			delayHistogram[delayBucket[slot]]++;
+		}
+	}
+
+	/**
+	 * @return packet time elapsed per system time in the window. It's 1 if the stream is received in real time
+	 */
+	@Override
+	public synchronized double getSpeed() {
+		if (count < 2) {
+			return 0;
+		}
+		int first = index(0);
+		int last = index(count - 1);
+		long elapsedTime = systemTimeMs[last] - systemTimeMs[first];
+		if (elapsedTime <= 0) {
+			return 0;
+		}
+		return (double) (packetTimeMs[last] - packetTimeMs[first]) / elapsedTime;
+	}
+
+	/**
+	 * @return received bits per second in the window
+	 */
+	@Override
+	public synchronized long getBitrate() {
+		if (count < 2) {
+			return 0;
+		}
+		long elapsedTime = systemTimeMs[index(count - 1)] - systemTimeMs[index(0)];
+		if (elapsedTime <= 0) {
+			return 0;
+		}
+		return windowBytes * 8 * 1000 / elapsedTime;
+	}
+
+	@Override
+	public synchronized double getJitterMs() {
+		return jitterMs;
+	}
+
+	/**
+	 * @return duration between the last two key frames in milliseconds
+	 */
+	@Override
+	public synchronized long getGopDurationMs() {
+		return gopDurationMs;
+	}
+
+	/**
+	 * @return number of the key frames in the window
+	 */
+	@Override
+	public synchronized int getKeyFrameCount() {
+		int keyFrameCount = 0;
+		for (int i = 0; i < count; i++) {
+			keyFrameCount += flags[index(i)] & FLAG_KEY_FRAME;
+		}
+		return keyFrameCount;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return ingest delay in milliseconds that the given percentile of the packets in the window are under.
+	 * It's rounded up to {@link #DELAY_BUCKET_MS}
+	 */
+	public synchronized long getIngestDelayPercentileMs(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		if (delayHistogramStale) {
+			rebuildDelayHistogram();
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+		long cumulative = 0;
+		for (int i = 0; i < DELAY_BUCKET_COUNT; i++) {
+			cumulative += delayHistogram[i];
+			if (cumulative >= rank) {
+				return Math.min((i + 1L) * DELAY_BUCKET_MS, MAX_DELAY_MS);
+			}
+		}
+		return MAX_DELAY_MS;
+	}
+
+	@Override
+	public long getIngestDelayP50Ms() {
+		return getIngestDelayPercentileMs(50);
+	}
+
+	@Override
+	public long getIngestDelayP95Ms() {
+		return getIngestDelayPercentileMs(95);
+	}
+
+	@Override
+	public long getIngestDelayP99Ms() {
+		return getIngestDelayPercentileMs(99);
+	}
+
+	/**
+	 * @return number of the packets in the window
+	 */
+	@Override
+	public synchronized int getPacketCount() {
+		return count;
+	}
+
+	@Override
+	public synchronized long getTotalPacketCount() {
+		return totalPacketCount;
+	}
+
+	public synchronized StreamHealthStats getStats() {
+		return new StreamHealthStats(getSpeed(), getBitrate(), getJitterMs(), getGopDurationMs(),
+				getIngestDelayP50Ms(), getIngestDelayP95Ms(), getIngestDelayP99Ms(), count);
+	}
+
+	public synchronized void reset() {
+		head = 0;
+		count = 0;
+		windowBytes = 0;
+		delayBaseMs = Long.MAX_VALUE;
+		jitterMs = 0;
+		lastKeyFrameTimeMs = -1;
+		gopDurationMs = 0;
+		delayHistogramStale = false;
+		Arrays.fill(delayHistogram, 0);
+	}
+}
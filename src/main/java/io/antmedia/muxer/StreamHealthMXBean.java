@@ -0,0 +1,27 @@
+package io.antmedia.muxer;
+
+/**
+ * Health of an ingested stream that is registered to JMX by {@link MuxAdaptor}
+ */
+public interface StreamHealthMXBean {
+
+	double getSpeed();
+
+	long getBitrate();
+
+	double getJitterMs();
+
+	long getGopDurationMs();
+
+	int getKeyFrameCount();
+
+	long getIngestDelayP50Ms();
+
+	long getIngestDelayP95Ms();
+
+	long getIngestDelayP99Ms();
+
+	int getPacketCount();
+
+	long getTotalPacketCount();
+}
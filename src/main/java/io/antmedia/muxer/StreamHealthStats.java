@@ -0,0 +1,46 @@
+package io.antmedia.muxer;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Health of an ingested stream that is calculated by {@link StreamHealthEstimator}
+ */
+@Schema(description = "Health of the ingested stream in the last packets")
+public class StreamHealthStats {
+
+	@Schema(description = "Packet time elapsed per system time. It's 1 if the stream is received in real time")
+	public final double speed;
+
+	@Schema(description = "Received bits per second")
+	public final long bitrate;
+
+	@Schema(description = "Interarrival jitter in milliseconds")
+	public final double jitterMs;
+
+	@Schema(description = "Duration between the last two key frames in milliseconds")
+	public final long gopDurationMs;
+
+	@Schema(description = "Median ingest delay in milliseconds")
+	public final long ingestDelayP50Ms;
+
+	@Schema(description = "95th percentile of the ingest delay in milliseconds")
+	public final long ingestDelayP95Ms;
+
+	@Schema(description = "99th percentile of the ingest delay in milliseconds")
+	public final long ingestDelayP99Ms;
+
+	@Schema(description = "Number of the packets that the values are calculated from")
+	public final int packetCount;
+
+	public StreamHealthStats(double speed, long bitrate, double jitterMs, long gopDurationMs, long ingestDelayP50Ms,
+			long ingestDelayP95Ms, long ingestDelayP99Ms, int packetCount) {
+		this.speed = speed;
+		this.bitrate = bitrate;
+		this.jitterMs = jitterMs;
+		this.gopDurationMs = gopDurationMs;
+		this.ingestDelayP50Ms = ingestDelayP50Ms;
+		this.ingestDelayP95Ms = ingestDelayP95Ms;
+		this.ingestDelayP99Ms = ingestDelayP99Ms;
+		this.packetCount = packetCount;
+	}
+}
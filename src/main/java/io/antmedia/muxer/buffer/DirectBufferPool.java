@@ -0,0 +1,372 @@
+package io.antmedia.muxer.buffer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size classed pool of direct byte buffers.
+ *
+ * Incoming packets(RTMP, SRT, etc.) are copied to direct buffers before they are written to the muxers.
+ * Allocating a direct buffer for each packet creates lots of native allocations and Cleaner pressure
+ * so that buffers are borrowed from this pool and they are returned when the last consumer releases it.
+ *
+ * Buffers are grouped in size classes that are power of two between {@link #MIN_SIZE_CLASS} and {@link #MAX_SIZE_CLASS}.
+ * Bigger buffers are allocated and freed directly without pooling.
+ *
+ * Some of the borrowed buffers are tracked with a {@link Cleaner} to detect the ones that are garbage collected
+ * without being released. Sampling interval is set by {@link #setLeakDetectionSamplingInterval(int)}
+ */
+public class DirectBufferPool implements DirectBufferPoolMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(DirectBufferPool.class);
+
+	public static final int MIN_SIZE_CLASS = 512;
+
+	public static final int MAX_SIZE_CLASS = 8 * 1024 * 1024;
+
+	public static final long DEFAULT_MAX_POOLED_BYTES_PER_CLASS = 16L * 1024 * 1024;
+
+	public static final int DEFAULT_LEAK_DETECTION_SAMPLING_INTERVAL = 128;
+
+	private static final String UNKNOWN_STREAM = "unknown";
+
+	private static final Cleaner cleaner = Cleaner.create();
+
+	private static DirectBufferPool instance;
+
+	/**
+	 * Free buffers for each size class. Index is the log2(sizeClass/MIN_SIZE_CLASS)
+	 */
+	private final Queue<ByteBuffer>[] freeLists;
+
+	private final AtomicLong[] pooledBytesPerClass;
+
+	private final long maxPooledBytesPerClass;
+
+	private final LongAdder inUseBytes = new LongAdder();
+
+	private final AtomicLong pooledBytes = new AtomicLong();
+
+	private final LongAdder allocationCount = new LongAdder();
+
+	private final LongAdder reuseCount = new LongAdder();
+
+	private final LongAdder leakCount = new LongAdder();
+
+	private final LongAdder detachCount = new LongAdder();
+
+	private final Map<String, StreamBytes> inUseBytesPerStream = new ConcurrentHashMap<>();
+
+	private final AtomicInteger leakSampleCounter = new AtomicInteger();
+
+	private volatile int leakDetectionSamplingInterval = DEFAULT_LEAK_DETECTION_SAMPLING_INTERVAL;
+
+	/**
+	 * State that is checked when a tracked buffer is garbage collected.
+	 * It should not keep reference to the {@link PooledBuffer}, otherwise it's never collected
+	 */
+	static class LeakState implements Runnable {
+
+		private final DirectBufferPool pool;
+		private final String streamId;
+		private final int size;
+		private volatile boolean released = false;
+		private Cleaner.Cleanable cleanable;
+
+		LeakState(DirectBufferPool pool, String streamId, int size) {
+			this.pool = pool;
+			this.streamId = streamId;
+			this.size = size;
+		}
+
+		@Override
+		public void run() {
+			if (!released) {
+				pool.onLeak(streamId, size);
+			}
+		}
+
+		void markReleased() {
+			released = true;
+			if (cleanable != null) {
+				cleanable.clean();
+			}
+		}
+	}
+
+	/**
+	 * In use bytes of a stream. Entry is kept after the stream is removed until its buffers are released
+	 */
+	private static class StreamBytes {
+		private final LongAdder bytes = new LongAdder();
+		private volatile boolean removed = false;
+	}
+
+	public static synchronized DirectBufferPool getInstance() {
+		if (instance == null) {
+			instance = new DirectBufferPool(DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+			instance.registerMBean();
+		}
+		return instance;
+	}
+
+	@SuppressWarnings("unchecked")
+	public DirectBufferPool(long maxPooledBytesPerClass) {
+		this.maxPooledBytesPerClass = maxPooledBytesPerClass;
+		int classCount = Integer.numberOfTrailingZeros(MAX_SIZE_CLASS / MIN_SIZE_CLASS) + 1;
+		freeLists = new Queue[classCount];
+		pooledBytesPerClass = new AtomicLong[classCount];
+		for (int i = 0; i < classCount; i++) {
+			freeLists[i] = new ConcurrentLinkedQueue<>();
+			pooledBytesPerClass[i] = new AtomicLong();
+		}
+	}
+
+	private void registerMBean() {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName("io.antmedia:type=DirectBufferPool");
+			if (!mbs.isRegistered(objectName)) {
+				mbs.registerMBean(new StandardMBean(this, DirectBufferPoolMXBean.class, true), objectName);
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	/**
+	 * Borrow a buffer from the pool. Returned buffer has reference count 1 and its limit is equal to size
+	 *
+	 * @param size in bytes
+	 * @param streamId owner of the buffer. It's used for accounting
+	 * @return buffer
+	 */
+	public PooledBuffer acquire(int size, String streamId) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Buffer size cannot be negative: " + size);
+		}
+		if (streamId == null) {
+			streamId = UNKNOWN_STREAM;
+		}
+
+		int classIndex = getSizeClassIndex(size);
+		ByteBuffer backingBuffer = null;
+		if (classIndex >= 0) {
+			backingBuffer = freeLists[classIndex].poll();
+			if (backingBuffer != null) {
+				pooledBytesPerClass[classIndex].addAndGet(-backingBuffer.capacity());
+				pooledBytes.addAndGet(-backingBuffer.capacity());
+				reuseCount.increment();
+			}
+			else {
+				backingBuffer = ByteBuffer.allocateDirect(MIN_SIZE_CLASS << classIndex);
+				allocationCount.increment();
+			}
+		}
+		else {
+			backingBuffer = ByteBuffer.allocateDirect(size);
+			allocationCount.increment();
+		}
+
+		LeakState leakState = null;
+		int samplingInterval = leakDetectionSamplingInterval;
+		if (samplingInterval > 0 && (leakSampleCounter.incrementAndGet() % samplingInterval) == 0) {
+			leakState = new LeakState(this, streamId, backingBuffer.capacity());
+		}
+
+		PooledBuffer pooledBuffer = new PooledBuffer(this, backingBuffer, size, streamId, leakState);
+		if (leakState != null) {
+			leakState.cleanable = cleaner.register(pooledBuffer, leakState);
+		}
+
+		inUseBytes.add(backingBuffer.capacity());
+		StreamBytes streamBytes = inUseBytesPerStream.get(streamId);
+		if (streamBytes == null || streamBytes.removed) {
+			//new stream or it's published again before the buffers of the previous session are released
+			streamBytes = inUseBytesPerStream.compute(streamId, (k, v) -> {
+				StreamBytes entry = v != null ? v : new StreamBytes();
+				entry.removed = false;
+				return entry;
+			});
+		}
+		streamBytes.bytes.add(backingBuffer.capacity());
+		return pooledBuffer;
+	}
+
+	/**
+	 * Borrow a buffer and copy the remaining bytes of the source into it
+	 *
+	 * @param source buffer to be copied. Its position is moved to its limit
+	 * @param streamId owner of the buffer
+	 * @return buffer that is ready to read
+	 */
+	public PooledBuffer copyOf(ByteBuffer source, String streamId) {
+		PooledBuffer pooledBuffer = acquire(source.remaining(), streamId);
+		ByteBuffer buffer = pooledBuffer.getBuffer();
+		buffer.put(source);
+		buffer.rewind();
+		return pooledBuffer;
+	}
+
+	void recycle(PooledBuffer pooledBuffer) {
+		ByteBuffer backingBuffer = pooledBuffer.getBackingBuffer();
+		int capacity = backingBuffer.capacity();
+
+		LeakState leakState = pooledBuffer.getLeakState();
+		if (leakState != null) {
+			leakState.markReleased();
+		}
+
+		inUseBytes.add(-capacity);
+		releaseStreamBytes(pooledBuffer.getStreamId(), capacity);
+
+		if (pooledBuffer.isDetached()) {
+			//consumer still uses the memory, let GC free it
+			detachCount.increment();
+			return;
+		}
+
+		int classIndex = getSizeClassIndex(capacity);
+		if (classIndex >= 0) 
+		{
+			if (pooledBytesPerClass[classIndex].addAndGet(capacity) <= maxPooledBytesPerClass) {
+				pooledBytes.addAndGet(capacity);
+				backingBuffer.clear();
+				freeLists[classIndex].offer(backingBuffer);
+			}
+			else {
+				//pool is full for this class, let GC free the memory
+				pooledBytesPerClass[classIndex].addAndGet(-capacity);
+			}
+		}
+	}
+
+	void onLeak(String streamId, int size) {
+		leakCount.increment();
+		inUseBytes.add(-size);
+		releaseStreamBytes(streamId, size);
+		logger.warn("Direct buffer with size:{} is garbage collected before it's released for stream:{}", size, streamId);
+	}
+
+	private void releaseStreamBytes(String streamId, int size) {
+		StreamBytes streamBytes = inUseBytesPerStream.get(streamId);
+		if (streamBytes != null) {
+			streamBytes.bytes.add(-size);
+			if (streamBytes.removed) {
+				inUseBytesPerStream.computeIfPresent(streamId, (k, v) -> v.removed && v.bytes.sum() <= 0 ? null : v);
+			}
+		}
+	}
+
+	/**
+	 * @param size
+	 * @return index of the size class or -1 if it's bigger than {@link #MAX_SIZE_CLASS}
+	 */
+	static int getSizeClassIndex(int size) {
+		if (size > MAX_SIZE_CLASS) {
+			return -1;
+		}
+		if (size <= MIN_SIZE_CLASS) {
+			return 0;
+		}
+		int sizeClass = Integer.highestOneBit(size - 1) << 1;
+		return Integer.numberOfTrailingZeros(sizeClass / MIN_SIZE_CLASS);
+	}
+
+	/**
+	 * Remove the accounting entry of the stream. It should be called when stream is finished.
+	 * If some buffers of the stream are still in use, entry is removed when the last one is released
+	 * @param streamId
+	 */
+	public void removeStream(String streamId) {
+		StreamBytes streamBytes = inUseBytesPerStream.computeIfPresent(streamId, (k, v) -> {
+			v.removed = true;
+			return v.bytes.sum() <= 0 ? null : v;
+		});
+		if (streamBytes != null) {
+			logger.info("There are {} bytes not released yet for stream:{}. They're tracked until they're released", streamBytes.bytes.sum(), streamId);
+		}
+	}
+
+	public long getInUseBytes(String streamId) {
+		StreamBytes streamBytes = inUseBytesPerStream.get(streamId);
+		return streamBytes != null ? streamBytes.bytes.sum() : 0;
+	}
+
+	@Override
+	public long getInUseBytes() {
+		return inUseBytes.sum();
+	}
+
+	@Override
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	@Override
+	public long getAllocationCount() {
+		return allocationCount.sum();
+	}
+
+	@Override
+	public long getReuseCount() {
+		return reuseCount.sum();
+	}
+
+	@Override
+	public long getLeakCount() {
+		return leakCount.sum();
+	}
+
+	@Override
+	public long getDetachCount() {
+		return detachCount.sum();
+	}
+
+	@Override
+	public Map<String, Long> getInUseBytesPerStream() {
+		Map<String, Long> result = new HashMap<>();
+		for (Map.Entry<String, StreamBytes> entry : inUseBytesPerStream.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().bytes.sum());
+		}
+		return result;
+	}
+
+	@Override
+	public void trim() {
+		for (int i = 0; i < freeLists.length; i++) {
+			ByteBuffer buffer;
+			while ((buffer = freeLists[i].poll()) != null) {
+				pooledBytesPerClass[i].addAndGet(-buffer.capacity());
+				pooledBytes.addAndGet(-buffer.capacity());
+			}
+		}
+	}
+
+	public int getLeakDetectionSamplingInterval() {
+		return leakDetectionSamplingInterval;
+	}
+
+	/**
+	 * @param leakDetectionSamplingInterval 1 tracks every buffer, 0 disables the leak detection
+	 */
+	public void setLeakDetectionSamplingInterval(int leakDetectionSamplingInterval) {
+		this.leakDetectionSamplingInterval = leakDetectionSamplingInterval;
+	}
+}
@@ -0,0 +1,52 @@
+package io.antmedia.muxer.buffer;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the {@link DirectBufferPool}
+ */
+@MXBean
+public interface DirectBufferPoolMXBean {
+
+	/**
+	 * @return total bytes that are borrowed and not released yet
+	 */
+	public long getInUseBytes();
+
+	/**
+	 * @return total bytes that are idle in the pool and ready to be reused
+	 */
+	public long getPooledBytes();
+
+	/**
+	 * @return number of buffers that are allocated from the native memory. It should stay stable in steady state
+	 */
+	public long getAllocationCount();
+
+	/**
+	 * @return number of buffers that are served from the pool without allocation
+	 */
+	public long getReuseCount();
+
+	/**
+	 * @return number of buffers that are garbage collected without being released
+	 */
+	public long getLeakCount();
+
+	/**
+	 * @return number of buffers that are kept by their consumers so they're not returned to the pool
+	 */
+	public long getDetachCount();
+
+	/**
+	 * @return in use bytes for each stream
+	 */
+	public Map<String, Long> getInUseBytesPerStream();
+
+	/**
+	 * Free all idle buffers in the pool
+	 */
+	public void trim();
+}
@@ -0,0 +1,119 @@
+package io.antmedia.muxer.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted direct buffer that is borrowed from {@link DirectBufferPool}.
+ *
+ * Buffer is created with reference count 1. Each consumer that keeps the buffer after
+ * the method call returns should call {@link #retain()} and {@link #release()} when it's done.
+ * The underlying memory is returned to the pool when the reference count drops to zero.
+ *
+ * {@link #getBuffer()} returns a slice whose limit is exactly the requested size, so that it can be
+ * used directly in Muxer.writeVideoBuffer/writeAudioBuffer family
+ *
+ */
+public class PooledBuffer {
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * Complete memory of the size class. It's returned to the pool on last release
+	 */
+	private final ByteBuffer backingBuffer;
+
+	private final DirectBufferPool pool;
+
+	private final String streamId;
+
+	private final AtomicInteger refCount = new AtomicInteger(1);
+
+	/**
+	 * If it's true, memory is not returned to the pool on last release
+	 */
+	private volatile boolean detached = false;
+
+	/**
+	 * Shared with the leak detector. It should not keep reference to this object
+	 */
+	private final DirectBufferPool.LeakState leakState;
+
+	PooledBuffer(DirectBufferPool pool, ByteBuffer backingBuffer, int size, String streamId, DirectBufferPool.LeakState leakState) {
+		this.pool = pool;
+		this.backingBuffer = backingBuffer;
+		this.streamId = streamId;
+		this.leakState = leakState;
+		backingBuffer.clear();
+		backingBuffer.limit(size);
+		this.buffer = backingBuffer.slice();
+	}
+
+	/**
+	 * Increase the reference count
+	 * @return this
+	 */
+	public PooledBuffer retain() {
+		int count;
+		do {
+			count = refCount.get();
+			if (count <= 0) {
+				throw new IllegalStateException("Buffer is already released for stream: " + streamId);
+			}
+		} while (!refCount.compareAndSet(count, count + 1));
+		return this;
+	}
+
+	/**
+	 * Decrease the reference count and return the memory to the pool if it reaches zero
+	 * @return true if buffer is returned to the pool
+	 */
+	public boolean release() {
+		int count = refCount.decrementAndGet();
+		if (count == 0) {
+			pool.recycle(this);
+			return true;
+		}
+		else if (count < 0) {
+			throw new IllegalStateException("Buffer is released more than retained for stream: " + streamId);
+		}
+		return false;
+	}
+
+	/**
+	 * Keep the memory out of the pool after the last release. It's used when a consumer keeps the
+	 * {@link #getBuffer()} after the call without retaining this object. Memory is freed by GC
+	 * when the consumer drops the buffer, accounting is updated on the last release as usual.
+	 */
+	public void detach() {
+		detached = true;
+	}
+
+	public boolean isDetached() {
+		return detached;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public int getSize() {
+		return buffer.capacity();
+	}
+
+	public int getRefCount() {
+		return refCount.get();
+	}
+
+	public String getStreamId() {
+		return streamId;
+	}
+
+	ByteBuffer getBackingBuffer() {
+		return backingBuffer;
+	}
+
+	DirectBufferPool.LeakState getLeakState() {
+		return leakState;
+	}
+}
@@ -15,6 +15,7 @@ import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.javacpp.BytePointer;
 
 import io.antmedia.muxer.Muxer.VideoBuffer;
+import io.antmedia.muxer.buffer.PooledBuffer;
 import io.antmedia.plugin.api.IPacketListener;
 
 public class PacketFeeder{
@@ -60,6 +61,29 @@ public class PacketFeeder{
 	}
 
 
+	/**
+	 * Feed the listeners with the audio frame that is borrowed from the DirectBufferPool.
+	 * Packet data is valid only during the listener call. Listeners that keep the packet should av_packet_ref it,
+	 * which copies the data because the packet is not reference counted
+	 */
+	public void writeAudioBuffer(PooledBuffer audioFrame, int streamIndex, long timestamp) {
+		if(!listeners.isEmpty()) {
+			writeAudioBuffer(audioFrame.getBuffer().duplicate(), streamIndex, timestamp);
+		}
+	}
+
+	/**
+	 * Feed the listeners with the video frame that is borrowed from the DirectBufferPool.
+	 * Packet data is valid only during the listener call. Listeners that keep the packet should av_packet_ref it,
+	 * which copies the data because the packet is not reference counted
+	 */
+	public void writeVideoBuffer(PooledBuffer encodedVideoFrame, long dts, int frameRotation, int streamIndex,
+			boolean isKeyFrame,long firstFrameTimeStamp, long pts) {
+		if(!listeners.isEmpty()) {
+			writeVideoBuffer(encodedVideoFrame.getBuffer().duplicate(), dts, frameRotation, streamIndex, isKeyFrame, firstFrameTimeStamp, pts);
+		}
+	}
+
 	public void writeAudioBuffer(ByteBuffer audioFrame, int streamIndex, long timestamp) {
 		if(!listeners.isEmpty()) {
 			audioPkt.stream_index(streamIndex);
@@ -9,6 +9,7 @@ import org.bytedeco.ffmpeg.avcodec.AVPacket;
 public interface IPacketListener {
 	/*
 	 * AMS feeds the plugins with encoded video packets with this method.
+	 * Packet data may be reused after this method returns. Use av_packet_ref or av_packet_clone to keep it
 	 * @param streamId is the id of the stream
 	 * @param packet is AVPacket type defined in javacpp ffmpeg wrapper
 	 * @returns AVPacket this should be same with the input
@@ -17,6 +18,7 @@ public interface IPacketListener {
 	
 	/*
 	 * AMS feeds the plugins with encoded audio packets with this method.
+	 * Packet data may be reused after this method returns. Use av_packet_ref or av_packet_clone to keep it
 	 * @param streamId is the id of the stream
 	 * @param packet is AVPacket type defined in javacpp ffmpeg wrapper
 	 * @returns AVPacket this should be same with the input
@@ -870,7 +870,6 @@ public class FFmpegFrameRecorder extends FrameRecorder {
         if (!started) {
             throw new Exception("start() was not called successfully!");
         }
-        int ret;
 
         if (image == null || image.length == 0) {
             /* no more frame to compress. The codec has a latency of a few
@@ -933,43 +932,101 @@ public class FFmpegFrameRecorder extends FrameRecorder {
             }
         }
 
+        return encodePicture(image == null || image.length == 0);
+        }
+    }
 
-            /* encode the image */
-            picture.quality(video_c.global_quality());
-            if ((ret = avcodec_send_frame(video_c, image == null || image.length == 0 ? null : picture)) < 0
-                    && image != null && image.length != 0) {
-                throw new Exception("avcodec_send_frame() error " + ret + ": Error sending a video frame for encoding.");
-            }
-            picture.pts(picture.pts() + 1); // magic required by libx264
-
-            /* if zero size, it means the image was buffered */
-            got_video_packet[0] = 0;
-            while (ret >= 0) {
-                av_new_packet(video_pkt, video_outbuf_size);
-                ret = avcodec_receive_packet(video_c, video_pkt);
-                if (ret == AVERROR_EAGAIN() || ret == AVERROR_EOF()) {
-                    av_packet_unref(video_pkt);
-                    break;
-                } else if (ret < 0) {
-                    av_packet_unref(video_pkt);
-                    throw new Exception("avcodec_receive_packet() error " + ret + ": Error during video encoding.");
-                }
-                got_video_packet[0] = 1;
+    /**
+     * Records a planar image without copying its planes to a contiguous buffer. Each plane is given with its own buffer
+     * so the strides do not need to be equal to the width of the planes. Planes are only read during the call.
+     *
+     * @param width width of the image
+     * @param height height of the image
+     * @param stride line size of each plane
+     * @param pixelFormat planar pixel format such as AV_PIX_FMT_YUV420P
+     * @param planes direct buffers of the planes
+     * @return true if a key frame is encoded
+     * @throws Exception
+     */
+    public synchronized boolean recordPlanarImage(int width, int height, int[] stride, int pixelFormat, ByteBuffer... planes) throws Exception {
+        try (PointerScope scope = new PointerScope()) {
 
-                if (video_pkt.pts() != AV_NOPTS_VALUE) {
-                    video_pkt.pts(av_rescale_q(video_pkt.pts(), video_c.time_base(), video_st.time_base()));
-                }
-                if (video_pkt.dts() != AV_NOPTS_VALUE) {
-                    video_pkt.dts(av_rescale_q(video_pkt.dts(), video_c.time_base(), video_st.time_base()));
+            if (video_st == null) {
+                throw new Exception("No video output stream (Is imageWidth > 0 && imageHeight > 0 and has start() been called?)");
+            }
+            if (!started) {
+                throw new Exception("start() was not called successfully!");
+            }
+
+            AVFrame frame = picture;
+            if (video_c.pix_fmt() != pixelFormat || video_c.width() != width || video_c.height() != height) {
+                /* convert to the codec pixel format if needed */
+                img_convert_ctx = sws_getCachedContext(img_convert_ctx, width, height, pixelFormat,
+                        video_c.width(), video_c.height(), video_c.pix_fmt(),
+                        imageScalingFlags != 0 ? imageScalingFlags : SWS_BILINEAR,
+                        null, null, (DoublePointer)null);
+                if (img_convert_ctx == null) {
+                    throw new Exception("sws_getCachedContext() error: Cannot initialize the conversion context.");
                 }
-                video_pkt.stream_index(video_st.index());
+                frame = tmp_picture;
+            }
+
+            for (int i = 0; i < planes.length; i++) {
+                frame.data(i, new BytePointer(planes[i]));
+                frame.linesize(i, stride[i]);
+            }
+            frame.format(pixelFormat);
+            frame.width(width);
+            frame.height(height);
+
+            if (frame == tmp_picture) {
+                av_image_fill_arrays(new PointerPointer(picture), picture.linesize(), picture_buf, video_c.pix_fmt(), video_c.width(), video_c.height(), 1);
+                picture.format(video_c.pix_fmt());
+                picture.width(video_c.width());
+                picture.height(video_c.height());
+                sws_scale(img_convert_ctx, new PointerPointer(tmp_picture), tmp_picture.linesize(),
+                          0, height, new PointerPointer(picture), picture.linesize());
+            }
+
+            return encodePicture(false);
+        }
+    }
+
+    private boolean encodePicture(boolean flush) throws Exception {
+        int ret;
+        /* encode the image */
+        picture.quality(video_c.global_quality());
+        if ((ret = avcodec_send_frame(video_c, flush ? null : picture)) < 0 && !flush) {
+            throw new Exception("avcodec_send_frame() error " + ret + ": Error sending a video frame for encoding.");
+        }
+        picture.pts(picture.pts() + 1); // magic required by libx264
 
-                /* write the compressed frame in the media file */
-                writePacket(AVMEDIA_TYPE_VIDEO, video_pkt);
+        /* if zero size, it means the image was buffered */
+        got_video_packet[0] = 0;
+        while (ret >= 0) {
+            av_new_packet(video_pkt, video_outbuf_size);
+            ret = avcodec_receive_packet(video_c, video_pkt);
+            if (ret == AVERROR_EAGAIN() || ret == AVERROR_EOF()) {
+                av_packet_unref(video_pkt);
+                break;
+            } else if (ret < 0) {
+                av_packet_unref(video_pkt);
+                throw new Exception("avcodec_receive_packet() error " + ret + ": Error during video encoding.");
             }
-        return image != null ? (video_pkt.flags() & AV_PKT_FLAG_KEY) != 0 : got_video_packet[0] != 0;
+            got_video_packet[0] = 1;
 
+            if (video_pkt.pts() != AV_NOPTS_VALUE) {
+                video_pkt.pts(av_rescale_q(video_pkt.pts(), video_c.time_base(), video_st.time_base()));
+            }
+            if (video_pkt.dts() != AV_NOPTS_VALUE) {
+                video_pkt.dts(av_rescale_q(video_pkt.dts(), video_c.time_base(), video_st.time_base()));
+            }
+            video_pkt.stream_index(video_st.index());
+
+            /* write the compressed frame in the media file */
+            writePacket(AVMEDIA_TYPE_VIDEO, video_pkt);
         }
+        return !flush ? (video_pkt.flags() & AV_PKT_FLAG_KEY) != 0 : got_video_packet[0] != 0;
     }
 
     public boolean recordSamples(Buffer ... samples) throws Exception {
@@ -58,6 +58,9 @@ import io.antmedia.logger.LoggerUtils;
 import io.antmedia.muxer.IAntMediaStreamHandler;
 import io.antmedia.muxer.Mp4Muxer;
 import io.antmedia.muxer.MuxAdaptor;
+import io.antmedia.muxer.MuxerQueueStats;
+import io.antmedia.muxer.StreamHealthStats;
+import io.antmedia.muxer.JitterBufferStats;
 import io.antmedia.muxer.Muxer;
 import io.antmedia.muxer.RecordMuxer;
 import io.antmedia.rest.model.Result;
@@ -94,6 +97,15 @@ public abstract class RestServiceBase {
 		@Schema(description = "The total DASH viewers of the stream")
 		public final int totalDASHWatchersCount;
 
+		@Schema(description = "Queue statistics of the muxers if async muxer fan-out is enabled and the stream is on this node")
+		private List<MuxerQueueStats> muxerQueueStats = new ArrayList<>();
+
+		@Schema(description = "Health of the ingested stream if the stream is on this node")
+		private StreamHealthStats streamHealth;
+
+		@Schema(description = "Ingest jitter buffer statistics if the stream is on this node and buffering is enabled")
+		private JitterBufferStats jitterBuffer;
+
 		public BroadcastStatistics(int totalRTMPWatchersCount, int totalHLSWatchersCount,
 				int totalWebRTCWatchersCount, int totalDASHWatchersCount) {
 			this.totalRTMPWatchersCount = totalRTMPWatchersCount;
@@ -101,6 +113,30 @@ public abstract class RestServiceBase {
 			this.totalWebRTCWatchersCount = totalWebRTCWatchersCount;
 			this.totalDASHWatchersCount = totalDASHWatchersCount;
 		}
+
+		public List<MuxerQueueStats> getMuxerQueueStats() {
+			return muxerQueueStats;
+		}
+
+		public void setMuxerQueueStats(List<MuxerQueueStats> muxerQueueStats) {
+			this.muxerQueueStats = muxerQueueStats;
+		}
+
+		public StreamHealthStats getStreamHealth() {
+			return streamHealth;
+		}
+
+		public void setStreamHealth(StreamHealthStats streamHealth) {
+			this.streamHealth = streamHealth;
+		}
+
+		public JitterBufferStats getJitterBuffer() {
+			return jitterBuffer;
+		}
+
+		public void setJitterBuffer(JitterBufferStats jitterBuffer) {
+			this.jitterBuffer = jitterBuffer;
+		}
 	}
 
 
@@ -1372,6 +1408,7 @@ public abstract class RestServiceBase {
 		int totalWebRTCViewer = -1;
 		int totalHLSViewer = -1;
 		int totalDASHViewer = -1;
+		MuxAdaptor muxAdaptor = null;
 		if (id != null)
 		{
 			IBroadcastScope broadcastScope = getScope().getBroadcastScope(id);
@@ -1386,9 +1423,17 @@ public abstract class RestServiceBase {
 				totalDASHViewer = broadcast.getDashViewerCount();
 				totalWebRTCViewer = broadcast.getWebRTCViewerCount();
 			}
+
+			muxAdaptor = getMuxAdaptor(id);
 		}
 
-		return new BroadcastStatistics(totalRTMPViewer, totalHLSViewer, totalWebRTCViewer,totalDASHViewer);
+		BroadcastStatistics broadcastStatistics = new BroadcastStatistics(totalRTMPViewer, totalHLSViewer, totalWebRTCViewer, totalDASHViewer);
+		if (muxAdaptor != null) {
+			broadcastStatistics.setMuxerQueueStats(muxAdaptor.getAsyncMuxerStats());
+			broadcastStatistics.setStreamHealth(muxAdaptor.getStreamHealthEstimator().getStats());
+			broadcastStatistics.setJitterBuffer(muxAdaptor.getJitterBufferStats());
+		}
+		return broadcastStatistics;
 	}
 
 	protected AppBroadcastStatistics getBroadcastTotalStatistics() {
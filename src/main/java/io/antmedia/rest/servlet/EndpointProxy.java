@@ -67,7 +67,7 @@ public class EndpointProxy extends ProxyServlet {
         this.copyRequestHeaders(servletRequest, (HttpRequest)proxyRequest);
         this.setXForwardedFor(servletRequest, (HttpRequest)proxyRequest);
 
-        ((HttpRequest) proxyRequest).setHeader(TokenFilterManager.TOKEN_HEADER_FOR_NODE_COMMUNICATION, nodeCommunicationHeader);
+        ((HttpRequest) proxyRequest).setHeader(TokenFilterManager.TOKEN_HEADER_FOR_NODE_COMMUNICATION, getNodeCommunicationHeader());
 
         HttpResponse proxyResponse = null;
 
@@ -96,6 +96,13 @@ public class EndpointProxy extends ProxyServlet {
         }
     }
 
+    /**
+     * @return token that is sent to the other node in {@link TokenFilterManager#TOKEN_HEADER_FOR_NODE_COMMUNICATION} header
+     */
+    protected String getNodeCommunicationHeader() {
+        return nodeCommunicationHeader;
+    }
+
     public void setXForwardedFor(HttpServletRequest servletRequest, HttpRequest proxyRequest) {
 
         String forHeaderName = "X-Forwarded-For";
@@ -138,7 +145,8 @@ public class EndpointProxy extends ProxyServlet {
     @Override
     public HttpResponse doExecute(HttpServletRequest servletRequest, HttpServletResponse servletResponse, HttpRequest proxyRequest) throws IOException {
         try{
-        	HttpClient localProxyClient = this.createHttpClient();
+        	//client is created in init, creating it for each request creates a new connection pool
+        	HttpClient localProxyClient = this.getProxyClient();
             log.info("proxy {} uri: {} -- {}", servletRequest.getMethod(), servletRequest.getRequestURI(), proxyRequest.getRequestLine().getUri());
             return localProxyClient.execute(this.getTargetHost(servletRequest), proxyRequest);
         }
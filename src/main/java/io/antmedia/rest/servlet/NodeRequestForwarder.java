@@ -0,0 +1,246 @@
+package io.antmedia.rest.servlet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.cluster.NodeHealthTracker;
+import io.antmedia.filter.JWTFilter;
+import io.antmedia.filter.RestProxyFilter;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Forwards the REST requests to the other nodes in the cluster.
+ *
+ * Proxies are initialized once for each target and they share a keep-alive connection pool, so a forwarded request
+ * doesn't open a new connection to the node. At most {@link #MAX_PROXY_COUNT} proxies are kept, the least recently used one
+ * is removed when nodes change. Node communication token is reused while it has at least
+ * {@link #MIN_TOKEN_VALIDITY_MS} validity. Results of the forwarded requests are reported to the {@link NodeHealthTracker},
+ * a request fails if it cannot be executed or the node responds with 502, 503 or 504.
+ */
+public class NodeRequestForwarder {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeRequestForwarder.class);
+
+	/**
+	 * Validity of the generated node communication tokens
+	 */
+	public static final long TOKEN_VALIDITY_MS = 15000;
+
+	/**
+	 * Token is renewed if its remaining validity is less than this value. It was the validity of the token that was generated for each request
+	 */
+	public static final long MIN_TOKEN_VALIDITY_MS = 5000;
+
+	private static final int MAX_CONNECTIONS_PER_NODE = 20;
+
+	private static final int MAX_CONNECTIONS = 200;
+
+	private static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+
+	public static final int MAX_PROXY_COUNT = 256;
+
+	/**
+	 * Request attribute that is set if the request cannot be executed on the node
+	 */
+	private static final String FORWARD_FAILED_ATTRIBUTE = NodeRequestForwarder.class.getName() + ".failed";
+
+	private static CloseableHttpClient pooledClient;
+
+	private final NodeHealthTracker healthTracker;
+
+	private final Map<String, ForwardingProxy> proxies = new LinkedHashMap<String, ForwardingProxy>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ForwardingProxy> eldest) {
+			return size() > MAX_PROXY_COUNT;
+		}
+	};
+
+	private volatile NodeToken nodeToken;
+
+	private static class NodeToken {
+		private final String key;
+		private final String token;
+		private final long expireTimeMs;
+
+		NodeToken(String key, String token, long expireTimeMs) {
+			this.key = key;
+			this.token = token;
+			this.expireTimeMs = expireTimeMs;
+		}
+	}
+
+	private class ForwardingProxy extends EndpointProxy {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String nodeAddress;
+
+		private final String clusterCommunicationKey;
+
+		ForwardingProxy(String nodeAddress, String clusterCommunicationKey) {
+			super(null);
+			this.nodeAddress = nodeAddress;
+			this.clusterCommunicationKey = clusterCommunicationKey;
+		}
+
+		@Override
+		protected String getNodeCommunicationHeader() {
+			return getNodeCommunicationToken(clusterCommunicationKey);
+		}
+
+		@Override
+		protected HttpClient createHttpClient() {
+			return getPooledClient();
+		}
+
+		@Override
+		public HttpResponse doExecute(HttpServletRequest servletRequest, HttpServletResponse servletResponse, HttpRequest proxyRequest) throws IOException {
+			HttpResponse response = super.doExecute(servletRequest, servletResponse, proxyRequest);
+			if (response == null) {
+				servletRequest.setAttribute(FORWARD_FAILED_ATTRIBUTE, Boolean.TRUE);
+				healthTracker.reportFailure(nodeAddress);
+			}
+			else if (isGatewayError(response.getStatusLine().getStatusCode())) {
+				healthTracker.reportFailure(nodeAddress);
+			}
+			else {
+				healthTracker.reportSuccess(nodeAddress);
+			}
+			return response;
+		}
+
+		@Override
+		public void destroy() {
+			//pooled client is shared by all proxies so it's not closed
+		}
+	}
+
+	public NodeRequestForwarder(NodeHealthTracker healthTracker) {
+		this.healthTracker = healthTracker;
+	}
+
+	/**
+	 * @return http client with a keep-alive connection pool that is shared by the forwarders of all applications
+	 */
+	public static synchronized CloseableHttpClient getPooledClient() {
+		if (pooledClient == null) {
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(MAX_CONNECTIONS);
+			connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_NODE);
+			//connections that are idle for a while are checked before they're reused, node may be restarted
+			connectionManager.setValidateAfterInactivity(2000);
+
+			RequestConfig requestConfig = RequestConfig.custom()
+					.setRedirectsEnabled(false)
+					.setCookieSpec(CookieSpecs.IGNORE_COOKIES)
+					.setConnectTimeout(2 * 1000)
+					.setSocketTimeout(5 * 1000)
+					.setConnectionRequestTimeout(2 * 1000)
+					.build();
+
+			pooledClient = HttpClientBuilder.create()
+					.setConnectionManager(connectionManager)
+					.setDefaultRequestConfig(requestConfig)
+					.evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+					.build();
+		}
+		return pooledClient;
+	}
+
+	/**
+	 * @param clusterCommunicationKey
+	 * @return a token for the node communication that is valid at least {@link #MIN_TOKEN_VALIDITY_MS}
+	 */
+	public String getNodeCommunicationToken(String clusterCommunicationKey) {
+		NodeToken currentToken = nodeToken;
+		long now = System.currentTimeMillis();
+		if (currentToken == null || !currentToken.key.equals(clusterCommunicationKey)
+				|| currentToken.expireTimeMs - now < MIN_TOKEN_VALIDITY_MS)
+		{
+			long expireTimeMs = now + TOKEN_VALIDITY_MS;
+			currentToken = new NodeToken(clusterCommunicationKey, JWTFilter.generateJwtToken(clusterCommunicationKey, expireTimeMs), expireTimeMs);
+			nodeToken = currentToken;
+		}
+		return currentToken.token;
+	}
+
+	/**
+	 * @return true if the status means that the node or a proxy in front of it cannot handle the request
+	 */
+	public static boolean isGatewayError(int statusCode) {
+		return statusCode == HttpStatus.SC_BAD_GATEWAY || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE
+				|| statusCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+	}
+
+	/**
+	 * @param address ip address of the node
+	 * @return true if the request can be forwarded to the node
+	 */
+	public boolean isNodeAvailable(String address) {
+		return healthTracker.isAvailable(address);
+	}
+
+	/**
+	 * Forwards the request to the target uri on the node
+	 *
+	 * @param nodeAddress ip address of the node
+	 * @param targetUri rest route of the application on the node
+	 * @param clusterCommunicationKey key of the node communication token
+	 * @return false if the request cannot be executed on the node and nothing is written to the response,
+	 * so that it can be handled in this node
+	 */
+	public boolean forward(ServletRequest request, ServletResponse response, String nodeAddress, String targetUri,
+			String clusterCommunicationKey) throws IOException, ServletException
+	{
+		String proxyKey = targetUri + "\n" + clusterCommunicationKey;
+		ForwardingProxy proxy;
+		synchronized (proxies) {
+			proxy = proxies.get(proxyKey);
+		}
+		if (proxy == null) {
+			ForwardingProxy newProxy = new ForwardingProxy(nodeAddress, clusterCommunicationKey);
+			newProxy.init(RestProxyFilter.getServletConfig(targetUri));
+			synchronized (proxies) {
+				proxy = proxies.putIfAbsent(proxyKey, newProxy);
+			}
+			if (proxy == null) {
+				proxy = newProxy;
+				logger.info("Proxy is initialized for {}", targetUri);
+			}
+		}
+		proxy.service(request, response);
+		boolean failed = request.getAttribute(FORWARD_FAILED_ATTRIBUTE) != null;
+		request.removeAttribute(FORWARD_FAILED_ATTRIBUTE);
+		return !failed;
+	}
+
+	public int getProxyCount() {
+		synchronized (proxies) {
+			return proxies.size();
+		}
+	}
+
+	public NodeHealthTracker getHealthTracker() {
+		return healthTracker;
+	}
+}
@@ -0,0 +1,344 @@
+package io.antmedia.security;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.catalina.util.NetMask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable matcher of a comma separated CIDR list like the allowed CIDR lists in the settings.
+ *
+ * Networks are compiled to one binary prefix trie for IPv4 and one for IPv6, so the cost of a lookup depends
+ * on the length of the address instead of the number of the networks in the list. Lookups don't allocate for IPv4
+ * addresses and for the raw address bytes.
+ *
+ * Matching is same with {@link NetMask}, IPv4 addresses don't match IPv6 networks and vice versa.
+ * The entries that can't be compiled, like the host names, are matched with {@link NetMask}.
+ */
+public final class CIDRMatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(CIDRMatcher.class);
+
+	public static final CIDRMatcher EMPTY = new CIDRMatcher(null, new Trie.Builder().build(), new Trie.Builder().build(),
+			Collections.emptyList(), 0);
+
+	private final String source;
+
+	private final Trie ipv4Trie;
+
+	private final Trie ipv6Trie;
+
+	private final List<NetMask> otherNetMasks;
+
+	private final int networkCount;
+
+	/**
+	 * Binary trie of the network prefixes. Node 0 is the root and a child index 0 means there is no child
+	 */
+	static final class Trie {
+
+		private final int[] zeroChildren;
+		private final int[] oneChildren;
+		private final boolean[] terminals;
+
+		private Trie(int[] zeroChildren, int[] oneChildren, boolean[] terminals) {
+			this.zeroChildren = zeroChildren;
+			this.oneChildren = oneChildren;
+			this.terminals = terminals;
+		}
+
+		boolean matches(byte[] address) {
+			int node = 0;
+			int bitCount = address.length * 8;
+			for (int i = 0; i < bitCount; i++) {
+				if (terminals[node]) {
+					return true;
+				}
+				int bit = (address[i >> 3] >> (7 - (i & 7))) & 1;
+				node = bit == 0 ? zeroChildren[node] : oneChildren[node];
+				if (node == 0) {
+					return false;
+				}
+			}
+			return terminals[node];
+		}
+
+		boolean matches(int ipv4Address) {
+			int node = 0;
+			for (int i = 0; i < 32; i++) {
+				if (terminals[node]) {
+					return true;
+				}
+				int bit = (ipv4Address >>> (31 - i)) & 1;
+				node = bit == 0 ? zeroChildren[node] : oneChildren[node];
+				if (node == 0) {
+					return false;
+				}
+			}
+			return terminals[node];
+		}
+
+		static final class Builder {
+			private int[] zeroChildren = new int[16];
+			private int[] oneChildren = new int[16];
+			private boolean[] terminals = new boolean[16];
+			private int nodeCount = 1;
+
+			void add(byte[] network, int prefixLength) {
+				int node = 0;
+				for (int i = 0; i < prefixLength; i++) {
+					if (terminals[node]) {
+						//a shorter prefix already covers this network
+						return;
+					}
+					int bit = (network[i >> 3] >> (7 - (i & 7))) & 1;
+					int child = bit == 0 ? zeroChildren[node] : oneChildren[node];
+					if (child == 0) {
+						//arrays may be grown in newNode so child is set after it
+						child = newNode();
+						if (bit == 0) {
+							zeroChildren[node] = child;
+						}
+						else {
+							oneChildren[node] = child;
+						}
+					}
+					node = child;
+				}
+				terminals[node] = true;
+			}
+
+			private int newNode() {
+				if (nodeCount == terminals.length) {
+					int length = terminals.length * 2;
+					zeroChildren = Arrays.copyOf(zeroChildren, length);
+					oneChildren = Arrays.copyOf(oneChildren, length);
+					terminals = Arrays.copyOf(terminals, length);
+				}
+				return nodeCount++;
+			}
+
+			Trie build() {
+				return new Trie(Arrays.copyOf(zeroChildren, nodeCount), Arrays.copyOf(oneChildren, nodeCount),
+						Arrays.copyOf(terminals, nodeCount));
+			}
+		}
+	}
+
+	private CIDRMatcher(String source, Trie ipv4Trie, Trie ipv6Trie, List<NetMask> otherNetMasks, int networkCount) {
+		this.source = source;
+		this.ipv4Trie = ipv4Trie;
+		this.ipv6Trie = ipv6Trie;
+		this.otherNetMasks = otherNetMasks;
+		this.networkCount = networkCount;
+	}
+
+	/**
+	 * @param cidrList comma separated list of the networks like "127.0.0.1,10.0.0.0/8,fd00::/8"
+	 * @return matcher of the list. Invalid entries are logged and skipped
+	 */
+	public static CIDRMatcher compile(String cidrList) {
+		Trie.Builder ipv4Builder = new Trie.Builder();
+		Trie.Builder ipv6Builder = new Trie.Builder();
+		List<NetMask> otherNetMasks = new ArrayList<>();
+		int networkCount = 0;
+
+		if (cidrList != null && !cidrList.isEmpty()) {
+			for (String cidr : cidrList.split("\\s*,\\s*")) {
+				cidr = cidr.trim();
+				if (cidr.isEmpty()) {
+					continue;
+				}
+				if (addToTrie(cidr, ipv4Builder, ipv6Builder)) {
+					networkCount++;
+					continue;
+				}
+				try {
+					otherNetMasks.add(new NetMask(cidr));
+					networkCount++;
+				}
+				catch (IllegalArgumentException e) {
+					logger.warn("CIDR:{} is skipped because it's not valid. {}", cidr, e.getMessage());
+				}
+			}
+		}
+
+		return new CIDRMatcher(cidrList, ipv4Builder.build(), ipv6Builder.build(),
+				otherNetMasks.isEmpty() ? Collections.emptyList() : otherNetMasks, networkCount);
+	}
+
+	/**
+	 * @return true if the cidr is an address literal with an optional valid prefix length and it's added to the trie
+	 */
+	private static boolean addToTrie(String cidr, Trie.Builder ipv4Builder, Trie.Builder ipv6Builder) {
+		int slashIndex = cidr.indexOf('/');
+		String host = slashIndex == -1 ? cidr : cidr.substring(0, slashIndex);
+		if (!isAddressLiteral(host)) {
+			//host names are resolved by NetMask
+			return false;
+		}
+
+		byte[] network;
+		try {
+			//it doesn't make a lookup for the address literals
+			network = InetAddress.getByName(host).getAddress();
+		}
+		catch (UnknownHostException e) {
+			return false;
+		}
+
+		int prefixLength = network.length * 8;
+		if (slashIndex != -1) {
+			try {
+				prefixLength = Integer.parseInt(cidr.substring(slashIndex + 1));
+			}
+			catch (NumberFormatException e) {
+				return false;
+			}
+			if (prefixLength < 0 || prefixLength > network.length * 8) {
+				return false;
+			}
+		}
+
+		(network.length == 4 ? ipv4Builder : ipv6Builder).add(network, prefixLength);
+		return true;
+	}
+
+	private static boolean isAddressLiteral(String host) {
+		if (host.isEmpty()) {
+			return false;
+		}
+		if (host.indexOf(':') != -1) {
+			return true;
+		}
+		for (int i = 0; i < host.length(); i++) {
+			char c = host.charAt(i);
+			if ((c < '0' || c > '9') && c != '.') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the matcher in the reference if it's compiled from the cidr list. Otherwise compiles the list
+	 * and replaces the matcher in the reference. It lets the settings keep their matchers up to date without
+	 * depending on how the cidr list is updated.
+	 */
+	public static CIDRMatcher getUpToDate(AtomicReference<CIDRMatcher> matcherReference, String cidrList) {
+		CIDRMatcher matcher = matcherReference.get();
+		if (matcher != null && Objects.equals(matcher.source, cidrList)) {
+			return matcher;
+		}
+		matcher = compile(cidrList);
+		matcherReference.set(matcher);
+		return matcher;
+	}
+
+	/**
+	 * @param address remote address as a string
+	 * @return true if the address is in one of the networks
+	 */
+	public boolean matches(String address) {
+		if (address == null || networkCount == 0) {
+			return false;
+		}
+		int ipv4Address = parseIPv4(address);
+		if (ipv4Address != -1 || "255.255.255.255".equals(address)) {
+			if (ipv4Trie.matches(ipv4Address)) {
+				return true;
+			}
+			if (otherNetMasks.isEmpty()) {
+				return false;
+			}
+		}
+
+		try {
+			return matches(InetAddress.getByName(address));
+		}
+		catch (UnknownHostException e) {
+			logger.warn("Address:{} cannot be parsed", address);
+			return false;
+		}
+	}
+
+	public boolean matches(InetAddress address) {
+		if (matches(address.getAddress())) {
+			return true;
+		}
+		for (NetMask netMask : otherNetMasks) {
+			if (netMask.matches(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param address raw bytes of an IPv4 or IPv6 address
+	 * @return true if the address is in one of the compiled networks
+	 */
+	public boolean matches(byte[] address) {
+		if (address.length == 4) {
+			return ipv4Trie.matches(address);
+		}
+		return address.length == 16 && ipv6Trie.matches(address);
+	}
+
+	/**
+	 * @return address as an int, or -1 if it's not in dotted decimal form with 4 parts.
+	 * 255.255.255.255 is also -1, so it should be checked separately
+	 */
+	static int parseIPv4(String address) {
+		int length = address.length();
+		if (length < 7 || length > 15) {
+			return -1;
+		}
+		int result = 0;
+		int part = 0;
+		int partCount = 0;
+		int digitCount = 0;
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? address.charAt(i) : '.';
+			if (c == '.') {
+				if (digitCount == 0 || part > 255) {
+					return -1;
+				}
+				result = (result << 8) | part;
+				partCount++;
+				part = 0;
+				digitCount = 0;
+			}
+			else if (c >= '0' && c <= '9' && digitCount < 3) {
+				part = part * 10 + (c - '0');
+				digitCount++;
+			}
+			else {
+				return -1;
+			}
+		}
+		return partCount == 4 ? result : -1;
+	}
+
+	/**
+	 * @return cidr list that matcher is compiled from
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return number of the valid networks in the list
+	 */
+	public int getNetworkCount() {
+		return networkCount;
+	}
+}
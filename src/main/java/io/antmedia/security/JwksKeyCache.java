@@ -0,0 +1,183 @@
+package io.antmedia.security;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.JwkException;
+import com.auth0.jwk.JwkProvider;
+import com.auth0.jwk.UrlJwkProvider;
+
+/**
+ * Cache of the keys that are fetched from the JWKS urls. Without it, the JWKS document is fetched for each JWT verification.
+ *
+ * A key is used for {@link #getTtlMs()} after it's fetched. It's refreshed in the background if it's used after 80% of its ttl
+ * so that the requests don't wait for the fetch while the key is being used. Concurrent requests for a key that is not in
+ * the cache wait for the same fetch instead of fetching the document for each of them.
+ */
+public class JwksKeyCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(JwksKeyCache.class);
+
+	public static final long DEFAULT_TTL_MS = 10 * 60 * 1000L;
+
+	private static JwksKeyCache instance;
+
+	private final long ttlMs;
+
+	private final long refreshAfterMs;
+
+	private final Function<String, JwkProvider> providerFactory;
+
+	private final Map<String, JwkProvider> providers = new ConcurrentHashMap<>();
+
+	private final Map<String, CachedKey> keys = new ConcurrentHashMap<>();
+
+	private final Map<String, CompletableFuture<Jwk>> fetches = new ConcurrentHashMap<>();
+
+	private final ExecutorService refreshExecutor;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder fetchCount = new LongAdder();
+
+	private static final class CachedKey {
+		private final Jwk jwk;
+		private final long fetchTimeMs;
+
+		CachedKey(Jwk jwk, long fetchTimeMs) {
+			this.jwk = jwk;
+			this.fetchTimeMs = fetchTimeMs;
+		}
+	}
+
+	/**
+	 * @param ttlMs duration that a fetched key is used
+	 * @param providerFactory creates the provider of a JWKS url
+	 */
+	public JwksKeyCache(long ttlMs, Function<String, JwkProvider> providerFactory) {
+		this.ttlMs = ttlMs;
+		this.refreshAfterMs = ttlMs * 8 / 10;
+		this.providerFactory = providerFactory;
+		this.refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "jwks-key-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public static synchronized JwksKeyCache getInstance() {
+		if (instance == null) {
+			instance = new JwksKeyCache(DEFAULT_TTL_MS, UrlJwkProvider::new);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param jwksURL url of the JWKS document
+	 * @param keyId key id in the header of the JWT token
+	 * @return the key from the cache or fetches it if it's not in the cache or it's expired
+	 * @throws JwkException if the key cannot be fetched
+	 */
+	public Jwk get(String jwksURL, String keyId) throws JwkException {
+		String cacheKey = jwksURL + "\n" + keyId;
+		CachedKey cachedKey = keys.get(cacheKey);
+		long now = System.currentTimeMillis();
+
+		if (cachedKey != null && now - cachedKey.fetchTimeMs < ttlMs) {
+			hitCount.increment();
+			if (now - cachedKey.fetchTimeMs >= refreshAfterMs && !fetches.containsKey(cacheKey)) {
+				refreshExecutor.execute(() -> {
+					try {
+						fetch(cacheKey, jwksURL, keyId);
+					}
+					catch (JwkException e) {
+						//key in the cache is used until it expires
+						logger.warn("JWKS key cannot be refreshed from {} for key id:{} error: {}", jwksURL, keyId, e.getMessage());
+					}
+				});
+			}
+			return cachedKey.jwk;
+		}
+
+		missCount.increment();
+		return fetch(cacheKey, jwksURL, keyId);
+	}
+
+	/**
+	 * Fetches the key once for the concurrent callers
+	 */
+	private Jwk fetch(String cacheKey, String jwksURL, String keyId) throws JwkException {
+		CompletableFuture<Jwk> future = new CompletableFuture<>();
+		CompletableFuture<Jwk> existingFetch = fetches.putIfAbsent(cacheKey, future);
+		if (existingFetch != null) {
+			try {
+				return existingFetch.join();
+			}
+			catch (CompletionException e) {
+				throw (JwkException) e.getCause();
+			}
+		}
+
+		try {
+			CachedKey cachedKey = keys.get(cacheKey);
+			if (cachedKey != null && System.currentTimeMillis() - cachedKey.fetchTimeMs < refreshAfterMs) {
+				//another fetch is completed just before this one is started
+				future.complete(cachedKey.jwk);
+				return cachedKey.jwk;
+			}
+			fetchCount.increment();
+			Jwk jwk = providers.computeIfAbsent(jwksURL, providerFactory).get(keyId);
+			keys.put(cacheKey, new CachedKey(jwk, System.currentTimeMillis()));
+			future.complete(jwk);
+			return jwk;
+		}
+		catch (JwkException e) {
+			future.completeExceptionally(e);
+			throw e;
+		}
+		catch (RuntimeException e) {
+			JwkException exception = new JwkException("JWKS key cannot be fetched", e);
+			future.completeExceptionally(exception);
+			throw exception;
+		}
+		finally {
+			fetches.remove(cacheKey);
+		}
+	}
+
+	public void clear() {
+		keys.clear();
+		providers.clear();
+	}
+
+	public long getTtlMs() {
+		return ttlMs;
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return number of the fetches from the JWKS urls including the background refreshes
+	 */
+	public long getFetchCount() {
+		return fetchCount.sum();
+	}
+}
@@ -0,0 +1,215 @@
+package io.antmedia.security;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+
+/**
+ * Least recently used cache of the successful token verifications. HLS and DASH players request a playlist or a segment
+ * every few seconds with the same token, so a verified token is not verified again until its cache entry expires.
+ *
+ * Only successful verifications are cached, failed ones are always verified again. An entry expires after the ttl of the cache
+ * or at the expiry of the JWT token, whichever comes first. Verifications that depend on a stored record like a play token in
+ * the datastore should not be cached, because the record may expire or be deleted before the entry expires.
+ * Hit and miss counts are registered to JMX with {@link #registerMBean(String)}.
+ */
+public class TokenVerificationCache implements TokenVerificationCacheMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(TokenVerificationCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	public static final long DEFAULT_TTL_MS = 30000;
+
+	private final long ttlMs;
+
+	private final Map<Key, Long> expireTimes;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private ObjectName objectName;
+
+	private static final class Key {
+		private final String type;
+		private final String token;
+		private final String streamId;
+		private final String sessionId;
+
+		Key(String type, String token, String streamId, String sessionId) {
+			this.type = type;
+			this.token = token;
+			this.streamId = streamId;
+			this.sessionId = sessionId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return type.equals(other.type) && token.equals(other.token) && equals(streamId, other.streamId)
+					&& equals(sessionId, other.sessionId);
+		}
+
+		private static boolean equals(String first, String second) {
+			return first == null ? second == null : first.equals(second);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = type.hashCode() * 31 + token.hashCode();
+			hash = hash * 31 + (streamId != null ? streamId.hashCode() : 0);
+			return hash * 31 + (sessionId != null ? sessionId.hashCode() : 0);
+		}
+	}
+
+	public TokenVerificationCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MS);
+	}
+
+	public TokenVerificationCache(int maxEntries, long ttlMs) {
+		this.ttlMs = ttlMs;
+		this.expireTimes = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param type type of the verification like play token, hash or jwt
+	 * @param token token that is verified
+	 * @param streamId stream id that token is verified for, it may be null
+	 * @param sessionId session id that token is verified for. It should be given for the tokens that are consumed
+	 * in the verification like one-time tokens, so that they're not accepted for another session
+	 * @return true if the token is verified before and the verification is not expired
+	 */
+	public boolean isVerified(String type, String token, String streamId, String sessionId) {
+		if (token == null) {
+			return false;
+		}
+		Key key = new Key(type, token, streamId, sessionId);
+		boolean verified = false;
+		synchronized (expireTimes) {
+			Long expireTime = expireTimes.get(key);
+			if (expireTime != null) {
+				if (expireTime > System.currentTimeMillis()) {
+					verified = true;
+				}
+				else {
+					expireTimes.remove(key);
+				}
+			}
+		}
+		if (verified) {
+			hitCount.increment();
+		}
+		else {
+			missCount.increment();
+		}
+		return verified;
+	}
+
+	/**
+	 * Caches the successful verification of the token. Expiry of the entry is capped by the expiry of the token if it's a JWT token
+	 */
+	public void putVerified(String type, String token, String streamId, String sessionId) {
+		if (token == null) {
+			return;
+		}
+		long expireTime = Math.min(System.currentTimeMillis() + ttlMs, getJwtExpireTimeMs(token));
+		synchronized (expireTimes) {
+			expireTimes.put(new Key(type, token, streamId, sessionId), expireTime);
+		}
+	}
+
+	/**
+	 * @param token
+	 * @return expiry time of the JWT token in milliseconds or Long.MAX_VALUE if it's not a JWT token or it has no expiry
+	 */
+	public static long getJwtExpireTimeMs(String token) {
+		if (token.indexOf('.') == -1) {
+			return Long.MAX_VALUE;
+		}
+		try {
+			Date expiresAt = JWT.decode(token).getExpiresAt();
+			return expiresAt != null ? expiresAt.getTime() : Long.MAX_VALUE;
+		}
+		catch (JWTDecodeException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	public void clear() {
+		synchronized (expireTimes) {
+			expireTimes.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (expireTimes) {
+			return expireTimes.size();
+		}
+	}
+
+	@Override
+	public int getEntryCount() {
+		return size();
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Registers the cache to JMX. It's not registered again if there is already a cache with the same name
+	 * @param name name of the cache like the filter that uses it
+	 */
+	public void registerMBean(String name) {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName mbeanName = new ObjectName("io.antmedia:type=TokenVerificationCache,name=" + ObjectName.quote(name));
+			if (!mbs.isRegistered(mbeanName)) {
+				mbs.registerMBean(new StandardMBean(this, TokenVerificationCacheMXBean.class, true), mbeanName);
+				objectName = mbeanName;
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				logger.warn("Error on jmx unregistration", e);
+			}
+			objectName = null;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package io.antmedia.security;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the {@link TokenVerificationCache}
+ */
+@MXBean
+public interface TokenVerificationCacheMXBean {
+
+	/**
+	 * @return number of the cached verifications
+	 */
+	public int getEntryCount();
+
+	/**
+	 * @return number of the verifications that are found in the cache
+	 */
+	public long getHitCount();
+
+	/**
+	 * @return number of the verifications that are not found in the cache or expired
+	 */
+	public long getMissCount();
+}
@@ -0,0 +1,383 @@
+package io.antmedia.servlet;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+
+import io.antmedia.muxer.IAntMediaStreamHandler;
+import io.antmedia.muxer.buffer.DirectBufferPool;
+import io.antmedia.muxer.buffer.PooledBuffer;
+import io.antmedia.servlet.cmafutils.ICMAFChunkListener;
+import io.vertx.core.Vertx;
+
+/**
+ * Keeps the completed CMAF chunks of the files that are being uploaded to {@link ChunkedTransferServlet}
+ * so that viewers get the segment while it's still being generated.
+ *
+ * Chunks are copied to off-heap buffers borrowed from {@link DirectBufferPool}. A viewer that joins in the middle
+ * gets the stored chunks first as read-only views of the buffers and then the new ones. New chunks are delivered to all 
+ * waiting viewers with the same array, there is no copy for each viewer. Buffers are reference counted so that a stored chunk
+ * is not returned to the pool while a viewer is writing it.
+ *
+ * Size of a file in the cache is limited by {@link #setMaxBytesPerKey(long)}. If it's exceeded, chunks are not stored anymore,
+ * waiting viewers still get them but new viewers cannot join that file from the cache. New viewers wait for the upload
+ * to complete with {@link #addUploadCompletionListener(String, Runnable)} and get the file from the disk.
+ *
+ * When the upload is completed, file is kept in the cache for {@link #setEvictionDelayMs(long)} milliseconds
+ * because viewers may have checked the file before it's moved to its final place.
+ *
+ * It's registered in the application context with the name {@link IChunkedCacheManager#BEAN_NAME} instead of
+ * {@link MockChunkedCacheManager}, i.e. {@code <bean id="chunked.cache.manager" class="io.antmedia.servlet.ChunkedCacheManager" />}
+ */
+public class ChunkedCacheManager implements IChunkedCacheManager, ChunkedCacheManagerMXBean, ApplicationContextAware, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChunkedCacheManager.class);
+
+	public static final long DEFAULT_MAX_BYTES_PER_KEY = 32L * 1024 * 1024;
+
+	public static final long DEFAULT_EVICTION_DELAY_MS = 5000;
+
+	/**
+	 * Owner name of the buffers in {@link DirectBufferPool} accounting
+	 */
+	private static final String BUFFER_OWNER = "chunked-cache";
+
+	private final Map<String, CacheEntry> caches = new ConcurrentHashMap<>();
+
+	private final AtomicLong bytesHeld = new AtomicLong();
+
+	private final LongAdder overflowCount = new LongAdder();
+
+	private DirectBufferPool bufferPool = DirectBufferPool.getInstance();
+
+	private Vertx vertx;
+
+	private ObjectName objectName;
+
+	@Value("${chunkedCacheMaxBytesPerKey:" + DEFAULT_MAX_BYTES_PER_KEY + "}")
+	private long maxBytesPerKey = DEFAULT_MAX_BYTES_PER_KEY;
+
+	@Value("${chunkedCacheEvictionDelayMs:" + DEFAULT_EVICTION_DELAY_MS + "}")
+	private long evictionDelayMs = DEFAULT_EVICTION_DELAY_MS;
+
+	private class CacheEntry {
+
+		private final String key;
+		private final List<PooledBuffer> chunks = new ArrayList<>();
+		/**
+		 * Listeners may remove themselves while they are being notified
+		 */
+		private final List<ICMAFChunkListener> listeners = new CopyOnWriteArrayList<>();
+		private final List<Runnable> completionListeners = new ArrayList<>();
+		private long size = 0;
+		private boolean completed = false;
+		private boolean overflowed = false;
+		private boolean freed = false;
+
+		CacheEntry(String key) {
+			this.key = key;
+		}
+
+		synchronized void append(byte[] data) {
+			if (completed) {
+				return;
+			}
+
+			if (!overflowed) {
+				if (size + data.length <= maxBytesPerKey) {
+					chunks.add(bufferPool.copyOf(ByteBuffer.wrap(data), BUFFER_OWNER));
+					size += data.length;
+					bytesHeld.addAndGet(data.length);
+				}
+				else {
+					logger.warn("Chunked cache size limit:{} is exceeded for {}. New viewers cannot get it from the cache", maxBytesPerKey, key);
+					overflowed = true;
+					overflowCount.increment();
+					//stored chunks are only used by the new viewers
+					releaseChunks();
+				}
+			}
+
+			for (ICMAFChunkListener listener : listeners) {
+				listener.chunkCompleted(data);
+			}
+		}
+
+		synchronized void register(ICMAFChunkListener listener) {
+			//stored chunks are shared with the listener without copying. Listener releases its reference after it's written
+			for (PooledBuffer chunk : chunks) {
+				ByteBuffer buffer = chunk.getBuffer().asReadOnlyBuffer();
+				buffer.rewind();
+				chunk.retain();
+				listener.chunkCompleted(buffer, chunk::release);
+			}
+
+			if (completed) {
+				listener.chunkCompleted(null);
+			}
+			else {
+				listeners.add(listener);
+			}
+		}
+
+		synchronized void unregister(ICMAFChunkListener listener) {
+			listeners.remove(listener);
+		}
+
+		synchronized boolean addCompletionListener(Runnable listener) {
+			if (completed) {
+				return false;
+			}
+			completionListeners.add(listener);
+			return true;
+		}
+
+		synchronized void complete() {
+			if (!completed) {
+				completed = true;
+				for (ICMAFChunkListener listener : listeners) {
+					listener.chunkCompleted(null);
+				}
+				listeners.clear();
+				for (Runnable listener : completionListeners) {
+					try {
+						listener.run();
+					}
+					catch (Exception e) {
+						logger.error("Exception in upload completion listener for {} {}", key, ExceptionUtils.getStackTrace(e));
+					}
+				}
+				completionListeners.clear();
+			}
+		}
+
+		synchronized void free() {
+			complete();
+			if (!freed) {
+				freed = true;
+				releaseChunks();
+			}
+		}
+
+		private void releaseChunks() {
+			for (PooledBuffer chunk : chunks) {
+				chunk.release();
+			}
+			chunks.clear();
+			bytesHeld.addAndGet(-size);
+			size = 0;
+		}
+
+		synchronized boolean isCompleted() {
+			return completed;
+		}
+
+		synchronized boolean isOverflowed() {
+			return overflowed;
+		}
+
+		synchronized int getListenerCount() {
+			return listeners.size() + completionListeners.size();
+		}
+	}
+
+	@Override
+	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+		if (applicationContext.containsBean(IAntMediaStreamHandler.VERTX_BEAN_NAME)) {
+			vertx = (Vertx) applicationContext.getBean(IAntMediaStreamHandler.VERTX_BEAN_NAME);
+		}
+		registerMBean(applicationContext.getApplicationName());
+	}
+
+	private void registerMBean(String applicationName) {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			objectName = new ObjectName("io.antmedia:type=ChunkedCacheManager,name=" + ObjectName.quote(applicationName));
+			if (!mbs.isRegistered(objectName)) {
+				mbs.registerMBean(new StandardMBean(this, ChunkedCacheManagerMXBean.class, true), objectName);
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				logger.warn("Error on jmx unregistration", e);
+			}
+		}
+		for (CacheEntry entry : caches.values()) {
+			entry.free();
+		}
+		caches.clear();
+	}
+
+	@Override
+	public void addCache(String key) {
+		CacheEntry previous = caches.put(key, new CacheEntry(key));
+		if (previous != null) {
+			//same file is uploaded again. Viewers of the previous one get EOF
+			previous.free();
+		}
+	}
+
+	/**
+	 * Completes the file in the cache and removes it after eviction delay.
+	 * Viewers that are waiting for the chunks get EOF immediately
+	 */
+	@Override
+	public void removeCache(String key) {
+		CacheEntry entry = caches.get(key);
+		if (entry != null) {
+			entry.complete();
+			if (evictionDelayMs > 0 && vertx != null) {
+				vertx.setTimer(evictionDelayMs, l -> evict(key, entry));
+			}
+			else {
+				evict(key, entry);
+			}
+		}
+	}
+
+	private void evict(String key, CacheEntry entry) {
+		//it may be replaced by a new upload of the same file
+		if (caches.remove(key, entry)) {
+			entry.free();
+		}
+	}
+
+	@Override
+	public boolean hasCache(String key) {
+		CacheEntry entry = caches.get(key);
+		return entry != null && !entry.isOverflowed();
+	}
+
+	@Override
+	public boolean isUploading(String key) {
+		CacheEntry entry = caches.get(key);
+		return entry != null && !entry.isCompleted();
+	}
+
+	/**
+	 * Listener is run in the thread that completes the upload after the file is moved to its place.
+	 * It's also run if the upload fails so listener should check the file
+	 */
+	@Override
+	public boolean addUploadCompletionListener(String key, Runnable listener) {
+		CacheEntry entry = caches.get(key);
+		return entry != null && entry.addCompletionListener(listener);
+	}
+
+	@Override
+	public void append(String key, byte[] data) {
+		CacheEntry entry = caches.get(key);
+		if (entry != null) {
+			entry.append(data);
+		}
+	}
+
+	/**
+	 * Listener gets the chunks that are already in the cache immediately.
+	 * If there is no cache for the key, it gets EOF so that it does not wait forever
+	 */
+	@Override
+	public void registerChunkListener(String key, ICMAFChunkListener icmafChunkListener) {
+		CacheEntry entry = caches.get(key);
+		if (entry != null) {
+			entry.register(icmafChunkListener);
+		}
+		else {
+			icmafChunkListener.chunkCompleted(null);
+		}
+	}
+
+	@Override
+	public void removeChunkListener(String key, ICMAFChunkListener icmafChunkListener) {
+		CacheEntry entry = caches.get(key);
+		if (entry != null) {
+			entry.unregister(icmafChunkListener);
+		}
+	}
+
+	@Override
+	public int getActiveKeyCount() {
+		int count = 0;
+		for (CacheEntry entry : caches.values()) {
+			if (!entry.isCompleted()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int getKeyCount() {
+		return caches.size();
+	}
+
+	@Override
+	public long getBytesHeld() {
+		return bytesHeld.get();
+	}
+
+	@Override
+	public int getListenerCount() {
+		int count = 0;
+		for (CacheEntry entry : caches.values()) {
+			count += entry.getListenerCount();
+		}
+		return count;
+	}
+
+	@Override
+	public long getOverflowCount() {
+		return overflowCount.sum();
+	}
+
+	public long getMaxBytesPerKey() {
+		return maxBytesPerKey;
+	}
+
+	public void setMaxBytesPerKey(long maxBytesPerKey) {
+		this.maxBytesPerKey = maxBytesPerKey;
+	}
+
+	public long getEvictionDelayMs() {
+		return evictionDelayMs;
+	}
+
+	public void setEvictionDelayMs(long evictionDelayMs) {
+		this.evictionDelayMs = evictionDelayMs;
+	}
+
+	public void setVertx(Vertx vertx) {
+		this.vertx = vertx;
+	}
+
+	public void setBufferPool(DirectBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+}
@@ -0,0 +1,35 @@
+package io.antmedia.servlet;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the {@link ChunkedCacheManager}
+ */
+@MXBean
+public interface ChunkedCacheManagerMXBean {
+
+	/**
+	 * @return number of files that are still being uploaded
+	 */
+	public int getActiveKeyCount();
+
+	/**
+	 * @return number of files in the cache including the completed ones that are waiting for eviction
+	 */
+	public int getKeyCount();
+
+	/**
+	 * @return total bytes of the chunks that are kept in the cache
+	 */
+	public long getBytesHeld();
+
+	/**
+	 * @return number of viewers that are waiting for the chunks or for the upload to complete
+	 */
+	public int getListenerCount();
+
+	/**
+	 * @return number of files that exceeded the size limit. New viewers cannot join these files from the cache
+	 */
+	public long getOverflowCount();
+}
@@ -1,28 +1,32 @@
 package io.antmedia.servlet;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.servlet.AsyncContext;
 import jakarta.servlet.AsyncEvent;
 import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import org.apache.catalina.connector.ClientAbortException;
+import org.apache.catalina.Globals;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,31 +48,399 @@ public class ChunkedTransferServlet extends HttpServlet {
 	protected static Logger logger = LoggerFactory.getLogger(ChunkedTransferServlet.class);
 
 
-	public static class ChunkListener implements ICMAFChunkListener {
+	/**
+	 * Size of the buffers that are used to read the uploaded files and to write the files to the viewers
+	 */
+	public static final int IO_BUFFER_SIZE = 64 * 1024;
 
-		LinkedBlockingQueue<byte[]> chunksQueue = new LinkedBlockingQueue<>();
+	private static final int MAX_POOLED_IO_BUFFERS = 256;
+
+	/**
+	 * Files bigger than this are sent with sendfile if the connector supports it. Smaller ones are cheaper to write directly
+	 */
+	public static final long SENDFILE_MIN_SIZE = 48 * 1024L;
+
+	private static final Queue<byte[]> ioBufferPool = new ConcurrentLinkedQueue<>();
+
+	private static final AtomicInteger pooledIOBufferCount = new AtomicInteger();
+
+	public static byte[] borrowIOBuffer() {
+		byte[] buffer = ioBufferPool.poll();
+		if (buffer != null) {
+			pooledIOBufferCount.decrementAndGet();
+			return buffer;
+		}
+		return new byte[IO_BUFFER_SIZE];
+	}
+
+	public static void returnIOBuffer(byte[] buffer) {
+		if (pooledIOBufferCount.incrementAndGet() <= MAX_POOLED_IO_BUFFERS) {
+			ioBufferPool.offer(buffer);
+		}
+		else {
+			pooledIOBufferCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Writes the chunks of a file that is being uploaded to a viewer with non-blocking IO.
+	 *
+	 * Chunks are queued when they are completed and they are written as long as the output stream is ready.
+	 * If the output is not ready, container calls {@link #onWritePossible()} later. If there is no chunk to write,
+	 * the next chunk resumes writing in the thread that completes it. No thread waits for the chunks.
+	 *
+	 * Completed chunks are not modified after they are created so that the same array or the same stored chunk
+	 * is shared by all viewers without copying it for each viewer
+	 */
+	public static class ChunkListener implements ICMAFChunkListener, WriteListener {
+
+		private static final QueuedChunk EOF = new QueuedChunk(ByteBuffer.allocate(0), null);
+
+		private final Queue<QueuedChunk> chunksQueue = new ConcurrentLinkedQueue<>();
+
+		private String filePath;
+		private IChunkedCacheManager cacheManager;
+		private AsyncContext asyncContext;
+		private ServletOutputStream outputStream;
+		private boolean finished = false;
+
+		/**
+		 * Chunk that is waiting to be written. Chunks that are stored in the cache are shared with the other viewers,
+		 * they're released when they're written or dropped
+		 */
+		public static class QueuedChunk {
+			private final ByteBuffer data;
+			private final Runnable release;
+
+			QueuedChunk(ByteBuffer data, Runnable release) {
+				this.data = data;
+				this.release = release;
+			}
+
+			public ByteBuffer getData() {
+				return data;
+			}
+
+			public boolean isEOF() {
+				return this == EOF;
+			}
+
+			public void release() {
+				if (release != null) {
+					release.run();
+				}
+			}
+		}
 
 		@Override
 		public void chunkCompleted(byte[] completeChunk) 
 		{
-			byte[] data;
-			if (completeChunk != null) {
-				data = new byte[completeChunk.length];
-				
-				System.arraycopy(completeChunk, 0, data, 0, data.length);
+			//null means EOF
+			queue(completeChunk != null ? new QueuedChunk(ByteBuffer.wrap(completeChunk), null) : EOF);
+		}
+
+		/**
+		 * Stored chunk is queued without copying it. It's written in pieces through the IO buffers
+		 */
+		@Override
+		public void chunkCompleted(ByteBuffer completeChunk, Runnable release) {
+			queue(new QueuedChunk(completeChunk, release));
+		}
+
+		private void queue(QueuedChunk chunk) {
+			chunksQueue.add(chunk);
+			try {
+				writeAvailableChunks();
+			}
+			catch (IOException e) {
+				onError(e);
+			}
+		}
+
+		/**
+		 * Start writing the chunks to the output stream. Chunks that are already queued are written if the output is ready
+		 */
+		public void start(String filePath, IChunkedCacheManager cacheManager, AsyncContext asyncContext, ServletOutputStream outputStream) throws IOException {
+			synchronized (this) {
+				this.filePath = filePath;
+				this.cacheManager = cacheManager;
+				this.asyncContext = asyncContext;
+			}
+			//output stream cannot be used before it's switched to non-blocking mode
+			outputStream.setWriteListener(this);
+			synchronized (this) {
+				this.outputStream = outputStream;
+			}
+			writeAvailableChunks();
+		}
+
+		@Override
+		public void onWritePossible() throws IOException {
+			writeAvailableChunks();
+		}
+
+		private void writeAvailableChunks() throws IOException {
+			//cache manager is called out of the lock because it calls this listener with its own lock
+			if (writeChunks()) {
+				cacheManager.removeChunkListener(filePath, this);
+				logger.debug("writing chunks finished for file: {}", filePath);
+			}
+		}
+
+		/**
+		 * @return true if EOF is written
+		 */
+		private synchronized boolean writeChunks() throws IOException {
+			if (finished) {
+				releaseQueuedChunks();
+				return false;
+			}
+			if (outputStream == null) {
+				return false;
+			}
+			QueuedChunk chunk;
+			while (outputStream.isReady() && (chunk = chunksQueue.peek()) != null) {
+				if (chunk.isEOF()) {
+					chunksQueue.poll();
+					finished = true;
+					releaseQueuedChunks();
+					asyncContext.complete();
+					return true;
+				}
+				write(chunk.getData());
+				if (!chunk.getData().hasRemaining()) {
+					chunksQueue.poll();
+					chunk.release();
+					if (outputStream.isReady()) {
+						//send the chunk immediately for low latency. Otherwise container sends it when it's possible
+						outputStream.flush();
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Writes the data if it has an accessible array. Otherwise writes the next piece of it through an IO buffer
+		 */
+		private void write(ByteBuffer data) throws IOException {
+			if (data.hasArray()) {
+				outputStream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+				data.position(data.limit());
 			}
 			else {
-				//EOF 
-				data = new byte[0];
-			}			
-			chunksQueue.add(data);
-		
+				byte[] ioBuffer = borrowIOBuffer();
+				try {
+					int length = Math.min(data.remaining(), ioBuffer.length);
+					data.get(ioBuffer, 0, length);
+					//output stream keeps the data that cannot be sent in its own buffer
+					outputStream.write(ioBuffer, 0, length);
+				}
+				finally {
+					returnIOBuffer(ioBuffer);
+				}
+			}
+		}
+
+		private void releaseQueuedChunks() {
+			QueuedChunk chunk;
+			while ((chunk = chunksQueue.poll()) != null) {
+				chunk.release();
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			boolean removeListener;
+			synchronized (this) {
+				removeListener = !finished && cacheManager != null;
+				finished = true;
+				releaseQueuedChunks();
+			}
+			logger.warn("Error in writing chunks for file: {} error: {}", filePath, t.getMessage());
+			if (removeListener) {
+				cacheManager.removeChunkListener(filePath, this);
+			}
 		}
 
-		public LinkedBlockingQueue<byte[]> getChunksQueue() {
+		public Queue<QueuedChunk> getChunksQueue() {
 			return chunksQueue;
 		}
 
+		public synchronized boolean isFinished() {
+			return finished;
+		}
+
+	}
+
+	/**
+	 * Writes a file to a viewer with non-blocking IO. It's used if sendfile is not supported by the connector
+	 * or the file is small
+	 */
+	public static class FileWriteListener implements WriteListener {
+
+		private final File file;
+		private final FileChannel channel;
+		private final AsyncContext asyncContext;
+		private final ServletOutputStream outputStream;
+		private final byte[] buffer = borrowIOBuffer();
+		private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+		private long total = 0;
+		private boolean closed = false;
+
+		public FileWriteListener(File file, AsyncContext asyncContext, ServletOutputStream outputStream) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			this.asyncContext = asyncContext;
+			this.outputStream = outputStream;
+		}
+
+		@Override
+		public synchronized void onWritePossible() throws IOException {
+			while (!closed && outputStream.isReady()) {
+				byteBuffer.clear();
+				int length = channel.read(byteBuffer);
+				if (length < 0) {
+					close();
+					asyncContext.complete();
+					return;
+				}
+				outputStream.write(buffer, 0, length);
+				total += length;
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			logger.warn("Exception in writing the following file:{} total written byte:{} error:{}", file.getName(), total, t.getMessage());
+			close();
+		}
+
+		private synchronized void close() {
+			if (!closed) {
+				closed = true;
+				try {
+					channel.close();
+				}
+				catch (IOException e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
+				}
+				returnIOBuffer(buffer);
+			}
+		}
+
+		public synchronized boolean isClosed() {
+			return closed;
+		}
+	}
+
+	/**
+	 * Reads the uploaded file with non-blocking IO. Data is parsed to CMAF chunks and written to a temporary file.
+	 * File is moved to its final place when the upload is completed
+	 */
+	public static class UploadReadListener implements ReadListener {
+
+		private final File finalFile;
+		private final File tmpFile;
+		private final IChunkedCacheManager cacheManager;
+		private final IParser atomparser;
+		private final AsyncContext asyncContext;
+		private final ServletInputStream inputStream;
+		private final StatusListener statusListener;
+		private final FileChannel channel;
+		private final byte[] buffer = borrowIOBuffer();
+		private boolean finished = false;
+
+		public UploadReadListener(File finalFile, File tmpFile, IChunkedCacheManager cacheManager, IParser atomparser,
+				AsyncContext asyncContext, ServletInputStream inputStream, StatusListener statusListener) throws IOException {
+			this.finalFile = finalFile;
+			this.tmpFile = tmpFile;
+			this.cacheManager = cacheManager;
+			this.atomparser = atomparser;
+			this.asyncContext = asyncContext;
+			this.inputStream = inputStream;
+			this.statusListener = statusListener;
+			this.channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		@Override
+		public synchronized void onDataAvailable() throws IOException {
+			int length;
+			while (!finished && inputStream.isReady() && (length = inputStream.read(buffer, 0, buffer.length)) != -1) 
+			{
+				atomparser.parse(buffer, 0, length);
+				ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+
+				if (statusListener.isTimeoutOrErrorExist()) {
+					logger.warn("Timeout or error exists for file: {} finishing the upload", finalFile.getAbsolutePath());
+					onAllDataRead();
+				}
+			}
+		}
+
+		@Override
+		public synchronized void onAllDataRead() throws IOException {
+			if (finished) {
+				return;
+			}
+			closeChannel();
+			
+			try {
+				if (finalFile.getParentFile().exists()) {
+					Files.move(tmpFile.toPath(), finalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					logger.debug("File:{} was generated ", finalFile.getName());
+				}
+				else {
+					logger.warn("Parent file of {} not exist", finalFile.getParent());
+				}
+			}
+			catch (IOException e) {
+				logger.error("File:{} cannot be moved to its place error:{}", finalFile.getAbsolutePath(), ExceptionUtils.getStackTrace(e));
+				Files.deleteIfExists(tmpFile.toPath());
+				((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			}
+			finally {
+				try {
+					removeCache();
+				}
+				finally {
+					//request is completed even if the upload fails, otherwise it waits until the async timeout
+					asyncContext.complete();
+				}
+			}
+		}
+
+		@Override
+		public synchronized void onError(Throwable t) {
+			logger.warn("Error in reading input stream for file: {} error: {}", finalFile.getAbsolutePath(), t.getMessage());
+			if (!finished) {
+				closeChannel();
+				removeCache();
+			}
+		}
+
+		private void closeChannel() {
+			finished = true;
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+			}
+			returnIOBuffer(buffer);
+		}
+
+		private void removeCache() {
+			cacheManager.removeCache(finalFile.getAbsolutePath());
+			logger.debug("doPut done key:{}", finalFile.getAbsolutePath());
+		}
+
+		public synchronized boolean isFinished() {
+			return finished;
+		}
 	}
 	
 	public static class StatusListener implements AsyncListener {
@@ -168,10 +540,8 @@ public class ChunkedTransferServlet extends HttpServlet {
 					asyncContext.addListener(statusListener);
 
 
-					InputStream inputStream = asyncContext.getRequest().getInputStream();
-					asyncContext.start(() -> 
-						readInputStream(finalFile, tmpFile, cacheManager, atomparser, asyncContext, inputStream, statusListener)
-					);
+					ServletInputStream inputStream = asyncContext.getRequest().getInputStream();
+					inputStream.setReadListener(new UploadReadListener(finalFile, tmpFile, cacheManager, atomparser, asyncContext, inputStream, statusListener));
 				}
 				catch (BeansException | IllegalStateException | IOException e) 
 				{
@@ -207,54 +577,6 @@ public class ChunkedTransferServlet extends HttpServlet {
 		}
 	}
 
-	public void readInputStream(File finalFile, File tmpFile, IChunkedCacheManager cacheManager, IParser atomparser,
-			AsyncContext asyncContext, InputStream inputStream, StatusListener statusListener) 
-	{
-		boolean exceptionOccured = false;
-		try (FileOutputStream fos = new FileOutputStream(tmpFile)) 
-		{
-			byte[] data = new byte[2048];
-			int length = 0;
-
-			while ((length = inputStream.read(data, 0, data.length)) > 0) 
-			{
-				atomparser.parse(data, 0, length);
-				fos.write(data, 0, length);
-				
-				if (statusListener.isTimeoutOrErrorExist()) {
-					logger.warn("Timeout or error exists for file: {} breaking the loop", finalFile.getAbsolutePath());
-					break;
-				}
-			}
-			
-			if (finalFile.getParentFile().exists()) {
-				Files.move(tmpFile.toPath(), finalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-				logger.debug("File:{} was generated ", finalFile.getName());
-			}
-			else {
-				logger.warn("Parent file of {} not exist", finalFile.getParent());
-			}
-		}
-		catch (ClientAbortException e) {
-			logger.warn("Client aborted - Reading input stream for file: {}", finalFile.getAbsolutePath());
-			exceptionOccured = true;
-		}
-		catch (Exception e) 
-		{
-			logger.error(ExceptionUtils.getStackTrace(e));
-			exceptionOccured = true;
-		}
-		
-		if (!exceptionOccured) {
-			asyncContext.complete();
-		}
-		
-		cacheManager.removeCache(finalFile.getAbsolutePath());
-		
-		logger.debug("doPut done key:{}", finalFile.getAbsolutePath());
-	}
-
-
 	public void deleteRequest(HttpServletRequest req, HttpServletResponse resp) 
 	{
 		ConfigurableWebApplicationContext appContext = (ConfigurableWebApplicationContext) req.getServletContext().getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE);
@@ -322,33 +644,59 @@ public class ChunkedTransferServlet extends HttpServlet {
 	}
 
 
-	public void writeOutputStream(File file, AsyncContext asyncContext, String mimeType) 
+	/**
+	 * Write the file with non-blocking IO. Container calls the {@link FileWriteListener} when the output is ready
+	 */
+	public void writeOutputStream(File file, AsyncContext asyncContext, String mimeType) throws IOException
 	{
-		int total = 0;
-		try (FileInputStream fis = new FileInputStream(file)) 
-		{
-			//it seems that headers should be set in the same thread.
-			ServletResponse response = asyncContext.getResponse();
-			response.setContentType(mimeType);
-			
-			OutputStream ostream = response.getOutputStream();
-			int length = 0;
-			byte[] data = new byte[2048];
+		ServletResponse response = asyncContext.getResponse();
+		response.setContentType(mimeType);
+		response.setContentLengthLong(file.length());
 
-			
-			while ((length = fis.read(data, 0, data.length)) > 0) {
-				ostream.write(data, 0, length);
-				total += length;
+		ServletOutputStream ostream = response.getOutputStream();
+		ostream.setWriteListener(new FileWriteListener(file, asyncContext, ostream));
+	}
+
+	/**
+	 * Write the file after its upload is completed. It's used for the viewers that cannot get the file from the cache
+	 */
+	public void writeUploadedFile(File file, AsyncContext asyncContext, String mimeType) 
+	{
+		HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+		try {
+			if (Files.exists(file.toPath())) {
+				writeOutputStream(file, asyncContext, mimeType);
 			}
-		
-			ostream.flush(); 
+			else {
+				logger.info("File:{} does not exist after its upload. Sending not found error(404)", file.getAbsolutePath());
+				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+				asyncContext.complete();
+			}
+		}
+		catch (IOException | IllegalStateException e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			asyncContext.complete();
+		}
+	}
 
-		} 
-		catch (Exception e) 
+	/**
+	 * Let the connector send the file with sendfile without copying it to the user space
+	 * @return true if sendfile is supported and file is big enough
+	 */
+	public boolean sendFileIfSupported(HttpServletRequest req, HttpServletResponse resp, File file, String mimeType) throws IOException 
+	{
+		long length = file.length();
+		if (Boolean.TRUE.equals(req.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR)) && length >= SENDFILE_MIN_SIZE) 
 		{
-			logger.error("Exception in writing the following file:{} total written byte:{} stacktrace:{}", file.getName(), total, ExceptionUtils.getStackTrace(e));
+			resp.setContentType(mimeType);
+			resp.setContentLengthLong(length);
+			req.setAttribute(Globals.SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+			req.setAttribute(Globals.SENDFILE_FILE_START_ATTR, 0L);
+			req.setAttribute(Globals.SENDFILE_FILE_END_ATTR, length);
+			return true;
 		}
+		return false;
 	}
 
 	public static void logHeaders(HttpServletResponse resp) {
@@ -385,8 +733,11 @@ public class ChunkedTransferServlet extends HttpServlet {
 				
 				if (Files.exists(file.toPath())) 
 				{
-					AsyncContext asyncContext = req.startAsync();
-					asyncContext.start(() -> writeOutputStream(file, asyncContext, mimeType));
+					if (!sendFileIfSupported(req, resp, file, mimeType)) 
+					{
+						AsyncContext asyncContext = req.startAsync();
+						writeOutputStream(file, asyncContext, mimeType);
+					}
 				}
 				else 
 				{
@@ -401,11 +752,20 @@ public class ChunkedTransferServlet extends HttpServlet {
 
 						ChunkListener chunkListener = new ChunkListener();
 						cacheManager.registerChunkListener(file.getAbsolutePath(), chunkListener);
-						asyncContext.start(() ->  
-							writeChunks(file, cacheManager, asyncContext, chunkListener, mimeType)
-						);
+						writeChunks(file, cacheManager, asyncContext, chunkListener, mimeType);
 
 					}
+					else if (cacheManager.isUploading(file.getAbsolutePath()))
+					{
+						//file is too big for the cache, send it when its upload is completed
+						logger.info("File:{} is being generated and it's not in the cache so waiting for its upload", file.getAbsolutePath());
+						AsyncContext asyncContext = req.startAsync();
+						Runnable writeFile = () -> writeUploadedFile(file, asyncContext, mimeType);
+						if (!cacheManager.addUploadCompletionListener(file.getAbsolutePath(), writeFile)) {
+							//upload is completed in the meantime
+							writeFile.run();
+						}
+					}
 					else 
 					{
 						logger.info("Sending not found error(404) for {}", file.getAbsolutePath());
@@ -414,7 +774,7 @@ public class ChunkedTransferServlet extends HttpServlet {
 
 				}
 			} 
-			catch (BeansException | IllegalStateException e) 
+			catch (BeansException | IllegalStateException | IOException e) 
 			{
 				logger.error(ExceptionUtils.getStackTrace(e));
 				writeInternalError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null);
@@ -427,59 +787,17 @@ public class ChunkedTransferServlet extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Start writing the chunks with non-blocking IO. Chunks that are already queued in the listener are written 
+	 * when the container calls {@link ChunkListener#onWritePossible()} and the next ones are written as they are completed
+	 */
 	public void writeChunks(File file, IChunkedCacheManager cacheManager, AsyncContext asyncContext,
-			ChunkListener chunkListener, String mimeType) 
+			ChunkListener chunkListener, String mimeType) throws IOException
 	{
-		String filePath = file.getAbsolutePath();
-		boolean exceptionOccured = false;
-		try {
-			//it seems that headers should be set in the same thread.
-			ServletResponse response = asyncContext.getResponse();
-			response.setContentType(mimeType);
-			
-			ServletOutputStream oStream = response.getOutputStream();
-			byte[] chunk;
-			while ((chunk = chunkListener.getChunksQueue().take()).length > 0) {
-				int offset = 0;
-				int batchSize = 2048;
-				int length = 0;
-				logger.debug("start writing chunk leaving for file: {}", filePath);
-
-				while ((length = chunk.length - offset) > 0) 
-				{
-					if (length > batchSize) {
-						length = batchSize;
-					}
-					oStream.write(chunk, offset, length);
-					offset += length;
-				} 
-				
-				oStream.flush();
-				
-				logger.debug("writing chunk leaving for file: {}", filePath);
-
-			}
-			
-		}
-		catch (ClientAbortException e) {
-			logger.warn("Client aborted - writing chunks for file: {}", filePath);
-			exceptionOccured = true;
-		}
-		catch (InterruptedException e) {
-			logger.error("InterruptedException - writing chunks for file: {} stacktrace:{}", filePath, ExceptionUtils.getStackTrace(e));
-			Thread.currentThread().interrupt();
-		}
-		catch (Exception e) {
-			logger.error("Exception - writing chunks for file: {} stacktrace:{}", filePath, ExceptionUtils.getStackTrace(e));
-			exceptionOccured = true;
-		} 
-		
-		if (!exceptionOccured) {
-			asyncContext.complete();
-		}
-
-		cacheManager.removeChunkListener(filePath, chunkListener);
+		ServletResponse response = asyncContext.getResponse();
+		response.setContentType(mimeType);
 		
+		chunkListener.start(file.getAbsolutePath(), cacheManager, asyncContext, response.getOutputStream());
 	}
 
 	private void writeInternalError(HttpServletResponse resp, int status, String message) {
@@ -0,0 +1,183 @@
+package io.antmedia.servlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.web.context.ConfigurableWebApplicationContext;
+import org.springframework.web.context.WebApplicationContext;
+
+import io.antmedia.AppSettings;
+import io.antmedia.muxer.InMemorySegmentStore;
+
+/**
+ * Serves the HLS playlists and segments from {@link InMemorySegmentStore}.
+ *
+ * Files that are not in memory(VoD files, recordings, files of the streams that are not in memory mode) are forwarded to
+ * the default servlet so that this servlet can be mapped to the streams directory.
+ *
+ * Each response has a strong ETag. Playlists should be revalidated by the clients and segments can be cached
+ * as long as they are in the playlist.
+ *
+ * It should be mapped in the web.xml of the application with load-on-startup, otherwise in-memory HLS setting
+ * is ignored and files are written to the disk:
+ * <pre>
+ * &lt;servlet&gt;
+ *   &lt;servlet-name&gt;HLSMemoryServlet&lt;/servlet-name&gt;
+ *   &lt;servlet-class&gt;io.antmedia.servlet.HLSMemoryServlet&lt;/servlet-class&gt;
+ *   &lt;load-on-startup&gt;1&lt;/load-on-startup&gt;
+ * &lt;/servlet&gt;
+ * &lt;servlet-mapping&gt;
+ *   &lt;servlet-name&gt;HLSMemoryServlet&lt;/servlet-name&gt;
+ *   &lt;url-pattern&gt;/streams/*&lt;/url-pattern&gt;
+ * &lt;/servlet-mapping&gt;
+ * </pre>
+ */
+public class HLSMemoryServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static Logger logger = LoggerFactory.getLogger(HLSMemoryServlet.class);
+
+	public static final String DEFAULT_SERVLET_NAME = "default";
+
+	public static final String PLAYLIST_CACHE_CONTROL = "no-cache";
+
+	public static final int DEFAULT_SEGMENT_MAX_AGE_SECONDS = 60;
+
+	/**
+	 * Names of the applications that this servlet is mapped in
+	 */
+	private static final Set<String> registeredApplications = ConcurrentHashMap.newKeySet();
+
+	private transient InMemorySegmentStore store = InMemorySegmentStore.getInstance();
+
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		registeredApplications.add(getApplicationName(getServletContext().getContextPath()));
+	}
+
+	@Override
+	public void destroy() {
+		registeredApplications.remove(getApplicationName(getServletContext().getContextPath()));
+		super.destroy();
+	}
+
+	private static String getApplicationName(String contextPath) {
+		return contextPath.startsWith("/") ? contextPath.substring(1) : contextPath;
+	}
+
+	/**
+	 * @param applicationName name of the application
+	 * @return true if the servlet is mapped and initialized in the application
+	 */
+	public static boolean isRegistered(String applicationName) {
+		return registeredApplications.contains(applicationName);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+
+		String path = req.getServletContext().getRealPath(getRelativePath(req));
+		InMemorySegmentStore.Entry entry = path != null ? store.acquire(path) : null;
+
+		if (entry == null) {
+			RequestDispatcher dispatcher = req.getServletContext().getNamedDispatcher(DEFAULT_SERVLET_NAME);
+			if (dispatcher != null) {
+				dispatcher.forward(req, resp);
+			}
+			else {
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			}
+			return;
+		}
+
+		try {
+			resp.setHeader("ETag", entry.getEtag());
+			resp.setDateHeader("Last-Modified", entry.getLastModified());
+			resp.setHeader("Cache-Control", entry.isPlaylist() ? PLAYLIST_CACHE_CONTROL : "max-age=" + getSegmentMaxAgeSeconds(req));
+
+			if (StringUtils.equals(req.getHeader("If-None-Match"), entry.getEtag())) {
+				resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+
+			resp.setContentType(getContentType(entry.getKey()));
+			resp.setContentLengthLong(entry.getLength());
+
+			WritableByteChannel channel = Channels.newChannel(resp.getOutputStream());
+			for (ByteBuffer buffer : entry.getBuffers()) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		}
+		catch (IOException e) {
+			//client may close the connection before the segment is sent
+			logger.debug("Cannot send {} error:{}", entry.getKey(), e.getMessage());
+		}
+		finally {
+			entry.release();
+		}
+	}
+
+	public static String getRelativePath(HttpServletRequest req) {
+		String pathInfo = req.getPathInfo();
+		return req.getServletPath() + (pathInfo != null ? pathInfo : "");
+	}
+
+	/**
+	 * Segments are in the playlist for hlsTime * hlsListSize seconds
+	 */
+	public int getSegmentMaxAgeSeconds(HttpServletRequest req) {
+		ConfigurableWebApplicationContext appContext = (ConfigurableWebApplicationContext) req.getServletContext().getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE);
+		if (appContext != null && appContext.isRunning()) {
+			try {
+				AppSettings appSettings = (AppSettings) appContext.getBean(AppSettings.BEAN_NAME);
+				return (int) (Double.parseDouble(appSettings.getHlsTime()) * Integer.parseInt(appSettings.getHlsListSize()));
+			}
+			catch (BeansException | NumberFormatException e) {
+				logger.warn("Cannot get hls settings for {} error:{}", req.getRequestURI(), e.getMessage());
+			}
+		}
+		return DEFAULT_SEGMENT_MAX_AGE_SECONDS;
+	}
+
+	public static String getContentType(String key) {
+		if (key.endsWith(".m3u8")) {
+			return "application/vnd.apple.mpegurl";
+		}
+		else if (key.endsWith(".ts")) {
+			return "video/mp2t";
+		}
+		else if (key.endsWith(".m4s")) {
+			return "video/iso.segment";
+		}
+		else if (key.endsWith(".mp4")) {
+			return "video/mp4";
+		}
+		return "application/octet-stream";
+	}
+
+	public void doGetForUnitTests(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		doGet(req, resp);
+	}
+
+	public void setStore(InMemorySegmentStore store) {
+		this.store = store;
+	}
+}
@@ -45,4 +45,21 @@ public interface IChunkedCacheManager
 
 	public void removeChunkListener(String key, ICMAFChunkListener icmafChunkListener);
 
+	/**
+	 * Check that if the file of the key is being uploaded. It may be true while {@link #hasCache(String)} is false
+	 * if the file is too big to be kept in the cache
+	 * @param key
+	 * @return
+	 */
+	public boolean isUploading(String key);
+
+	/**
+	 * Run the listener when the upload of the key is completed. It's used by the viewers that cannot get the file
+	 * from the cache so that they get the file when it's moved to its place
+	 * @param key
+	 * @param listener
+	 * @return false if there is no upload in progress for the key. Listener is not run in this case
+	 */
+	public boolean addUploadCompletionListener(String key, Runnable listener);
+
 }
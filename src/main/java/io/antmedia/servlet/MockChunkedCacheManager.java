@@ -33,4 +33,14 @@ public class MockChunkedCacheManager implements IChunkedCacheManager {
 	public void removeChunkListener(String key, ICMAFChunkListener icmafChunkListener) {
 		// no need to implement
 	}
+
+	@Override
+	public boolean isUploading(String key) {
+		return false;
+	}
+
+	@Override
+	public boolean addUploadCompletionListener(String key, Runnable listener) {
+		return false;
+	}
 }
@@ -1,7 +1,23 @@
 package io.antmedia.servlet.cmafutils;
 
+import java.nio.ByteBuffer;
+
 public interface ICMAFChunkListener {
 
 	public void chunkCompleted(byte[] completeChunk);
 
+	/**
+	 * Called with a chunk that is kept by the caller and shared with the other listeners. Chunk is read-only and 
+	 * it's valid until release is run. Default implementation copies the chunk and releases it
+	 * 
+	 * @param completeChunk read-only chunk
+	 * @param release should be run once when the chunk is not used anymore
+	 */
+	public default void chunkCompleted(ByteBuffer completeChunk, Runnable release) {
+		byte[] data = new byte[completeChunk.remaining()];
+		completeChunk.get(data);
+		release.run();
+		chunkCompleted(data);
+	}
+
 }
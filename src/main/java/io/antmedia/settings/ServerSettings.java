@@ -12,6 +12,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -31,6 +32,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import io.antmedia.licence.ILicenceService;
+import io.antmedia.security.CIDRMatcher;
 
 @PropertySource("/conf/red5.properties")
 @JsonIgnoreProperties(ignoreUnknown=true)
@@ -101,6 +103,9 @@ public class ServerSettings implements ApplicationContextAware, Serializable {
 	@JsonIgnore
 	private transient Queue<NetMask> allowedCIDRList = new ConcurrentLinkedQueue<>();
 
+	@JsonIgnore
+	private final transient AtomicReference<CIDRMatcher> allowedDashboardCIDRMatcher = new AtomicReference<>();
+
 
 	private static Logger logger = LoggerFactory.getLogger(ServerSettings.class);
 
@@ -441,6 +446,15 @@ public class ServerSettings implements ApplicationContextAware, Serializable {
 		return allowedDashboardCIDR;
 	}
 
+	/**
+	 * @return matcher of {@link #allowedDashboardCIDR}. It's compiled once for each change of the list
+	 */
+	@JsonIgnore
+	public CIDRMatcher getAllowedDashboardCIDRMatcher() {
+		return allowedDashboardCIDRMatcher != null ? CIDRMatcher.getUpToDate(allowedDashboardCIDRMatcher, allowedDashboardCIDR)
+				: CIDRMatcher.compile(allowedDashboardCIDR);
+	}
+
 	@JsonIgnore
 	public Queue<NetMask> getAllowedCIDRList() {
 		if (allowedCIDRList.isEmpty()) {
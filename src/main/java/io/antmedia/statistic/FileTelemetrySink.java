@@ -0,0 +1,91 @@
+package io.antmedia.statistic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends the records to json lines files in a directory, one file for each topic.
+ *
+ * When a file reaches the max file size, it's rotated to topic.jsonl.1, the previous topic.jsonl.1 is
+ * rotated to topic.jsonl.2 and so on. Files older than max rotated files are deleted, so the disk usage
+ * of a topic is bounded by about max file size * (max rotated files + 1)
+ */
+public class FileTelemetrySink implements ITelemetrySink {
+
+	public static final String FILE_EXTENSION = ".jsonl";
+
+	public static final long DEFAULT_MAX_FILE_SIZE = 100L * 1024 * 1024;
+
+	public static final int DEFAULT_MAX_ROTATED_FILES = 5;
+
+	private final File directory;
+
+	private final long maxFileSize;
+
+	private final int maxRotatedFiles;
+
+	public FileTelemetrySink(File directory) {
+		this(directory, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_ROTATED_FILES);
+	}
+
+	/**
+	 * @param directory directory of the files
+	 * @param maxFileSize size in bytes that the file of a topic is rotated after
+	 * @param maxRotatedFiles number of the rotated files kept for a topic. If it's 0, the file is deleted when it's full
+	 */
+	public FileTelemetrySink(File directory, long maxFileSize, int maxRotatedFiles) {
+		this.directory = directory;
+		this.maxFileSize = maxFileSize;
+		this.maxRotatedFiles = maxRotatedFiles;
+	}
+
+	@Override
+	public void write(String topic, List<String> records) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Telemetry directory cannot be created: " + directory.getAbsolutePath());
+		}
+		StringBuilder lines = new StringBuilder();
+		for (String record : records) {
+			lines.append(record).append('\n');
+		}
+		File file = getFile(topic);
+		if (file.length() >= maxFileSize) {
+			rotate(topic);
+		}
+		Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	private void rotate(String topic) throws IOException {
+		//oldest file is deleted. If no rotated file is kept, it's the full file itself
+		Files.deleteIfExists(getRotatedFile(topic, maxRotatedFiles).toPath());
+		for (int i = maxRotatedFiles - 1; i >= 0; i--) {
+			File rotatedFile = getRotatedFile(topic, i);
+			if (rotatedFile.exists()) {
+				Files.move(rotatedFile.toPath(), getRotatedFile(topic, i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	public File getFile(String topic) {
+		return new File(directory, topic + FILE_EXTENSION);
+	}
+
+	/**
+	 * @param index index of the rotated file. 0 is the file that is written
+	 * @return file that keeps the older records of the topic
+	 */
+	public File getRotatedFile(String topic, int index) {
+		return index == 0 ? getFile(topic) : new File(directory, topic + FILE_EXTENSION + "." + index);
+	}
+
+	@Override
+	public void close() {
+		//files are closed after each write
+	}
+}
@@ -0,0 +1,30 @@
+package io.antmedia.statistic;
+
+import java.util.List;
+
+/**
+ * Destination of the stats that are exported by {@link TelemetryExporter}
+ */
+public interface ITelemetrySink {
+
+	/**
+	 * Writes the records of a topic. It's called by the export thread, so it may block
+	 *
+	 * @param topic topic of the records like {@link StatsCollector#INSTANCE_STATS_TOPIC_NAME}
+	 * @param records json records in the order they're exported
+	 */
+	void write(String topic, List<String> records) throws Exception;
+
+	/**
+	 * Flushes and closes the sink
+	 */
+	void close();
+
+	/**
+	 * @return number of the records that failed after {@link #write(String, List)} returned. Sinks that
+	 * report their failures by throwing from {@link #write(String, List)} return 0
+	 */
+	default long getFailedCount() {
+		return 0;
+	}
+}
@@ -0,0 +1,54 @@
+package io.antmedia.statistic;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the records to the kafka topics. Records are not waited, producer batches them and
+ * the failures are counted in the callback
+ */
+public class KafkaTelemetrySink implements ITelemetrySink {
+
+	private static final Logger logger = LoggerFactory.getLogger(KafkaTelemetrySink.class);
+
+	private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);
+
+	private final Producer<Long, String> kafkaProducer;
+
+	private final LongAdder failedCount = new LongAdder();
+
+	public KafkaTelemetrySink(Producer<Long, String> kafkaProducer) {
+		this.kafkaProducer = kafkaProducer;
+	}
+
+	@Override
+	public void write(String topic, List<String> records) {
+		for (String record : records) {
+			kafkaProducer.send(new ProducerRecord<>(topic, record), (metadata, exception) -> {
+				if (exception != null) {
+					failedCount.increment();
+					logger.warn("Stats cannot be sent to kafka topic:{} error:{}", topic, exception.getMessage());
+				}
+			});
+		}
+	}
+
+	@Override
+	public void close() {
+		kafkaProducer.close(CLOSE_TIMEOUT);
+	}
+
+	/**
+	 * @return number of the records that are not accepted by kafka
+	 */
+	@Override
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+}
@@ -0,0 +1,103 @@
+package io.antmedia.statistic;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hashed timing wheel to find the expired sessions without checking all of the sessions in every period.
+ *
+ * Sessions are not moved in the wheel when they're accessed because they're accessed with every segment request.
+ * When the slot of a session comes, its deadline is checked again and it's put to the slot of its current deadline
+ * if it's not expired yet. Sessions whose deadline is later than the span of the wheel are checked once in a round.
+ *
+ * {@link #schedule(Object)} can be called from any thread. {@link #advance(long, ToLongFunction, Consumer)}
+ * should be called by one thread at a time.
+ */
+public class SessionExpiryWheel<T> {
+
+	private final long tickMS;
+
+	private final ArrayDeque<T>[] slots;
+
+	/**
+	 * Scheduled sessions that are not put to the slots yet
+	 */
+	private final Queue<T> incoming = new ConcurrentLinkedQueue<>();
+
+	private long currentTick = -1;
+
+	private int size = 0;
+
+	@SuppressWarnings("unchecked")
+	public SessionExpiryWheel(long tickMS, int slotCount) {
+		this.tickMS = tickMS;
+		this.slots = new ArrayDeque[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			slots[i] = new ArrayDeque<>();
+		}
+	}
+
+	public void schedule(T session) {
+		incoming.offer(session);
+	}
+
+	/**
+	 * Checks the sessions in the slots that are passed since the last call
+	 *
+	 * @param now current time in milliseconds
+	 * @param deadlineFunction returns the time in milliseconds that session expires
+	 * @param expiredListener is called for the expired sessions. They're removed from the wheel
+	 */
+	public void advance(long now, ToLongFunction<T> deadlineFunction, Consumer<T> expiredListener) {
+		long nowTick = now / tickMS;
+		if (currentTick < 0) {
+			currentTick = nowTick - 1;
+		}
+
+		long tickCount = Math.min(nowTick - currentTick, slots.length);
+		for (long i = 1; i <= tickCount; i++) {
+			ArrayDeque<T> slot = slots[(int) Math.floorMod(currentTick + i, (long) slots.length)];
+			//sessions that are put back to the same slot are checked in the next round
+			int count = slot.size();
+			for (int j = 0; j < count; j++) {
+				T session = slot.poll();
+				size--;
+				long deadline = deadlineFunction.applyAsLong(session);
+				if (deadline <= now) {
+					expiredListener.accept(session);
+				}
+				else {
+					place(session, deadline, nowTick);
+				}
+			}
+		}
+		currentTick = Math.max(currentTick, nowTick);
+
+		T session;
+		while ((session = incoming.poll()) != null) {
+			place(session, deadlineFunction.applyAsLong(session), nowTick);
+		}
+	}
+
+	/**
+	 * @return number of the sessions in the wheel
+	 */
+	public int size() {
+		return size + incoming.size();
+	}
+
+	private void place(T session, long deadline, long nowTick) {
+		long tick = deadline / tickMS;
+		if (tick <= nowTick) {
+			tick = nowTick + 1;
+		}
+		else if (tick > nowTick + slots.length) {
+			tick = nowTick + slots.length;
+		}
+		slots[(int) Math.floorMod(tick, (long) slots.length)].add(session);
+		size++;
+	}
+}
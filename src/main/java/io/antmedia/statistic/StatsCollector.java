@@ -1,8 +1,10 @@
 package io.antmedia.statistic;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
@@ -18,7 +20,6 @@ import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -37,7 +38,6 @@ import org.apache.http.impl.client.LaxRedirectStrategy;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.LongSerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.bytedeco.javacpp.Pointer;
@@ -56,6 +56,7 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 
 import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.FFmpegUtilities;
@@ -308,6 +309,19 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 
 	private Producer<Long,String> kafkaProducer = null;
 
+	private TelemetryExporter telemetryExporter = null;
+
+	private int telemetryBufferCapacity = TelemetryExporter.DEFAULT_BUFFER_CAPACITY;
+
+	private int telemetryBatchSize = TelemetryExporter.DEFAULT_BATCH_SIZE;
+
+	private long telemetryLingerMs = TelemetryExporter.DEFAULT_LINGER_MS;
+
+	/**
+	 * Stats are written to the json lines files in this directory if kafka brokers are not set
+	 */
+	private String telemetryDirectory = null;
+
 	private long cpuMeasurementTimerId = -1;
 
 	private long kafkaTimerId = -1;
@@ -407,8 +421,17 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 	}
 
 	private void startKafkaProducer() {
+		ITelemetrySink sink = null;
 		if (kafkaBrokers != null && !kafkaBrokers.isEmpty()) {
-			kafkaProducer = createKafkaProducer();		
+			kafkaProducer = createKafkaProducer();
+			sink = new KafkaTelemetrySink(kafkaProducer);
+		}
+		else if (telemetryDirectory != null && !telemetryDirectory.isEmpty()) {
+			sink = new FileTelemetrySink(new File(telemetryDirectory));
+		}
+
+		if (sink != null) {
+			setTelemetryExporter(new TelemetryExporter(sink, telemetryBufferCapacity, telemetryBatchSize, telemetryLingerMs));
 
 			kafkaTimerId  = getVertx().setPeriodic(staticSendPeriod, l -> {
 				sendInstanceStats(scopes);
@@ -474,24 +497,36 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 	}
 
 	public void sendWebRTCClientStats2Kafka(List<WebRTCClientStats> webRTCClientStatList, String streamId) {
-		JsonObject jsonObject;
 		String dateTime = DateTimeFormatter.ISO_INSTANT.format(Instant.now());
+		StringWriter stringWriter = new StringWriter(256);
 		for (WebRTCClientStats webRTCClientStat : webRTCClientStatList) 
 		{
-			jsonObject = new JsonObject();
-			jsonObject.addProperty(STREAM_ID, streamId);
-			jsonObject.addProperty(WEBRTC_CLIENT_ID, webRTCClientStat.getClientId());
-			jsonObject.addProperty(AUDIO_FRAME_SEND_PERIOD, (int)webRTCClientStat.getAudioFrameSendPeriod());
-			jsonObject.addProperty(VIDEO_FRAME_SEND_PERIOD, (int)webRTCClientStat.getVideoFrameSendPeriod());
-			jsonObject.addProperty(MEASURED_BITRATE, webRTCClientStat.getMeasuredBitrate());
-			jsonObject.addProperty(SEND_BITRATE, webRTCClientStat.getSendBitrate());
-			jsonObject.addProperty(TIME, dateTime);
-			jsonObject.addProperty(HOST_ADDRESS, hostAddress);
-			jsonObject.addProperty(WEBRTC_VIEWER_INFO, webRTCClientStat.getClientInfo());
-			jsonObject.addProperty(IP_ADDRESS, webRTCClientStat.getClientIp());
+			//record is written without building a json tree, there may be thousands of clients
+			stringWriter.getBuffer().setLength(0);
+			try (JsonWriter jsonWriter = new JsonWriter(stringWriter)) {
+				//null fields are omitted like gson does
+				jsonWriter.setSerializeNulls(false);
+				jsonWriter.beginObject();
+				jsonWriter.name(STREAM_ID).value(streamId);
+				jsonWriter.name(WEBRTC_CLIENT_ID).value(webRTCClientStat.getClientId());
+				jsonWriter.name(AUDIO_FRAME_SEND_PERIOD).value((int)webRTCClientStat.getAudioFrameSendPeriod());
+				jsonWriter.name(VIDEO_FRAME_SEND_PERIOD).value((int)webRTCClientStat.getVideoFrameSendPeriod());
+				jsonWriter.name(MEASURED_BITRATE).value(webRTCClientStat.getMeasuredBitrate());
+				jsonWriter.name(SEND_BITRATE).value(webRTCClientStat.getSendBitrate());
+				jsonWriter.name(TIME).value(dateTime);
+				jsonWriter.name(HOST_ADDRESS).value(hostAddress);
+				jsonWriter.name(WEBRTC_VIEWER_INFO).value(webRTCClientStat.getClientInfo());
+				jsonWriter.name(IP_ADDRESS).value(webRTCClientStat.getClientIp());
+				jsonWriter.endObject();
+			}
+			catch (IOException e) {
+				//string writer doesn't throw
+				logger.error(ExceptionUtils.getStackTrace(e));
+				continue;
+			}
 
 			//logstash cannot parse json array so that we send each info separately
-			send2Kafka(jsonObject, WEBRTC_STATS_TOPIC_NAME);
+			exportTelemetry(WEBRTC_STATS_TOPIC_NAME, stringWriter.toString());
 		}
 	}
 
@@ -502,6 +537,7 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 		props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class.getName());
 		props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
 		props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, 10000);
+		props.put(ProducerConfig.LINGER_MS_CONFIG, (int) telemetryLingerMs);
 		return new KafkaProducer<>(props);
 	}
 
@@ -801,17 +837,19 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 	}
 
 	public void send2Kafka(JsonElement jsonElement, String topicName) {
-		ProducerRecord<Long, String> record = new ProducerRecord<>(topicName,
-				gson.toJson(jsonElement));
-		try {
-			kafkaProducer.send(record).get();
-		} 
-		catch (ExecutionException e) {
-			logger.error(ExceptionUtils.getStackTrace(e));
-		} catch (InterruptedException e) {
-			logger.error(ExceptionUtils.getStackTrace(e));
-			Thread.currentThread().interrupt();
+		exportTelemetry(topicName, gson.toJson(jsonElement));
+	}
+
+	/**
+	 * Record is exported asynchronously. It's dropped if the exporter buffer is full
+	 */
+	private void exportTelemetry(String topicName, String value) {
+		TelemetryExporter exporter = telemetryExporter;
+		if (exporter == null) {
+			logger.debug("Telemetry exporter is not initialized. {} record is not exported", topicName);
+			return;
 		}
+		exporter.export(topicName, value);
 	}
 
 	public void addCpuMeasurement(int measurment) {
@@ -1056,6 +1094,41 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 
 	public void setKafkaProducer(Producer<Long, String> kafkaProducer) {
 		this.kafkaProducer = kafkaProducer;
+		setTelemetryExporter(new TelemetryExporter(new KafkaTelemetrySink(kafkaProducer), telemetryBufferCapacity, telemetryBatchSize, telemetryLingerMs));
+	}
+
+	/**
+	 * Sets the exporter of the stats. Previous exporter is closed and the new one is registered to JMX
+	 */
+	public void setTelemetryExporter(TelemetryExporter telemetryExporter) {
+		TelemetryExporter previousExporter = this.telemetryExporter;
+		this.telemetryExporter = telemetryExporter;
+		if (previousExporter != null) {
+			previousExporter.close();
+		}
+		if (telemetryExporter != null) {
+			telemetryExporter.registerMBean();
+		}
+	}
+
+	public TelemetryExporter getTelemetryExporter() {
+		return telemetryExporter;
+	}
+
+	public void setTelemetryBufferCapacity(int telemetryBufferCapacity) {
+		this.telemetryBufferCapacity = telemetryBufferCapacity;
+	}
+
+	public void setTelemetryBatchSize(int telemetryBatchSize) {
+		this.telemetryBatchSize = telemetryBatchSize;
+	}
+
+	public void setTelemetryLingerMs(long telemetryLingerMs) {
+		this.telemetryLingerMs = telemetryLingerMs;
+	}
+
+	public void setTelemetryDirectory(String telemetryDirectory) {
+		this.telemetryDirectory = telemetryDirectory;
 	}
 
 	public String getKafkaBrokers() {
@@ -1103,6 +1176,10 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 				logger.info("Ending analytic session");
 			}
 		}
+		if (telemetryExporter != null) {
+			//buffered stats are exported before closing
+			telemetryExporter.close();
+		}
 		vertx.close();
 		webRTCVertx.close();
 		if(logger != null) {
@@ -0,0 +1,218 @@
+package io.antmedia.statistic;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the stats to a {@link ITelemetrySink} in its own thread, so the stats timer doesn't wait for the sink.
+ *
+ * Records are kept in a bounded buffer and they're dropped if the buffer is full. Export thread waits
+ * up to linger time for a batch to be filled and writes the batch to the sink grouped by topic.
+ * Backlog and the counts are registered to JMX with {@link #registerMBean()}.
+ */
+public class TelemetryExporter implements TelemetryExporterMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(TelemetryExporter.class);
+
+	public static final int DEFAULT_BUFFER_CAPACITY = 100000;
+
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	public static final long DEFAULT_LINGER_MS = 100;
+
+	private static final long CLOSE_TIMEOUT_MS = 5000;
+
+	private static class TelemetryRecord {
+		private final String topic;
+		private final String value;
+
+		TelemetryRecord(String topic, String value) {
+			this.topic = topic;
+			this.value = value;
+		}
+	}
+
+	private final ITelemetrySink sink;
+
+	private final BlockingQueue<TelemetryRecord> buffer;
+
+	private final int batchSize;
+
+	private final long lingerMs;
+
+	private final Thread exportThread;
+
+	private volatile boolean running = true;
+
+	private final LongAdder exportedCount = new LongAdder();
+
+	private final LongAdder droppedCount = new LongAdder();
+
+	private final LongAdder failedCount = new LongAdder();
+
+	private ObjectName objectName;
+
+	public TelemetryExporter(ITelemetrySink sink, int bufferCapacity, int batchSize, long lingerMs) {
+		this.sink = sink;
+		this.buffer = new ArrayBlockingQueue<>(bufferCapacity);
+		this.batchSize = batchSize;
+		this.lingerMs = lingerMs;
+		exportThread = new Thread(this::exportLoop, "telemetry-exporter");
+		exportThread.setDaemon(true);
+		exportThread.start();
+	}
+
+	/**
+	 * @param topic topic of the record
+	 * @param value json of the record
+	 * @return false if the record is dropped because the buffer is full or the exporter is closed
+	 */
+	public boolean export(String topic, String value) {
+		if (!running || !buffer.offer(new TelemetryRecord(topic, value))) {
+			droppedCount.increment();
+			return false;
+		}
+		return true;
+	}
+
+	private void exportLoop() {
+		List<TelemetryRecord> batch = new ArrayList<>(batchSize);
+		while (running || !buffer.isEmpty()) {
+			try {
+				TelemetryRecord record = buffer.poll(200, TimeUnit.MILLISECONDS);
+				if (record == null) {
+					continue;
+				}
+				batch.add(record);
+				fillBatch(batch);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				buffer.drainTo(batch);
+				running = false;
+			}
+			writeBatch(batch);
+			batch.clear();
+		}
+	}
+
+	private void fillBatch(List<TelemetryRecord> batch) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + lingerMs;
+		while (batch.size() < batchSize) {
+			buffer.drainTo(batch, batchSize - batch.size());
+			long remainingMs = deadline - System.currentTimeMillis();
+			if (batch.size() >= batchSize || remainingMs <= 0 || !running) {
+				break;
+			}
+			TelemetryRecord record = buffer.poll(remainingMs, TimeUnit.MILLISECONDS);
+			if (record == null) {
+				break;
+			}
+			batch.add(record);
+		}
+	}
+
+	private void writeBatch(List<TelemetryRecord> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		Map<String, List<String>> topics = new LinkedHashMap<>();
+		for (TelemetryRecord record : batch) {
+			topics.computeIfAbsent(record.topic, topic -> new ArrayList<>()).add(record.value);
+		}
+		for (Map.Entry<String, List<String>> entry : topics.entrySet()) {
+			try {
+				sink.write(entry.getKey(), entry.getValue());
+				exportedCount.add(entry.getValue().size());
+			}
+			catch (Exception e) {
+				failedCount.add(entry.getValue().size());
+				logger.warn("{} records cannot be exported to topic:{} error:{}", entry.getValue().size(), entry.getKey(), e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Exports the buffered records and closes the sink
+	 */
+	public void close() {
+		running = false;
+		try {
+			exportThread.join(CLOSE_TIMEOUT_MS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (exportThread.isAlive()) {
+			exportThread.interrupt();
+		}
+		sink.close();
+		unregisterMBean();
+	}
+
+	public void registerMBean() {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName mbeanName = new ObjectName("io.antmedia:type=TelemetryExporter");
+			if (!mbs.isRegistered(mbeanName)) {
+				mbs.registerMBean(new StandardMBean(this, TelemetryExporterMXBean.class, true), mbeanName);
+				objectName = mbeanName;
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				logger.warn("Error on jmx unregistration", e);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public int getBacklog() {
+		return buffer.size();
+	}
+
+	@Override
+	public long getExportedCount() {
+		return exportedCount.sum();
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	/**
+	 * @return number of the records that the sink failed to write. It includes the records that
+	 * failed after they were written like the ones that are not accepted by kafka
+	 */
+	@Override
+	public long getFailedCount() {
+		return failedCount.sum() + sink.getFailedCount();
+	}
+
+	public ITelemetrySink getSink() {
+		return sink;
+	}
+}
@@ -0,0 +1,30 @@
+package io.antmedia.statistic;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the {@link TelemetryExporter}
+ */
+@MXBean
+public interface TelemetryExporterMXBean {
+
+	/**
+	 * @return number of the records that are waiting to be exported
+	 */
+	public int getBacklog();
+
+	/**
+	 * @return number of the records that are written to the sink
+	 */
+	public long getExportedCount();
+
+	/**
+	 * @return number of the records that are dropped because the buffer is full or the exporter is closed
+	 */
+	public long getDroppedCount();
+
+	/**
+	 * @return number of the records that the sink failed to write
+	 */
+	public long getFailedCount();
+}
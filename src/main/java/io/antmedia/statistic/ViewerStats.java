@@ -1,10 +1,18 @@
 package io.antmedia.statistic;
 
-import java.util.Date;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import io.antmedia.logger.LoggerUtils;
 import org.slf4j.Logger;
@@ -48,11 +56,64 @@ public class ViewerStats {
 	 */
 	private int timePeriodMS = DEFAULT_TIME_PERIOD_FOR_VIEWER_COUNT;
 	
-	Map<String, Map<String, Long>> streamsViewerMap = new ConcurrentHashMap<>();
+	/**
+	 * Period in milliseconds to write the subscriber connection events to the data store
+	 */
+	public static final int SUBSCRIBER_EVENT_FLUSH_PERIOD_MS = 1000;
+
+	private static final int EXPIRY_WHEEL_TICK_MS = 1000;
+
+	private static final int EXPIRY_WHEEL_SLOT_COUNT = 64;
+
+	static class ViewerSession {
+		final String streamId;
+		final String sessionId;
+		volatile long lastAccessTime;
+		volatile String subscriberId;
+
+		ViewerSession(String streamId, String sessionId, long lastAccessTime) {
+			this.streamId = streamId;
+			this.sessionId = sessionId;
+			this.lastAccessTime = lastAccessTime;
+		}
+	}
+
+	static class StreamViewers {
+		final Map<String, ViewerSession> sessions = new ConcurrentHashMap<>();
+		final AtomicInteger increaseCounter = new AtomicInteger();
+	}
+
+	private static class SubscriberEvent {
+		final String streamId;
+		final String subscriberId;
+		final String eventType;
+		final long timestamp;
+
+		SubscriberEvent(String streamId, String subscriberId, String eventType, long timestamp) {
+			this.streamId = streamId;
+			this.subscriberId = subscriberId;
+			this.eventType = eventType;
+			this.timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * Sessions of the streams. A stream entry is only changed in the compute methods of the map
+	 * so that a new session is not added to a stream that's being removed
+	 */
+	Map<String, StreamViewers> streamsViewerMap = new ConcurrentHashMap<>();
 	Map<String, String> sessionId2subscriberId = new ConcurrentHashMap<>();
-	Map<String, Integer> increaseCounterMap = new ConcurrentHashMap<>();
 
-	private Object lock = new Object();
+	private SessionExpiryWheel<ViewerSession> expiryWheel = new SessionExpiryWheel<>(EXPIRY_WHEEL_TICK_MS, EXPIRY_WHEEL_SLOT_COUNT);
+
+	/**
+	 * Subscriber connection events are written to the data store in batches, not in the request threads
+	 */
+	private Queue<SubscriberEvent> subscriberEvents = new ConcurrentLinkedQueue<>();
+
+	private AtomicBoolean subscriberEventFlushScheduled = new AtomicBoolean(false);
+
+	private Object subscriberEventLock = new Object();
 	
 	protected ServerSettings serverSettings;
 
@@ -65,86 +126,59 @@ public class ViewerStats {
 	
 
 	
+	/**
+	 * It's called for every playlist and segment request, so it does not block for the known sessions.
+	 * Data store is not accessed here, subscriber events are written in batches
+	 */
 	public void registerNewViewer(String streamId, String sessionId, String subscriberId) 
 	{
-		//do not block the thread, run in vertx event queue 
-		vertx.runOnContext(h -> {
-			
-			synchronized (lock) {
-				//synchronize with database update calculations, because some odd cases may happen
-				
-				Map<String, Long> viewerMap = streamsViewerMap.get(streamId);
-				if (viewerMap == null) {
-					viewerMap = new ConcurrentHashMap<>();
-				}
-				if (!viewerMap.containsKey(sessionId)) 
-				{
-					int streamIncrementCounter = getIncreaseCounterMap(streamId);
-					streamIncrementCounter++;
-					increaseCounterMap.put(streamId, streamIncrementCounter);
-					PlayEvent playStartedEvent = new PlayEvent();
-					playStartedEvent.setStreamId(streamId);
-					playStartedEvent.setProtocol(type);
-					playStartedEvent.setApp(appName);
-					playStartedEvent.setEvent(PlayEvent.EVENT_PLAY_ENDED);
-					playStartedEvent.setSubscriberId(subscriberId);
-					
-					LoggerUtils.logAnalyticsFromServer(playStartedEvent);
-				}
-				viewerMap.put(sessionId, System.currentTimeMillis());
-				streamsViewerMap.put(streamId, viewerMap);
-				if(subscriberId != null) {
-					
-					Subscriber subscriber = getDataStore().getSubscriber(streamId, subscriberId);
-					if (subscriber == null) {
-						subscriber = new Subscriber();
-						subscriber.setStreamId(streamId);
-						subscriber.setSubscriberId(subscriberId);
-					}
-					subscriber.setRegisteredNodeIp(serverSettings.getHostAddress());
-					
-					//if subscriber is coming from the DB following command just updates the one in the db
-					getDataStore().addSubscriber(streamId, subscriber);
-					
-					
-					// map sessionId to subscriberId
-					sessionId2subscriberId.put(sessionId, subscriberId);
-					// add a connected event to the subscriber
-					ConnectionEvent event = new ConnectionEvent();
-					event.setEventType(ConnectionEvent.CONNECTED_EVENT);
-					Date curDate = new Date();
-					event.setTimestamp(curDate.getTime());
-					event.setEventProtocol(getType());
-
-					//TODO: There is a bug here. It adds +1 for each ts request 
-					if (getDataStore().addSubscriberConnectionEvent(streamId, subscriberId, event)) {
-						logger.info("CONNECTED_EVENT for subscriberId:{} streamId:{}", subscriberId, streamId);
-					}
-				}
+		long now = System.currentTimeMillis();
+		StreamViewers streamViewers = streamsViewerMap.get(streamId);
+		if (streamViewers != null) {
+			ViewerSession session = streamViewers.sessions.get(sessionId);
+			if (session != null && (subscriberId == null || subscriberId.equals(session.subscriberId))) {
+				session.lastAccessTime = now;
+				return;
 			}
-			
+		}
+
+		streamsViewerMap.compute(streamId, (id, viewers) -> {
+			if (viewers == null) {
+				viewers = new StreamViewers();
+			}
+			ViewerSession session = viewers.sessions.get(sessionId);
+			if (session == null) 
+			{
+				session = new ViewerSession(streamId, sessionId, now);
+				viewers.sessions.put(sessionId, session);
+				viewers.increaseCounter.incrementAndGet();
+				expiryWheel.schedule(session);
+				logPlayEvent(PlayEvent.EVENT_PLAY_STARTED, streamId, getType(), subscriberId);
+			}
+			else {
+				session.lastAccessTime = now;
+			}
+
+			if (subscriberId != null && !subscriberId.equals(session.subscriberId)) {
+				// map sessionId to subscriberId
+				sessionId2subscriberId.put(sessionId, subscriberId);
+				addSubscriberEvent(streamId, subscriberId, ConnectionEvent.CONNECTED_EVENT);
+				session.subscriberId = subscriberId;
+			}
+			return viewers;
 		});
-		
 	}
 	
 	public void resetViewerMap(String streamID, String type) {
 		
-		Iterator<Entry<String, Long>> viewerIterator;
-		Map<String, Long> viewerMapEntry = streamsViewerMap.get(streamID);
-		if(viewerMapEntry != null) {
+		StreamViewers streamViewers = streamsViewerMap.remove(streamID);
+		if(streamViewers != null) {
 			// remove all the subscribers associated with the sessions in the stream 
-			viewerIterator = viewerMapEntry.entrySet().iterator();
-			while (viewerIterator.hasNext()) {
-				Entry<String, Long> viewer = viewerIterator.next();
-				
-				String sessionId = viewer.getKey();
-				if(sessionId2subscriberId.containsKey(sessionId)) {
-					sessionId2subscriberId.remove(sessionId);					
-				}
+			for (ViewerSession session : streamViewers.sessions.values()) {
+				sessionId2subscriberId.remove(session.sessionId);
 			}
 			
-			streamsViewerMap.get(streamID).clear();
-			streamsViewerMap.remove(streamID);
+			streamViewers.sessions.clear();
 			logger.info("Reset {} Stream ID: {} removed successfully", type, streamID);			
 		}
 		else {
@@ -153,19 +187,19 @@ public class ViewerStats {
 	}
 	
 	public int getViewerCount(String streamId) {
-		Map<String, Long> viewerMap = streamsViewerMap.get(streamId);
+		StreamViewers streamViewers = streamsViewerMap.get(streamId);
 		int viewerCount = 0;
-		if (viewerMap != null) 
+		if (streamViewers != null) 
 		{
-			viewerCount = viewerMap.size();
+			viewerCount = streamViewers.sessions.size();
 		}
 		return viewerCount;
 	}
 	
 	public int getTotalViewerCount() {
 		int viewerCount = 0;
-		for (Map<String, Long> map : streamsViewerMap.values()) {
-			viewerCount += map.size();
+		for (StreamViewers streamViewers : streamsViewerMap.values()) {
+			viewerCount += streamViewers.sessions.size();
 		}
 		return viewerCount;
 	}
@@ -191,8 +225,8 @@ public class ViewerStats {
 	
 	public int getIncreaseCounterMap(String streamId) 
 	{
-		Integer increaseCounter = increaseCounterMap.get(streamId);
-		return increaseCounter != null ? increaseCounter : 0;
+		StreamViewers streamViewers = streamsViewerMap.get(streamId);
+		return streamViewers != null ? streamViewers.increaseCounter.get() : 0;
 	}
 	
 	public static int getTimeoutMSFromSettings(AppSettings settings, int defaultValue, String type) {
@@ -247,20 +281,20 @@ public class ViewerStats {
 		this.vertx = vertx;
 	}
 	
-	public void updateViewerCountProcess(String type) {
-		
-		Iterator<Entry<String, Map<String, Long>>> streamIterator = streamsViewerMap.entrySet().iterator();
-		
-		Iterator<Entry<String, Long>> viewerIterator;
-		Entry<String, Map<String, Long>> streamViewerEntry;
-		Map<String, Long> viewerMapEntry;
+	/**
+	 * Removes the expired sessions, updates the viewer counts of the streams and writes the subscriber events.
+	 * Only the sessions whose deadline is passed are checked for expiry
+	 */
+	public synchronized void updateViewerCountProcess(String type) {
 		
 		long now = System.currentTimeMillis();
+		Map<String, Integer> decrementCounts = new HashMap<>();
+		
+		expiryWheel.advance(now, session -> session.lastAccessTime + getTimeoutMS(), 
+				session -> expireSession(session, type, decrementCounts));
 		
-		while (streamIterator.hasNext()) 
+		for (Entry<String, StreamViewers> streamViewerEntry : streamsViewerMap.entrySet()) 
 		{
-			streamViewerEntry = streamIterator.next();
-			
 			String streamId = streamViewerEntry.getKey();
 			Broadcast broadcast = getDataStore().get(streamId);
 			
@@ -269,55 +303,13 @@ public class ViewerStats {
 			// Check if it's deleted.
 			// This case for the deleted streams(zombi streams)
 			if(broadcast != null) {
-			
-				int numberOfDecrement = 0;
-				
-				viewerMapEntry = streamViewerEntry.getValue();
-				viewerIterator = viewerMapEntry.entrySet().iterator();
-			
-				while (viewerIterator.hasNext()) 
-				{
-					Entry<String, Long> viewer = viewerIterator.next();
-
-					if (viewer.getValue() < (now - getTimeoutMS())) 
-					{
-						// regard it as not a viewer
-						viewerIterator.remove();
-						numberOfDecrement++;
-
-						String sessionId = viewer.getKey();
-						String subscriberId = sessionId2subscriberId.get(sessionId);
-						// set subscriber status to not connected
-						
-						PlayEvent playEndedEvent = new PlayEvent();
-						playEndedEvent.setEvent(PlayEvent.EVENT_PLAY_ENDED);
-						playEndedEvent.setStreamId(streamId);
-						playEndedEvent.setProtocol(type);
-						playEndedEvent.setApp(appName);
-						playEndedEvent.setSubscriberId(subscriberId);
-						
-						LoggerUtils.logAnalyticsFromServer(playEndedEvent);
-
-						if(subscriberId != null) {
-							// add a disconnected event to the subscriber
-							ConnectionEvent event = new ConnectionEvent();
-							event.setEventType(ConnectionEvent.DISCONNECTED_EVENT);
-							Date curDate = new Date();
-							event.setTimestamp(curDate.getTime());
-							event.setEventProtocol(getType());
-							if (getDataStore().addSubscriberConnectionEvent(streamId, subscriberId, event)) {
-								logger.info("DISCONNECTED_EVENT for subscriberId:{} and streamId:{}", subscriberId, streamId);
-							}
-						}
-					}
-
-				}
 				
 				isBroadcasting = isStreaming(broadcast);
 			
-				numberOfDecrement = -1 * numberOfDecrement;
+				int numberOfDecrement = -1 * decrementCounts.getOrDefault(streamId, 0);
 
-				int numberOfIncrement = getIncreaseCounterMap(streamId);
+				AtomicInteger increaseCounter = streamViewerEntry.getValue().increaseCounter;
+				int numberOfIncrement = increaseCounter.get();
 				if((numberOfIncrement != 0 || numberOfDecrement != 0) && isBroadcasting) {
 					
 					int diffCount = numberOfIncrement + numberOfDecrement;
@@ -325,41 +317,148 @@ public class ViewerStats {
 					logger.info("Update {} viewer in stream ID:{} increment count:{} decrement count:{} diff:{}", type, streamId, numberOfIncrement, numberOfDecrement, diffCount);
 					
 					if(type.equals(ViewerStats.HLS_TYPE)) {
-						getDataStore().updateHLSViewerCount(streamViewerEntry.getKey(), diffCount);
+						getDataStore().updateHLSViewerCount(streamId, diffCount);
 					}
 					else {
-						getDataStore().updateDASHViewerCount(streamViewerEntry.getKey(), diffCount);
+						getDataStore().updateDASHViewerCount(streamId, diffCount);
 					}
 
-					increaseCounterMap.put(streamId, 0);
+					//new viewers may be registered in the meantime
+					increaseCounter.addAndGet(-numberOfIncrement);
 				}
 			}
 
 			if (!isBroadcasting) {
 				// set all connection status information about the subscribers of the stream to false
-				viewerMapEntry = streamViewerEntry.getValue();
-				viewerIterator = viewerMapEntry.entrySet().iterator();
-				while (viewerIterator.hasNext()) {
-					Entry<String, Long> viewer = viewerIterator.next();
-					
-					String sessionId = viewer.getKey();
-					String subscriberId = sessionId2subscriberId.get(sessionId);
+				streamsViewerMap.computeIfPresent(streamId, (id, viewers) -> {
+					for (ViewerSession session : viewers.sessions.values()) {
+						String subscriberId = session.subscriberId;
+						if (subscriberId != null) {
+							sessionId2subscriberId.remove(session.sessionId, subscriberId);
+							addSubscriberEvent(streamId, subscriberId, ConnectionEvent.DISCONNECTED_EVENT);
+						}
+					}
+					//sessions in the expiry wheel are skipped because they're not in the map anymore
+					return null;
+				});
+			}
+		}
+		
+		flushSubscriberEvents();
+	}
+
+	private void expireSession(ViewerSession session, String type, Map<String, Integer> decrementCounts) {
+		streamsViewerMap.computeIfPresent(session.streamId, (streamId, viewers) -> {
+			// regard it as not a viewer
+			if (viewers.sessions.remove(session.sessionId, session)) {
+				decrementCounts.merge(streamId, 1, Integer::sum);
+				
+				String subscriberId = session.subscriberId;
+				logPlayEvent(PlayEvent.EVENT_PLAY_ENDED, streamId, type, subscriberId);
+				
+				if (subscriberId != null) {
 					// set subscriber status to not connected
-					if(subscriberId != null) {
-						// add a disconnected event to the subscriber
-						ConnectionEvent event = new ConnectionEvent();
-						event.setEventType(ConnectionEvent.DISCONNECTED_EVENT);
-						Date curDate = new Date();
-						event.setTimestamp(curDate.getTime());
-						getDataStore().addSubscriberConnectionEvent(streamId, subscriberId, event);
+					sessionId2subscriberId.remove(session.sessionId, subscriberId);
+					addSubscriberEvent(streamId, subscriberId, ConnectionEvent.DISCONNECTED_EVENT);
+				}
+			}
+			return viewers;
+		});
+	}
+
+	private void logPlayEvent(String eventType, String streamId, String protocol, String subscriberId) {
+		PlayEvent playEvent = new PlayEvent();
+		playEvent.setEvent(eventType);
+		playEvent.setStreamId(streamId);
+		playEvent.setProtocol(protocol);
+		playEvent.setApp(appName);
+		playEvent.setSubscriberId(subscriberId);
+		
+		LoggerUtils.logAnalyticsFromServer(playEvent);
+	}
+
+	/**
+	 * Queues the event and schedules a flush if there is no one scheduled
+	 */
+	private void addSubscriberEvent(String streamId, String subscriberId, String eventType) {
+		subscriberEvents.offer(new SubscriberEvent(streamId, subscriberId, eventType, System.currentTimeMillis()));
+		
+		if (vertx != null && subscriberEventFlushScheduled.compareAndSet(false, true)) {
+			vertx.setTimer(SUBSCRIBER_EVENT_FLUSH_PERIOD_MS, id -> 
+				vertx.executeBlocking(() -> {
+					subscriberEventFlushScheduled.set(false);
+					flushSubscriberEvents();
+					return null;
+				}, false)
+			);
+		}
+	}
+
+	/**
+	 * Writes the queued subscriber events to the data store. Events are grouped by the subscriber, so each subscriber is
+	 * read and written once in a flush and its events are applied in the order they're added
+	 */
+	public void flushSubscriberEvents() {
+		synchronized (subscriberEventLock) {
+			Map<String, Map<String, List<SubscriberEvent>>> eventsOfStreams = new LinkedHashMap<>();
+			SubscriberEvent subscriberEvent;
+			while ((subscriberEvent = subscriberEvents.poll()) != null) {
+				eventsOfStreams.computeIfAbsent(subscriberEvent.streamId, id -> new LinkedHashMap<>())
+						.computeIfAbsent(subscriberEvent.subscriberId, id -> new ArrayList<>())
+						.add(subscriberEvent);
+			}
+
+			for (Entry<String, Map<String, List<SubscriberEvent>>> streamEntry : eventsOfStreams.entrySet()) {
+				String streamId = streamEntry.getKey();
+				for (Entry<String, List<SubscriberEvent>> subscriberEntry : streamEntry.getValue().entrySet()) {
+					try {
+						writeSubscriberEvents(streamId, subscriberEntry.getKey(), subscriberEntry.getValue());
+					}
+					catch (Exception e) {
+						logger.error("Subscriber events cannot be written for subscriberId:{} streamId:{} {}", subscriberEntry.getKey(), 
+								streamId, ExceptionUtils.getStackTrace(e));
 					}
 				}
-				
-				streamIterator.remove();
-				increaseCounterMap.remove(streamId);
 			}
 		}
-		
+	}
+
+	private void writeSubscriberEvents(String streamId, String subscriberId, List<SubscriberEvent> eventsOfSubscriber) {
+		int firstConnectedIndex = -1;
+		for (int i = 0; i < eventsOfSubscriber.size(); i++) {
+			if (ConnectionEvent.CONNECTED_EVENT.equals(eventsOfSubscriber.get(i).eventType)) {
+				firstConnectedIndex = i;
+				break;
+			}
+		}
+
+		Subscriber subscriber = getDataStore().getSubscriber(streamId, subscriberId);
+		if (subscriber == null) {
+			if (firstConnectedIndex == -1) {
+				//there is nothing to update for a subscriber that's not in the data store
+				return;
+			}
+			//subscriber is created with its first connection, events before it are not written
+			eventsOfSubscriber = eventsOfSubscriber.subList(firstConnectedIndex, eventsOfSubscriber.size());
+			subscriber = new Subscriber();
+			subscriber.setStreamId(streamId);
+			subscriber.setSubscriberId(subscriberId);
+		}
+		if (firstConnectedIndex != -1) {
+			subscriber.setRegisteredNodeIp(serverSettings.getHostAddress());
+		}
+
+		List<ConnectionEvent> events = new ArrayList<>(eventsOfSubscriber.size());
+		for (SubscriberEvent subscriberEvent : eventsOfSubscriber) {
+			ConnectionEvent event = new ConnectionEvent();
+			event.setEventType(subscriberEvent.eventType);
+			event.setTimestamp(subscriberEvent.timestamp);
+			event.setEventProtocol(getType());
+			events.add(event);
+		}
+
+		getDataStore().addSubscriberConnectionEvents(streamId, subscriber, events);
+		logger.info("{} connection events are written for subscriberId:{} streamId:{}", events.size(), subscriberId, streamId);
 	}
 	
 	public boolean isStreaming(Broadcast broadcast) {
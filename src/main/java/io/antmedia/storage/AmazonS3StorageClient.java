@@ -1,5 +1,6 @@
 package io.antmedia.storage;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -137,29 +138,7 @@ public class AmazonS3StorageClient extends StorageClient {
 		if (isEnabled()) 
 		{
 			TransferManager tm = getTransferManager();
-			PutObjectRequest putRequest;
-			ObjectMetadata metadata = new ObjectMetadata();
-			
-			if (getCacheControl() != null) 
-			{
-				metadata.setCacheControl(getCacheControl());
-			}
-		
-			
-			if (file != null) 
-			{
-				putRequest = new PutObjectRequest(getStorageName(), key, file).withMetadata(metadata);
-			}
-			else 
-			{
-				putRequest = new PutObjectRequest(getStorageName(), key, inputStream, metadata);
-			}
-
-			putRequest.setCannedAcl(getCannedAcl());
-
-			if(checkStorageClass(getStorageClass())){
-				putRequest.withStorageClass(getStorageClass().toUpperCase());
-			}
+			PutObjectRequest putRequest = createPutRequest(key, file, inputStream, new ObjectMetadata());
 
 			Upload upload = tm.upload(putRequest);
 			/* 
@@ -171,15 +150,7 @@ public class AmazonS3StorageClient extends StorageClient {
 			listenUploadProgress(key, file, deleteLocalFile, upload);
 			
 			if (waitForCompletion) {
-				try {
-					upload.waitForCompletion();
-				} catch (AmazonClientException e) {
-					logger.error(ExceptionUtils.getStackTrace(e));
-				}
-				catch (InterruptedException e) {
-					logger.error(ExceptionUtils.getStackTrace(e));
-					Thread.currentThread().interrupt();
-				}
+				waitForCompletion(upload);
 			}
 		}
 		else {
@@ -187,6 +158,73 @@ public class AmazonS3StorageClient extends StorageClient {
 		}
 	}
 
+	/**
+	 * Files bigger than the multipart upload threshold are uploaded in parts in parallel by the TransferManager
+	 */
+	@Override
+	public boolean saveAndWait(String key, File file) {
+		if (isEnabled()) 
+		{
+			Upload upload = getTransferManager().upload(createPutRequest(key, file, null, new ObjectMetadata()));
+			return waitForCompletion(upload);
+		}
+		logger.debug("S3 is not enabled to save the file: {}", key);
+		return false;
+	}
+
+	@Override
+	public boolean saveAndWait(String key, byte[] data) {
+		if (isEnabled()) 
+		{
+			ObjectMetadata metadata = new ObjectMetadata();
+			//content length lets the client stream the data instead of buffering it again
+			metadata.setContentLength(data.length);
+			Upload upload = getTransferManager().upload(createPutRequest(key, null, new ByteArrayInputStream(data), metadata));
+			return waitForCompletion(upload);
+		}
+		logger.debug("S3 is not enabled to save the data: {}", key);
+		return false;
+	}
+
+	private PutObjectRequest createPutRequest(String key, File file, InputStream inputStream, ObjectMetadata metadata) 
+	{
+		PutObjectRequest putRequest;
+		if (getCacheControl() != null) 
+		{
+			metadata.setCacheControl(getCacheControl());
+		}
+
+		if (file != null) 
+		{
+			putRequest = new PutObjectRequest(getStorageName(), key, file).withMetadata(metadata);
+		}
+		else 
+		{
+			putRequest = new PutObjectRequest(getStorageName(), key, inputStream, metadata);
+		}
+
+		putRequest.setCannedAcl(getCannedAcl());
+
+		if(checkStorageClass(getStorageClass())){
+			putRequest.withStorageClass(getStorageClass().toUpperCase());
+		}
+		return putRequest;
+	}
+
+	private boolean waitForCompletion(Upload upload) {
+		try {
+			upload.waitForCompletion();
+			return true;
+		} catch (AmazonClientException e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		catch (InterruptedException e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
 	private void listenUploadProgress(String key, File file, boolean deleteLocalFile, Upload upload) {
 		upload.addProgressListener((ProgressListener)event -> 
 		{
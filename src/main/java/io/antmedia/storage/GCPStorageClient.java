@@ -85,6 +85,45 @@ public class GCPStorageClient extends StorageClient {
 		}
 	}
 
+	/**
+	 * File is streamed to the storage with a resumable upload instead of reading it to the memory
+	 */
+	@Override
+	public boolean saveAndWait(String key, File file) {
+		if (isEnabled())
+		{
+			BlobInfo blobInfo = BlobInfo.newBuilder(getStorageName(), key).build();
+			try {
+				getGCPStorage().createFrom(blobInfo, file.toPath());
+				return true;
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+			}
+		}
+		else {
+			logger.debug("Storage is not enabled to save the file: {}", key);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean saveAndWait(String key, byte[] data) {
+		if (isEnabled())
+		{
+			BlobInfo blobInfo = BlobInfo.newBuilder(getStorageName(), key).build();
+			try {
+				getGCPStorage().create(blobInfo, data);
+				return true;
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+			}
+		}
+		else {
+			logger.debug("Storage is not enabled to save the data: {}", key);
+		}
+		return false;
+	}
+
 	public void deleteFile(File file) {
 		try {
 			Files.delete(file.toPath());
@@ -0,0 +1,315 @@
+package io.antmedia.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads the HLS files of the live streams to a {@link StorageClient} while the streams are running.
+ *
+ * Segments are uploaded in parallel by a bounded number of threads as soon as they are queued. A playlist is uploaded
+ * after the segments of the same stream that are queued before it, so that the playlist in the storage never refers to
+ * a segment that is not uploaded yet. Playlists of a stream are uploaded in order and if a newer version of a playlist is
+ * queued before the older one starts, the older one is skipped.
+ *
+ * Number of pending segments of a stream is limited. If the storage falls behind, {@link #uploadSegment(String, String, File)}
+ * rejects the segment and the muxer should try again later instead of queuing more. The muxer keeps the local files
+ * until they're uploaded, so a rejected segment is not lost.
+ *
+ * Segments that leave the playlist are deleted with {@link #deleteSegment(String, String, File, boolean)} after the playlist
+ * that does not refer to them is uploaded.
+ */
+public class SegmentUploadPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(SegmentUploadPipeline.class);
+
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	public static final int DEFAULT_MAX_PENDING_UPLOADS = 8;
+
+	/**
+	 * Time to wait for the running uploads when the pipeline is shut down
+	 */
+	public static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	private final StorageClient storageClient;
+
+	private final int maxPendingUploads;
+
+	private final ExecutorService executor;
+
+	private final Map<String, StreamUploads> streams = new ConcurrentHashMap<>();
+
+	private final LongAdder uploadedCount = new LongAdder();
+
+	private final LongAdder uploadedBytes = new LongAdder();
+
+	private final LongAdder failedCount = new LongAdder();
+
+	private final LongAdder rejectedCount = new LongAdder();
+
+	private final LongAdder skippedPlaylistCount = new LongAdder();
+
+	private final LongAdder deletedCount = new LongAdder();
+
+	/**
+	 * Uploads of a stream. It's used as the lock for queuing uploads of the stream
+	 */
+	private static class StreamUploads {
+		final Set<CompletableFuture<Boolean>> pendingSegments = ConcurrentHashMap.newKeySet();
+
+		/**
+		 * Last queued version of each playlist
+		 */
+		final Map<String, Long> playlistVersions = new HashMap<>();
+
+		CompletableFuture<Boolean> lastPlaylist = CompletableFuture.completedFuture(true);
+
+		synchronized boolean isLatest(String key, long version) {
+			return playlistVersions.get(key) == version;
+		}
+
+		synchronized CompletableFuture<Void> whenIdle() {
+			CompletableFuture<?>[] futures = pendingSegments.toArray(new CompletableFuture<?>[pendingSegments.size() + 1]);
+			futures[futures.length - 1] = lastPlaylist;
+			return CompletableFuture.allOf(futures);
+		}
+	}
+
+	/**
+	 * @param storageClient to upload the files
+	 * @param parallelism number of the upload threads
+	 * @param maxPendingUploads number of segments of a stream that can wait to be uploaded
+	 */
+	public SegmentUploadPipeline(StorageClient storageClient, int parallelism, int maxPendingUploads) {
+		this.storageClient = storageClient;
+		this.maxPendingUploads = maxPendingUploads;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+			Thread thread = new Thread(r, "segment-upload-" + threadCounter.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queue a closed segment to upload. Local file is not deleted after it's uploaded
+	 *
+	 * @param streamId owner of the segment. Playlists of the same stream are uploaded after it
+	 * @param key of the segment in the storage
+	 * @param file segment file
+	 * @return future that is completed with true if the segment is uploaded, or null if there are too many pending
+	 * segments for the stream
+	 */
+	public CompletableFuture<Boolean> uploadSegment(String streamId, String key, File file) {
+		StreamUploads uploads = streams.computeIfAbsent(streamId, id -> new StreamUploads());
+		synchronized (uploads) {
+			if (uploads.pendingSegments.size() >= maxPendingUploads || executor.isShutdown()) {
+				rejectedCount.increment();
+				return null;
+			}
+			CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> upload(key, file), executor);
+			uploads.pendingSegments.add(future);
+			future.whenComplete((result, t) -> uploads.pendingSegments.remove(future));
+			return future;
+		}
+	}
+
+	/**
+	 * Queue a playlist to upload after the segments of the stream that are queued before it
+	 *
+	 * @param streamId owner of the playlist
+	 * @param key of the playlist in the storage
+	 * @param content of the playlist at the time it's queued
+	 * @return future that is completed with true if the playlist is uploaded or skipped for a newer version
+	 */
+	public CompletableFuture<Boolean> uploadPlaylist(String streamId, String key, byte[] content) {
+		StreamUploads uploads = streams.computeIfAbsent(streamId, id -> new StreamUploads());
+		synchronized (uploads) {
+			long version = uploads.playlistVersions.merge(key, 1L, Long::sum);
+			CompletableFuture<Boolean> future = uploads.whenIdle()
+					.handle((result, t) -> null)
+					.thenApplyAsync(v -> {
+						if (!uploads.isLatest(key, version)) {
+							skippedPlaylistCount.increment();
+							return true;
+						}
+						return upload(key, content);
+					}, executor);
+			uploads.lastPlaylist = future;
+			return future;
+		}
+	}
+
+	/**
+	 * Delete a segment that is not in the playlist anymore. It's deleted after the last queued playlist of the stream is uploaded
+	 * so that the playlist in the storage does not refer to a deleted segment
+	 *
+	 * @param streamId owner of the segment
+	 * @param key of the segment in the storage
+	 * @param file local segment file
+	 * @param deleteFromStorage true if the segment is queued to upload before
+	 * @return future that is completed when the segment is deleted
+	 */
+	public CompletableFuture<Void> deleteSegment(String streamId, String key, File file, boolean deleteFromStorage) {
+		StreamUploads uploads = streams.get(streamId);
+		CompletableFuture<Boolean> lastPlaylist = CompletableFuture.completedFuture(true);
+		if (uploads != null) {
+			synchronized (uploads) {
+				lastPlaylist = uploads.lastPlaylist;
+			}
+		}
+		return lastPlaylist.handle((result, t) -> null)
+				.thenRunAsync(() -> delete(key, file, deleteFromStorage), executor)
+				.exceptionally(t -> {
+					//executor is shut down. Local file is deleted anyway
+					delete(key, file, false);
+					return null;
+				});
+	}
+
+	private void delete(String key, File file, boolean deleteFromStorage) {
+		try {
+			if (deleteFromStorage) {
+				storageClient.delete(key);
+				deletedCount.increment();
+			}
+		}
+		catch (Exception e) {
+			logger.error("Cannot delete key:{} from the storage error:{}", key, ExceptionUtils.getStackTrace(e));
+		}
+		try {
+			Files.deleteIfExists(file.toPath());
+		}
+		catch (IOException e) {
+			logger.error("Cannot delete {} error:{}", file, e.getMessage());
+		}
+	}
+
+	/**
+	 * @return future that is completed when the files of the stream queued so far are uploaded.
+	 * Stream is removed from the pipeline if nothing else is queued until then
+	 */
+	public CompletableFuture<Void> finish(String streamId) {
+		StreamUploads uploads = streams.get(streamId);
+		if (uploads == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return uploads.whenIdle()
+				.handle((result, t) -> null)
+				.thenRun(() -> {
+					synchronized (uploads) {
+						if (uploads.pendingSegments.isEmpty() && uploads.lastPlaylist.isDone()) {
+							streams.remove(streamId, uploads);
+						}
+					}
+				});
+	}
+
+	private boolean upload(String key, File file) {
+		try {
+			long length = file.length();
+			if (storageClient.saveAndWait(key, file)) {
+				uploadedCount.increment();
+				uploadedBytes.add(length);
+				return true;
+			}
+		}
+		catch (Exception e) {
+			logger.error("Cannot upload {} with key:{} error:{}", file, key, ExceptionUtils.getStackTrace(e));
+		}
+		failedCount.increment();
+		return false;
+	}
+
+	private boolean upload(String key, byte[] content) {
+		try {
+			if (storageClient.saveAndWait(key, content)) {
+				uploadedCount.increment();
+				uploadedBytes.add(content.length);
+				return true;
+			}
+		}
+		catch (Exception e) {
+			logger.error("Cannot upload playlist with key:{} error:{}", key, ExceptionUtils.getStackTrace(e));
+		}
+		failedCount.increment();
+		return false;
+	}
+
+	/**
+	 * @return number of segments of the stream that are queued or being uploaded
+	 */
+	public int getPendingSegmentCount(String streamId) {
+		StreamUploads uploads = streams.get(streamId);
+		return uploads != null ? uploads.pendingSegments.size() : 0;
+	}
+
+	public int getStreamCount() {
+		return streams.size();
+	}
+
+	public long getUploadedCount() {
+		return uploadedCount.sum();
+	}
+
+	public long getUploadedBytes() {
+		return uploadedBytes.sum();
+	}
+
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	public long getSkippedPlaylistCount() {
+		return skippedPlaylistCount.sum();
+	}
+
+	public int getMaxPendingUploads() {
+		return maxPendingUploads;
+	}
+
+	/**
+	 * @return number of segments that are deleted from the storage after they leave the playlist
+	 */
+	public long getDeletedCount() {
+		return deletedCount.sum();
+	}
+
+	/**
+	 * Stops accepting new uploads and waits for the queued uploads until {@link #SHUTDOWN_TIMEOUT_MS}
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				logger.warn("Segment uploads are not completed in {}ms. Remaining uploads are cancelled", SHUTDOWN_TIMEOUT_MS);
+				executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		streams.clear();
+	}
+}
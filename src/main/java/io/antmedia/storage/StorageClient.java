@@ -1,7 +1,13 @@
 package io.antmedia.storage;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.amazonaws.event.ProgressListener;
 
@@ -10,6 +16,8 @@ public abstract class StorageClient {
 	
 	public static final String BEAN_NAME = "app.storageClient";
 
+	private static final Logger logger = LoggerFactory.getLogger(StorageClient.class);
+
 	/**
 	 * Endpoint for the storage, it's optional and it's used in some platforms like Digital Ocean, Wasabi, OVH
 	 */
@@ -55,6 +63,18 @@ public abstract class StorageClient {
 	
 	protected ProgressListener progressListener;
 
+	/**
+	 * Number of threads that upload the HLS files of the live streams
+	 */
+	private int segmentUploadParallelism = SegmentUploadPipeline.DEFAULT_PARALLELISM;
+
+	/**
+	 * Number of segments of a stream that can wait to be uploaded before the muxer is asked to slow down
+	 */
+	private int maxPendingSegmentUploads = SegmentUploadPipeline.DEFAULT_MAX_PENDING_UPLOADS;
+
+	private SegmentUploadPipeline segmentUploadPipeline;
+
 	
 	/**
 	 * Delete file from storage
@@ -96,6 +116,61 @@ public abstract class StorageClient {
 		save(key, file, true);
 	}
 
+	/**
+	 * Save file to storage and return after it's uploaded. Local file is not deleted.
+	 * Default implementation streams the file through {@link #save(String, InputStream, boolean)}
+	 * 
+	 * @param key
+	 * @param file
+	 * @return true if the file is uploaded
+	 */
+	public boolean saveAndWait(String key, File file) {
+		try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+			save(key, inputStream, true);
+			return true;
+		}
+		catch (IOException e) {
+			logger.error("Cannot read {} to save with key:{} error:{}", file, key, e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Save data to storage and return after it's uploaded
+	 * 
+	 * @param key
+	 * @param data
+	 * @return true if the data is uploaded
+	 */
+	public boolean saveAndWait(String key, byte[] data) {
+		save(key, new ByteArrayInputStream(data), true);
+		return true;
+	}
+
+	/**
+	 * @return the pipeline that uploads the HLS files of the live streams to this storage
+	 */
+	public synchronized SegmentUploadPipeline getSegmentUploadPipeline() {
+		if (segmentUploadPipeline == null) {
+			segmentUploadPipeline = new SegmentUploadPipeline(this, segmentUploadParallelism, maxPendingSegmentUploads);
+		}
+		return segmentUploadPipeline;
+	}
+
+	/**
+	 * Shuts down the segment upload pipeline if it's created. A new one is created if it's requested again
+	 */
+	public void shutdownSegmentUploadPipeline() {
+		SegmentUploadPipeline pipeline;
+		synchronized (this) {
+			pipeline = segmentUploadPipeline;
+			segmentUploadPipeline = null;
+		}
+		if (pipeline != null) {
+			pipeline.shutdown();
+		}
+	}
+
 	/**
 	 * Check if the key exists in the bucket
 	 * 
@@ -180,4 +255,20 @@ public abstract class StorageClient {
 	public void setCacheControl(String cacheControl) {
 		this.cacheControl = cacheControl;
 	}
+
+	public int getSegmentUploadParallelism() {
+		return segmentUploadParallelism;
+	}
+
+	public void setSegmentUploadParallelism(int segmentUploadParallelism) {
+		this.segmentUploadParallelism = segmentUploadParallelism;
+	}
+
+	public int getMaxPendingSegmentUploads() {
+		return maxPendingSegmentUploads;
+	}
+
+	public void setMaxPendingSegmentUploads(int maxPendingSegmentUploads) {
+		this.maxPendingSegmentUploads = maxPendingSegmentUploads;
+	}
 }
@@ -0,0 +1,121 @@
+package io.antmedia.streamsource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Paces the packets of VoD and playlist sources so that they're sent at their timestamps instead of as fast as
+ * they're read. The reading thread is parked until the release time of the packet, it wakes up once for each packet
+ * instead of polling the clock.
+ *
+ * First {@link #getBurstMs()} milliseconds of the stream are released without waiting to decrease the time to first frame.
+ *
+ * It's used by one reader thread. Stats can be read from any thread.
+ */
+public class PacketPacer {
+
+	/**
+	 * Max duration to park at a time. Stop condition is checked after each park
+	 */
+	private static final long MAX_PARK_DURATION_MS = 100;
+
+	/**
+	 * Packets that are read later than this value after their release time are counted as late
+	 */
+	private static final long LATE_PACKET_THRESHOLD_MS = 100;
+
+	private final long burstMs;
+
+	private long startTimeMs = -1;
+
+	private long firstDtsMs;
+
+	private volatile long lastPacingErrorMs;
+
+	private volatile long maxPacingErrorMs;
+
+	private volatile long latePacketCount;
+
+	public PacketPacer(long burstMs) {
+		this.burstMs = Math.max(0, burstMs);
+	}
+
+	/**
+	 * Resets the timeline. Next packet is the first packet and it's released immediately.
+	 * It should be called when the stream is seeked or restarted
+	 */
+	public void reset() {
+		startTimeMs = -1;
+	}
+
+	/**
+	 * @param dtsMs decoding timestamp of the packet in milliseconds
+	 * @return wall clock time in milliseconds that packet should be released
+	 */
+	public long getReleaseTimeMs(long dtsMs) {
+		if (startTimeMs < 0) {
+			startTimeMs = System.currentTimeMillis();
+			firstDtsMs = Math.max(dtsMs, 0);
+		}
+		return startTimeMs - burstMs + (dtsMs - firstDtsMs);
+	}
+
+	/**
+	 * Waits until the release time of the packet
+	 *
+	 * @param dtsMs decoding timestamp of the packet in milliseconds
+	 * @param stopCondition stops waiting if it returns true
+	 * @return true if the release time is reached, false if the waiting is stopped
+	 */
+	public boolean waitUntilReleaseTime(long dtsMs, BooleanSupplier stopCondition) {
+		long releaseTimeMs = getReleaseTimeMs(dtsMs);
+		long now = System.currentTimeMillis();
+		if (releaseTimeMs <= now) {
+			if (now - releaseTimeMs > burstMs + LATE_PACKET_THRESHOLD_MS) {
+				//reading the source is slower than its timestamps
+				latePacketCount++;
+			}
+			return true;
+		}
+
+		while (now < releaseTimeMs) {
+			if (stopCondition.getAsBoolean()) {
+				return false;
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(releaseTimeMs - now, MAX_PARK_DURATION_MS)));
+			if (Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+			now = System.currentTimeMillis();
+		}
+
+		lastPacingErrorMs = now - releaseTimeMs;
+		if (lastPacingErrorMs > maxPacingErrorMs) {
+			maxPacingErrorMs = lastPacingErrorMs;
+		}
+		return true;
+	}
+
+	public long getBurstMs() {
+		return burstMs;
+	}
+
+	/**
+	 * @return how late the last waited packet is released than its release time in milliseconds
+	 */
+	public long getLastPacingErrorMs() {
+		return lastPacingErrorMs;
+	}
+
+	public long getMaxPacingErrorMs() {
+		return maxPacingErrorMs;
+	}
+
+	/**
+	 * @return number of the packets that are read after their release time
+	 */
+	public long getLatePacketCount() {
+		return latePacketCount;
+	}
+}
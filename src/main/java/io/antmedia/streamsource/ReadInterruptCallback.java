@@ -0,0 +1,66 @@
+package io.antmedia.streamsource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVIOInterruptCB;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+
+/**
+ * AVIO interrupt callback of the stream sources. FFmpeg calls it while it's blocked in the input operations
+ * like avformat_open_input and av_read_frame and aborts the operation if it returns non-zero.
+ *
+ * There is one native callback for all of the sources because the number of native callback instances is limited.
+ * The sources are found with the opaque pointer that is registered for each of them.
+ */
+public class ReadInterruptCallback extends AVIOInterruptCB.Callback_Pointer {
+
+	private static final Map<Long, BooleanSupplier> interruptConditions = new ConcurrentHashMap<>();
+
+	private static ReadInterruptCallback instance;
+
+	private ReadInterruptCallback() {
+		super();
+	}
+
+	public static synchronized ReadInterruptCallback getInstance() {
+		if (instance == null) {
+			instance = new ReadInterruptCallback();
+		}
+		return instance;
+	}
+
+	/**
+	 * Sets the interrupt callback of the context
+	 *
+	 * @param inputFormatContext allocated input context
+	 * @param interruptCondition returns true if the blocking operation should be aborted
+	 * @return opaque pointer of the registration. It should be unregistered after the context is closed
+	 */
+	public static Pointer register(AVFormatContext inputFormatContext, BooleanSupplier interruptCondition) {
+		Pointer opaque = new BytePointer(1);
+		interruptConditions.put(opaque.address(), interruptCondition);
+		inputFormatContext.interrupt_callback().callback(getInstance()).opaque(opaque);
+		return opaque;
+	}
+
+	public static void unregister(Pointer opaque) {
+		if (opaque != null) {
+			interruptConditions.remove(opaque.address());
+			opaque.close();
+		}
+	}
+
+	public static int getRegisteredCount() {
+		return interruptConditions.size();
+	}
+
+	@Override
+	public int call(Pointer opaque) {
+		BooleanSupplier interruptCondition = opaque != null ? interruptConditions.get(opaque.address()) : null;
+		return interruptCondition != null && interruptCondition.getAsBoolean() ? 1 : 0;
+	}
+}
@@ -17,7 +17,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -27,6 +29,7 @@ import org.bytedeco.ffmpeg.avformat.AVStream;
 import org.bytedeco.ffmpeg.avutil.AVDictionary;
 import org.bytedeco.ffmpeg.avutil.AVRational;
 import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacpp.Pointer;
 import org.red5.server.api.scope.IScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +61,25 @@ public class StreamFetcher {
 	private AtomicBoolean threadActive = new AtomicBoolean(false);
 	private Result cameraError = new Result(false,"");
 	private static final int PACKET_RECEIVED_INTERVAL_TIMEOUT = 3000;
+
+	/**
+	 * Period to check if the previous worker thread is finished before starting the new one
+	 */
+	private static final int WORKER_THREAD_CHECK_PERIOD_MS = 100;
+
+	/**
+	 * First retry period after the stream is disconnected. It's doubled for each consecutive failure
+	 * up to {@link #STREAM_FETCH_MAX_RE_TRY_PERIOD_MS}
+	 */
+	private static final long STREAM_FETCH_RE_TRY_PERIOD_MS = 3000;
+
+	private static final long STREAM_FETCH_MAX_RE_TRY_PERIOD_MS = 30000;
+
+	/**
+	 * If a read is blocked more than this value, it's interrupted and the stream is reconnected
+	 */
+	private static final long BLOCKED_READ_TIMEOUT_MS = 30000;
+
 	private IScope scope;
 	private AntMediaApplicationAdapter appInstance;
 	private long[] lastSentDTS;
@@ -91,9 +113,26 @@ public class StreamFetcher {
 
 	private DataStore dataStore;
 
-	private long readNextPacketStartTime;
+	private volatile long readNextPacketStartTime;
+
+	private volatile long readNextPacketCompleteTime;
+
+	private volatile boolean readInProgress = false;
 
-	private long readNextPacketCompleteTime;
+	private volatile long lastReadLatencyMs;
+
+	private volatile long maxReadLatencyMs;
+
+	private AtomicLong totalReadLatencyMs = new AtomicLong(0);
+
+	private AtomicLong readCount = new AtomicLong(0);
+
+	private AtomicInteger reconnectCount = new AtomicInteger(0);
+
+	/**
+	 * Number of the reconnections without reading any packet. It's used to increase the retry period
+	 */
+	private volatile int consecutiveReconnectCount = 0;
 
 	public interface IStreamFetcherListener {
 
@@ -111,6 +150,11 @@ public class StreamFetcher {
 
 	private AtomicBoolean seekTimeRequestReceived = new AtomicBoolean(false);
 
+	/**
+	 * Paces the packets of VoD and playlist sources
+	 */
+	private PacketPacer packetPacer;
+
 	private AtomicLong seekTimeInMs = new AtomicLong(0);
 
 	public IStreamFetcherListener getStreamFetcherListener() {
@@ -136,6 +180,7 @@ public class StreamFetcher {
 		this.seekTimeInMs.set(seekTimeInMs);
 
 		this.bufferTime = getAppSettings().getStreamFetcherBufferTime();
+		this.packetPacer = new PacketPacer(getAppSettings().getVodPacingBurstMs());
 	}
 
 	
@@ -157,8 +202,6 @@ public class StreamFetcher {
 
 		private static final int PACKET_WRITER_PERIOD_IN_MS = 10;
 
-		private static final long STREAM_FETCH_RE_TRY_PERIOD_MS = 3000;
-
 		private volatile boolean streamPublished = false;
 		protected AtomicBoolean isJobRunning = new AtomicBoolean(false);
 		AVFormatContext inputFormatContext = null;
@@ -178,13 +221,17 @@ public class StreamFetcher {
 
 		long firstPacketTime = 0;
 		long bufferDuration = 0;
-		long timeOffsetInMs = 0;
 		long packetWriterJobName = -1L;
 
-		private long firstPacketDtsInMs;
+		private long lastSycnCheckTime = 0;
+
+		private Pointer interruptCallbackOpaque;
+
+		public WorkerThread() {
+			super("StreamFetcher-" + streamId);
+			packetPacer.reset();
+		}
 
-		private long lastSycnCheckTime = 0;;
-		
 		public Result prepare(AVFormatContext inputFormatContext) {
 			Result result = prepareInput(inputFormatContext);
 
@@ -204,6 +251,9 @@ public class StreamFetcher {
 				return result;
 			}
 
+			//let stop requests and blocked reads abort the blocking calls instead of waiting for the network timeout
+			interruptCallbackOpaque = ReadInterruptCallback.register(inputFormatContext, StreamFetcher.this::isReadInterrupted);
+
 			AVDictionary optionsDictionary = new AVDictionary();
 
 			String transportType = appSettings.getRtspPullTransportType();
@@ -294,7 +344,7 @@ public class StreamFetcher {
 
 				setThreadActive(true);
 
-				inputFormatContext = new AVFormatContext(null); 
+				inputFormatContext = avformat_alloc_context();
 				pkt = avcodec.av_packet_alloc();
 				if(prepareInputContext(broadcast)) 
 				{
@@ -337,9 +387,13 @@ public class StreamFetcher {
 		public boolean readMore(AVPacket pkt) {
 			boolean readTheNextFrame = true;
 			readNextPacketStartTime = System.currentTimeMillis();
+			readInProgress = true;
 			int readResult = readNextPacket(pkt);
+			readInProgress = false;
 			readNextPacketCompleteTime = System.currentTimeMillis();
+			updateReadLatency(readNextPacketCompleteTime - readNextPacketStartTime);
 			if(readResult >= 0) {
+				consecutiveReconnectCount = 0;
 				packetRead(pkt);
 				unReferencePacket(pkt);
 			}
@@ -385,6 +439,7 @@ public class StreamFetcher {
 				{
 					//reset firstPackeTime to initalized again
 					firstPacketTime = 0;
+					packetPacer.reset();
 				}
 				else
 				{
@@ -603,40 +658,18 @@ public class StreamFetcher {
 
 				if(AntMediaApplicationAdapter.VOD.equals(streamType)) {
 
-
-					int streamIndex = pkt.stream_index();
-					AVRational timeBase = inputFormatContext.streams(streamIndex).time_base();
-
-					if(firstPacketTime == 0) 
-					{
-						firstPacketTime = System.currentTimeMillis();
-						firstPacketDtsInMs = av_rescale_q(pkt.dts(), timeBase, MuxAdaptor.TIME_BASE_FOR_MS);
-						if (firstPacketDtsInMs < 0) {
-							firstPacketDtsInMs = 0;
-						}
-						timeOffsetInMs = 0;
-					}
-
-					long latestTime = System.currentTimeMillis();
-
+					AVRational timeBase = inputFormatContext.streams(pkt.stream_index()).time_base();
 					long pktTimeMs = av_rescale_q(pkt.dts(), timeBase, MuxAdaptor.TIME_BASE_FOR_MS);
 
-					long durationInMs = latestTime - firstPacketTime;
-
-					long dtsInMS = pktTimeMs - firstPacketDtsInMs;
-					
-					while(dtsInMS > durationInMs) {
-						durationInMs = System.currentTimeMillis() - firstPacketTime;
-						try {
-							Thread.sleep(1);
-						} catch (InterruptedException e) {
-							logger.error(ExceptionUtils.getStackTrace(e));
-							Thread.currentThread().interrupt();
-						}
-						long elapsedTime = System.currentTimeMillis() - latestTime;
-						if (elapsedTime > 1000) {
-							logger.warn("Elapsed time is: {} to send the packet for streamId:{}", elapsedTime, streamId);
-						}
+					long latestTime = System.currentTimeMillis();
+					//park the thread until the packet's time instead of checking the clock every millisecond
+					if (!packetPacer.waitUntilReleaseTime(pktTimeMs, () -> stopRequestReceived)) {
+						logger.info("Pacing is stopped for streamId:{}", streamId);
+						return;
+					}
+					long elapsedTime = System.currentTimeMillis() - latestTime;
+					if (elapsedTime > 1000) {
+						logger.warn("Elapsed time is: {} to send the packet for streamId:{}", elapsedTime, streamId);
 					}
 
 				}
@@ -684,6 +717,9 @@ public class StreamFetcher {
 
 				closeInputFormatContext();
 
+				ReadInterruptCallback.unregister(interruptCallbackOpaque);
+				interruptCallbackOpaque = null;
+
 				boolean closeCalled = false;
 				if(streamPublished) {
 					//If stream is not getting started, this is not called
@@ -705,16 +741,15 @@ public class StreamFetcher {
 				}
 
 				if(!stopRequestReceived && restartStream) {
-					logger.info("Stream fetcher will try to fetch source {} after {} ms for streamId:{}", streamUrl, STREAM_FETCH_RE_TRY_PERIOD_MS, streamId);
+					long retryPeriodMs = getReconnectPeriodMs();
+					logger.info("Stream fetcher will try to fetch source {} after {} ms for streamId:{}", streamUrl, retryPeriodMs, streamId);
 
 					//Update status to finished in all cases
 					getDataStore().updateStatus(streamId, IAntMediaStreamHandler.BROADCAST_STATUS_FINISHED);
-					
-					vertx.setTimer(STREAM_FETCH_RE_TRY_PERIOD_MS, l -> {
 
-						thread = new WorkerThread();
-						thread.start();
-					});
+					reconnectCount.incrementAndGet();
+					consecutiveReconnectCount++;
+					vertx.setTimer(retryPeriodMs, l -> startWorkerThread());
 				}
 				else 
 				{
@@ -945,33 +980,70 @@ public class StreamFetcher {
 
 
 
+	/**
+	 * Starts a new worker thread after the previous one is finished. It does not block the caller
+	 * and it checks the previous worker thread in a timer instead of a waiting thread
+	 */
 	public void startStream() {
+		if (!threadActive.get()) {
+			startNewWorkerThread();
+			return;
+		}
 
-		new Thread() {
-			@Override
-			public void run() {
-				try {
-					int i = 0;
-					while (threadActive.get()) {
-						Thread.sleep(100);
-						if (i % 50 == 0) {
-							logger.info("waiting for thread to be finished for stream {}", streamUrl);
-							i = 0;
-						}
-						i++;
-					}
-				} catch (InterruptedException e) {
-					logger.error(e.getMessage());
-					Thread.currentThread().interrupt();
-				}
-
-				exceptionInThread = false;
-				thread = new WorkerThread();
-				thread.start();
-				logger.info("StartStream called, new thread is started for {}", streamId);
+		AtomicInteger checkCount = new AtomicInteger(0);
+		vertx.setPeriodic(WORKER_THREAD_CHECK_PERIOD_MS, timerId -> {
+			if (!threadActive.get()) {
+				vertx.cancelTimer(timerId);
+				startNewWorkerThread();
+			}
+			else if (checkCount.incrementAndGet() % 50 == 0) {
+				logger.info("waiting for thread to be finished for stream {}", streamUrl);
 			}
-		}.start();
+		});
+	}
+
+	private void startNewWorkerThread() {
+		exceptionInThread = false;
+		startWorkerThread();
+		logger.info("StartStream called, new thread is started for {}", streamId);
+	}
 
+	private void startWorkerThread() {
+		thread = new WorkerThread();
+		thread.start();
+	}
+
+	/**
+	 * @return the period to wait before reconnecting. It increases with the consecutive failures
+	 * and it has a jitter to not reconnect all of the sources at the same time after a network problem
+	 */
+	public long getReconnectPeriodMs() {
+		int exponent = Math.min(consecutiveReconnectCount, 4);
+		long periodMs = Math.min(STREAM_FETCH_RE_TRY_PERIOD_MS << exponent, STREAM_FETCH_MAX_RE_TRY_PERIOD_MS);
+		if (consecutiveReconnectCount > 0) {
+			periodMs += ThreadLocalRandom.current().nextLong(periodMs / 4 + 1);
+		}
+		return periodMs;
+	}
+
+	/**
+	 * It's called by FFmpeg while it's blocked in reading the source
+	 * @return true if stop is requested or the current read is blocked more than {@link #BLOCKED_READ_TIMEOUT_MS}
+	 */
+	public boolean isReadInterrupted() {
+		if (stopRequestReceived) {
+			return true;
+		}
+		return readInProgress && (System.currentTimeMillis() - readNextPacketStartTime) > BLOCKED_READ_TIMEOUT_MS;
+	}
+
+	private void updateReadLatency(long latencyMs) {
+		lastReadLatencyMs = latencyMs;
+		if (latencyMs > maxReadLatencyMs) {
+			maxReadLatencyMs = latencyMs;
+		}
+		totalReadLatencyMs.addAndGet(latencyMs);
+		readCount.incrementAndGet();
 	}
 
 	public DataStore getDataStore() {
@@ -1034,22 +1106,8 @@ public class StreamFetcher {
 
 	public void restart() {
 		stopStream();
-		new Thread() {
-			@Override
-			public void run() {
-				try {
-					while (threadActive.get()) {
-						Thread.sleep(100);
-					}
-
-				} catch (InterruptedException e) {
-					logger.error(e.getMessage());
-					Thread.currentThread().interrupt();
-				}
-				startStream();
-			}
-		}.start();
-
+		//startStream waits for the current worker thread to be finished
+		startStream();
 	}
 	/**
 	 * Set timeout when establishing connection
@@ -1159,4 +1217,50 @@ public class StreamFetcher {
 		return lastSentDTS;
 	}
 
+	/**
+	 * @return the duration of the last av_read_frame call in milliseconds
+	 */
+	public long getLastReadLatencyMs() {
+		return lastReadLatencyMs;
+	}
+
+	public long getMaxReadLatencyMs() {
+		return maxReadLatencyMs;
+	}
+
+	public long getAverageReadLatencyMs() {
+		long count = readCount.get();
+		return count > 0 ? totalReadLatencyMs.get() / count : 0;
+	}
+
+	public long getReadCount() {
+		return readCount.get();
+	}
+
+	/**
+	 * @return the number of the automatic reconnections since the stream fetcher is created
+	 */
+	public int getReconnectCount() {
+		return reconnectCount.get();
+	}
+
+	public int getConsecutiveReconnectCount() {
+		return consecutiveReconnectCount;
+	}
+
+	public PacketPacer getPacketPacer() {
+		return packetPacer;
+	}
+
+	/**
+	 * @return how late the last paced VoD packet is sent than its time in milliseconds
+	 */
+	public long getPacingErrorMs() {
+		return packetPacer.getLastPacingErrorMs();
+	}
+
+	public long getMaxPacingErrorMs() {
+		return packetPacer.getMaxPacingErrorMs();
+	}
+
 }
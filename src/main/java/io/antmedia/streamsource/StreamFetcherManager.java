@@ -505,7 +505,10 @@ public class StreamFetcherManager {
 			}
 			else {
 				
-				logger.info("Stream:{} is alive -> {}, is it blocked -> {}", streamScheduler.getStreamId(), streamScheduler.isStreamAlive(), streamScheduler.isStreamBlocked());
+				logger.info("Stream:{} is alive -> {}, is it blocked -> {}, read latency last:{}ms avg:{}ms max:{}ms, reconnect count:{}", 
+						streamScheduler.getStreamId(), streamScheduler.isStreamAlive(), streamScheduler.isStreamBlocked(), 
+						streamScheduler.getLastReadLatencyMs(), streamScheduler.getAverageReadLatencyMs(), streamScheduler.getMaxReadLatencyMs(),
+						streamScheduler.getReconnectCount());
 				//stream blocked means there is a connection to stream source and it's waiting to read a new packet
 				//Most of the time the problem is related to the stream source side.
 			}
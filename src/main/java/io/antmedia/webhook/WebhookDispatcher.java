@@ -0,0 +1,429 @@
+package io.antmedia.webhook;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the webhooks of an application out of the vertx event loop, so a slow webhook receiver doesn't delay
+ * the publish and stop events.
+ *
+ * Each webhook host has its own single threaded lanes, so a slow or unreachable receiver only delays its own hooks.
+ * Hooks of a host with the same key, like the hooks of a stream, are sent in the same lane, so they're sent in order like
+ * they were in the event loop. Number of the hooks that are sent to a host at the same time is limited by its lane count
+ * and each request has connect and read timeouts. Threads of the idle lanes are stopped and lanes of
+ * at most {@link #MAX_HOST_COUNT} hosts are kept, hooks of the other hosts share the same lanes.
+ * Retries are written to the retry directory until they're sent, so the retries that are pending when the server stops
+ * are sent after it starts.
+ */
+public class WebhookDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+	public static final int DEFAULT_THREAD_COUNT = 4;
+
+	public static final int MAX_HOST_COUNT = 32;
+
+	/**
+	 * Hooks of a host are dropped if this number of its hooks are waiting to be sent
+	 */
+	public static final int MAX_PENDING_HOOKS = 10000;
+
+	private static final long IDLE_LANE_TIMEOUT_SECONDS = 60;
+
+	/**
+	 * Lane key of the hosts that are more than {@link #MAX_HOST_COUNT}
+	 */
+	private static final String OTHER_HOSTS = "";
+
+	private static final String RETRY_FILE_EXTENSION = ".json";
+
+	private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+	private final int threadCount;
+
+	/**
+	 * Lanes of each host. It's accessed in the lock of the dispatcher
+	 */
+	private final Map<String, ScheduledThreadPoolExecutor[]> hostLanes = new HashMap<>();
+
+	private boolean shutdown = false;
+
+	private CloseableHttpClient httpClient;
+
+	private volatile File retryDirectory;
+
+	private final AtomicLong retryFileCounter = new AtomicLong();
+
+	private final AtomicInteger inFlightCount = new AtomicInteger();
+
+	private final AtomicInteger pendingRetryCount = new AtomicInteger();
+
+	private final LongAdder retriedCount = new LongAdder();
+
+	private final LongAdder droppedCount = new LongAdder();
+
+	public WebhookDispatcher(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * @return lane of the key in the lanes of the host of the url or null if the dispatcher is shutdown
+	 */
+	private synchronized ScheduledThreadPoolExecutor getLane(String url, String key) {
+		if (shutdown) {
+			return null;
+		}
+		String host = getHost(url);
+		ScheduledThreadPoolExecutor[] lanes = hostLanes.get(host);
+		if (lanes == null) {
+			if (hostLanes.size() >= MAX_HOST_COUNT) {
+				removeIdleHosts();
+			}
+			if (hostLanes.size() >= MAX_HOST_COUNT) {
+				host = OTHER_HOSTS;
+				lanes = hostLanes.get(host);
+			}
+			if (lanes == null) {
+				lanes = createLanes(host);
+				hostLanes.put(host, lanes);
+			}
+		}
+		return lanes[key == null ? 0 : Math.floorMod(key.hashCode(), threadCount)];
+	}
+
+	private ScheduledThreadPoolExecutor[] createLanes(String host) {
+		ScheduledThreadPoolExecutor[] lanes = new ScheduledThreadPoolExecutor[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			String threadName = "webhook-sender-" + (OTHER_HOSTS.equals(host) ? "other" : host) + "-" + i;
+			lanes[i] = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			});
+			lanes[i].setKeepAliveTime(IDLE_LANE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			lanes[i].allowCoreThreadTimeOut(true);
+			//delayed retries are in the retry directory, they're not waited while shutting down
+			lanes[i].setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		}
+		return lanes;
+	}
+
+	/**
+	 * Removes the lanes of the hosts that have no hooks to send. It should be called in the lock
+	 */
+	private void removeIdleHosts() {
+		hostLanes.entrySet().removeIf(entry -> {
+			for (ScheduledThreadPoolExecutor lane : entry.getValue()) {
+				if (!lane.getQueue().isEmpty() || lane.getActiveCount() > 0) {
+					return false;
+				}
+			}
+			for (ScheduledThreadPoolExecutor lane : entry.getValue()) {
+				lane.shutdown();
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * @return host and port of the url or the url itself if it cannot be parsed
+	 */
+	public static String getHost(String url) {
+		if (url == null) {
+			return OTHER_HOSTS;
+		}
+		try {
+			URI uri = new URI(url);
+			if (uri.getHost() != null) {
+				return uri.getHost() + ":" + uri.getPort();
+			}
+		}
+		catch (URISyntaxException e) {
+			logger.debug("Webhook url:{} cannot be parsed", url);
+		}
+		return url;
+	}
+
+	/**
+	 * @return number of the hosts that have lanes
+	 */
+	public synchronized int getHostCount() {
+		return hostLanes.size();
+	}
+
+	/**
+	 * @return http client with a keep-alive connection pool that is shared by the hooks of the application
+	 */
+	public synchronized CloseableHttpClient getHttpClient() {
+		if (httpClient == null) {
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			//each lane of a host has a connection so a lane doesn't wait for the connection of another lane
+			connectionManager.setMaxTotal(threadCount * (MAX_HOST_COUNT + 1));
+			connectionManager.setDefaultMaxPerRoute(threadCount);
+			connectionManager.setValidateAfterInactivity(2000);
+
+			httpClient = HttpClientBuilder.create()
+					.setConnectionManager(connectionManager)
+					.evictIdleConnections(30, TimeUnit.SECONDS)
+					.build();
+		}
+		return httpClient;
+	}
+
+	/**
+	 * Runs the task that sends a hook in the lane of the key
+	 *
+	 * @param url url of the hook. Hooks of different hosts are sent in different lanes
+	 * @param key tasks of a host with the same key are run in order
+	 * @param task sends the hook
+	 */
+	public void submit(String url, String key, Runnable task) {
+		schedule(url, key, () -> {
+			inFlightCount.incrementAndGet();
+			try {
+				task.run();
+			}
+			finally {
+				inFlightCount.decrementAndGet();
+			}
+		}, 0);
+	}
+
+	/**
+	 * Writes the request to the retry directory and sends it with the sender after the delay
+	 *
+	 * @param request request to be retried
+	 * @param delayMs delay before sending the request
+	 * @param sender sends the request. It should call this method again if the request fails and can be retried
+	 */
+	public void scheduleRetry(WebhookRequest request, long delayMs, Consumer<WebhookRequest> sender) {
+		retriedCount.increment();
+		File retryFile = writeRetryFile(request, System.currentTimeMillis() + delayMs);
+		scheduleRetry(request, delayMs, retryFile, sender);
+	}
+
+	private void scheduleRetry(WebhookRequest request, long delayMs, File retryFile, Consumer<WebhookRequest> sender) {
+		pendingRetryCount.incrementAndGet();
+		boolean scheduled = schedule(request.getUrl(), request.getUrl(), () -> {
+			pendingRetryCount.decrementAndGet();
+			inFlightCount.incrementAndGet();
+			try {
+				sender.accept(request);
+			}
+			finally {
+				inFlightCount.decrementAndGet();
+				//file of the next attempt is written before this one is deleted, a request is not lost if the server stops
+				deleteRetryFile(retryFile);
+			}
+		}, delayMs);
+
+		if (!scheduled) {
+			pendingRetryCount.decrementAndGet();
+			if (retryFile == null || isShutdown()) {
+				//retry file is sent after restart if the dispatcher is shutdown
+				return;
+			}
+			deleteRetryFile(retryFile);
+		}
+	}
+
+	/**
+	 * It's synchronized so that lanes of an idle host are not removed while a task is added to them
+	 */
+	private synchronized boolean schedule(String url, String key, Runnable task, long delayMs) {
+		ScheduledThreadPoolExecutor scheduledExecutor = getLane(url, key);
+		if (scheduledExecutor == null) {
+			droppedCount.increment();
+			logger.warn("Webhook is not sent because dispatcher is shutdown");
+			return false;
+		}
+		if (scheduledExecutor.getQueue().size() >= MAX_PENDING_HOOKS / threadCount) {
+			droppedCount.increment();
+			logger.warn("Webhook is dropped because there are {} hooks waiting to be sent to {}", MAX_PENDING_HOOKS, getHost(url));
+			return false;
+		}
+		try {
+			scheduledExecutor.schedule(() -> {
+				try {
+					task.run();
+				}
+				catch (Exception e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
+				}
+			}, delayMs, TimeUnit.MILLISECONDS);
+			return true;
+		}
+		catch (RejectedExecutionException e) {
+			droppedCount.increment();
+			logger.warn("Webhook is not sent because dispatcher is shutdown");
+			return false;
+		}
+	}
+
+	/**
+	 * Sets the retry directory and schedules the retries that are left in it
+	 *
+	 * @param directory directory of the retry files
+	 * @param sender sends the requests
+	 * @return number of the retries that are loaded
+	 */
+	public int loadRetries(File directory, Consumer<WebhookRequest> sender) {
+		retryDirectory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			logger.warn("Webhook retry directory:{} cannot be created. Retries are not kept after restart", directory.getAbsolutePath());
+			retryDirectory = null;
+			return 0;
+		}
+
+		File[] retryFiles = directory.listFiles((dir, name) -> name.endsWith(RETRY_FILE_EXTENSION));
+		if (retryFiles == null) {
+			return 0;
+		}
+		int loadedCount = 0;
+		long now = System.currentTimeMillis();
+		for (File retryFile : retryFiles) {
+			try {
+				JSONObject jsonObject = WebhookRequest.parse(new String(Files.readAllBytes(retryFile.toPath()), StandardCharsets.UTF_8));
+				long delayMs = Math.max(0, WebhookRequest.getDueTime(jsonObject) - now);
+				scheduleRetry(WebhookRequest.fromJSON(jsonObject), delayMs, retryFile, sender);
+				loadedCount++;
+			}
+			catch (Exception e) {
+				logger.warn("Webhook retry file:{} cannot be read and it's deleted. Error: {}", retryFile.getName(), e.getMessage());
+				deleteRetryFile(retryFile);
+			}
+		}
+		if (loadedCount > 0) {
+			logger.info("{} webhook retries are loaded from {}", loadedCount, directory.getAbsolutePath());
+		}
+		return loadedCount;
+	}
+
+	private File writeRetryFile(WebhookRequest request, long dueTimeMs) {
+		File directory = retryDirectory;
+		if (directory == null) {
+			return null;
+		}
+		File retryFile = new File(directory, dueTimeMs + "-" + retryFileCounter.incrementAndGet() + RETRY_FILE_EXTENSION);
+		File tempFile = new File(directory, retryFile.getName() + ".tmp");
+		try {
+			Files.write(tempFile.toPath(), request.toJSON(dueTimeMs).getBytes(StandardCharsets.UTF_8));
+			Files.move(tempFile.toPath(), retryFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			return retryFile;
+		}
+		catch (IOException e) {
+			logger.warn("Webhook retry to {} cannot be written. It's not kept after restart. Error: {}", request.getUrl(), e.getMessage());
+			return null;
+		}
+	}
+
+	private void deleteRetryFile(File retryFile) {
+		if (retryFile == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(retryFile.toPath());
+		}
+		catch (IOException e) {
+			logger.warn("Webhook retry file:{} cannot be deleted. Error: {}", retryFile.getName(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Records a hook that is not sent and has no retry attempts left
+	 */
+	public void reportDropped() {
+		droppedCount.increment();
+	}
+
+	/**
+	 * Waits for the hooks that are being sent. Pending retries stay in the retry directory
+	 */
+	public void shutdown() {
+		List<ScheduledThreadPoolExecutor> scheduledExecutors = new ArrayList<>();
+		CloseableHttpClient client;
+		synchronized (this) {
+			shutdown = true;
+			for (ScheduledThreadPoolExecutor[] lanes : hostLanes.values()) {
+				scheduledExecutors.addAll(Arrays.asList(lanes));
+			}
+			hostLanes.clear();
+			client = httpClient;
+			httpClient = null;
+		}
+		if (!scheduledExecutors.isEmpty()) {
+			for (ScheduledThreadPoolExecutor scheduledExecutor : scheduledExecutors) {
+				scheduledExecutor.shutdown();
+			}
+			long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+			for (ScheduledThreadPoolExecutor scheduledExecutor : scheduledExecutors) {
+				try {
+					if (!scheduledExecutor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+						scheduledExecutor.shutdownNow();
+					}
+				}
+				catch (InterruptedException e) {
+					scheduledExecutor.shutdownNow();
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		if (client != null) {
+			try {
+				client.close();
+			}
+			catch (IOException e) {
+				logger.warn("Webhook http client cannot be closed. Error: {}", e.getMessage());
+			}
+		}
+	}
+
+	public synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	public int getInFlightCount() {
+		return inFlightCount.get();
+	}
+
+	public int getPendingRetryCount() {
+		return pendingRetryCount.get();
+	}
+
+	public long getRetriedCount() {
+		return retriedCount.sum();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	public File getRetryDirectory() {
+		return retryDirectory;
+	}
+}
@@ -0,0 +1,97 @@
+package io.antmedia.webhook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Webhook POST request that is kept in the retry queue of {@link WebhookDispatcher}
+ */
+public class WebhookRequest {
+
+	private static final String URL = "url";
+	private static final String VARIABLES = "variables";
+	private static final String RETRY_ATTEMPTS = "retryAttempts";
+	private static final String CONTENT_TYPE = "contentType";
+	private static final String DUE_TIME = "dueTime";
+
+	private final String url;
+
+	private final Map<String, Object> variables;
+
+	private final int retryAttempts;
+
+	private final String contentType;
+
+	/**
+	 * @param url url of the webhook
+	 * @param variables variables of the hook. Values are strings or json objects
+	 * @param retryAttempts number of the attempts left after this request
+	 * @param contentType content type of the request
+	 */
+	public WebhookRequest(String url, Map<String, Object> variables, int retryAttempts, String contentType) {
+		this.url = url;
+		this.variables = variables;
+		this.retryAttempts = retryAttempts;
+		this.contentType = contentType;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public Map<String, Object> getVariables() {
+		return variables;
+	}
+
+	public int getRetryAttempts() {
+		return retryAttempts;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @param dueTimeMs time that the request should be sent
+	 * @return json of the request that is written to the retry queue
+	 */
+	@SuppressWarnings("unchecked")
+	public String toJSON(long dueTimeMs) {
+		JSONObject jsonObject = new JSONObject();
+		jsonObject.put(URL, url);
+		jsonObject.put(VARIABLES, new JSONObject(variables));
+		jsonObject.put(RETRY_ATTEMPTS, retryAttempts);
+		jsonObject.put(CONTENT_TYPE, contentType);
+		jsonObject.put(DUE_TIME, dueTimeMs);
+		return jsonObject.toJSONString();
+	}
+
+	/**
+	 * @return due time of the request in the json
+	 */
+	public static long getDueTime(JSONObject jsonObject) {
+		Object dueTime = jsonObject.get(DUE_TIME);
+		return dueTime instanceof Number ? ((Number) dueTime).longValue() : 0;
+	}
+
+	public static JSONObject parse(String json) throws ParseException {
+		return (JSONObject) new JSONParser().parse(json);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static WebhookRequest fromJSON(JSONObject jsonObject) {
+		Map<String, Object> variables = new HashMap<>();
+		Object variablesObject = jsonObject.get(VARIABLES);
+		if (variablesObject instanceof Map) {
+			variables.putAll((Map<String, Object>) variablesObject);
+		}
+		Object retryAttempts = jsonObject.get(RETRY_ATTEMPTS);
+		return new WebhookRequest((String) jsonObject.get(URL), variables,
+				retryAttempts instanceof Number ? ((Number) retryAttempts).intValue() : 0,
+				(String) jsonObject.get(CONTENT_TYPE));
+	}
+}
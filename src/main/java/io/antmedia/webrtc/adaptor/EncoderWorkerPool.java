@@ -0,0 +1,196 @@
+package io.antmedia.webrtc.adaptor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.shutdown.AMSShutdownManager;
+
+/**
+ * Server wide worker pool that encodes the frames of the WebRTC publishers that are forwarded to RTMP.
+ *
+ * Number of the threads is fixed, so it does not grow with the number of the publishers. Each publisher
+ * gets a {@link Lane} from {@link #newLane()}. Tasks of a lane run one by one and in order, but a lane is not
+ * bound to a thread. Each task runs in any free worker and a lane with more tasks waits its turn again
+ * behind the other lanes, so a heavy encoder does not hold a worker while the other publishers are waiting.
+ *
+ * Pool is shut down once when the server is shutting down. Lanes are shut down by their publishers.
+ */
+public class EncoderWorkerPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(EncoderWorkerPool.class);
+
+	private static EncoderWorkerPool instance;
+
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * Serial executor of a publisher. It runs its tasks in the workers of the pool one at a time
+	 */
+	public class Lane extends AbstractExecutorService {
+
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+		private boolean running = false;
+
+		private boolean shutdown = false;
+
+		@Override
+		public void execute(Runnable command) {
+			synchronized (this) {
+				if (shutdown) {
+					throw new RejectedExecutionException("Lane is shut down");
+				}
+				tasks.add(command);
+				if (running) {
+					return;
+				}
+				running = true;
+			}
+			try {
+				workers.execute(this::runTask);
+			}
+			catch (RejectedExecutionException e) {
+				synchronized (this) {
+					tasks.remove(command);
+					running = false;
+					notifyAll();
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * Runs one task and puts the lane back to the end of the worker queue if it has more tasks,
+		 * so that a busy lane does not keep a worker while other lanes are waiting
+		 */
+		private void runTask() {
+			Runnable task;
+			synchronized (this) {
+				task = tasks.poll();
+			}
+			try {
+				if (task != null) {
+					task.run();
+				}
+			}
+			catch (Exception e) {
+				logger.error("Exception in encoder task {}", ExceptionUtils.getStackTrace(e));
+			}
+			finally {
+				scheduleNext();
+			}
+		}
+
+		private void scheduleNext() {
+			synchronized (this) {
+				if (tasks.isEmpty()) {
+					running = false;
+					notifyAll();
+					return;
+				}
+			}
+			try {
+				workers.execute(this::runTask);
+			}
+			catch (RejectedExecutionException e) {
+				//pool is shut down because the server is shutting down
+				synchronized (this) {
+					tasks.clear();
+					running = false;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Tasks that are already queued are still run
+		 */
+		@Override
+		public synchronized void shutdown() {
+			shutdown = true;
+		}
+
+		@Override
+		public synchronized List<Runnable> shutdownNow() {
+			shutdown = true;
+			List<Runnable> remainingTasks = new ArrayList<>(tasks);
+			tasks.clear();
+			return remainingTasks;
+		}
+
+		@Override
+		public synchronized boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public synchronized boolean isTerminated() {
+			return shutdown && !running;
+		}
+
+		@Override
+		public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			while (!isTerminated()) {
+				long remainingNs = deadline - System.nanoTime();
+				if (remainingNs <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+			}
+			return true;
+		}
+	}
+
+	public static synchronized EncoderWorkerPool getInstance() {
+		if (instance == null) {
+			instance = new EncoderWorkerPool(Runtime.getRuntime().availableProcessors());
+			AMSShutdownManager.getInstance().subscribe(instance::shutdown);
+		}
+		return instance;
+	}
+
+	public EncoderWorkerPool(int workerCount) {
+		AtomicInteger threadIndex = new AtomicInteger();
+		ThreadFactory threadFactory = r -> {
+			Thread thread = new Thread(r, "webrtc-rtmp-encoder-" + threadIndex.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+		//queue is not bounded but it has at most one entry for each lane
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+	}
+
+	/**
+	 * @return a new serial executor in this pool
+	 */
+	public Lane newLane() {
+		return new Lane();
+	}
+
+	public int getWorkerCount() {
+		return workers.getMaximumPoolSize();
+	}
+
+	public ExecutorService getWorkers() {
+		return workers;
+	}
+
+	public void shutdown() {
+		workers.shutdown();
+	}
+}
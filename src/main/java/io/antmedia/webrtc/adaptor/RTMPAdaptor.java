@@ -10,10 +10,12 @@ import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.bytedeco.ffmpeg.global.avcodec;
@@ -38,12 +40,12 @@ import org.webrtc.VideoFrame.Buffer;
 import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 import org.webrtc.WrappedNativeI420Buffer;
+import org.webrtc.YuvHelper;
 import org.webrtc.Logging.Severity;
 import org.webrtc.audio.JavaAudioDeviceModule;
 import org.webrtc.audio.WebRtcAudioTrack;
 
 import io.antmedia.recorder.FFmpegFrameRecorder;
-import io.antmedia.recorder.Frame;
 import io.antmedia.recorder.FrameRecorder;
 import io.antmedia.webrtc.AudioFrameContext;
 import io.antmedia.webrtc.VideoFrameContext;
@@ -63,9 +65,38 @@ public class RTMPAdaptor extends Adaptor {
 
 	private static Logger logger = LoggerFactory.getLogger(RTMPAdaptor.class);
 
-	private ScheduledExecutorService videoEncoderExecutor; 
+	/**
+	 * Max number of the video frames waiting to be encoded. Oldest frame is dropped when it's exceeded
+	 * so that native frame buffers are not accumulated if encoder cannot keep up
+	 */
+	public static final int MAX_VIDEO_FRAME_QUEUE_SIZE = 30;
+
+	/**
+	 * Video and audio frames of this adaptor are encoded in this lane of the {@link EncoderWorkerPool}. Lane keeps the
+	 * frames of the publisher in order and the pool bounds the number of the encoder threads. Encoding is scheduled when
+	 * a frame is received instead of polling the queues
+	 */
+	private ExecutorService encoderExecutor;
+
+	/**
+	 * It's true if encoding is scheduled and it has not started to drain the queues yet
+	 */
+	private final AtomicBoolean encodeScheduled = new AtomicBoolean(false);
+
+	/**
+	 * Encoding job holds this lock while it's running so that recorder is not stopped during encoding
+	 */
+	private final Object encoderLock = new Object();
+
+	private AtomicInteger videoFrameQueueSize = new AtomicInteger(0);
+
+	private int[] videoFrameStride = new int[3];
+
+	/**
+	 * Planes of the last rotated video frame. They're reused while the frame size does not change
+	 */
+	private ByteBuffer[] rotatedPlanes = new ByteBuffer[3];
 
-	private ScheduledExecutorService audioEncoderExecutor;
 	private AtomicBoolean isStopped = new AtomicBoolean(false);
 	private ScheduledExecutorService signallingExecutor;
 	private boolean enableAudio = false;
@@ -95,8 +126,6 @@ public class RTMPAdaptor extends Adaptor {
 
 	private int lastFrameNumber = -1;
 	private int dropFrameCount = 0;
-	private ScheduledFuture<?> videoEncoderFuture = null;
-	private ScheduledFuture<?> audioEncoderFuture = null;
 	private int videoFrameCount = 0;
 
 	private long videoFrameLastTimestampMs;
@@ -127,7 +156,8 @@ public class RTMPAdaptor extends Adaptor {
 				logger.info("Set startTime to {} in onFrame for stream:{}", startTime, getStreamId());
 			}
 
-			if (videoEncoderExecutor == null || videoEncoderExecutor.isShutdown()) {
+			ExecutorService executor = encoderExecutor;
+			if (executor == null || executor.isShutdown()) {
 				logger.warn("Video Encoder is null or shutdown for stream: {}", getStreamId());
 				return;
 			}
@@ -149,6 +179,17 @@ public class RTMPAdaptor extends Adaptor {
 
 			videoFrameQueue.offer(videoFrameContext);
 
+			if (videoFrameQueueSize.incrementAndGet() > MAX_VIDEO_FRAME_QUEUE_SIZE) {
+				VideoFrameContext oldestFrame = videoFrameQueue.poll();
+				if (oldestFrame != null) {
+					videoFrameQueueSize.decrementAndGet();
+					oldestFrame.videoFrame.release();
+					dropFrameCount++;
+					logger.debug("dropping video because encoder queue is full, total drop count: {} for stream: {}", dropFrameCount, getStreamId());
+				}
+			}
+
+			signalEncoder();
 		}
 
 	}
@@ -302,8 +343,7 @@ public class RTMPAdaptor extends Adaptor {
 
 	@Override
 	public void start() {
-		videoEncoderExecutor = Executors.newSingleThreadScheduledExecutor();
-		audioEncoderExecutor = Executors.newSingleThreadScheduledExecutor();
+		encoderExecutor = EncoderWorkerPool.getInstance().newLane();
 		signallingExecutor = Executors.newSingleThreadScheduledExecutor();
 		
 		signallingExecutor.execute(() -> {
@@ -315,9 +355,9 @@ public class RTMPAdaptor extends Adaptor {
 
 				webSocketCommunityHandler.sendStartMessage(getStreamId(), getSession(), "");
 
-				videoEncoderFuture = videoEncoderExecutor.scheduleWithFixedDelay(this::encodeVideo, 10, 10, TimeUnit.MILLISECONDS);
-				audioEncoderFuture = audioEncoderExecutor.scheduleWithFixedDelay(this::encodeAudio, 10, 10, TimeUnit.MILLISECONDS);
 				started  = true;
+				//encode the frames that may be received during initialization
+				signalEncoder();
 			}catch (Exception e) {
 				logger.error(ExceptionUtils.getStackTrace(e));
 			}
@@ -339,14 +379,11 @@ public class RTMPAdaptor extends Adaptor {
 			audioDataSchedulerFuture.cancel(false);
 		}
 
-		if (videoEncoderFuture != null) {
-			videoEncoderFuture.cancel(false);
-		}
-		logger.info("Video queue size: {} video frame last timestamp: {}", videoFrameQueue.size(), videoFrameLastTimestampMs);
-
-		if (audioEncoderFuture != null) {
-			audioEncoderFuture.cancel(false);
+		if (encoderExecutor != null) {
+			//only the lane of this publisher is shut down, the pool is shared
+			encoderExecutor.shutdown();
 		}
+		logger.info("Video queue size: {} video frame last timestamp: {}", videoFrameQueueSize.get(), videoFrameLastTimestampMs);
 
 		logger.info("Audio queue size: {} audio frame count: {}", audioFrameQueue.size(), audioFrameCount);
 
@@ -358,28 +395,23 @@ public class RTMPAdaptor extends Adaptor {
 			webSocketCommunityHandler.sendPublishFinishedMessage(getStreamId(), getSession(), "");
 
 
-			audioEncoderExecutor.shutdownNow();
-			videoEncoderExecutor.shutdownNow();
+			//wait for the encoding job if it's running in the encoder executor
+			synchronized (encoderLock) {
+				releaseVideoFrames();
 
-			try {
-				videoEncoderExecutor.awaitTermination(10, TimeUnit.SECONDS);
-			} catch (InterruptedException e1) {
-				logger.error(ExceptionUtils.getStackTrace(e1));
-				Thread.currentThread().interrupt();
-			}
-			
-			try {
-				if (peerConnection != null) {
-					peerConnection.close();
-					recorder.stop();
-					peerConnection.dispose();
-					peerConnectionFactory.dispose();
-					peerConnection = null;
+				try {
+					if (peerConnection != null) {
+						peerConnection.close();
+						recorder.stop();
+						peerConnection.dispose();
+						peerConnectionFactory.dispose();
+						peerConnection = null;
+					}
+				} catch (FrameRecorder.Exception e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
 				}
-			} catch (FrameRecorder.Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
 			}
-			
+
 
 		});
 		signallingExecutor.shutdown();
@@ -397,7 +429,8 @@ public class RTMPAdaptor extends Adaptor {
 				logger.info("Set startTime to {} in Audio Track executor:{}", startTime, getStreamId());
 			}
 
-			if (audioEncoderExecutor == null || audioEncoderExecutor.isShutdown()) {
+			ExecutorService executor = encoderExecutor;
+			if (executor == null || executor.isShutdown()) {
 				logger.warn("Audio encoder is null or shutdown for stream:{} ", getStreamId());
 				return;
 			}
@@ -406,11 +439,49 @@ public class RTMPAdaptor extends Adaptor {
 			ByteBuffer playoutData = webRtcAudioTrack.getPlayoutData();
 
 			audioFrameQueue.offer(new AudioFrame(playoutData, webRtcAudioTrack.getChannels(), webRtcAudioTrack.getSampleRate()));			
+			signalEncoder();
 
 		}, 0, 10, TimeUnit.MILLISECONDS);
 	}
 
 
+	/**
+	 * Schedules the encoding of the queued frames if it's not scheduled already
+	 */
+	private void signalEncoder() {
+		if (encodeScheduled.compareAndSet(false, true)) {
+			try {
+				encoderExecutor.execute(this::encode);
+			}
+			catch (RejectedExecutionException e) {
+				//executor is shut down because the stream is stopped
+				encodeScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * It's run in the encoder executor when a video or audio frame is received
+	 */
+	public void encode() {
+		//frames that are queued after this point schedule another run
+		encodeScheduled.set(false);
+		synchronized (encoderLock) {
+			if (!isStopped.get()) {
+				encodeVideo();
+				encodeAudio();
+			}
+		}
+	}
+
+	private void releaseVideoFrames() {
+		VideoFrameContext videoFrameContext;
+		while ((videoFrameContext = videoFrameQueue.poll()) != null) {
+			videoFrameQueueSize.decrementAndGet();
+			videoFrameContext.videoFrame.release();
+		}
+	}
+
 	public void encodeAudio() 
 	{	
 		//null-check recorder because it's asynch and it may not be initialized in video encoder thread
@@ -479,6 +550,7 @@ public class RTMPAdaptor extends Adaptor {
 		VideoFrameContext videoFrameContext = null;
 		while ((videoFrameContext = videoFrameQueue.poll()) != null)
 		{
+			videoFrameQueueSize.decrementAndGet();
 			if (!isStopped.get()) {
 
 				//initialize recorder if it's not initialized
@@ -491,37 +563,21 @@ public class RTMPAdaptor extends Adaptor {
 					recorder.setFrameNumber(frameNumber);
 					lastFrameNumber = frameNumber;
 
-					try (Frame frameCV = new Frame(videoFrameContext.videoFrame.getRotatedWidth(), videoFrameContext.videoFrame.getRotatedHeight(), Frame.DEPTH_UBYTE, 2))
-					{
-
-						Buffer buffer = videoFrameContext.videoFrame.getBuffer();
-						int[] stride = new int[3];
-						if (buffer instanceof WrappedNativeI420Buffer) {
-							WrappedNativeI420Buffer wrappedBuffer = (WrappedNativeI420Buffer) buffer;
-							((ByteBuffer)(frameCV.image[0].position(0))).put(wrappedBuffer.getDataY());
-							((ByteBuffer)(frameCV.image[0])).put(wrappedBuffer.getDataU());
-							((ByteBuffer)(frameCV.image[0])).put(wrappedBuffer.getDataV());
-
-							stride[0] = wrappedBuffer.getStrideY();
-							stride[1] = wrappedBuffer.getStrideU();
-							stride[2] = wrappedBuffer.getStrideV();
-
-							try {
-								recorder.recordImage(frameCV.getImageWidth(), frameCV.getImageHeight(), frameCV.getImageDepth(),
-										frameCV.getImageChannels(), stride, AV_PIX_FMT_YUV420P, frameCV.image);
-
-							} catch (FrameRecorder.Exception e) {
-								logger.error(ExceptionUtils.getStackTrace(e));
-								errorLoopCount += 1;
-								if (errorLoopCount > 5){
-									webSocketCommunityHandler.sendServerError(getStreamId(), getSession());
-									stop();
-								}
+					Buffer buffer = videoFrameContext.videoFrame.getBuffer();
+					if (buffer instanceof WrappedNativeI420Buffer) {
+						try {
+							recordFrame((WrappedNativeI420Buffer) buffer, videoFrameContext.videoFrame.getRotation());
+						} catch (FrameRecorder.Exception e) {
+							logger.error(ExceptionUtils.getStackTrace(e));
+							errorLoopCount += 1;
+							if (errorLoopCount > 5){
+								webSocketCommunityHandler.sendServerError(getStreamId(), getSession());
+								stop();
 							}
 						}
-						else {
-							logger.error("Buffer is not type of WrappedNativeI420Buffer for stream: {}", recorder.getFilename());
-						}
+					}
+					else {
+						logger.error("Buffer is not type of WrappedNativeI420Buffer for stream: {}", recorder.getFilename());
 					}
 				}
 				else {
@@ -538,6 +594,51 @@ public class RTMPAdaptor extends Adaptor {
 		}
 	}
 
+	/**
+	 * Records the frame with its rotation applied because the recorder is sized with the rotated dimensions.
+	 * Planes of a frame that is not rotated are given to the encoder without copying them
+	 */
+	public void recordFrame(WrappedNativeI420Buffer buffer, int rotation) throws FrameRecorder.Exception {
+		if (rotation % 360 == 0) {
+			videoFrameStride[0] = buffer.getStrideY();
+			videoFrameStride[1] = buffer.getStrideU();
+			videoFrameStride[2] = buffer.getStrideV();
+			recorder.recordPlanarImage(buffer.getWidth(), buffer.getHeight(), videoFrameStride, AV_PIX_FMT_YUV420P,
+					buffer.getDataY(), buffer.getDataU(), buffer.getDataV());
+			return;
+		}
+
+		boolean swapDimensions = rotation % 180 != 0;
+		int rotatedWidth = swapDimensions ? buffer.getHeight() : buffer.getWidth();
+		int rotatedHeight = swapDimensions ? buffer.getWidth() : buffer.getHeight();
+		int chromaWidth = (rotatedWidth + 1) / 2;
+		int chromaHeight = (rotatedHeight + 1) / 2;
+
+		rotatedPlanes[0] = getPlane(rotatedPlanes[0], rotatedWidth * rotatedHeight);
+		rotatedPlanes[1] = getPlane(rotatedPlanes[1], chromaWidth * chromaHeight);
+		rotatedPlanes[2] = getPlane(rotatedPlanes[2], chromaWidth * chromaHeight);
+		videoFrameStride[0] = rotatedWidth;
+		videoFrameStride[1] = chromaWidth;
+		videoFrameStride[2] = chromaWidth;
+
+		rotatePlanes(buffer, rotation, rotatedPlanes, videoFrameStride);
+		recorder.recordPlanarImage(rotatedWidth, rotatedHeight, videoFrameStride, AV_PIX_FMT_YUV420P, rotatedPlanes);
+	}
+
+	private static ByteBuffer getPlane(ByteBuffer plane, int size) {
+		if (plane == null || plane.capacity() != size) {
+			return ByteBuffer.allocateDirect(size);
+		}
+		plane.clear();
+		return plane;
+	}
+
+	public void rotatePlanes(WrappedNativeI420Buffer buffer, int rotation, ByteBuffer[] planes, int[] stride) {
+		YuvHelper.I420Rotate(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(), buffer.getStrideU(),
+				buffer.getDataV(), buffer.getStrideV(), planes[0], stride[0], planes[1], stride[1], planes[2], stride[2],
+				buffer.getWidth(), buffer.getHeight(), rotation % 360);
+	}
+
 	@Override
 	public void onAddStream(MediaStream stream) {
 		log.warn("onAddStream for stream: {}", getStreamId());
@@ -658,12 +759,24 @@ public class RTMPAdaptor extends Adaptor {
 		return recorder;
 	}
 
-	public ScheduledExecutorService getVideoEncoderExecutor() {
-		return videoEncoderExecutor;
+	public ExecutorService getEncoderExecutor() {
+		return encoderExecutor;
+	}
+
+	/**
+	 * @deprecated video and audio frames are encoded in the same executor. Use {@link #getEncoderExecutor()}
+	 */
+	@Deprecated
+	public ExecutorService getVideoEncoderExecutor() {
+		return encoderExecutor;
 	}
 
-	public ScheduledExecutorService getAudioEncoderExecutor() {
-		return audioEncoderExecutor;
+	/**
+	 * @deprecated video and audio frames are encoded in the same executor. Use {@link #getEncoderExecutor()}
+	 */
+	@Deprecated
+	public ExecutorService getAudioEncoderExecutor() {
+		return encoderExecutor;
 	}
 
 	public void setEnableVideo(boolean enableVideo) {
@@ -30,6 +30,18 @@ public class WebSocketCommunityHandler {
 	
 	private static Logger logger = LoggerFactory.getLogger(WebSocketCommunityHandler.class);
 
+	/**
+	 * Json parser is not thread-safe, so each thread reuses its own parser. It's reset in each parse call
+	 */
+	private static final ThreadLocal<JSONParser> jsonParser = ThreadLocal.withInitial(JSONParser::new);
+
+	/**
+	 * Coalescing key of the room information. Only the latest room information waits in the queue of a session
+	 */
+	public static final String ROOM_INFORMATION_COALESCE_KEY = "roomInformation:";
+
+	public static final String PONG_COALESCE_KEY = "pong";
+
 	protected AppSettings appSettings;
 
 	private ApplicationContext appContext;
@@ -56,6 +68,10 @@ public class WebSocketCommunityHandler {
 		if (connectionContext != null) {
 			connectionContext.stop();
 		}
+		Object sender = session.getUserProperties().remove(WebSocketSender.USER_PROPERTY_KEY);
+		if (sender instanceof WebSocketSender) {
+			((WebSocketSender) sender).close();
+		}
 	}
 
 	public void onError(Session session, Throwable throwable) {
@@ -63,8 +79,6 @@ public class WebSocketCommunityHandler {
 	}
 
 	public void onMessage(Session session, String message) {
-		//json parser is not thread-safe
-		JSONParser jsonParser = new JSONParser();
 		try {
 
 			if (message == null) {
@@ -72,7 +86,7 @@ public class WebSocketCommunityHandler {
 				return;
 			}
 			
-			JSONObject jsonObject = (JSONObject) jsonParser.parse(message);
+			JSONObject jsonObject = (JSONObject) jsonParser.get().parse(message);
 
 			String cmd = (String) jsonObject.get(WebSocketConstants.COMMAND);
 			if (cmd == null) {
@@ -253,7 +267,7 @@ public class WebSocketCommunityHandler {
 	public void sendPongMessage(Session session) {
 		JSONObject jsonResponseObject = new JSONObject();
 		jsonResponseObject.put(WebSocketConstants.COMMAND, WebSocketConstants.PONG_COMMAND);
-		sendMessage(jsonResponseObject.toJSONString(), session);
+		sendMessage(jsonResponseObject.toJSONString(), session, PONG_COALESCE_KEY);
 	}
 	
 
@@ -295,25 +309,19 @@ public class WebSocketCommunityHandler {
 	}
 
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Queue the message to the session. It's sent asynchronously by {@link WebSocketSender} so the caller is not blocked by the client
+	 */
 	public void sendMessage(String message, final Session session) {
-		synchronized (this) {
-			if (session.isOpen()) {
-				try {
-					session.getBasicRemote().sendText(message);
-				} 
-				catch (Exception e) { 
-					//capture all exceptions because some unexpected events may happen it causes some internal errors
-					String exceptioMessage = e.getMessage();
-					
-					//ignore following messages
-					if (exceptioMessage == null || !exceptioMessage.contains("WebSocket session has been closed")) 
-					{
-						logger.error(ExceptionUtils.getStackTrace(e));
-					}
-					
-				}
-			}
+		sendMessage(message, session, null);
+	}
+
+	/**
+	 * @param coalesceKey if a message with the same key is still waiting to be sent, it's replaced with this one. It can be null
+	 */
+	public void sendMessage(String message, final Session session, String coalesceKey) {
+		if (session.isOpen()) {
+			WebSocketSender.getSender(session).send(message, coalesceKey);
 		}
 	}
 	
@@ -349,7 +357,7 @@ public class WebSocketCommunityHandler {
 		jsObject.put(WebSocketConstants.ATTR_ROOM_NAME, roomId);
 		jsObject.put(WebSocketConstants.ROOM, roomId);
 		String jsonString = jsObject.toJSONString();
-		sendMessage(jsonString, session);
+		sendMessage(jsonString, session, ROOM_INFORMATION_COALESCE_KEY + roomId);
 	}
 
 	private void prepareStreamListJSON(Map<String, String> streamIdNameMap, JSONArray jsonStreamIdArray,
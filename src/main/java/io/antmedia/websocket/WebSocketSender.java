@@ -0,0 +1,312 @@
+package io.antmedia.websocket;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.CloseReason.CloseCodes;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+
+/**
+ * Outbound message queue of a WebSocket session.
+ *
+ * Messages are sent one by one through the async remote endpoint, so the callers never wait for the network.
+ * If a message with the same coalescing key is still in the queue, it's replaced with the new one instead of queuing both.
+ * Batching of the remote endpoint is not used because disabling it flushes the batch synchronously in some containers
+ * and it would block the caller.
+ *
+ * Queue is bounded by message count and total length. If a client cannot keep up with its messages,
+ * the queue is dropped and the session is closed. Number of these sessions is registered to JMX.
+ */
+public class WebSocketSender {
+
+	private static final Logger logger = LoggerFactory.getLogger(WebSocketSender.class);
+
+	/**
+	 * Key of the sender in the user properties of the session
+	 */
+	public static final String USER_PROPERTY_KEY = "io.antmedia.websocket.sender";
+
+	public static final int DEFAULT_MAX_QUEUED_MESSAGES = 1000;
+
+	public static final int DEFAULT_MAX_QUEUED_CHARS = 1024 * 1024;
+
+	private static final LongAdder slowConsumerCount = new LongAdder();
+
+	static {
+		registerMBean();
+	}
+
+	private final Session session;
+
+	private final int maxQueuedMessages;
+
+	private final int maxQueuedChars;
+
+	private final Deque<Message> queue = new ArrayDeque<>();
+
+	/**
+	 * Queued messages by their coalescing keys
+	 */
+	private final Map<String, Message> coalescedMessages = new HashMap<>();
+
+	private int queuedChars = 0;
+
+	private boolean sending = false;
+
+	private boolean closed = false;
+
+	private long sentCount = 0;
+
+	private long coalescedCount = 0;
+
+	private static class Message {
+		String text;
+		final String coalesceKey;
+
+		Message(String text, String coalesceKey) {
+			this.text = text;
+			this.coalesceKey = coalesceKey;
+		}
+	}
+
+	private static class Stats implements WebSocketSenderStatsMXBean {
+		@Override
+		public long getSlowConsumerCount() {
+			return WebSocketSender.getSlowConsumerCount();
+		}
+	}
+
+	/**
+	 * Completion of a message. It continues with the next message if the send is completed in another thread.
+	 * If it's completed while sendText is still running, the sending loop continues instead of going deeper in the stack
+	 */
+	private class Completion implements SendHandler {
+		private boolean completed = false;
+		private boolean async = false;
+
+		@Override
+		public void onResult(SendResult result) {
+			if (!result.isOK()) {
+				logSendError(result.getException());
+			}
+			synchronized (WebSocketSender.this) {
+				completed = true;
+				if (!async) {
+					return;
+				}
+			}
+			sendQueued(next());
+		}
+	}
+
+	public WebSocketSender(Session session) {
+		this(session, DEFAULT_MAX_QUEUED_MESSAGES, DEFAULT_MAX_QUEUED_CHARS);
+	}
+
+	public WebSocketSender(Session session, int maxQueuedMessages, int maxQueuedChars) {
+		this.session = session;
+		this.maxQueuedMessages = maxQueuedMessages;
+		this.maxQueuedChars = maxQueuedChars;
+	}
+
+	/**
+	 * @return sender of the session. It's created if the session does not have one
+	 */
+	public static WebSocketSender getSender(Session session) {
+		Map<String, Object> userProperties = session.getUserProperties();
+		synchronized (userProperties) {
+			return (WebSocketSender) userProperties.computeIfAbsent(USER_PROPERTY_KEY, key -> new WebSocketSender(session));
+		}
+	}
+
+	private static void registerMBean() {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName("io.antmedia:type=WebSocketSender");
+			if (!mbs.isRegistered(objectName)) {
+				mbs.registerMBean(new StandardMBean(new Stats(), WebSocketSenderStatsMXBean.class, true), objectName);
+			}
+		} catch (Exception e) {
+			logger.warn("Error on jmx registration", e);
+		}
+	}
+
+	public void send(String text) {
+		send(text, null);
+	}
+
+	/**
+	 * Queue the message to send
+	 *
+	 * @param text message
+	 * @param coalesceKey if a message with the same key is waiting in the queue, it's replaced with this one. It can be null
+	 */
+	public void send(String text, String coalesceKey) {
+		Message first;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+
+			Message queued = coalesceKey != null ? coalescedMessages.get(coalesceKey) : null;
+			if (queued != null) {
+				queuedChars += text.length() - queued.text.length();
+				queued.text = text;
+				coalescedCount++;
+				return;
+			}
+
+			if (queue.size() >= maxQueuedMessages || queuedChars + text.length() > maxQueuedChars) {
+				closed = true;
+				queue.clear();
+				coalescedMessages.clear();
+				queuedChars = 0;
+				first = null;
+			}
+			else {
+				Message message = new Message(text, coalesceKey);
+				queue.add(message);
+				queuedChars += text.length();
+				if (coalesceKey != null) {
+					coalescedMessages.put(coalesceKey, message);
+				}
+				if (sending) {
+					return;
+				}
+				sending = true;
+				first = poll();
+			}
+		}
+
+		if (first == null) {
+			closeSlowConsumer();
+			return;
+		}
+		sendQueued(first);
+	}
+
+	private Message poll() {
+		Message message = queue.poll();
+		if (message != null) {
+			queuedChars -= message.text.length();
+			if (message.coalesceKey != null) {
+				coalescedMessages.remove(message.coalesceKey, message);
+			}
+		}
+		return message;
+	}
+
+	/**
+	 * @return next message to send or null if there is nothing to send. Sending is stopped if it returns null
+	 */
+	private synchronized Message next() {
+		Message message = closed ? null : poll();
+		if (message == null) {
+			sending = false;
+		}
+		return message;
+	}
+
+	private void sendQueued(Message message) {
+		while (message != null) {
+			Completion completion = new Completion();
+			try {
+				if (!session.isOpen()) {
+					close();
+					return;
+				}
+				session.getAsyncRemote().sendText(message.text, completion);
+			}
+			catch (Exception e) {
+				logSendError(e);
+				completion.completed = true;
+			}
+
+			synchronized (this) {
+				sentCount++;
+				if (!completion.completed) {
+					completion.async = true;
+					return;
+				}
+			}
+			message = next();
+		}
+	}
+
+	private void logSendError(Throwable t) {
+		if (t == null) {
+			logger.error("Message cannot be sent to WebSocket session:{}", session.getId());
+			return;
+		}
+		String message = t.getMessage();
+		//ignore closed sessions
+		if (message == null || !message.contains("WebSocket session has been closed")) {
+			logger.error("Message cannot be sent to WebSocket session:{} error:{}", session.getId(), ExceptionUtils.getStackTrace(t));
+		}
+	}
+
+	private void closeSlowConsumer() {
+		slowConsumerCount.increment();
+		logger.warn("Closing WebSocket session:{} because it cannot keep up with the messages. Queue limits are {} messages and {} chars",
+				session.getId(), maxQueuedMessages, maxQueuedChars);
+		try {
+			session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, "Slow consumer"));
+		}
+		catch (IOException e) {
+			logger.warn("Cannot close WebSocket session:{} error:{}", session.getId(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Drop the queued messages and stop sending. It's called when the session is closed
+	 */
+	public synchronized void close() {
+		closed = true;
+		queue.clear();
+		coalescedMessages.clear();
+		queuedChars = 0;
+	}
+
+	public synchronized int getQueuedMessageCount() {
+		return queue.size();
+	}
+
+	public synchronized int getQueuedChars() {
+		return queuedChars;
+	}
+
+	public synchronized long getSentCount() {
+		return sentCount;
+	}
+
+	public synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return number of the sessions closed because they could not keep up with their messages
+	 */
+	public static long getSlowConsumerCount() {
+		return slowConsumerCount.sum();
+	}
+}
@@ -0,0 +1,15 @@
+package io.antmedia.websocket;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of the {@link WebSocketSender}s
+ */
+@MXBean
+public interface WebSocketSenderStatsMXBean {
+
+	/**
+	 * @return number of the sessions closed because they could not keep up with their messages
+	 */
+	public long getSlowConsumerCount();
+}
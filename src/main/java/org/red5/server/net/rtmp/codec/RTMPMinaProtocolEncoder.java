@@ -70,16 +70,14 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
                 lock.acquire();
                 log.trace("Encoder lock acquired {}", conn.getSessionId());
                 // get the buffer
-                final IoBuffer buf = message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
+                final IoBuffer[] parts = message instanceof IoBuffer ? new IoBuffer[] { (IoBuffer) message } : encoder.encodeParts(message);
+                final IoBuffer buf = parts != null ? parts[0] : null;
                 if (buf != null) {
                     int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
                     log.trace("Requested chunk size: {} target chunk size: {}", requestedWriteChunkSize, targetChunkSize);
-                    if (buf.remaining() <= targetChunkSize * 2) {
-                        log.trace("Writing output data");
-                        out.write(buf);
-                    } else {
-                        int sentChunks = Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
-                        log.trace("Wrote {} chunks", sentChunks);
+                    // there are two parts if the header of this connection is followed by the chunked payload that is shared with the other subscribers
+                    for (IoBuffer part : parts) {
+                        write(out, part, requestedWriteChunkSize);
                     }
                 } else {
                     log.trace("Response buffer was null after encoding");
@@ -105,6 +103,16 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
         }
     }
 
+    private void write(ProtocolEncoderOutput out, IoBuffer buf, int requestedWriteChunkSize) {
+        if (buf.remaining() <= targetChunkSize * 2) {
+            log.trace("Writing output data");
+            out.write(buf);
+        } else {
+            int sentChunks = Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
+            log.trace("Wrote {} chunks", sentChunks);
+        }
+    }
+
     /**
      * Sets an RTMP protocol encoder
      * 
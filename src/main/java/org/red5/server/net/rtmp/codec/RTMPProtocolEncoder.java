@@ -36,6 +36,7 @@ import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPUtils;
 import org.red5.server.net.rtmp.codec.RTMP.LiveTimestampMapping;
 import org.red5.server.net.rtmp.event.Aggregate;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
@@ -121,6 +122,27 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
         return null;
     }
 
+    /**
+     * Encodes object with given protocol state to the buffers that should be written in order
+     * 
+     * @param message
+     *            Object to encode
+     * @return buffers of the encoded data or null
+     * @see #encodePacketParts(Packet)
+     */
+    public IoBuffer[] encodeParts(Object message) {
+        if (message != null) {
+            try {
+                return encodePacketParts((Packet) message);
+            } catch (Exception e) {
+                log.error("Error encoding", e);
+            }
+        } else {
+            log.debug("Message is null at encode, expecting a Packet");
+        }
+        return null;
+    }
+
     /**
      * Encode packet.
      *
@@ -129,7 +151,30 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      * @return Encoded data
      */
     public IoBuffer encodePacket(Packet packet) {
-        IoBuffer out = null;
+        IoBuffer[] parts = encodePacketParts(packet);
+        if (parts == null) {
+            return null;
+        }
+        if (parts.length == 1) {
+            return parts[0];
+        }
+        IoBuffer out = IoBuffer.allocate(parts[0].remaining() + parts[1].remaining(), false);
+        out.put(parts[0]);
+        out.put(parts[1]);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Encode packet. If the message has a {@link SharedChunkedPayload}, the result is the header of this connection and
+     * the read-only chunked payload that is shared by the other connections. Otherwise the result is a single buffer.
+     *
+     * @param packet
+     *            RTMP packet
+     * @return Encoded data or null if message is dropped
+     */
+    public IoBuffer[] encodePacketParts(Packet packet) {
+        IoBuffer[] parts = null;
         final Header header = packet.getHeader();
         final int channelId = header.getChannelId();
         log.trace("Channel id: {}", channelId);
@@ -159,37 +204,47 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
                 // set last write packet
                 rtmp.setLastWritePacket(channelId, packet);
                 int chunkSize = rtmp.getWriteChunkSize();
-                // maximum chunk header size with extended timestamp
-                int chunkHeaderSize = 7;
-                int numChunks = (int) Math.ceil(dataLen / (float) chunkSize);
-                int bufSize = dataLen + headerSize + (numChunks > 0 ? (numChunks - 1) * chunkHeaderSize : 0);
-                out = IoBuffer.allocate(bufSize, false);
-                // encode the header
-                encodeHeader(header, lastHeader, out);
-                if (numChunks == 1) {
-                    // we can do it with a single copy
-                    BufferUtils.put(out, data, dataLen);
+                SharedChunkedPayload sharedPayload = message instanceof BaseEvent ? ((BaseEvent) message).getSharedPayload() : null;
+                if (sharedPayload != null) {
+                    // only the header is encoded for this connection
+                    IoBuffer out = IoBuffer.allocate(headerSize, false);
+                    encodeHeader(header, lastHeader, out);
+                    out.flip();
+                    parts = new IoBuffer[] { out, sharedPayload.getChunkedPayload(data, chunkSize, channelId, header.getExtendedTimestamp()) };
                 } else {
-                    int extendedTimestamp = header.getExtendedTimestamp();
-                    for (int i = 0; i < numChunks - 1; i++) {
-                        BufferUtils.put(out, data, chunkSize);
-                        dataLen -= chunkSize;
-                        RTMPUtils.encodeHeaderByte(out, HEADER_CONTINUE, channelId);
-                        if (extendedTimestamp != 0) {
-                            out.putInt(extendedTimestamp);
+                    // maximum chunk header size with extended timestamp
+                    int chunkHeaderSize = 7;
+                    int numChunks = (int) Math.ceil(dataLen / (float) chunkSize);
+                    int bufSize = dataLen + headerSize + (numChunks > 0 ? (numChunks - 1) * chunkHeaderSize : 0);
+                    IoBuffer out = IoBuffer.allocate(bufSize, false);
+                    // encode the header
+                    encodeHeader(header, lastHeader, out);
+                    if (numChunks == 1) {
+                        // we can do it with a single copy
+                        BufferUtils.put(out, data, dataLen);
+                    } else {
+                        int extendedTimestamp = header.getExtendedTimestamp();
+                        for (int i = 0; i < numChunks - 1; i++) {
+                            BufferUtils.put(out, data, chunkSize);
+                            dataLen -= chunkSize;
+                            RTMPUtils.encodeHeaderByte(out, HEADER_CONTINUE, channelId);
+                            if (extendedTimestamp != 0) {
+                                out.putInt(extendedTimestamp);
+                            }
                         }
+                        BufferUtils.put(out, data, dataLen);
                     }
-                    BufferUtils.put(out, data, dataLen);
+                    out.flip();
+                    parts = new IoBuffer[] { out };
                 }
                 data.free();
-                out.flip();
                 data = null;
             }
         } else {
             log.trace("Dropped: {}", message);
         }
         message.release();
-        return out;
+        return parts;
     }
 
     /**
@@ -0,0 +1,110 @@
+package org.red5.server.net.rtmp.codec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.utils.BufferUtils;
+import org.red5.server.net.rtmp.RTMPUtils;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Chunked form of a live audio or video payload that is shared by all the subscribers of the stream.
+ *
+ * The payload after the first chunk header only depends on the chunk size, the channel id and the extended timestamp,
+ * so it's encoded once for each of them and the same read-only buffer is written to all the connections.
+ * The first chunk header is still encoded for each connection because it depends on the last header of the connection.
+ */
+public class SharedChunkedPayload {
+
+    private final ConcurrentMap<Key, IoBuffer> chunkedPayloads = new ConcurrentHashMap<>(4);
+
+    private final AtomicInteger encodeCount = new AtomicInteger();
+
+    private static final class Key {
+        private final int chunkSize;
+        private final int channelId;
+        private final int extendedTimestamp;
+
+        Key(int chunkSize, int channelId, int extendedTimestamp) {
+            this.chunkSize = chunkSize;
+            this.channelId = channelId;
+            this.extendedTimestamp = extendedTimestamp;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return chunkSize == other.chunkSize && channelId == other.channelId && extendedTimestamp == other.extendedTimestamp;
+        }
+
+        @Override
+        public int hashCode() {
+            return (chunkSize * 31 + channelId) * 31 + extendedTimestamp;
+        }
+    }
+
+    /**
+     * Returns the chunked payload, it's encoded if it's the first request for the chunk size, channel id and extended timestamp
+     *
+     * @param data
+     *            payload of the message, its position is not changed
+     * @param chunkSize
+     *            write chunk size of the connection
+     * @param channelId
+     *            channel id of the message
+     * @param extendedTimestamp
+     *            extended timestamp of the header or 0
+     * @return read-only buffer of the chunked payload for the caller
+     */
+    public IoBuffer getChunkedPayload(IoBuffer data, int chunkSize, int channelId, int extendedTimestamp) {
+        IoBuffer chunkedPayload = chunkedPayloads.computeIfAbsent(new Key(chunkSize, channelId, extendedTimestamp), key -> {
+            encodeCount.incrementAndGet();
+            return chunk(data.duplicate(), chunkSize, channelId, extendedTimestamp).asReadOnlyBuffer();
+        });
+        return chunkedPayload.duplicate();
+    }
+
+    /**
+     * @return number of the encodings done for the payload
+     */
+    public int getEncodeCount() {
+        return encodeCount.get();
+    }
+
+    /**
+     * Splits the remaining data to chunks and puts continuation chunk headers between them
+     *
+     * @param data
+     *            payload
+     * @param chunkSize
+     *            chunk size
+     * @param channelId
+     *            channel id
+     * @param extendedTimestamp
+     *            extended timestamp that is written after each continuation header if it's not 0
+     * @return chunked payload ready to read
+     */
+    public static IoBuffer chunk(IoBuffer data, int chunkSize, int channelId, int extendedTimestamp) {
+        int dataLen = data.remaining();
+        int numChunks = (int) Math.ceil(dataLen / (float) chunkSize);
+        // maximum chunk header size with extended timestamp
+        int chunkHeaderSize = 7;
+        IoBuffer out = IoBuffer.allocate(dataLen + (numChunks > 0 ? (numChunks - 1) * chunkHeaderSize : 0), false);
+        for (int i = 0; i < numChunks - 1; i++) {
+            BufferUtils.put(out, data, chunkSize);
+            dataLen -= chunkSize;
+            RTMPUtils.encodeHeaderByte(out, Constants.HEADER_CONTINUE, channelId);
+            if (extendedTimestamp != 0) {
+                out.putInt(extendedTimestamp);
+            }
+        }
+        BufferUtils.put(out, data, dataLen);
+        out.flip();
+        return out;
+    }
+}
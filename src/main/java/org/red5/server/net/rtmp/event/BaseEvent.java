@@ -25,6 +25,7 @@ import java.io.ObjectOutput;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.red5.server.api.event.IEventListener;
+import org.red5.server.net.rtmp.codec.SharedChunkedPayload;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.slf4j.Logger;
@@ -77,6 +78,11 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
      */
     protected AtomicInteger refcount = new AtomicInteger(1);
 
+    /**
+     * Chunked payload that is shared by the subscribers of a live stream, it's not serialized
+     */
+    protected SharedChunkedPayload sharedPayload;
+
     public BaseEvent() {
         // set a default type
         this(Type.SERVER, null);
@@ -140,6 +146,20 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
         this.header = header;
     }
 
+    public SharedChunkedPayload getSharedPayload() {
+        return sharedPayload;
+    }
+
+    /**
+     * Sets the shared chunked payload of the event. It should only be set if the payload is not changed for any subscriber
+     * 
+     * @param sharedPayload
+     *            shared chunked payload
+     */
+    public void setSharedPayload(SharedChunkedPayload sharedPayload) {
+        this.sharedPayload = sharedPayload;
+    }
+
     /** {@inheritDoc} */
     public boolean hasSource() {
         return source != null;
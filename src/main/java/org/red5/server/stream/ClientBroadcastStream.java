@@ -69,7 +69,9 @@ import org.red5.server.messaging.IProvider;
 import org.red5.server.messaging.IPushableConsumer;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.codec.SharedChunkedPayload;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Invoke;
 import org.red5.server.net.rtmp.event.Notify;
@@ -440,6 +442,10 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
 				try {
 					// route to live
 					if (livePipe != null) {
+						if (rtmpEvent instanceof AudioData || rtmpEvent instanceof VideoData) {
+							// payload is chunked once for all of the subscribers
+							((BaseEvent) rtmpEvent).setSharedPayload(new SharedChunkedPayload());
+						}
 						// create new RTMP message, initialize it and push through pipe
 						RTMPMessage msg = RTMPMessage.build(rtmpEvent, eventTime);
 						livePipe.pushMessage(msg);
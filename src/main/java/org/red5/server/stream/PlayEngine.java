@@ -1060,11 +1060,13 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 		case Constants.TYPE_AUDIO_DATA:
 			dataReference = ((AudioData) messageIn.getBody()).getData();
 			event = new AudioData(dataReference);
+			((AudioData) event).setSharedPayload(((AudioData) messageIn.getBody()).getSharedPayload());
 			event.setTimestamp(messageIn.getBody().getTimestamp());
 			break;
 		case Constants.TYPE_VIDEO_DATA:
 			dataReference = ((VideoData) messageIn.getBody()).getData();
 			event = new VideoData(dataReference);
+			((VideoData) event).setSharedPayload(((VideoData) messageIn.getBody()).getSharedPayload());
 			event.setTimestamp(messageIn.getBody().getTimestamp());
 			break;
 		default:
@@ -168,6 +168,7 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                         audioData.setTimestamp(header.getTimer());
                         log.trace("Source type: {}", ((AudioData) msg).getSourceType());
                         audioData.setSourceType(((AudioData) msg).getSourceType());
+                        audioData.setSharedPayload(((AudioData) msg).getSharedPayload());
                         audio.write(audioData);
                     } else {
                         log.warn("Audio data was not found");
@@ -182,6 +183,7 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                         videoData.setTimestamp(header.getTimer());
                         log.trace("Source type: {}", ((VideoData) msg).getSourceType());
                         videoData.setSourceType(((VideoData) msg).getSourceType());
+                        videoData.setSharedPayload(((VideoData) msg).getSharedPayload());
                         video.write(videoData);
                     } else {
                         log.warn("Video data was not found");
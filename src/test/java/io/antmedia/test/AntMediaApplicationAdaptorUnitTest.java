@@ -410,6 +410,11 @@ public class AntMediaApplicationAdaptorUnitTest {
 		newSettings.setPlayJwtControlEnabled(false);
 		newSettings.setPlayTokenControlEnabled(false);
 
+		//blocking is not an async muxer overflow policy
+		newSettings.setAsyncMuxerOverflowPolicy("block");
+		assertFalse(spyAdapter.updateSettings(newSettings, false, false));
+		newSettings.setAsyncMuxerOverflowPolicy("disconnect");
+
 
 		assertTrue(spyAdapter.updateSettings(newSettings, false, false));
 
@@ -563,13 +563,20 @@ public class AppSettingsUnitTest extends AbstractJUnit4SpringContextTests {
 		assertNull(appSettings.getRecordingSubfolder());
 		assertEquals("application/json", appSettings.getWebhookContentType());
 
+		assertFalse(appSettings.isAsyncMuxerFanOutEnabled());
+		assertEquals(512, appSettings.getAsyncMuxerQueueSize());
+		assertEquals("drop_to_next_keyframe", appSettings.getAsyncMuxerOverflowPolicy());
+		assertFalse(appSettings.isHlsInMemoryStoreEnabled());
+		assertEquals(512, appSettings.getHlsInMemoryStoreMaxSizeMB());
+		assertEquals(0, appSettings.getVodPacingBurstMs());
+
 
 		//if we add a new field, we just need to check its default value in this test
 		//When a new field is added or removed please update the number of fields and make this test pass
 		//by also checking its default value. 
 
 		assertEquals("New field is added to settings. PAY ATTENTION: Please CHECK ITS DEFAULT VALUE and fix the number of fields.", 
-					182, numberOfFields);
+					188, numberOfFields);
 
 		
 	}
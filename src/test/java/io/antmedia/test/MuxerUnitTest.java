@@ -54,7 +54,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -126,16 +125,20 @@ import io.antmedia.RecordType;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
 import io.antmedia.datastore.db.InMemoryDataStore;
+import io.antmedia.datastore.db.StreamStatsWriteBehind;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.Endpoint;
 import io.antmedia.integration.AppFunctionalV2Test;
 import io.antmedia.integration.MuxingTest;
+import io.antmedia.muxer.AsyncMuxerWriter;
 import io.antmedia.muxer.HLSMuxer;
 import io.antmedia.muxer.RecordMuxer;
 import io.antmedia.muxer.IAntMediaStreamHandler;
 import io.antmedia.muxer.Mp4Muxer;
 import io.antmedia.muxer.MuxAdaptor;
 import io.antmedia.muxer.Muxer;
+import io.antmedia.muxer.JitterBufferStats;
+import io.antmedia.muxer.PacketJitterBuffer;
 import io.antmedia.muxer.RtmpMuxer;
 import io.antmedia.muxer.WebMMuxer;
 import io.antmedia.muxer.parser.AACConfigParser;
@@ -1654,7 +1657,7 @@ public class MuxerUnitTest extends AbstractJUnit4SpringContextTests {
 		MuxAdaptor muxAdaptor = MuxAdaptor.initializeMuxAdaptor(clientBroadcastStream, broadcast, false, appScope);
 
 		//this value should be -1. It means it is uninitialized
-		assertEquals(0, muxAdaptor.getPacketTimeList().size());
+		assertEquals(0, muxAdaptor.getStreamHealthEstimator().getPacketCount());
 		File file = null;
 
 		try {
@@ -2251,7 +2254,7 @@ public class MuxerUnitTest extends AbstractJUnit4SpringContextTests {
 		}
 
 		MuxAdaptor muxAdaptor = Mockito.spy(MuxAdaptor.initializeMuxAdaptor(null, null, false, appScope));
-		ConcurrentSkipListSet<IStreamPacket> bufferQueue = muxAdaptor.getBufferQueue();
+		PacketJitterBuffer<IStreamPacket> bufferQueue = muxAdaptor.getBufferQueue();
 
 
 		ITag tag = mock(ITag.class);
@@ -2305,15 +2308,71 @@ public class MuxerUnitTest extends AbstractJUnit4SpringContextTests {
 	}
 
 
+	@Test
+	public void testAsyncMuxerWriterIsNotCreatedAfterRemove() {
+		appScope = (WebScope) applicationContext.getBean("web.scope");
+		MuxAdaptor muxAdaptor = Mockito.spy(MuxAdaptor.initializeMuxAdaptor(null, null, false, appScope));
+		muxAdaptor.setAsyncMuxerFanOutEnabled(true);
+		muxAdaptor.setAsyncMuxerQueueSize(16);
+		muxAdaptor.setAsyncMuxerOverflowPolicy(AsyncMuxerWriter.OverflowPolicy.DROP_TO_NEXT_KEYFRAME);
+
+		Muxer muxer = mock(Muxer.class);
+		assertTrue(muxAdaptor.addMuxer(muxer));
+		//writer is created when the muxer is added
+		assertEquals(1, muxAdaptor.getAsyncMuxerStats().size());
+		assertFalse(muxAdaptor.getAsyncMuxerStats().get(0).disconnected);
+
+		assertTrue(muxAdaptor.removeMuxer(muxer));
+		verify(muxer).writeTrailer();
+		//removed muxer does not get a writer again
+		assertTrue(muxAdaptor.getAsyncMuxerStats().isEmpty());
+	}
+
+	@Test
+	public void testOnlyNonBlockingMuxersAreWrittenInDrainWorker() {
+		appScope = (WebScope) applicationContext.getBean("web.scope");
+		MuxAdaptor muxAdaptor = Mockito.spy(MuxAdaptor.initializeMuxAdaptor(null, null, false, appScope));
+		muxAdaptor.setAsyncMuxerFanOutEnabled(false);
+		muxAdaptor.setAsyncMuxerQueueSize(16);
+		muxAdaptor.setAsyncMuxerOverflowPolicy(AsyncMuxerWriter.OverflowPolicy.DROP_TO_NEXT_KEYFRAME);
+
+		assertFalse(new HLSMuxer(vertx, Mockito.mock(StorageClient.class), "streams", 7, null, false).isNonBlockingWrite());
+
+		//muxers may block by default so they get a writer even if fan-out is disabled
+		Muxer blockingMuxer = mock(Muxer.class);
+		assertTrue(muxAdaptor.addMuxer(blockingMuxer));
+		assertEquals(1, muxAdaptor.getAsyncMuxerStats().size());
+
+		Muxer nonBlockingMuxer = mock(Muxer.class);
+		when(nonBlockingMuxer.isNonBlockingWrite()).thenReturn(true);
+		assertTrue(muxAdaptor.addMuxer(nonBlockingMuxer));
+		assertEquals(1, muxAdaptor.getAsyncMuxerStats().size());
+
+		//fan-out moves the non-blocking muxers to the writer threads as well
+		muxAdaptor.setAsyncMuxerFanOutEnabled(true);
+		Muxer nonBlockingMuxer2 = mock(Muxer.class);
+		when(nonBlockingMuxer2.isNonBlockingWrite()).thenReturn(true);
+		assertTrue(muxAdaptor.addMuxer(nonBlockingMuxer2));
+		assertEquals(2, muxAdaptor.getAsyncMuxerStats().size());
+
+		assertTrue(muxAdaptor.removeMuxer(blockingMuxer));
+		assertTrue(muxAdaptor.removeMuxer(nonBlockingMuxer));
+		assertTrue(muxAdaptor.removeMuxer(nonBlockingMuxer2));
+		assertTrue(muxAdaptor.getAsyncMuxerStats().isEmpty());
+	}
+
 	@Test
 	public void testAddBufferQueue() {
 		appScope = (WebScope) applicationContext.getBean("web.scope");
 		MuxAdaptor muxAdaptor = Mockito.spy(MuxAdaptor.initializeMuxAdaptor(null, null, false, appScope));
 
-		muxAdaptor.setBufferTimeMs(1000);
+		//there is no jitter buffer stats if buffering is not enabled
+		assertNull(muxAdaptor.getJitterBufferStats());
 
+		muxAdaptor.setBufferTimeMs(1000);
 
-		assertFalse(muxAdaptor.isBuffering());
+		//jitter buffer is in buffering state until it's filled
+		assertTrue(muxAdaptor.isBuffering());
 
 		muxAdaptor.setBuffering(true);
 
@@ -2346,6 +2405,16 @@ public class MuxerUnitTest extends AbstractJUnit4SpringContextTests {
 		long bufferedDuration = muxAdaptor.getBufferQueue().last().getTimestamp() - muxAdaptor.getBufferQueue().first().getTimestamp();
 		assertEquals(1900, bufferedDuration);
 
+		JitterBufferStats jitterBufferStats = muxAdaptor.getJitterBufferStats();
+		assertEquals(1000, jitterBufferStats.bufferTimeMs);
+		assertEquals(1900, jitterBufferStats.bufferedDurationMs);
+		assertEquals(32, jitterBufferStats.droppedPacketCount);
+		//playout is restarted after the buffer is trimmed
+		assertFalse(jitterBufferStats.buffering);
+		assertEquals(PacketJitterBuffer.OCCUPANCY_BUCKET_BOUNDS_MS.length + 1, jitterBufferStats.occupancyHistogram.length);
+		//duration is sampled for each packet
+		assertEquals(52, Arrays.stream(jitterBufferStats.occupancyHistogram).sum());
+
 	}
 
 	@Test
@@ -2368,7 +2437,7 @@ public class MuxerUnitTest extends AbstractJUnit4SpringContextTests {
 		//it should false because there is no packet in the queue
 		assertTrue(muxAdaptor.isBuffering());
 
-		ConcurrentSkipListSet<IStreamPacket> bufferQueue = muxAdaptor.getBufferQueue();
+		PacketJitterBuffer<IStreamPacket> bufferQueue = muxAdaptor.getBufferQueue();
 		muxAdaptor.setBuffering(false);
 
 
@@ -2690,7 +2759,8 @@ public class MuxerUnitTest extends AbstractJUnit4SpringContextTests {
 
 		assertEquals(10, broadcast2.getPendingPacketSize());
 		long lastUpdateTime = broadcast2.getUpdateTime();
-		assertTrue((System.currentTimeMillis() - lastUpdateTime) < 1000);
+		//quality parameters are written to the datastore in the next flush of the write-behind
+		assertTrue((System.currentTimeMillis() - lastUpdateTime) < 1000 + StreamStatsWriteBehind.DEFAULT_FLUSH_PERIOD_MS);
 
 		for (int i = 0; i < 100; i++) {
 			//it should not update because it updates for every 5 seconds
@@ -2722,7 +2792,7 @@ public class MuxerUnitTest extends AbstractJUnit4SpringContextTests {
 		assertEquals(12120, broadcast2.getPendingPacketSize());
 		assertNotEquals(lastUpdateTime, broadcast2.getUpdateTime());
 
-		assertTrue((System.currentTimeMillis() - broadcast2.getUpdateTime()) < 1000);
+		assertTrue((System.currentTimeMillis() - broadcast2.getUpdateTime()) < 1000 + StreamStatsWriteBehind.DEFAULT_FLUSH_PERIOD_MS);
 
 		Application.enableSourceHealthUpdate = false;
 
@@ -0,0 +1,99 @@
+package io.antmedia.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import io.antmedia.streamsource.PacketPacer;
+
+public class PacketPacerTest {
+
+	/**
+	 * Stop condition that counts how many times it's checked. Pacer checks it only if it waits for the packet
+	 */
+	private static class WaitCounter implements BooleanSupplier {
+		private int count = 0;
+
+		@Override
+		public boolean getAsBoolean() {
+			count++;
+			return false;
+		}
+	}
+
+	@Test
+	public void testPacketsAreReleasedAtTheirTime() {
+		PacketPacer pacer = new PacketPacer(0);
+
+		long startTime = System.currentTimeMillis();
+		//first packet is released immediately even if its dts is not zero
+		WaitCounter waitCounter = new WaitCounter();
+		assertTrue(pacer.waitUntilReleaseTime(1000, waitCounter));
+		assertEquals(0, waitCounter.count);
+
+		//release times are relative to the first packet
+		long firstReleaseTime = pacer.getReleaseTimeMs(1000);
+		assertTrue(firstReleaseTime >= startTime);
+		assertEquals(firstReleaseTime + 300, pacer.getReleaseTimeMs(1300));
+
+		assertTrue(pacer.waitUntilReleaseTime(1300, waitCounter));
+		assertTrue(waitCounter.count > 0);
+		//it's not released before its time. Upper bound is loose because the thread may be scheduled late
+		long elapsedTime = System.currentTimeMillis() - startTime;
+		assertTrue("elapsed time " + elapsedTime, elapsedTime >= 300 && elapsedTime < 5000);
+		assertTrue(pacer.getLastPacingErrorMs() >= 0);
+		assertTrue(pacer.getMaxPacingErrorMs() >= pacer.getLastPacingErrorMs());
+
+		//reset makes the next packet the first packet
+		pacer.reset();
+		waitCounter = new WaitCounter();
+		assertTrue(pacer.waitUntilReleaseTime(50000, waitCounter));
+		assertEquals(0, waitCounter.count);
+	}
+
+	@Test
+	public void testBurstOnStart() {
+		PacketPacer pacer = new PacketPacer(500);
+		assertEquals(500, pacer.getBurstMs());
+
+		long startTime = System.currentTimeMillis();
+		WaitCounter waitCounter = new WaitCounter();
+		for (int dts = 0; dts <= 500; dts += 20) {
+			assertTrue(pacer.waitUntilReleaseTime(dts, waitCounter));
+		}
+		//packets in the burst window are not waited
+		assertEquals(0, waitCounter.count);
+
+		//packets after the burst window are paced
+		assertTrue(pacer.waitUntilReleaseTime(700, waitCounter));
+		assertTrue(waitCounter.count > 0);
+		long elapsedTime = System.currentTimeMillis() - startTime;
+		assertTrue("elapsed time " + elapsedTime, elapsedTime >= 200 && elapsedTime < 5000);
+		assertEquals(0, pacer.getLatePacketCount());
+	}
+
+	@Test
+	public void testStopWhileWaiting() {
+		PacketPacer pacer = new PacketPacer(0);
+		assertTrue(pacer.waitUntilReleaseTime(0, () -> false));
+
+		long startTime = System.currentTimeMillis();
+		assertFalse(pacer.waitUntilReleaseTime(60000, () -> System.currentTimeMillis() - startTime > 200));
+		//it's stopped long before the release time of the packet
+		long elapsedTime = System.currentTimeMillis() - startTime;
+		assertTrue("elapsed time " + elapsedTime, elapsedTime >= 200 && elapsedTime < 10000);
+	}
+
+	@Test
+	public void testLatePackets() throws InterruptedException {
+		PacketPacer pacer = new PacketPacer(0);
+		assertTrue(pacer.waitUntilReleaseTime(0, () -> false));
+		Thread.sleep(300);
+		assertTrue(pacer.waitUntilReleaseTime(20, () -> false));
+		assertEquals(1, pacer.getLatePacketCount());
+	}
+}
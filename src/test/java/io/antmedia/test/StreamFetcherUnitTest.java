@@ -12,6 +12,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -1427,6 +1428,47 @@ public class StreamFetcherUnitTest extends AbstractJUnit4SpringContextTests {
 		assertFalse(worker.readMore(mock(AVPacket.class)));
 		verify(worker, times(2)).packetRead(any());
 	}
+
+	@Test
+	public void testReadStatsAndInterrupt() throws Exception {
+		StreamFetcher fetcher = new StreamFetcher("", "", AntMediaApplicationAdapter.LIVE_STREAM, appScope, vertx, 0);
+		fetcher.setMuxAdaptor(mock(MuxAdaptor.class));
+		WorkerThread worker = spy(fetcher.new WorkerThread());
+
+		doNothing().when(worker).packetRead(any());
+		doNothing().when(worker).unReferencePacket(any());
+
+		assertFalse(fetcher.isReadInterrupted());
+
+		//read is not interrupted while it's blocked shorter than the timeout
+		doAnswer(invocation -> {
+			assertFalse(fetcher.isReadInterrupted());
+			Thread.sleep(50);
+			return 0;
+		}).when(worker).readNextPacket(any());
+		assertTrue(worker.readMore(mock(AVPacket.class)));
+		assertTrue(worker.readMore(mock(AVPacket.class)));
+
+		assertEquals(2, fetcher.getReadCount());
+		assertTrue(fetcher.getLastReadLatencyMs() >= 50);
+		assertTrue(fetcher.getMaxReadLatencyMs() >= fetcher.getAverageReadLatencyMs());
+		assertTrue(fetcher.getAverageReadLatencyMs() >= 50);
+
+		//stop request interrupts the blocking read
+		fetcher.stopStream();
+		assertTrue(fetcher.isReadInterrupted());
+		fetcher.debugSetStopRequestReceived(false);
+		assertFalse(fetcher.isReadInterrupted());
+	}
+
+	@Test
+	public void testReconnectPeriod() {
+		StreamFetcher fetcher = new StreamFetcher("", "", AntMediaApplicationAdapter.LIVE_STREAM, appScope, vertx, 0);
+		assertEquals(0, fetcher.getConsecutiveReconnectCount());
+		assertEquals(0, fetcher.getReconnectCount());
+		//first retry is not delayed more than before
+		assertEquals(3000, fetcher.getReconnectPeriodMs());
+	}
 	
 	@Test
 	public void testWritePacketOffset() {
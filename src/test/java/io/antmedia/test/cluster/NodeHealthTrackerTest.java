@@ -0,0 +1,171 @@
+package io.antmedia.test.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.auth0.jwt.JWT;
+
+import io.antmedia.cluster.ClusterNode;
+import io.antmedia.cluster.IClusterStore;
+import io.antmedia.cluster.NodeHealthTracker;
+import io.antmedia.filter.JWTFilter;
+import io.antmedia.rest.servlet.NodeRequestForwarder;
+
+public class NodeHealthTrackerTest {
+
+	@Test
+	public void testClusterStatus() {
+		IClusterStore clusterStore = mock(IClusterStore.class);
+		ClusterNode aliveNode = new ClusterNode("10.0.0.1", "node1");
+		aliveNode.setLastUpdateTime(System.currentTimeMillis());
+		ClusterNode deadNode = new ClusterNode("10.0.0.2", "node2");
+		deadNode.setLastUpdateTime(System.currentTimeMillis() - 3 * ClusterNode.NODE_UPDATE_PERIOD);
+		when(clusterStore.getClusterNodeFromIP("10.0.0.1")).thenReturn(aliveNode);
+		when(clusterStore.getClusterNodeFromIP("10.0.0.2")).thenReturn(deadNode);
+
+		NodeHealthTracker healthTracker = new NodeHealthTracker(() -> clusterStore);
+		assertTrue(healthTracker.isAvailable("10.0.0.1"));
+		assertFalse(healthTracker.isAvailable("10.0.0.2"));
+		//unknown nodes are available until their requests fail
+		assertTrue(healthTracker.isAvailable("10.0.0.3"));
+
+		//cluster status is cached for a node update period
+		for (int i = 0; i < 10; i++) {
+			assertTrue(healthTracker.isAvailable("10.0.0.1"));
+		}
+		verify(clusterStore, times(1)).getClusterNodeFromIP("10.0.0.1");
+
+		//it works without cluster store
+		healthTracker = new NodeHealthTracker(() -> null);
+		assertTrue(healthTracker.isAvailable("10.0.0.2"));
+	}
+
+	@Test
+	public void testCircuitBreaker() {
+		NodeHealthTracker healthTracker = new NodeHealthTracker(() -> null);
+		String address = "10.0.0.1";
+
+		for (int i = 0; i < NodeHealthTracker.FAILURE_THRESHOLD - 1; i++) {
+			healthTracker.reportFailure(address);
+			assertTrue(healthTracker.isAvailable(address));
+		}
+		healthTracker.reportSuccess(address);
+		assertEquals(0, healthTracker.getConsecutiveFailures(address));
+
+		for (int i = 0; i < NodeHealthTracker.FAILURE_THRESHOLD; i++) {
+			healthTracker.reportFailure(address);
+		}
+		assertTrue(healthTracker.isCircuitOpen(address));
+		assertFalse(healthTracker.isAvailable(address));
+		//other nodes are not affected
+		assertTrue(healthTracker.isAvailable("10.0.0.2"));
+	}
+
+	@Test
+	public void testTrialTimeout() {
+		AtomicLong now = new AtomicLong(System.currentTimeMillis());
+		NodeHealthTracker healthTracker = new NodeHealthTracker(() -> null) {
+			@Override
+			protected long getCurrentTimeMillis() {
+				return now.get();
+			}
+		};
+		String address = "10.0.0.1";
+
+		for (int i = 0; i < NodeHealthTracker.FAILURE_THRESHOLD; i++) {
+			healthTracker.reportFailure(address);
+		}
+		assertFalse(healthTracker.isAvailable(address));
+
+		//only one request is let through in half open state
+		now.addAndGet(NodeHealthTracker.OPEN_CIRCUIT_DURATION_MS);
+		assertTrue(healthTracker.isAvailable(address));
+		assertFalse(healthTracker.isAvailable(address));
+
+		//result of the trial request is not reported so another one is let through
+		now.addAndGet(NodeHealthTracker.TRIAL_TIMEOUT_MS);
+		assertTrue(healthTracker.isAvailable(address));
+		assertFalse(healthTracker.isAvailable(address));
+
+		healthTracker.reportSuccess(address);
+		assertFalse(healthTracker.isCircuitOpen(address));
+		assertTrue(healthTracker.isAvailable(address));
+	}
+
+	@Test
+	public void testNodesAreEvicted() {
+		AtomicLong now = new AtomicLong(System.currentTimeMillis());
+		IClusterStore clusterStore = mock(IClusterStore.class);
+		ClusterNode node = new ClusterNode("10.0.0.1", "node1");
+		node.setLastUpdateTime(now.get());
+		when(clusterStore.getClusterNodeFromIP("10.0.0.1")).thenReturn(node);
+		NodeHealthTracker healthTracker = new NodeHealthTracker(() -> clusterStore) {
+			@Override
+			protected long getCurrentTimeMillis() {
+				return now.get();
+			}
+		};
+
+		assertTrue(healthTracker.isAvailable("10.0.0.1"));
+		assertEquals(1, healthTracker.getNodeCount());
+
+		//node leaves the cluster, it's evicted in the next sweep after its status is read
+		when(clusterStore.getClusterNodeFromIP("10.0.0.1")).thenReturn(null);
+		now.addAndGet(ClusterNode.NODE_UPDATE_PERIOD);
+		assertTrue(healthTracker.isAvailable("10.0.0.1"));
+		now.addAndGet(ClusterNode.NODE_UPDATE_PERIOD);
+		assertTrue(healthTracker.isAvailable("10.0.0.2"));
+		assertEquals(1, healthTracker.getNodeCount());
+
+		//node that left the cluster is kept while its circuit is open
+		for (int i = 0; i < NodeHealthTracker.FAILURE_THRESHOLD; i++) {
+			healthTracker.reportFailure("10.0.0.1");
+		}
+		now.addAndGet(ClusterNode.NODE_UPDATE_PERIOD);
+		assertFalse(healthTracker.isAvailable("10.0.0.1"));
+		assertTrue(healthTracker.isCircuitOpen("10.0.0.1"));
+		assertEquals(1, healthTracker.getNodeCount());
+
+		//nodes that are not checked are evicted
+		now.addAndGet(NodeHealthTracker.IDLE_NODE_TIMEOUT_MS);
+		assertTrue(healthTracker.isAvailable("10.0.0.3"));
+		assertEquals(1, healthTracker.getNodeCount());
+	}
+
+	@Test
+	public void testGatewayErrorsAreFailures() {
+		assertTrue(NodeRequestForwarder.isGatewayError(502));
+		assertTrue(NodeRequestForwarder.isGatewayError(503));
+		assertTrue(NodeRequestForwarder.isGatewayError(504));
+		assertFalse(NodeRequestForwarder.isGatewayError(200));
+		assertFalse(NodeRequestForwarder.isGatewayError(404));
+		assertFalse(NodeRequestForwarder.isGatewayError(500));
+	}
+
+	@Test
+	public void testNodeCommunicationTokenIsReused() {
+		NodeRequestForwarder forwarder = new NodeRequestForwarder(new NodeHealthTracker(() -> null));
+		String key = "clusterCommunicationKey";
+
+		String token = forwarder.getNodeCommunicationToken(key);
+		assertTrue(JWTFilter.isJWTTokenValid(key, token));
+		assertEquals(token, forwarder.getNodeCommunicationToken(key));
+		long validity = JWT.decode(token).getExpiresAt().getTime() - System.currentTimeMillis();
+		assertTrue(validity > NodeRequestForwarder.MIN_TOKEN_VALIDITY_MS);
+
+		//token is renewed when the key changes
+		String newToken = forwarder.getNodeCommunicationToken("newClusterCommunicationKey");
+		assertNotEquals(token, newToken);
+		assertTrue(JWTFilter.isJWTTokenValid("newClusterCommunicationKey", newToken));
+	}
+}
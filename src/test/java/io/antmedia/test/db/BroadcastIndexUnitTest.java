@@ -0,0 +1,176 @@
+package io.antmedia.test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.MapDBStore;
+import io.antmedia.datastore.db.index.BroadcastIndex;
+import io.antmedia.datastore.db.index.NGramIndex;
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.muxer.IAntMediaStreamHandler;
+import io.vertx.core.Vertx;
+
+public class BroadcastIndexUnitTest {
+
+	private static final String DB_NAME = "testindexdb";
+
+	private Vertx vertx = Vertx.vertx();
+
+	@Before
+	public void before() {
+		deleteMapDBFile();
+	}
+
+	@After
+	public void after() {
+		deleteMapDBFile();
+	}
+
+	public void deleteMapDBFile() {
+		File f = new File(DB_NAME);
+		if (f.exists()) {
+			try {
+				Files.delete(f.toPath());
+			} catch (IOException e) {
+				e.printStackTrace();
+				fail(e.getMessage());
+			}
+		}
+	}
+
+	private Broadcast createBroadcast(String streamId, String name, String status, long date, String origin) throws Exception {
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStreamId(streamId);
+		broadcast.setName(name);
+		broadcast.setStatus(status);
+		broadcast.setDate(date);
+		broadcast.setOriginAdress(origin);
+		broadcast.setType(AntMediaApplicationAdapter.LIVE_STREAM);
+		return broadcast;
+	}
+
+	@Test
+	public void testNGramIndex() {
+		NGramIndex index = new NGramIndex();
+		index.put("key1", "hello world");
+		index.put("key2", "world cup");
+
+		assertNull(index.getCandidates("wo"));
+		assertEquals(Arrays.asList("key1", "key2"), index.getCandidates("world"));
+		assertEquals(Arrays.asList("key1"), index.getCandidates("hello"));
+		assertTrue(index.getCandidates("xyz").isEmpty());
+
+		index.put("key1", "other text");
+		assertEquals(Arrays.asList("key2"), index.getCandidates("world"));
+
+		index.remove("key2");
+		assertTrue(index.getCandidates("world").isEmpty());
+		assertEquals(1, index.size());
+
+		//compaction keeps the live keys
+		for (int i = 0; i < 3000; i++) {
+			index.put("temp" + i, "temporary");
+			index.remove("temp" + i);
+		}
+		assertEquals(Arrays.asList("key1"), index.getCandidates("other"));
+	}
+
+	@Test
+	public void testCountsAndLiveStreams() throws Exception {
+		BroadcastIndex index = new BroadcastIndex(true);
+		index.update("s1", createBroadcast("s1", "a", IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING, 1, "10.0.0.1"));
+		index.update("s2", createBroadcast("s2", "b", IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING, 2, "10.0.0.2"));
+		index.update("s3", createBroadcast("s3", "c", IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING, 3, null));
+		index.update("s4", createBroadcast("s4", "d", IAntMediaStreamHandler.BROADCAST_STATUS_FINISHED, 4, "10.0.0.1"));
+
+		assertEquals(3, index.getActiveBroadcastCount(null));
+		assertEquals(2, index.getActiveBroadcastCount("10.0.0.1"));
+		assertEquals(Arrays.asList("s1", "s3"), index.getActiveBroadcastIds("10.0.0.1"));
+		assertEquals(Arrays.asList("s1", "s2", "s3"), index.getActiveBroadcastIds(""));
+
+		index.update("s1", createBroadcast("s1", "a", IAntMediaStreamHandler.BROADCAST_STATUS_FINISHED, 1, "10.0.0.1"));
+		assertEquals(2, index.getActiveBroadcastCount(null));
+		index.remove("s3");
+		assertEquals(0, index.getActiveBroadcastCount("10.0.0.1"));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void testListIsSameWithSortedList() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME, vertx);
+		assertNotNull(dataStore.getBroadcastIndex());
+
+		String[] statuses = {IAntMediaStreamHandler.BROADCAST_STATUS_CREATED, IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING,
+				IAntMediaStreamHandler.BROADCAST_STATUS_FINISHED};
+		List<Broadcast> broadcasts = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			Broadcast broadcast = createBroadcast("stream" + (i * 7 % 60), "Name" + (i % 9), statuses[i % 3], i % 5, null);
+			dataStore.save(broadcast);
+			broadcasts.add(broadcast);
+		}
+
+		for (String sortBy : new String[] {"name", "date", "status", null}) {
+			for (String orderBy : new String[] {"asc", "desc", null}) {
+				for (String search : new String[] {null, "name1", "STREAM1", "e5"}) {
+					List<Broadcast> expected = getExpectedList(dataStore, 5, 20, sortBy, orderBy, search);
+					List<Broadcast> actual = dataStore.getBroadcastList(5, 20, null, sortBy, orderBy, search);
+					assertEquals(sortBy + " " + orderBy + " " + search, toStreamIds(expected), toStreamIds(actual));
+				}
+			}
+		}
+
+		assertEquals(7, dataStore.getPartialBroadcastNumber("name1"));
+		assertEquals(20, dataStore.getActiveBroadcastCount());
+
+		dataStore.delete("stream1");
+		assertEquals(59, dataStore.getBroadcastIndex().size());
+		dataStore.close(false);
+
+		//index is built from the records when db is opened
+		dataStore = new MapDBStore(DB_NAME, vertx);
+		assertEquals(59, dataStore.getBroadcastIndex().size());
+		assertEquals(dataStore.getBroadcastListV2(null, "name1").size(), dataStore.getPartialBroadcastNumber("name1"));
+		dataStore.close(false);
+	}
+
+	/**
+	 * Result of the data store without the index
+	 */
+	private List<Broadcast> getExpectedList(MapDBStore dataStore, int offset, int size, String sortBy, String orderBy, String search) {
+		List<Broadcast> list = dataStore.getBroadcastListV2(null, search);
+		List<Broadcast> expected = new ArrayList<>(list);
+		expected.sort((b1, b2) -> {
+			if (orderBy == null || sortBy == null) {
+				return 0;
+			}
+			Comparable c1 = "name".equals(sortBy) ? b1.getName().toLowerCase() : "date".equals(sortBy) ? (Comparable) b1.getDate() : b1.getStatus();
+			Comparable c2 = "name".equals(sortBy) ? b2.getName().toLowerCase() : "date".equals(sortBy) ? (Comparable) b2.getDate() : b2.getStatus();
+			return "desc".equals(orderBy) ? c2.compareTo(c1) : c1.compareTo(c2);
+		});
+		int toIndex = Math.min(offset + size, expected.size());
+		return offset >= toIndex ? new ArrayList<>() : expected.subList(offset, toIndex);
+	}
+
+	private List<String> toStreamIds(List<Broadcast> broadcasts) {
+		List<String> streamIds = new ArrayList<>();
+		for (Broadcast broadcast : broadcasts) {
+			streamIds.add(broadcast.getStreamId());
+		}
+		return streamIds;
+	}
+}
@@ -12,11 +12,14 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
+
 import io.antmedia.datastore.db.*;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.RandomUtils;
@@ -162,6 +165,7 @@ public class DBStoresUnitTest {
 		testUpdateHLSViewerCount(dataStore);
 		testWebRTCViewerCount(dataStore);
 		testRTMPViewerCount(dataStore);
+		testStreamStatsWriteBehind(dataStore);
 		testTokenOperations(dataStore);
 		testTimeBasedSubscriberOperations(dataStore);
 		testUpdateStatus(dataStore);
@@ -244,6 +248,7 @@ public class DBStoresUnitTest {
 		testUpdateHLSViewerCount(dataStore);
 		testWebRTCViewerCount(dataStore);
 		testRTMPViewerCount(dataStore);
+		testStreamStatsWriteBehind(dataStore);
 		testTokenOperations(dataStore);
 		testTimeBasedSubscriberOperations(dataStore);
 		testUpdateStatus(dataStore);
@@ -304,6 +309,7 @@ public class DBStoresUnitTest {
 		testUpdateHLSViewerCount(dataStore);
 		testWebRTCViewerCount(dataStore);
 		testRTMPViewerCount(dataStore);
+		testStreamStatsWriteBehind(dataStore);
 		testTokenOperations(dataStore);
 		testClearAtStart(dataStore);
 		testClearAtStartCluster(dataStore);
@@ -360,6 +366,7 @@ public class DBStoresUnitTest {
 		testUpdateHLSViewerCount(dataStore);
 		testWebRTCViewerCount(dataStore);
 		testRTMPViewerCount(dataStore);
+		testStreamStatsWriteBehind(dataStore);
 		testTokenOperations(dataStore);
 		testTimeBasedSubscriberOperations(dataStore);
 		testClearAtStart(dataStore);
@@ -1094,6 +1101,79 @@ public class DBStoresUnitTest {
 		}
 	}
 
+	public void testStreamStatsWriteBehind(DataStore dataStore) {
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStartTime(System.currentTimeMillis() - 10000);
+		String key = dataStore.save(broadcast);
+		String key2 = dataStore.save(new Broadcast());
+
+		StreamStatsWriteBehind writeBehind = new StreamStatsWriteBehind(() -> dataStore);
+		for (int i = 0; i < 100; i++) {
+			writeBehind.setQualityParameters(key, "good", 0.5 + i / 1000.0, i, 1000 + i);
+			writeBehind.updateRtmpViewerCount(key, true);
+			writeBehind.updateWebRTCViewerCount(key2, i % 2 == 0);
+		}
+		writeBehind.updateRtmpViewerCount(key, false);
+		writeBehind.updateRtmpViewerCount("not_exist", true);
+
+		//nothing is written before flush
+		assertEquals(0, dataStore.get(key).getRtmpViewerCount());
+		assertEquals(3, writeBehind.getPendingCount());
+
+		List<Broadcast> broadcasts = writeBehind.flush();
+		assertEquals(2, broadcasts.size());
+		assertEquals(0, writeBehind.getPendingCount());
+		assertEquals(1, writeBehind.getFlushCount());
+		assertEquals(302, writeBehind.getReceivedCount());
+		assertEquals(3, writeBehind.getWrittenCount());
+		assertEquals(302 / 3.0, writeBehind.getCoalescingRatio(), 0.001);
+		assertTrue(writeBehind.getMaxFlushLatencyMs() >= writeBehind.getLastFlushLatencyMs());
+
+		//metrics are exposed in JMX
+		try {
+			writeBehind.registerMBean("writeBehindTest");
+			ObjectName objectName = new ObjectName("io.antmedia:type=StreamStatsWriteBehind,name=" + ObjectName.quote("writeBehindTest"));
+			assertEquals(302L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "ReceivedCount"));
+			writeBehind.unregisterMBean();
+			assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+
+		//last quality parameters are written and the viewer counts are summed
+		Broadcast updatedBroadcast = dataStore.get(key);
+		assertEquals("good", updatedBroadcast.getQuality());
+		assertEquals(0.599, updatedBroadcast.getSpeed(), 0.0001);
+		assertEquals(99, updatedBroadcast.getPendingPacketSize());
+		assertEquals(1099, updatedBroadcast.getUpdateTime());
+		assertTrue(updatedBroadcast.getDuration() >= 10000);
+		assertEquals(99, updatedBroadcast.getRtmpViewerCount());
+		assertEquals(0, dataStore.get(key2).getWebRTCViewerCount());
+
+		//viewer count doesn't go below zero
+		writeBehind.updateWebRTCViewerCount(key2, false);
+		writeBehind.updateWebRTCViewerCount(key2, false);
+		writeBehind.updateWebRTCViewerCount(key2, true);
+		assertEquals(key2, writeBehind.flush(key2).getStreamId());
+		assertEquals(0, dataStore.get(key2).getWebRTCViewerCount());
+		assertNull(writeBehind.flush(key2));
+
+		//viewer counts are not written if stats are not written to the datastore
+		dataStore.setWriteStatsToDatastore(false);
+		writeBehind.updateRtmpViewerCount(key, true);
+		writeBehind.setQualityParameters(key, "poor", 0.3, 5, 2000);
+		writeBehind.flush();
+		updatedBroadcast = dataStore.get(key);
+		assertEquals(99, updatedBroadcast.getRtmpViewerCount());
+		assertEquals("poor", updatedBroadcast.getQuality());
+		dataStore.setWriteStatsToDatastore(true);
+
+		dataStore.delete(key);
+		dataStore.delete(key2);
+	}
+
 	public void testGetPagination(DataStore dataStore) {
 
 		List<Broadcast> broadcastList2 = dataStore.getBroadcastList(0, 50, null, null, null,null);
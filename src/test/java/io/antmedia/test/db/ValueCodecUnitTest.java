@@ -0,0 +1,294 @@
+package io.antmedia.test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import io.antmedia.datastore.db.MapDBStore;
+import io.antmedia.datastore.db.codec.BinaryJsonReader;
+import io.antmedia.datastore.db.codec.BinaryJsonWriter;
+import io.antmedia.datastore.db.codec.BinaryValueCodec;
+import io.antmedia.datastore.db.codec.DecodedObjectCache;
+import io.antmedia.datastore.db.codec.FieldNameRegistry;
+import io.antmedia.datastore.db.codec.JsonValueCodec;
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.datastore.db.types.Endpoint;
+import io.antmedia.datastore.db.types.Subscriber;
+import io.antmedia.datastore.db.types.Token;
+import io.antmedia.muxer.IAntMediaStreamHandler;
+import io.vertx.core.Vertx;
+
+public class ValueCodecUnitTest {
+
+	private static final String DB_NAME = "testcodecdb";
+
+	private Vertx vertx = Vertx.vertx();
+
+	@Before
+	public void before() {
+		deleteMapDBFile();
+	}
+
+	@After
+	public void after() {
+		deleteMapDBFile();
+	}
+
+	public void deleteMapDBFile() {
+		File f = new File(DB_NAME);
+		if (f.exists()) {
+			try {
+				Files.delete(f.toPath());
+			} catch (IOException e) {
+				e.printStackTrace();
+				fail(e.getMessage());
+			}
+		}
+	}
+
+	private Broadcast createBroadcast() throws Exception {
+		Broadcast broadcast = new Broadcast("name", "10.0.0.1", "user", "pass", "rtmp://stream", "streamSource");
+		broadcast.setStreamId("stream1");
+		broadcast.setDescription("açıklama €");
+		broadcast.setSpeed(1.25);
+		broadcast.setDuration(Long.MAX_VALUE);
+		broadcast.setWebRTCViewerCount(-5);
+		broadcast.setSubTrackStreamIds(Arrays.asList("track1", "track2"));
+		List<Endpoint> endpoints = new ArrayList<>();
+		endpoints.add(new Endpoint("rtmp://endpoint", "generic", "endpoint1", IAntMediaStreamHandler.BROADCAST_STATUS_CREATED));
+		broadcast.setEndPointList(endpoints);
+		return broadcast;
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws Exception {
+		Gson gson = new Gson();
+		BinaryValueCodec codec = new BinaryValueCodec(gson);
+		Broadcast broadcast = createBroadcast();
+
+		String encoded = codec.encode(broadcast);
+		assertTrue(BinaryValueCodec.isBinary(encoded));
+		assertTrue(codec.isEncoded(encoded));
+		assertTrue(encoded.length() < gson.toJson(broadcast).length());
+
+		Broadcast decoded = codec.decode(encoded, Broadcast.class);
+		assertEquals(gson.toJson(broadcast), gson.toJson(decoded));
+		assertEquals("açıklama €", decoded.getDescription());
+		assertEquals(Long.MAX_VALUE, decoded.getDuration());
+		assertEquals(-5, decoded.getWebRTCViewerCount());
+		assertEquals(1.25, decoded.getSpeed(), 0.0001);
+		assertEquals("endpoint1", decoded.getEndPointList().get(0).getEndpointServiceId());
+		assertEquals("track2", decoded.getSubTrackStreamIds().get(1));
+
+		//null fields are not written
+		Token token = new Token();
+		token.setTokenId("token1");
+		Token decodedToken = codec.decode(codec.encode(token), Token.class);
+		assertEquals("token1", decodedToken.getTokenId());
+		assertNull(decodedToken.getStreamId());
+	}
+
+	@Test
+	public void testCodecsDecodeEachOther() throws Exception {
+		Gson gson = new Gson();
+		BinaryValueCodec binaryCodec = new BinaryValueCodec(gson);
+		JsonValueCodec jsonCodec = new JsonValueCodec(gson);
+		Broadcast broadcast = createBroadcast();
+
+		String json = jsonCodec.encode(broadcast);
+		String binary = binaryCodec.encode(broadcast);
+		assertFalse(binaryCodec.isEncoded(json));
+		assertFalse(jsonCodec.isEncoded(binary));
+
+		assertEquals(json, gson.toJson(binaryCodec.decode(json, Broadcast.class)));
+		assertEquals(json, gson.toJson(jsonCodec.decode(binary, Broadcast.class)));
+	}
+
+	@Test
+	public void testUnknownFieldsAreSkipped() {
+		BinaryValueCodec codec = new BinaryValueCodec(new Gson());
+
+		//it simulates a record that's written by another version of the class
+		JsonObject object = new JsonObject();
+		object.addProperty("streamId", "stream1");
+		object.addProperty("fieldOfNewVersion", "value");
+		JsonObject nested = new JsonObject();
+		nested.addProperty("name", "value");
+		object.add("objectOfNewVersion", nested);
+		object.addProperty("status", IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING);
+
+		Broadcast broadcast = codec.decode(codec.encode(object), Broadcast.class);
+		assertEquals("stream1", broadcast.getStreamId());
+		assertEquals(IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING, broadcast.getStatus());
+	}
+
+	@Test
+	public void testDecodedObjectCache() throws Exception {
+		DecodedObjectCache<Broadcast> cache = new DecodedObjectCache<>(new Gson(), 2);
+		Broadcast broadcast = createBroadcast();
+		cache.put("stream1", broadcast);
+
+		//cached object is a copy
+		broadcast.setName("changed");
+		Broadcast cached = cache.get("stream1");
+		assertEquals("name", cached.getName());
+		cached.setName("changed");
+		assertEquals("name", cache.get("stream1").getName());
+		assertEquals(2, cache.getHitCount());
+
+		//nested objects are copied as well
+		assertEquals(new Gson().toJson(cached), new Gson().toJson(cache.get("stream1")));
+		cached = cache.get("stream1");
+		cached.getEndPointList().get(0).setEndpointServiceId("changed");
+		cached.getSubTrackStreamIds().add("changed");
+		assertEquals("endpoint1", cache.get("stream1").getEndPointList().get(0).getEndpointServiceId());
+		assertEquals(2, cache.get("stream1").getSubTrackStreamIds().size());
+
+		cache.put("stream2", broadcast);
+		cache.put("stream3", broadcast);
+		assertEquals(2, cache.size());
+		assertNull(cache.get("stream1"));
+		assertEquals(1, cache.getMissCount());
+	}
+
+	static class CollidingFields {
+		//"Aa" and "BB" have the same hash code
+		String Aa;
+		String BB;
+	}
+
+	@Test
+	public void testFieldNameCollision() {
+		try {
+			new FieldNameRegistry(CollidingFields.class);
+			fail("Colliding field names should not be registered");
+		}
+		catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("Aa"));
+		}
+		assertTrue(new FieldNameRegistry(Broadcast.class).size() > 0);
+	}
+
+	@Test
+	public void testPersistedTypesHaveNoFieldNameCollision() {
+		//a field that is added to a persisted type or to one of the types of its fields is checked here
+		for (Class<?> type : BinaryValueCodec.PERSISTED_TYPES) {
+			assertTrue(type.getName(), new FieldNameRegistry(type).size() > 0);
+		}
+		new BinaryValueCodec(new Gson());
+	}
+
+	@Test
+	public void testRawJsonValue() throws Exception {
+		Gson gson = new Gson();
+		FieldNameRegistry registry = new FieldNameRegistry(Broadcast.class);
+		BinaryJsonWriter writer = new BinaryJsonWriter(registry);
+		writer.beginObject();
+		writer.name("streamId").jsonValue("\"stream1\"");
+		writer.name("endPointList").jsonValue("[{\"endpointServiceId\":\"endpoint1\"}]");
+		writer.name("speed").jsonValue("1.5");
+		writer.name("duration").jsonValue("12");
+		writer.name("metaData").jsonValue(null);
+		writer.endObject();
+
+		BinaryJsonReader reader = new BinaryJsonReader(writer.toByteArray(), registry);
+		Broadcast broadcast = gson.getAdapter(Broadcast.class).read(reader);
+		assertTrue(reader.isFullyConsumed());
+		assertEquals("stream1", broadcast.getStreamId());
+		assertEquals("endpoint1", broadcast.getEndPointList().get(0).getEndpointServiceId());
+		assertEquals(1.5, broadcast.getSpeed(), 0.0001);
+		assertEquals(12, broadcast.getDuration());
+
+		try {
+			new BinaryJsonWriter(registry).jsonValue("{\"a\":1} {}");
+			fail("Raw value with two values should not be written");
+		}
+		catch (IOException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void testMapDBStoreCacheIsDisabledByDefault() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME, vertx);
+		assertNull(dataStore.getBroadcastCache());
+		dataStore.close(false);
+	}
+
+	@Test
+	public void testMapDBStoreWithBinaryCodec() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME, vertx, BinaryValueCodec.NAME, 100);
+		Broadcast broadcast = createBroadcast();
+		dataStore.save(broadcast);
+
+		Broadcast fetched = dataStore.get("stream1");
+		assertEquals("name", fetched.getName());
+		fetched.setName("not saved");
+		assertEquals("name", dataStore.get("stream1").getName());
+		assertTrue(dataStore.getBroadcastCache().getHitCount() > 0);
+
+		//write-through
+		assertTrue(dataStore.updateStatus("stream1", IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING));
+		assertEquals(IAntMediaStreamHandler.BROADCAST_STATUS_BROADCASTING, dataStore.get("stream1").getStatus());
+		assertEquals(1, dataStore.getActiveBroadcastCount());
+
+		Token token = new Token();
+		token.setTokenId("token1");
+		token.setStreamId("stream1");
+		token.setType(Token.PLAY_TOKEN);
+		token.setExpireDate(Instant.now().getEpochSecond() + 100);
+		assertTrue(dataStore.saveToken(token));
+		assertEquals("stream1", dataStore.getToken("token1").getStreamId());
+		assertNotNull(dataStore.validateToken(token));
+		//token is used once
+		assertNull(dataStore.getToken("token1"));
+
+		Subscriber subscriber = new Subscriber();
+		subscriber.setStreamId("stream1");
+		subscriber.setSubscriberId("subscriber1");
+		assertTrue(dataStore.addSubscriber("stream1", subscriber));
+		assertTrue(dataStore.blockSubscriber("stream1", "subscriber1", Subscriber.PLAY_TYPE, 10));
+		assertEquals(Subscriber.PLAY_TYPE, dataStore.getSubscriber("stream1", "subscriber1").getBlockedType());
+
+		assertTrue(dataStore.delete("stream1"));
+		assertNull(dataStore.get("stream1"));
+		dataStore.close(false);
+	}
+
+	@Test
+	public void testMigration() throws Exception {
+		//db file that is created with json codec
+		MapDBStore dataStore = new MapDBStore(DB_NAME, vertx);
+		dataStore.save(createBroadcast());
+		dataStore.close(false);
+
+		dataStore = new MapDBStore(DB_NAME, vertx, BinaryValueCodec.NAME, 0);
+		assertEquals("name", dataStore.get("stream1").getName());
+		assertEquals(0, dataStore.migrateValuesToCurrentCodec());
+		dataStore.close(false);
+
+		//switching back to json migrates the records again
+		dataStore = new MapDBStore(DB_NAME, vertx, JsonValueCodec.NAME, 0);
+		assertEquals("açıklama €", dataStore.get("stream1").getDescription());
+		assertEquals(0, dataStore.migrateValuesToCurrentCodec());
+		dataStore.close(false);
+	}
+}
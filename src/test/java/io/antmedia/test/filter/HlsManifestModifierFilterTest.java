@@ -1,6 +1,7 @@
 package io.antmedia.test.filter;
 
 import io.antmedia.filter.HlsManifestModifierFilter;
+import io.antmedia.filter.HlsPlaylistRewriteCache;
 import io.antmedia.websocket.WebSocketConstants;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
@@ -17,7 +18,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.util.ContentCachingResponseWrapper;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -368,4 +371,108 @@ public class HlsManifestModifierFilterTest {
 	}
 
 
+	@Test
+	public void testCachedWindowedPlaylist() throws Exception {
+		File playlistFile = File.createTempFile("test", ".m3u8");
+		playlistFile.deleteOnExit();
+		Files.write(playlistFile.toPath(), testM3u8.getBytes());
+
+		ServletContext servletContext = mock(ServletContext.class);
+		when(servletContext.getRealPath("/streams/test.m3u8")).thenReturn(playlistFile.getAbsolutePath());
+		when(servletContext.getMimeType(anyString())).thenReturn("application/vnd.apple.mpegurl");
+
+		FilterChain chain = mock(FilterChain.class);
+		doAnswer(invocation -> {
+			ContentCachingResponseWrapper servletResponse = invocation.getArgument(1);
+			servletResponse.setStatus(200);
+			servletResponse.getOutputStream().write(Files.readAllBytes(playlistFile.toPath()));
+			return null;
+		}).when(chain).doFilter(any(), any());
+
+		String firstPlaylist = null;
+		for (int i = 0; i < 3; i++) {
+			HttpServletRequest mockRequest = mock(HttpServletRequest.class);
+			when(mockRequest.getMethod()).thenReturn("GET");
+			when(mockRequest.getContextPath()).thenReturn("/LiveApp");
+			when(mockRequest.getRequestURI()).thenReturn("/LiveApp/streams/test.m3u8");
+			when(mockRequest.getServletContext()).thenReturn(servletContext);
+			when(mockRequest.getParameter(HlsManifestModifierFilter.START)).thenReturn("1709926082");
+			when(mockRequest.getParameter(HlsManifestModifierFilter.END)).thenReturn("1709926087");
+
+			HttpServletResponse mockResponse = mock(HttpServletResponse.class);
+			ServletOutputStream outputStream = mock(ServletOutputStream.class);
+			when(mockResponse.getOutputStream()).thenReturn(outputStream);
+
+			hlsManifestModifierFilter.doFilter(mockRequest, mockResponse, chain);
+
+			ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+			verify(outputStream).write(captor.capture());
+			String playlist = new String(captor.getValue());
+			assertTrue(playlist.contains("test000000002.ts"));
+			assertFalse(playlist.contains("test000000005.ts"));
+			if (firstPlaylist == null) {
+				firstPlaylist = playlist;
+			}
+			assertEquals(firstPlaylist, playlist);
+		}
+
+		//chain runs for each request so that auth and statistics filters are not skipped. Same content is rewritten once
+		verify(chain, times(3)).doFilter(any(), any());
+		assertEquals(2, hlsManifestModifierFilter.getRewriteCache().getHitCount());
+
+		//changed content is not served from the cache even if its size and modification time are the same
+		long lastModified = playlistFile.lastModified();
+		Files.write(playlistFile.toPath(), testM3u8.replace("test000000002.ts", "test000000003.ts").getBytes());
+		playlistFile.setLastModified(lastModified);
+
+		HttpServletRequest mockRequest = mock(HttpServletRequest.class);
+		when(mockRequest.getMethod()).thenReturn("GET");
+		when(mockRequest.getContextPath()).thenReturn("/LiveApp");
+		when(mockRequest.getRequestURI()).thenReturn("/LiveApp/streams/test.m3u8");
+		when(mockRequest.getServletContext()).thenReturn(servletContext);
+		when(mockRequest.getParameter(HlsManifestModifierFilter.START)).thenReturn("1709926082");
+		when(mockRequest.getParameter(HlsManifestModifierFilter.END)).thenReturn("1709926087");
+		HttpServletResponse mockResponse = mock(HttpServletResponse.class);
+		ServletOutputStream outputStream = mock(ServletOutputStream.class);
+		when(mockResponse.getOutputStream()).thenReturn(outputStream);
+
+		hlsManifestModifierFilter.doFilter(mockRequest, mockResponse, chain);
+
+		verify(chain, times(4)).doFilter(any(), any());
+		assertEquals(2, hlsManifestModifierFilter.getRewriteCache().getHitCount());
+		ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+		verify(outputStream).write(captor.capture());
+		assertFalse(new String(captor.getValue()).contains("test000000002.ts"));
+	}
+
+	@Test
+	public void testIncrementalParse() throws Exception {
+		String livePlaylist = testM3u8.replace("#EXT-X-ENDLIST\n", "");
+		String firstPart = livePlaylist.substring(0, livePlaylist.indexOf("test000000005.ts\n") + "test000000005.ts\n".length());
+
+		HlsPlaylistRewriteCache cache = new HlsPlaylistRewriteCache(HlsPlaylistRewriteCache.DEFAULT_MAX_ENTRIES);
+		HlsPlaylistRewriteCache.ParsedPlaylist first = cache.parse("test", firstPart.getBytes());
+		assertEquals(5, first.getSegments().size());
+
+		HlsPlaylistRewriteCache.ParsedPlaylist appended = cache.parse("test", livePlaylist.getBytes());
+		assertEquals(1, cache.getIncrementalParseCount());
+
+		HlsPlaylistRewriteCache.ParsedPlaylist full = new HlsPlaylistRewriteCache(1).parse("test", livePlaylist.getBytes());
+		assertEquals(full.getSegments(), appended.getSegments());
+		assertArrayEquals(full.writeTimeWindow(1709926082, 1709926095), appended.writeTimeWindow(1709926082, 1709926095));
+
+		//ended playlist is parsed fully
+		cache.parse("test", testM3u8.getBytes());
+		assertEquals(1, cache.getIncrementalParseCount());
+	}
+
+	@Test
+	public void testAdaptiveTemplate() {
+		HlsPlaylistRewriteCache.AdaptivePlaylistTemplate template = HlsPlaylistRewriteCache.AdaptivePlaylistTemplate.compile(testAdaptiveM3u8);
+		String playlist = new String(template.apply("?token=a$b"));
+		assertTrue(playlist.contains("teststream_360p800kbps.m3u8?token=a$b\n"));
+		assertTrue(playlist.contains("teststream_720p2000kbps.m3u8?token=a$b\n"));
+		assertEquals(testAdaptiveM3u8.length() + 3 * "?token=a$b".length(), playlist.length());
+	}
+
 }
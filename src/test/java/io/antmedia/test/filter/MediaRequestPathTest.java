@@ -0,0 +1,103 @@
+package io.antmedia.test.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import io.antmedia.filter.AbstractFilter;
+import io.antmedia.filter.MediaRequestPath;
+import io.antmedia.filter.MediaRequestPath.Type;
+import io.antmedia.filter.TokenFilterManager;
+
+public class MediaRequestPathTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(MediaRequestPathTest.class);
+
+	private void assertPath(String requestURI, String streamId, Type type, String rendition, long segmentIndex) {
+		MediaRequestPath path = MediaRequestPath.parse(requestURI);
+		assertEquals(streamId, path.getStreamId());
+		assertEquals(type, path.getType());
+		assertEquals(rendition, path.getRendition());
+		assertEquals(segmentIndex, path.getSegmentIndex());
+		assertEquals(requestURI, path.getRequestURI());
+	}
+
+	@Test
+	public void testParse() {
+		assertPath("/LiveApp/streams/stream1.m3u8", "stream1", Type.HLS_PLAYLIST, null, -1);
+		assertPath("/LiveApp/streams/stream1_adaptive.m3u8", "stream1", Type.HLS_ADAPTIVE_PLAYLIST, null, -1);
+		assertPath("/LiveApp/streams/stream1_240p300kbps.m3u8", "stream1", Type.HLS_PLAYLIST, "240p300kbps", -1);
+		assertPath("/LiveApp/streams/stream1_240p300kbps000000005.ts", "stream1", Type.HLS_SEGMENT, "240p300kbps", 5);
+		assertPath("/LiveApp/streams/stream1_240p0012.ts", "stream1", Type.HLS_SEGMENT, "240p", 12);
+		assertPath("/LiveApp/streams/subfolder/stream1000000123.ts", "stream1", Type.HLS_SEGMENT, null, 123);
+		assertPath("/LiveApp/streams/stream1/stream1.mpd", "stream1", Type.DASH_MANIFEST, null, -1);
+		assertPath("/LiveApp/streams/stream1/stream1_1segment00139.m4s", "stream1", Type.DASH_SEGMENT, "1", 139);
+		assertPath("/LiveApp/streams/stream1/stream1_init0.m4s", "stream1", Type.DASH_SEGMENT, null, -1);
+		//segment index that does not fit in a long is not parsed
+		assertPath("/LiveApp/streams/stream1/stream1_0segment99999999999999999999.m4s", "stream1", Type.DASH_SEGMENT, null, -1);
+		assertPath("/LiveApp/streams/stream199999999999999999999.ts", "stream199999999999", Type.HLS_SEGMENT, null, 999999999);
+		assertPath("/LiveApp/chunked/stream1/media_1.m3u8", "stream1", Type.CHUNKED, null, -1);
+		assertPath("/LiveApp/streams/stream1_240p500kbps_1.mp4", "stream1", Type.VOD, null, -1);
+		assertPath("/LiveApp/streams/stream1-2021-05-18_11-26-26.842.webm", "stream1", Type.VOD, null, -1);
+		assertPath("/LiveApp/streams/stream1.u8", null, Type.UNKNOWN, null, -1);
+		assertPath("/LiveApp/streams", null, Type.UNKNOWN, null, -1);
+
+		//special characters are replaced with underscore
+		assertPath("/LiveApp/streams/stream|1\n.m3u8", "stream_1_", Type.HLS_PLAYLIST, null, -1);
+
+		//stream id that contains "streams" is not cut
+		assertPath("/LiveApp/streams/mystreams_test.m3u8", "mystreams_test", Type.HLS_PLAYLIST, null, -1);
+	}
+
+	@Test
+	public void testParsedOnceForRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRequestURI("/LiveApp/streams/stream1_240p300kbps000000005.ts");
+
+		MediaRequestPath path = AbstractFilter.getMediaRequestPath(request);
+		assertEquals("stream1", path.getStreamId());
+		assertSame(path, request.getAttribute(AbstractFilter.MEDIA_REQUEST_PATH));
+		assertSame(path, AbstractFilter.getMediaRequestPath(request));
+
+		//request is forwarded to another path
+		request.setRequestURI("/LiveApp/streams/stream2.m3u8");
+		MediaRequestPath forwardedPath = AbstractFilter.getMediaRequestPath(request);
+		assertNotSame(path, forwardedPath);
+		assertEquals("stream2", forwardedPath.getStreamId());
+	}
+
+	/**
+	 * Prints the parse cost for a request mix of a player, playlist requests and segment requests of the renditions
+	 */
+	@Test
+	public void testParseCost() {
+		String[] requestURIs = {
+				"/LiveApp/streams/stream1_adaptive.m3u8",
+				"/LiveApp/streams/stream1_720p2000kbps.m3u8",
+				"/LiveApp/streams/stream1_720p2000kbps000000120.ts",
+				"/LiveApp/streams/stream1_360p800kbps000000121.ts",
+				"/LiveApp/streams/stream1000000122.ts",
+				"/LiveApp/streams/stream1/stream1_0segment00139.m4s",
+				"/LiveApp/streams/stream1/stream1.mpd",
+				"/LiveApp/streams/stream1-2021-05-18_11-26-26.842_240p500kbps.mp4",
+		};
+		int count = 100000;
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				assertEquals("stream1", MediaRequestPath.parse(requestURIs[i % requestURIs.length]).getStreamId());
+			}
+			long duration = System.nanoTime() - start;
+			if (round == 1) {
+				logger.info("Request path parse cost: {}ns", duration / count);
+			}
+		}
+		assertNull(TokenFilterManager.getStreamId("/LiveApp/previews/stream1.png"));
+	}
+}
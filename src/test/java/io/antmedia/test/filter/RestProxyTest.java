@@ -199,6 +199,13 @@ public class RestProxyTest {
 		//it should be called because isStreaming returns true
 		Mockito.verify(restFilter).forwardRequestToNode(httpServletRequest, httpServletResponse, broadcast.getOriginAdress());
 
+		//request is handled in this node if it cannot be forwarded to the origin
+		Mockito.doReturn(false).when(restFilter).forwardRequestToNode(httpServletRequest, httpServletResponse, broadcast.getOriginAdress());
+		filterChain = Mockito.spy(new MockFilterChain());
+		restFilter.doFilter(httpServletRequest,httpServletResponse,filterChain);
+		Mockito.verify(filterChain).doFilter(httpServletRequest, httpServletResponse);
+		Mockito.doCallRealMethod().when(restFilter).forwardRequestToNode(Mockito.any(), Mockito.any(), Mockito.anyString());
+
 		
 
 		httpServletRequest.setMethod(HttpMethod.PUT);
@@ -0,0 +1,225 @@
+package io.antmedia.test.muxer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.awaitility.Awaitility;
+import org.junit.Test;
+
+import io.antmedia.muxer.AsyncMuxerWriter;
+import io.antmedia.muxer.AsyncMuxerWriter.OverflowPolicy;
+import io.antmedia.muxer.Muxer;
+import io.antmedia.muxer.buffer.DirectBufferPool;
+import io.antmedia.muxer.buffer.PooledBuffer;
+
+public class AsyncMuxerWriterTest {
+
+	@Test
+	public void testOverflowPolicyFromString() {
+		//blocking the drain worker is not a policy
+		assertEquals(null, OverflowPolicy.parse("block"));
+		assertEquals(OverflowPolicy.DROP_TO_NEXT_KEYFRAME, OverflowPolicy.fromString("block"));
+		assertEquals(OverflowPolicy.DISCONNECT, OverflowPolicy.parse("disconnect"));
+		assertEquals(OverflowPolicy.DISCONNECT, OverflowPolicy.fromString("DISCONNECT"));
+		assertEquals(OverflowPolicy.DROP_TO_NEXT_KEYFRAME, OverflowPolicy.fromString("drop_to_next_keyframe"));
+		assertEquals(OverflowPolicy.DROP_TO_NEXT_KEYFRAME, OverflowPolicy.fromString(null));
+		assertEquals(OverflowPolicy.DROP_TO_NEXT_KEYFRAME, OverflowPolicy.fromString("unknown"));
+	}
+
+	@Test
+	public void testStopIsNotDisconnect() {
+		Muxer muxer = mock(Muxer.class);
+		AsyncMuxerWriter writer = new AsyncMuxerWriter(muxer, 4, OverflowPolicy.DISCONNECT, null);
+		writer.stop();
+		assertTrue(writer.isStopped());
+		assertFalse(writer.isDisconnected());
+		writer.close(100);
+		assertFalse(writer.isDisconnected());
+		assertTrue(AsyncMuxerWriter.MAX_WRITER_THREADS >= 8);
+	}
+
+	@Test
+	public void testWriteAndRelease() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		Muxer muxer = mock(Muxer.class);
+		AsyncMuxerWriter writer = new AsyncMuxerWriter(muxer, 10, OverflowPolicy.DROP_TO_NEXT_KEYFRAME, null);
+		assertEquals(16, writer.getCapacity());
+
+		PooledBuffer video = pool.acquire(100, "stream1");
+		assertTrue(writer.offerVideoBuffer(video, 10, 0, true, 12));
+		video.release();
+
+		PooledBuffer audio = pool.acquire(50, "stream1");
+		assertTrue(writer.offerAudioBuffer(audio, 1, 11));
+		audio.release();
+
+		verify(muxer, timeout(3000)).writeVideoBuffer(any(PooledBuffer.class), eq(10L), eq(0), eq(0), eq(true), eq(0L), eq(12L));
+		verify(muxer, timeout(3000)).writeAudioBuffer(any(PooledBuffer.class), eq(1), eq(11L));
+
+		//buffers should be returned to the pool after they are written
+		Awaitility.await().atMost(3, TimeUnit.SECONDS).until(() -> pool.getInUseBytes() == 0);
+		assertEquals(0, writer.getQueueSize());
+		assertEquals(0, writer.getDroppedPacketCount());
+
+		writer.close(1000);
+		//normal close is not reported as a disconnect
+		assertTrue(writer.isStopped());
+		assertFalse(writer.isDisconnected());
+		PooledBuffer lateBuffer = pool.acquire(10, "stream1");
+		assertFalse(writer.offerVideoBuffer(lateBuffer, 20, 0, true, 20));
+		assertEquals(1, writer.getDroppedPacketCount());
+		lateBuffer.release();
+	}
+
+	@Test
+	public void testDropToNextKeyFrame() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		Muxer muxer = mock(Muxer.class);
+		CountDownLatch latch = new CountDownLatch(1);
+		//block the muxer to fill the queue
+		doAnswer(invocation -> {
+			latch.await(10, TimeUnit.SECONDS);
+			return null;
+		}).when(muxer).writeVideoBuffer(any(PooledBuffer.class), anyLong(), anyInt(), anyInt(), anyBoolean(), anyLong(), anyLong());
+
+		AsyncMuxerWriter writer = new AsyncMuxerWriter(muxer, 2, OverflowPolicy.DROP_TO_NEXT_KEYFRAME, null);
+		PooledBuffer buffer = pool.acquire(100, "stream1");
+
+		//first one is being written and it's not removed from the queue until it's written
+		assertTrue(writer.offerVideoBuffer(buffer, 0, 0, true, 0));
+		assertTrue(writer.offerVideoBuffer(buffer, 1, 0, false, 1));
+
+		//queue is full
+		assertFalse(writer.offerVideoBuffer(buffer, 2, 0, false, 2));
+		assertEquals(1, writer.getDroppedPacketCount());
+
+		latch.countDown();
+		Awaitility.await().atMost(3, TimeUnit.SECONDS).until(() -> writer.getQueueSize() == 0);
+
+		//it should wait for the next key frame
+		assertFalse(writer.offerVideoBuffer(buffer, 5, 0, false, 5));
+		assertEquals(2, writer.getDroppedPacketCount());
+		assertTrue(writer.offerVideoBuffer(buffer, 6, 0, true, 6));
+		verify(muxer, timeout(3000)).writeVideoBuffer(any(PooledBuffer.class), eq(6L), eq(0), eq(0), eq(true), eq(0L), eq(6L));
+		verify(muxer, never()).writeVideoBuffer(any(PooledBuffer.class), eq(5L), anyInt(), anyInt(), anyBoolean(), anyLong(), anyLong());
+
+		buffer.release();
+		writer.close(1000);
+		assertEquals(0, pool.getInUseBytes());
+	}
+
+	@Test
+	public void testDisconnect() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		Muxer muxer = mock(Muxer.class);
+		CountDownLatch latch = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			latch.await(10, TimeUnit.SECONDS);
+			return null;
+		}).when(muxer).writeAudioBuffer(any(PooledBuffer.class), anyInt(), anyLong());
+
+		AtomicReference<AsyncMuxerWriter> disconnected = new AtomicReference<>();
+		AsyncMuxerWriter writer = new AsyncMuxerWriter(muxer, 2, OverflowPolicy.DISCONNECT, disconnected::set);
+		PooledBuffer buffer = pool.acquire(100, "stream1");
+
+		int offered = 0;
+		while (writer.offerAudioBuffer(buffer, 0, offered)) {
+			offered++;
+			assertTrue(offered < 10);
+		}
+
+		assertTrue(writer.isDisconnected());
+		Awaitility.await().atMost(3, TimeUnit.SECONDS).until(() -> disconnected.get() == writer);
+
+		latch.countDown();
+		writer.close(3000);
+		verify(muxer, times(offered)).writeAudioBuffer(any(PooledBuffer.class), anyInt(), anyLong());
+		buffer.release();
+		assertEquals(0, pool.getInUseBytes());
+	}
+
+	@Test
+	public void testAudioIsNotGatedByKeyFrame() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		Muxer muxer = mock(Muxer.class);
+		CountDownLatch latch = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			latch.await(10, TimeUnit.SECONDS);
+			return null;
+		}).when(muxer).writeAudioBuffer(any(PooledBuffer.class), anyInt(), anyLong());
+
+		AsyncMuxerWriter writer = new AsyncMuxerWriter(muxer, 2, OverflowPolicy.DROP_TO_NEXT_KEYFRAME, null);
+		PooledBuffer buffer = pool.acquire(100, "stream1");
+
+		assertTrue(writer.offerAudioBuffer(buffer, 1, 0));
+		assertTrue(writer.offerAudioBuffer(buffer, 1, 1));
+		assertFalse(writer.offerAudioBuffer(buffer, 1, 2));
+		assertEquals(1, writer.getDroppedPacketCount());
+
+		latch.countDown();
+		Awaitility.await().atMost(3, TimeUnit.SECONDS).until(() -> writer.getQueueSize() == 0);
+
+		//audio only stream continues after the overflow
+		assertTrue(writer.offerAudioBuffer(buffer, 1, 3));
+		verify(muxer, timeout(3000)).writeAudioBuffer(any(PooledBuffer.class), eq(1), eq(3L));
+
+		buffer.release();
+		writer.close(1000);
+		assertEquals(0, pool.getInUseBytes());
+	}
+
+	@Test
+	public void testCloseTimeout() throws InterruptedException {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		Muxer muxer = mock(Muxer.class);
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch latch = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			writing.countDown();
+			latch.await(10, TimeUnit.SECONDS);
+			return null;
+		}).when(muxer).writeVideoBuffer(any(PooledBuffer.class), anyLong(), anyInt(), anyInt(), anyBoolean(), anyLong(), anyLong());
+
+		AsyncMuxerWriter writer = new AsyncMuxerWriter(muxer, 4, OverflowPolicy.DROP_TO_NEXT_KEYFRAME, null);
+		PooledBuffer buffer = pool.acquire(100, "stream1");
+		for (int i = 0; i < 3; i++) {
+			assertTrue(writer.offerVideoBuffer(buffer, i, 0, i == 0, i));
+		}
+		buffer.release();
+		assertTrue(writing.await(3, TimeUnit.SECONDS));
+
+		new Thread(() -> {
+			try {
+				Thread.sleep(500);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			latch.countDown();
+		}).start();
+
+		//it waits for the packet being written and drops the others
+		writer.close(100);
+		assertEquals(0, latch.getCount());
+		assertEquals(0, writer.getQueueSize());
+		assertEquals(2, writer.getDroppedPacketCount());
+		assertEquals(0, pool.getInUseBytes());
+		verify(muxer, times(1)).writeVideoBuffer(any(PooledBuffer.class), anyLong(), anyInt(), anyInt(), anyBoolean(), anyLong(), anyLong());
+	}
+}
@@ -0,0 +1,223 @@
+package io.antmedia.test.muxer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.junit.Test;
+
+import io.antmedia.muxer.Muxer;
+import io.antmedia.muxer.RtmpMuxer;
+import io.antmedia.muxer.buffer.DirectBufferPool;
+import io.antmedia.muxer.buffer.PooledBuffer;
+
+public class DirectBufferPoolTest {
+
+	@Test
+	public void testAcquireAndRelease() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+
+		PooledBuffer buffer = pool.acquire(1000, "stream1");
+		assertEquals(1000, buffer.getBuffer().limit());
+		assertEquals(1000, buffer.getSize());
+		assertTrue(buffer.getBuffer().isDirect());
+		assertEquals(1024, pool.getInUseBytes());
+		assertEquals(1024, pool.getInUseBytes("stream1"));
+		assertEquals(1, pool.getAllocationCount());
+
+		assertTrue(buffer.release());
+		assertEquals(0, pool.getInUseBytes());
+		assertEquals(0, pool.getInUseBytes("stream1"));
+		assertEquals(1024, pool.getPooledBytes());
+
+		//same size class should be served from the pool
+		PooledBuffer buffer2 = pool.acquire(600, "stream2");
+		assertEquals(600, buffer2.getBuffer().limit());
+		assertEquals(1, pool.getAllocationCount());
+		assertEquals(1, pool.getReuseCount());
+		assertEquals(0, pool.getPooledBytes());
+		buffer2.release();
+
+		pool.trim();
+		assertEquals(0, pool.getPooledBytes());
+
+		pool.removeStream("stream1");
+		pool.removeStream("stream2");
+		assertTrue(pool.getInUseBytesPerStream().isEmpty());
+	}
+
+	@Test
+	public void testReferenceCount() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+
+		PooledBuffer buffer = pool.acquire(100, "stream1");
+		assertSame(buffer, buffer.retain());
+		assertEquals(2, buffer.getRefCount());
+
+		assertFalse(buffer.release());
+		assertEquals(512, pool.getInUseBytes());
+
+		assertTrue(buffer.release());
+		assertEquals(0, pool.getInUseBytes());
+
+		try {
+			buffer.retain();
+			fail("it should throw exception");
+		}
+		catch (IllegalStateException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void testCopyOf() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+
+		ByteBuffer source = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5});
+		source.position(2);
+		PooledBuffer buffer = pool.copyOf(source, "stream1");
+		assertEquals(3, buffer.getBuffer().limit());
+		assertEquals(0, buffer.getBuffer().position());
+		assertEquals(3, buffer.getBuffer().get(0));
+		assertEquals(5, buffer.getBuffer().get(2));
+		buffer.release();
+	}
+
+	@Test
+	public void testPoolLimitAndBigBuffers() {
+		DirectBufferPool pool = new DirectBufferPool(1024);
+
+		PooledBuffer buffer1 = pool.acquire(1024, "stream1");
+		PooledBuffer buffer2 = pool.acquire(1024, "stream1");
+		buffer1.release();
+		buffer2.release();
+		//only one buffer fits into the pool
+		assertEquals(1024, pool.getPooledBytes());
+
+		PooledBuffer big = pool.acquire(DirectBufferPool.MAX_SIZE_CLASS + 1, "stream1");
+		assertEquals(DirectBufferPool.MAX_SIZE_CLASS + 1, big.getBuffer().limit());
+		big.release();
+		assertEquals(1024, pool.getPooledBytes());
+		assertEquals(0, pool.getInUseBytes());
+	}
+
+	@Test
+	public void testLeakDetection() throws InterruptedException {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		pool.setLeakDetectionSamplingInterval(1);
+
+		pool.acquire(100, "leakyStream");
+		assertEquals(512, pool.getInUseBytes("leakyStream"));
+
+		for (int i = 0; i < 50 && pool.getLeakCount() == 0; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		assertEquals(1, pool.getLeakCount());
+		assertEquals(0, pool.getInUseBytes("leakyStream"));
+	}
+
+	/**
+	 * Muxer out of the muxer package that keeps the written buffers
+	 */
+	private static class KeepingMuxer extends Muxer {
+		ByteBuffer videoFrame;
+		ByteBuffer audioFrame;
+
+		KeepingMuxer() {
+			super(null);
+		}
+
+		@Override
+		public synchronized void writeVideoBuffer(ByteBuffer encodedVideoFrame, long dts, int frameRotation, int streamIndex,
+				boolean isKeyFrame, long firstFrameTimeStamp, long pts) {
+			videoFrame = encodedVideoFrame;
+		}
+
+		@Override
+		public synchronized void writeAudioBuffer(ByteBuffer audioFrame, int streamIndex, long timestamp) {
+			this.audioFrame = audioFrame;
+		}
+
+		@Override
+		public boolean isCodecSupported(int codecId) {
+			return true;
+		}
+
+		@Override
+		public AVFormatContext getOutputFormatContext() {
+			return null;
+		}
+	}
+
+	@Test
+	public void testMuxerKeepingBufferDetachesIt() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		KeepingMuxer muxer = new KeepingMuxer();
+		assertFalse(muxer.isPooledWriteSupported());
+		assertTrue(new RtmpMuxer(null, null).isPooledWriteSupported());
+
+		PooledBuffer video = pool.acquire(4, "stream1");
+		video.getBuffer().put(new byte[] {1, 2, 3, 4});
+		muxer.writeVideoBuffer(video, 0, 0, 0, true, 0, 0);
+		PooledBuffer audio = pool.acquire(4, "stream1");
+		audio.getBuffer().put(new byte[] {5, 6, 7, 8});
+		muxer.writeAudioBuffer(audio, 1, 0);
+		assertTrue(video.isDetached());
+		assertTrue(audio.isDetached());
+		assertEquals(2, pool.getAllocationCount());
+
+		video.release();
+		audio.release();
+		assertEquals(0, pool.getInUseBytes());
+		assertEquals(0, pool.getPooledBytes());
+		assertEquals(2, pool.getDetachCount());
+
+		//memory kept by the muxer is not given to the next stream
+		PooledBuffer next = pool.acquire(4, "stream2");
+		next.getBuffer().put(new byte[] {9, 9, 9, 9});
+		assertEquals(0, pool.getReuseCount());
+
+		assertEquals(4, muxer.videoFrame.limit());
+		assertEquals(1, muxer.videoFrame.get(0));
+		assertEquals(4, muxer.videoFrame.get(3));
+		assertEquals(5, muxer.audioFrame.get(0));
+		next.release();
+	}
+
+	@Test
+	public void testRemoveStreamWithBuffersInUse() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+
+		PooledBuffer buffer1 = pool.acquire(100, "stream1");
+		PooledBuffer buffer2 = pool.acquire(100, "stream1");
+		buffer1.release();
+
+		//a muxer still keeps a buffer of the stream
+		pool.removeStream("stream1");
+		assertEquals(512, pool.getInUseBytes("stream1"));
+		assertEquals(Long.valueOf(512), pool.getInUseBytesPerStream().get("stream1"));
+
+		buffer2.release();
+		assertEquals(0, pool.getInUseBytes());
+		assertTrue(pool.getInUseBytesPerStream().isEmpty());
+
+		//stream is published again before the previous buffers are released
+		PooledBuffer oldBuffer = pool.acquire(100, "stream2");
+		pool.removeStream("stream2");
+		PooledBuffer newBuffer = pool.acquire(100, "stream2");
+		oldBuffer.release();
+		assertEquals(512, pool.getInUseBytes("stream2"));
+		newBuffer.release();
+		assertEquals(0, pool.getInUseBytes("stream2"));
+		assertTrue(pool.getInUseBytesPerStream().containsKey("stream2"));
+
+		pool.removeStream("stream2");
+		assertTrue(pool.getInUseBytesPerStream().isEmpty());
+	}
+}
@@ -0,0 +1,168 @@
+package io.antmedia.test.muxer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+
+import io.antmedia.muxer.InMemorySegmentStore;
+import io.antmedia.muxer.buffer.DirectBufferPool;
+import io.antmedia.servlet.HLSMemoryServlet;
+
+public class InMemorySegmentStoreTest {
+
+	private static ByteBuffer data(int size, byte value) {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		for (int i = 0; i < size; i++) {
+			buffer.put(value);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void write(InMemorySegmentStore store, String path, int size, byte value) {
+		InMemorySegmentStore.Builder builder = store.newBuilder(path, "stream1");
+		builder.write(data(size, value));
+		builder.commit();
+	}
+
+	@Test
+	public void testWriteAndRead() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		InMemorySegmentStore store = new InMemorySegmentStore(pool, InMemorySegmentStore.DEFAULT_MAX_BYTES);
+
+		InMemorySegmentStore.Builder builder = store.newBuilder("/tmp/app/streams/stream1000000001.ts", "stream1");
+		//write more than a chunk in two parts to cross the chunk boundary
+		builder.write(data(InMemorySegmentStore.CHUNK_SIZE - 10, (byte)1));
+		builder.write(data(100, (byte)2));
+
+		//not visible before commit
+		assertNull(store.acquire("/tmp/app/streams/stream1000000001.ts"));
+		assertEquals(1, store.getMissCount());
+
+		builder.commit();
+
+		InMemorySegmentStore.Entry entry = store.acquire("/tmp/app/streams/../streams/stream1000000001.ts");
+		assertNotNull(entry);
+		assertEquals(1, store.getHitCount());
+		assertEquals(InMemorySegmentStore.CHUNK_SIZE + 90, entry.getLength());
+		assertFalse(entry.isPlaylist());
+
+		ByteBuffer[] buffers = entry.getBuffers();
+		assertEquals(2, buffers.length);
+		assertEquals(InMemorySegmentStore.CHUNK_SIZE, buffers[0].remaining());
+		assertEquals(90, buffers[1].remaining());
+		assertEquals(1, buffers[0].get(0));
+		assertEquals(2, buffers[0].get(InMemorySegmentStore.CHUNK_SIZE - 1));
+		assertEquals(2, buffers[1].get(89));
+		assertEquals(2L * InMemorySegmentStore.CHUNK_SIZE, store.getTotalBytes());
+
+		//removed entry is freed after the reader releases it
+		assertTrue(store.remove("/tmp/app/streams/stream1000000001.ts"));
+		assertEquals(0, store.getTotalBytes());
+		assertEquals(2L * InMemorySegmentStore.CHUNK_SIZE, pool.getInUseBytes());
+		entry.release();
+		assertEquals(0, pool.getInUseBytes());
+		assertFalse(store.remove("/tmp/app/streams/stream1000000001.ts"));
+	}
+
+	@Test
+	public void testPlaylistReplaceAndEtag() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		InMemorySegmentStore store = new InMemorySegmentStore(pool, InMemorySegmentStore.DEFAULT_MAX_BYTES);
+
+		write(store, "/tmp/app/streams/stream1.m3u8", 200, (byte)1);
+		InMemorySegmentStore.Entry first = store.acquire("/tmp/app/streams/stream1.m3u8");
+		assertTrue(first.isPlaylist());
+
+		write(store, "/tmp/app/streams/stream1.m3u8", 300, (byte)2);
+		InMemorySegmentStore.Entry second = store.acquire("/tmp/app/streams/stream1.m3u8");
+		assertEquals(300, second.getLength());
+		assertNotEquals(first.getEtag(), second.getEtag());
+		assertTrue(second.getEtag().startsWith("\"") && second.getEtag().endsWith("\""));
+
+		//old version is still readable until it's released
+		assertEquals(200, first.getLength());
+		assertEquals(1, first.getBuffers()[0].get(199));
+		first.release();
+		second.release();
+
+		assertEquals(1, store.getEntryCount());
+		store.remove("/tmp/app/streams/stream1.m3u8");
+		assertEquals(0, pool.getInUseBytes());
+	}
+
+	@Test
+	public void testEvictOldestSegments() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		InMemorySegmentStore store = new InMemorySegmentStore(pool, 3L * InMemorySegmentStore.CHUNK_SIZE);
+
+		write(store, "/tmp/app/streams/stream1.m3u8", 100, (byte)1);
+		for (int i = 0; i < 5; i++) {
+			write(store, "/tmp/app/streams/stream1_" + i + ".ts", 1000, (byte)i);
+		}
+
+		//playlist and 2 latest segments fit in the limit
+		assertEquals(3, store.getEntryCount());
+		assertEquals(3, store.getEvictionCount());
+		assertTrue(store.contains("/tmp/app/streams/stream1.m3u8"));
+		assertFalse(store.contains("/tmp/app/streams/stream1_2.ts"));
+		assertTrue(store.contains("/tmp/app/streams/stream1_3.ts"));
+		assertTrue(store.contains("/tmp/app/streams/stream1_4.ts"));
+
+		store.setMaxBytes(2L * InMemorySegmentStore.CHUNK_SIZE);
+		assertFalse(store.contains("/tmp/app/streams/stream1_3.ts"));
+		assertTrue(store.contains("/tmp/app/streams/stream1_4.ts"));
+	}
+
+	@Test
+	public void testAbort() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		InMemorySegmentStore store = new InMemorySegmentStore(pool, InMemorySegmentStore.DEFAULT_MAX_BYTES);
+
+		InMemorySegmentStore.Builder builder = store.newBuilder("/tmp/app/streams/stream1_0.ts", "stream1");
+		builder.write(data(1000, (byte)1));
+		assertEquals(1000, builder.getLength());
+		builder.abort();
+
+		assertEquals(0, pool.getInUseBytes());
+		assertFalse(store.contains("/tmp/app/streams/stream1_0.ts"));
+	}
+
+	@Test
+	public void testContentType() {
+		assertEquals("application/vnd.apple.mpegurl", HLSMemoryServlet.getContentType("/a/stream1.m3u8"));
+		assertEquals("video/mp2t", HLSMemoryServlet.getContentType("/a/stream1_0.ts"));
+		assertEquals("video/iso.segment", HLSMemoryServlet.getContentType("/a/stream1_0.m4s"));
+		assertEquals("video/mp4", HLSMemoryServlet.getContentType("/a/stream1_init.mp4"));
+	}
+
+	@Test
+	public void testServletRegistration() throws ServletException {
+		ServletContext servletContext = mock(ServletContext.class);
+		when(servletContext.getContextPath()).thenReturn("/InMemoryApp");
+		ServletConfig servletConfig = mock(ServletConfig.class);
+		when(servletConfig.getServletContext()).thenReturn(servletContext);
+
+		assertFalse(HLSMemoryServlet.isRegistered("InMemoryApp"));
+		HLSMemoryServlet servlet = new HLSMemoryServlet();
+		servlet.init(servletConfig);
+		assertTrue(HLSMemoryServlet.isRegistered("InMemoryApp"));
+		assertFalse(HLSMemoryServlet.isRegistered("OtherApp"));
+
+		servlet.destroy();
+		assertFalse(HLSMemoryServlet.isRegistered("InMemoryApp"));
+	}
+}
@@ -0,0 +1,118 @@
+package io.antmedia.test.muxer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.Test;
+
+import io.antmedia.muxer.PacketDrainScheduler;
+import io.antmedia.muxer.PacketDrainScheduler.DrainTask;
+
+public class PacketDrainSchedulerTest {
+
+	@Test
+	public void testSignalRunsJobInSameWorker() {
+		PacketDrainScheduler scheduler = new PacketDrainScheduler(4);
+
+		List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger runCount = new AtomicInteger();
+		DrainTask task = scheduler.register("stream1", () -> {
+			threadNames.add(Thread.currentThread().getName());
+			runCount.incrementAndGet();
+		});
+
+		assertEquals(scheduler.getWorkerIndex("stream1"), task.getWorkerIndex());
+		assertEquals(1, scheduler.getStreamCounts()[task.getWorkerIndex()]);
+
+		for (int i = 0; i < 100; i++) {
+			task.signal();
+			final int expected = i + 1;
+			Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> runCount.get() == expected);
+		}
+
+		for (String threadName : threadNames) {
+			assertEquals("packet-drain-" + task.getWorkerIndex(), threadName);
+		}
+		assertEquals(100, scheduler.getDrainCounts()[task.getWorkerIndex()]);
+		assertEquals(0, scheduler.getBacklogs()[task.getWorkerIndex()]);
+
+		task.cancel();
+		assertTrue(task.isCancelled());
+		assertEquals(0, scheduler.getStreamCounts()[task.getWorkerIndex()]);
+
+		//cancelled task should not run
+		task.signal();
+		task.signalDelayed(1);
+		Awaitility.await().pollDelay(200, TimeUnit.MILLISECONDS).atMost(1, TimeUnit.SECONDS).until(() -> runCount.get() == 100);
+
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testSignalsAreCoalesced() throws InterruptedException {
+		PacketDrainScheduler scheduler = new PacketDrainScheduler(1);
+
+		AtomicInteger runCount = new AtomicInteger();
+		//block the worker so that signals are waiting
+		DrainTask blocker = scheduler.register("blocker", () -> {
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		DrainTask task = scheduler.register("stream1", runCount::incrementAndGet);
+
+		blocker.signal();
+		for (int i = 0; i < 10; i++) {
+			task.signal();
+		}
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> runCount.get() == 1);
+		Thread.sleep(100);
+		assertEquals(1, runCount.get());
+
+		task.signalDelayed(10);
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> runCount.get() == 2);
+
+		scheduler.resetStats();
+		assertEquals(0, scheduler.getDrainCounts()[0]);
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testDelayedSignalsAreCoalesced() throws InterruptedException {
+		PacketDrainScheduler scheduler = new PacketDrainScheduler(1);
+
+		AtomicInteger runCount = new AtomicInteger();
+		DrainTask task = scheduler.register("stream1", runCount::incrementAndGet);
+
+		//later signals are ignored while an earlier one is scheduled
+		for (int i = 0; i < 10; i++) {
+			task.signalDelayed(100 + i);
+		}
+		//an earlier signal replaces the scheduled one
+		task.signalDelayed(50);
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> runCount.get() == 1);
+		Thread.sleep(300);
+		assertEquals(1, runCount.get());
+
+		//new signal can be scheduled after the previous one runs
+		task.signalDelayed(10);
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> runCount.get() == 2);
+
+		task.signalDelayed(100);
+		task.cancel();
+		Thread.sleep(300);
+		assertEquals(2, runCount.get());
+		scheduler.shutdown();
+	}
+}
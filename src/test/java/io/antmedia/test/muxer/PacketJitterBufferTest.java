@@ -0,0 +1,118 @@
+package io.antmedia.test.muxer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.antmedia.muxer.PacketJitterBuffer;
+
+public class PacketJitterBufferTest {
+
+	private static class Packet {
+		final long timestamp;
+		final String name;
+
+		Packet(long timestamp, String name) {
+			this.timestamp = timestamp;
+			this.name = name;
+		}
+	}
+
+	@Test
+	public void testOrderAndSameTimestamp() {
+		PacketJitterBuffer<Packet> buffer = new PacketJitterBuffer<>(1000, p -> p.timestamp, 2);
+
+		buffer.add(new Packet(10, "audio10"));
+		buffer.add(new Packet(30, "video30"));
+		buffer.add(new Packet(20, "video20"));
+		//same timestamp should be kept in the insertion order
+		buffer.add(new Packet(20, "audio20"));
+		buffer.add(new Packet(5, "audio5"));
+
+		//it should grow
+		assertEquals(8, buffer.getCapacity());
+		assertEquals(5, buffer.size());
+		assertEquals(25, buffer.getBufferedDurationMs());
+		assertEquals("audio5", buffer.first().name);
+		assertEquals("video30", buffer.last().name);
+
+		assertEquals("audio5", buffer.pollFirst().name);
+		assertEquals("audio10", buffer.pollFirst().name);
+		assertEquals("video20", buffer.pollFirst().name);
+		assertEquals("audio20", buffer.pollFirst().name);
+		assertEquals("video30", buffer.pollFirst().name);
+		assertNull(buffer.pollFirst());
+		assertNull(buffer.first());
+		assertNull(buffer.last());
+		assertTrue(buffer.isEmpty());
+	}
+
+	@Test
+	public void testWrapAround() {
+		PacketJitterBuffer<Packet> buffer = new PacketJitterBuffer<>(1000, p -> p.timestamp, 4);
+		for (int i = 0; i < 100; i++) {
+			buffer.add(new Packet(i * 10L + 5, "p"));
+			buffer.add(new Packet(i * 10L, "p"));
+			assertEquals(i * 10L, buffer.pollFirst().timestamp);
+			assertEquals(i * 10L + 5, buffer.pollFirst().timestamp);
+		}
+		assertEquals(4, buffer.getCapacity());
+	}
+
+	@Test
+	public void testPlayoutClockAndTrim() {
+		PacketJitterBuffer<Packet> buffer = new PacketJitterBuffer<>(1000, p -> p.timestamp);
+		assertTrue(buffer.isBuffering());
+
+		long now = 100000;
+		for (int i = 0; i <= 10; i++) {
+			buffer.put(new Packet(i * 100L, "p"), now);
+			assertTrue(buffer.isBuffering());
+			assertNull(buffer.pollReady(now));
+		}
+
+		assertEquals(Long.MAX_VALUE, buffer.getNextReleaseTimeMs());
+
+		buffer.put(new Packet(1100, "p"), now);
+		assertFalse(buffer.isBuffering());
+		assertEquals(now, buffer.getPlayoutStartTimeMs());
+		assertEquals(1100, buffer.getPlayoutStartTimestamp());
+		assertTrue(buffer.getNextReleaseTimeMs() <= now + 1);
+
+		//head packet's timestamp is behind the playout start so it's released immediately
+		assertEquals(0, buffer.pollReady(now + 1).timestamp);
+
+		//packets after the playout start timestamp are released according to the wall clock
+		while (buffer.size() > 1) {
+			buffer.pollReady(now + 1);
+		}
+		assertNull(buffer.pollReady(now));
+		assertEquals(now + 1, buffer.getNextReleaseTimeMs());
+		assertEquals(1100, buffer.pollReady(now + 1).timestamp);
+		assertEquals(Long.MAX_VALUE, buffer.getNextReleaseTimeMs());
+		assertTrue(buffer.isBuffering());
+
+		//fill more than 5 times of the buffer time
+		for (int i = 0; i <= 51; i++) {
+			buffer.put(new Packet(10000 + i * 100L, "p"), now);
+		}
+		assertEquals(1900, buffer.getBufferedDurationMs());
+		assertEquals(32, buffer.getDroppedPacketCount());
+
+		long[] histogram = buffer.getOccupancyHistogram();
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		assertEquals(12 + 52, total);
+		assertTrue(histogram[PacketJitterBuffer.OCCUPANCY_BUCKET_BOUNDS_MS.length] > 0);
+
+		buffer.clear();
+		assertTrue(buffer.isEmpty());
+		assertTrue(buffer.isBuffering());
+		assertEquals(0, buffer.getBufferedDurationMs());
+	}
+}
@@ -0,0 +1,127 @@
+package io.antmedia.test.muxer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.junit.Test;
+
+import io.antmedia.muxer.StreamHealthEstimator;
+import io.antmedia.muxer.StreamHealthMXBean;
+import io.antmedia.muxer.StreamHealthStats;
+
+public class StreamHealthEstimatorTest {
+
+	@Test
+	public void testRealTimeStream() {
+		StreamHealthEstimator estimator = new StreamHealthEstimator();
+		for (int i = 0; i < 400; i++) {
+			long pts = i * 40L;
+			estimator.addPacket(pts, 1000 + pts, 1000, i % 60 == 0);
+		}
+
+		assertEquals(StreamHealthEstimator.DEFAULT_WINDOW_SIZE, estimator.getPacketCount());
+		assertEquals(400, estimator.getTotalPacketCount());
+		assertEquals(1.0, estimator.getSpeed(), 0.0001);
+		//300 packets in 299 * 40 ms
+		assertEquals(300 * 1000 * 8 * 1000L / (299 * 40), estimator.getBitrate());
+		assertEquals(0, estimator.getJitterMs(), 0.0001);
+		assertEquals(60 * 40, estimator.getGopDurationMs());
+		//key frames at 120, 180, 240, 300 and 360 are in the window
+		assertEquals(5, estimator.getKeyFrameCount());
+		assertEquals(StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP99Ms());
+	}
+
+	@Test
+	public void testSlowStream() {
+		StreamHealthEstimator estimator = new StreamHealthEstimator(100);
+		for (int i = 0; i < 200; i++) {
+			estimator.addPacket(i * 20L, i * 40L, 500, false);
+		}
+		assertEquals(0.5, estimator.getSpeed(), 0.0001);
+		assertEquals(20, estimator.getJitterMs(), 0.5);
+		assertEquals(0, estimator.getGopDurationMs());
+
+		//delay increases 20ms for each packet and the window has the packets from 100 to 199
+		assertEquals(149 * 20 + StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP50Ms());
+		assertEquals(198 * 20 + StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP99Ms());
+
+		//long delays are counted in the last bucket
+		for (int i = 200; i < 300; i++) {
+			estimator.addPacket(i * 20L, i * 40L, 500, false);
+		}
+		assertEquals(StreamHealthEstimator.MAX_DELAY_MS, estimator.getIngestDelayP99Ms());
+	}
+
+	@Test
+	public void testFastStream() {
+		StreamHealthEstimator estimator = new StreamHealthEstimator(100);
+		//every packet is the earliest one for its timestamp
+		for (int i = 0; i < 200; i++) {
+			estimator.addPacket(i * 40L, i * 4L, 1000, false);
+		}
+		assertEquals(10.0, estimator.getSpeed(), 0.0001);
+
+		//delay of the packet i is 36 * (199 - i) and the 50th smallest one is of the packet 150
+		assertEquals(36 * 49 + StreamHealthEstimator.DELAY_BUCKET_MS - (36 * 49) % StreamHealthEstimator.DELAY_BUCKET_MS,
+				estimator.getIngestDelayP50Ms());
+
+		//packets in real time after that have no delay and replace the window
+		for (int i = 200; i < 300; i++) {
+			estimator.addPacket(i * 40L, 199 * 4L + (i - 199) * 40L, 1000, false);
+		}
+		assertEquals(StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP99Ms());
+	}
+
+	@Test
+	public void testIngestDelayPercentiles() {
+		StreamHealthEstimator estimator = new StreamHealthEstimator();
+		for (int i = 0; i < 100; i++) {
+			long pts = i * 40L;
+			long delay = i % 10 == 5 ? 200 : 0;
+			estimator.addPacket(pts, 1000 + pts + delay, 1000, false);
+		}
+		assertEquals(StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP50Ms());
+		assertEquals(200 + StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP95Ms());
+		assertEquals(200 + StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP99Ms());
+		assertTrue(estimator.getJitterMs() > 0);
+
+		//delays are relative to the earliest packet even if it arrives later
+		estimator.addPacket(4000, 1000 + 4000 - 100, 1000, false);
+		assertEquals(100 + StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP50Ms());
+		assertEquals(300 + StreamHealthEstimator.DELAY_BUCKET_MS, estimator.getIngestDelayP99Ms());
+
+		StreamHealthStats stats = estimator.getStats();
+		assertEquals(101, stats.packetCount);
+		assertEquals(estimator.getIngestDelayP95Ms(), stats.ingestDelayP95Ms);
+
+		estimator.reset();
+		assertEquals(0, estimator.getPacketCount());
+		assertEquals(0, estimator.getSpeed(), 0.0001);
+		assertEquals(0, estimator.getIngestDelayP50Ms());
+	}
+
+	@Test
+	public void testJMX() throws Exception {
+		StreamHealthEstimator estimator = new StreamHealthEstimator();
+		estimator.addPacket(0, 1000, 100, true);
+		estimator.addPacket(1000, 2000, 100, true);
+
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("io.antmedia:type=StreamHealth,app=junit,streamId=" + ObjectName.quote("stream,1"));
+		mbs.registerMBean(new StandardMBean(estimator, StreamHealthMXBean.class, true), objectName);
+		try {
+			assertEquals(2, mbs.getAttribute(objectName, "PacketCount"));
+			assertEquals(1.0, (double) mbs.getAttribute(objectName, "Speed"), 0.0001);
+			assertEquals(1000L, mbs.getAttribute(objectName, "GopDurationMs"));
+		}
+		finally {
+			mbs.unregisterMBean(objectName);
+		}
+	}
+}
@@ -492,6 +492,10 @@ public class BroadcastRestServiceV2UnitTest {
 		BroadcastStatistics broadcastStatistics = restServiceReal.getBroadcastStatistics(streamId);
 		assertNotNull(broadcastStatistics);
 		assertEquals(30, broadcastStatistics.totalHLSWatchersCount);
+		//async muxer fan-out is not enabled and there is no mux adaptor
+		assertTrue(broadcastStatistics.getMuxerQueueStats().isEmpty());
+		assertNull(broadcastStatistics.getStreamHealth());
+		assertNull(broadcastStatistics.getJitterBuffer());
 
 	}
 
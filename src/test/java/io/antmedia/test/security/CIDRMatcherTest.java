@@ -0,0 +1,147 @@
+package io.antmedia.test.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import org.apache.catalina.util.NetMask;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.AppSettings;
+import io.antmedia.filter.IPFilter;
+import io.antmedia.security.CIDRMatcher;
+import io.antmedia.settings.ServerSettings;
+
+public class CIDRMatcherTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(CIDRMatcherTest.class);
+
+	@Test
+	public void testMatches() {
+		CIDRMatcher matcher = CIDRMatcher.compile("127.0.0.1, 10.0.0.0/8,192.168.1.0/24,fd00::/8,::1");
+		assertEquals(5, matcher.getNetworkCount());
+
+		assertTrue(matcher.matches("127.0.0.1"));
+		assertFalse(matcher.matches("127.0.0.2"));
+		assertTrue(matcher.matches("10.255.1.2"));
+		assertFalse(matcher.matches("11.0.0.1"));
+		assertTrue(matcher.matches("192.168.1.254"));
+		assertFalse(matcher.matches("192.168.2.1"));
+
+		assertTrue(matcher.matches("fd12:3456::1"));
+		assertTrue(matcher.matches("::1"));
+		assertFalse(matcher.matches("fe80::1"));
+
+		//IPv4 addresses don't match IPv6 networks like NetMask
+		assertFalse(CIDRMatcher.compile("::/0").matches("10.0.0.1"));
+		assertFalse(CIDRMatcher.compile("0.0.0.0/0").matches("::1"));
+		assertTrue(CIDRMatcher.compile("0.0.0.0/0").matches("255.255.255.255"));
+
+		assertFalse(matcher.matches((String)null));
+		assertFalse(CIDRMatcher.EMPTY.matches("127.0.0.1"));
+		assertFalse(CIDRMatcher.compile(null).matches("127.0.0.1"));
+	}
+
+	@Test
+	public void testInvalidEntriesAreSkipped() {
+		CIDRMatcher matcher = CIDRMatcher.compile("127.0.0.1/33,10.0.0.0/8,,10.0.0.0/x");
+		assertTrue(matcher.matches("10.0.0.1"));
+		assertFalse(matcher.matches("127.0.0.1"));
+	}
+
+	@Test
+	public void testSameWithNetMask() {
+		Random random = new Random(1);
+		List<String> cidrs = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			int prefixLength = 8 + random.nextInt(25);
+			cidrs.add((random.nextInt(4) + 10) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "/" + prefixLength);
+		}
+		String cidrList = String.join(",", cidrs);
+		List<NetMask> netMasks = new ArrayList<>();
+		for (String cidr : cidrs) {
+			netMasks.add(new NetMask(cidr));
+		}
+		CIDRMatcher matcher = CIDRMatcher.compile(cidrList);
+
+		for (int i = 0; i < 10000; i++) {
+			String address = (random.nextInt(4) + 10) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+			boolean expected = netMasks.stream().anyMatch(netMask -> {
+				try {
+					return netMask.matches(InetAddress.getByName(address));
+				}
+				catch (Exception e) {
+					return false;
+				}
+			});
+			assertEquals(address, expected, matcher.matches(address));
+		}
+	}
+
+	@Test
+	public void testSettingsMatcherIsCompiledOnChange() {
+		AppSettings appSettings = new AppSettings();
+		appSettings.setRemoteAllowedCIDR("127.0.0.1");
+		CIDRMatcher matcher = appSettings.getAllowedCIDRMatcher();
+		assertSame(matcher, appSettings.getAllowedCIDRMatcher());
+		assertTrue(matcher.matches("127.0.0.1"));
+		assertFalse(matcher.matches("10.0.0.1"));
+
+		appSettings.setRemoteAllowedCIDR("127.0.0.1,10.0.0.0/8");
+		CIDRMatcher updatedMatcher = appSettings.getAllowedCIDRMatcher();
+		assertNotSame(matcher, updatedMatcher);
+		assertTrue(updatedMatcher.matches("10.0.0.1"));
+
+		ServerSettings serverSettings = new ServerSettings();
+		serverSettings.setAllowedDashboardCIDR("172.16.0.0/12");
+		assertTrue(serverSettings.getAllowedDashboardCIDRMatcher().matches("172.20.0.1"));
+		assertFalse(serverSettings.getAllowedDashboardCIDRMatcher().matches("172.32.0.1"));
+	}
+
+	/**
+	 * Prints the lookup cost of a long allow list for the matcher and for the NetMask list
+	 */
+	@Test
+	public void testLookupCost() {
+		StringBuilder cidrList = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			if (i > 0) {
+				cidrList.append(',');
+			}
+			cidrList.append("10.").append(i / 256).append('.').append(i % 256).append(".0/24");
+		}
+		AppSettings appSettings = new AppSettings();
+		appSettings.setRemoteAllowedCIDR(cidrList.toString());
+		CIDRMatcher matcher = appSettings.getAllowedCIDRMatcher();
+
+		IPFilter ipFilter = new IPFilter();
+		Queue<NetMask> netMasks = appSettings.getAllowedCIDRList();
+		int count = 10000;
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				assertTrue(matcher.matches("10.3.231." + (i & 255)));
+			}
+			long matcherDuration = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				assertTrue(ipFilter.checkCIDRList(netMasks, "10.3.231." + (i & 255)));
+			}
+			long netMaskDuration = System.nanoTime() - start;
+			if (round == 1) {
+				logger.info("CIDR lookup cost for 1000 networks matcher: {}ns netmask list: {}ns", matcherDuration / count, netMaskDuration / count);
+			}
+		}
+	}
+}
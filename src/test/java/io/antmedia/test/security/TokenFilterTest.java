@@ -1,6 +1,7 @@
 package io.antmedia.test.security;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -12,6 +13,9 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
@@ -125,13 +129,29 @@ public class TokenFilterTest {
 			
 			
 			verify(tokenService, times(1)).checkToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN);
-			
-			
-			
+
+			//failed verifications are not cached
+			tokenFilter.doFilter(mockRequest, mockResponse, mockChain);
+			verify(tokenService, times(2)).checkToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN);
+
+			//play token is verified for every request because it may expire or be deleted in the datastore
+			when(tokenService.checkToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN)).thenReturn(true);
+			tokenFilter.doFilter(mockRequest, mockResponse, mockChain);
+			tokenFilter.doFilter(mockRequest, mockResponse, mockChain);
+			verify(tokenService, times(4)).checkToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN);
+			verify(mockChain, times(2)).doFilter(mockRequest, mockResponse);
+			assertEquals(0, tokenFilter.getVerificationCache().getHitCount());
+
+			//another session should be verified again
+			String sessionId2 = RandomStringUtils.randomAlphanumeric(16);
+			when(session.getId()).thenReturn(sessionId2);
+			tokenFilter.doFilter(mockRequest, mockResponse, mockChain);
+			verify(tokenService, times(1)).checkToken(tokenId, streamId, sessionId2, Token.PLAY_TOKEN);
+
 		} catch (ServletException|IOException e) {
 			e.printStackTrace();
 			fail(ExceptionUtils.getStackTrace(e));
-		} 
+		}
 		catch (Exception e) {
 			e.printStackTrace();
 			fail(ExceptionUtils.getStackTrace(e));
@@ -220,6 +240,8 @@ public class TokenFilterTest {
 				.thenReturn(context);
 		
 		when(filterconfig.getServletContext()).thenReturn(servletContext);
+		when(servletContext.getContextPath()).thenReturn("/LiveApp");
+		when(filterconfig.getFilterName()).thenReturn("TokenFilter");
 		
 		try {
 			tokenFilter.init(filterconfig);
@@ -248,6 +270,18 @@ public class TokenFilterTest {
 			tokenFilter.doFilter(mockRequest, mockResponse, mockChain);
 			
 			verify(tokenService, times(1)).checkJwtToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN);
+
+			//successful JWT verification is cached for the same session
+			when(tokenService.checkJwtToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN)).thenReturn(true);
+			tokenFilter.doFilter(mockRequest, mockResponse, mockChain);
+			tokenFilter.doFilter(mockRequest, mockResponse, mockChain);
+			verify(tokenService, times(2)).checkJwtToken(tokenId, streamId, sessionId, Token.PLAY_TOKEN);
+			verify(mockChain, times(2)).doFilter(mockRequest, mockResponse);
+
+			ObjectName objectName = new ObjectName("io.antmedia:type=TokenVerificationCache,name=" + ObjectName.quote("/LiveApp/TokenFilter"));
+			assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "HitCount"));
+			tokenFilter.destroy();
+			assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
 			
 		} catch (ServletException|IOException e) {
 			e.printStackTrace();
@@ -0,0 +1,164 @@
+package io.antmedia.test.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.JwkException;
+import com.auth0.jwk.JwkProvider;
+import com.auth0.jwk.SigningKeyNotFoundException;
+
+import io.antmedia.filter.JWTFilter;
+import io.antmedia.security.JwksKeyCache;
+import io.antmedia.security.TokenVerificationCache;
+
+public class TokenVerificationCacheTest {
+
+	@Test
+	public void testVerificationExpiry() throws InterruptedException {
+		TokenVerificationCache cache = new TokenVerificationCache(100, 200);
+
+		assertFalse(cache.isVerified("play", "token", "stream1", "session1"));
+		cache.putVerified("play", "token", "stream1", "session1");
+		assertTrue(cache.isVerified("play", "token", "stream1", "session1"));
+
+		//all parts of the key should match
+		assertFalse(cache.isVerified("hash", "token", "stream1", "session1"));
+		assertFalse(cache.isVerified("play", "token", "stream2", "session1"));
+		assertFalse(cache.isVerified("play", "token", "stream1", "session2"));
+		assertFalse(cache.isVerified("play", null, "stream1", "session1"));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(5, cache.getMissCount());
+
+		Thread.sleep(300);
+		assertFalse(cache.isVerified("play", "token", "stream1", "session1"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpiryIsCappedByJwtExpiry() throws InterruptedException {
+		TokenVerificationCache cache = new TokenVerificationCache(100, 60000);
+		long expireTime = System.currentTimeMillis() + 1500;
+		String jwtToken = JWTFilter.generateJwtToken("testtesttesttesttesttesttesttest", expireTime);
+		//exp claim is in seconds
+		assertEquals(expireTime / 1000 * 1000, TokenVerificationCache.getJwtExpireTimeMs(jwtToken));
+		assertEquals(Long.MAX_VALUE, TokenVerificationCache.getJwtExpireTimeMs("not.a.jwt"));
+		assertEquals(Long.MAX_VALUE, TokenVerificationCache.getJwtExpireTimeMs("plaintoken"));
+
+		cache.putVerified("jwt", jwtToken, "stream1", null);
+		assertTrue(cache.isVerified("jwt", jwtToken, "stream1", null));
+
+		Thread.sleep(1600);
+		assertFalse(cache.isVerified("jwt", jwtToken, "stream1", null));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		TokenVerificationCache cache = new TokenVerificationCache(2, 60000);
+		cache.putVerified("play", "token1", "stream", null);
+		cache.putVerified("play", "token2", "stream", null);
+		assertTrue(cache.isVerified("play", "token1", "stream", null));
+
+		cache.putVerified("play", "token3", "stream", null);
+		assertEquals(2, cache.size());
+		assertTrue(cache.isVerified("play", "token1", "stream", null));
+		assertFalse(cache.isVerified("play", "token2", "stream", null));
+		assertTrue(cache.isVerified("play", "token3", "stream", null));
+	}
+
+	@Test
+	public void testJwksKeysAreFetchedOnce() throws Exception {
+		JwkProvider provider = mock(JwkProvider.class);
+		Jwk jwk = mock(Jwk.class);
+		CountDownLatch fetchStarted = new CountDownLatch(1);
+		CountDownLatch releaseFetch = new CountDownLatch(1);
+		AtomicInteger providerCount = new AtomicInteger();
+		when(provider.get("kid1")).thenAnswer(invocation -> {
+			fetchStarted.countDown();
+			releaseFetch.await(5, TimeUnit.SECONDS);
+			return jwk;
+		});
+		when(provider.get("unknown")).thenThrow(new SigningKeyNotFoundException("not found", null));
+
+		JwksKeyCache cache = new JwksKeyCache(60000, url -> {
+			providerCount.incrementAndGet();
+			return provider;
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			@SuppressWarnings("unchecked")
+			Future<Jwk>[] futures = new Future[4];
+			futures[0] = executor.submit(() -> cache.get("http://localhost/jwks", "kid1"));
+			assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+			for (int i = 1; i < futures.length; i++) {
+				futures[i] = executor.submit(() -> cache.get("http://localhost/jwks", "kid1"));
+			}
+			//give the other callers time to wait for the same fetch
+			Thread.sleep(100);
+			releaseFetch.countDown();
+			for (Future<Jwk> future : futures) {
+				assertEquals(jwk, future.get(5, TimeUnit.SECONDS));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(jwk, cache.get("http://localhost/jwks", "kid1"));
+		assertTrue(cache.getHitCount() >= 1);
+		assertEquals(1, providerCount.get());
+
+		try {
+			cache.get("http://localhost/jwks", "unknown");
+			fail("unknown key should not be found");
+		}
+		catch (JwkException e) {
+			assertTrue(e instanceof SigningKeyNotFoundException);
+		}
+		verify(provider, times(1)).get("unknown");
+	}
+
+	@Test
+	public void testJwksKeyIsRefreshedInBackground() throws Exception {
+		JwkProvider provider = mock(JwkProvider.class);
+		Jwk jwk = mock(Jwk.class);
+		when(provider.get("kid1")).thenReturn(jwk);
+
+		JwksKeyCache cache = new JwksKeyCache(500, url -> provider);
+		assertEquals(jwk, cache.get("http://localhost/jwks", "kid1"));
+		assertEquals(1, cache.getFetchCount());
+
+		//after 80% of ttl, key is returned from the cache and refreshed in the background
+		Thread.sleep(420);
+		assertEquals(jwk, cache.get("http://localhost/jwks", "kid1"));
+		assertEquals(1, cache.getMissCount());
+
+		long startTime = System.currentTimeMillis();
+		while (cache.getFetchCount() < 2 && System.currentTimeMillis() - startTime < 5000) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, cache.getFetchCount());
+
+		//refreshed key is valid for another ttl
+		Thread.sleep(200);
+		assertEquals(jwk, cache.get("http://localhost/jwks", "kid1"));
+		assertEquals(1, cache.getMissCount());
+	}
+}
@@ -0,0 +1,194 @@
+package io.antmedia.test.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.Test;
+
+import io.antmedia.muxer.buffer.DirectBufferPool;
+import io.antmedia.servlet.ChunkedCacheManager;
+import io.antmedia.servlet.ChunkedTransferServlet.ChunkListener;
+import io.antmedia.servlet.ChunkedTransferServlet.ChunkListener.QueuedChunk;
+import io.vertx.core.Vertx;
+
+public class ChunkedCacheManagerTest {
+
+	private ChunkedCacheManager createCacheManager(DirectBufferPool pool) {
+		ChunkedCacheManager cacheManager = new ChunkedCacheManager();
+		cacheManager.setBufferPool(pool);
+		cacheManager.setEvictionDelayMs(0);
+		return cacheManager;
+	}
+
+	/**
+	 * @return data of the next queued chunk. Chunk is released
+	 */
+	private byte[] pollChunk(ChunkListener listener) {
+		QueuedChunk chunk = listener.getChunksQueue().poll();
+		ByteBuffer data = chunk.getData().duplicate();
+		byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		chunk.release();
+		return bytes;
+	}
+
+	@Test
+	public void testFanOutAndLateJoin() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		ChunkedCacheManager cacheManager = createCacheManager(pool);
+
+		String key = "/tmp/streams/stream1_0.m4s";
+		assertFalse(cacheManager.hasCache(key));
+
+		cacheManager.addCache(key);
+		assertTrue(cacheManager.hasCache(key));
+		assertEquals(1, cacheManager.getActiveKeyCount());
+
+		ChunkListener listener1 = new ChunkListener();
+		ChunkListener listener2 = new ChunkListener();
+		cacheManager.registerChunkListener(key, listener1);
+		cacheManager.registerChunkListener(key, listener2);
+		assertEquals(2, cacheManager.getListenerCount());
+
+		byte[] chunk1 = new byte[] {1, 2, 3};
+		cacheManager.append(key, chunk1);
+		assertEquals(3, cacheManager.getBytesHeld());
+
+		//same array is delivered to all listeners
+		assertSame(chunk1, listener1.getChunksQueue().poll().getData().array());
+		assertSame(chunk1, listener2.getChunksQueue().poll().getData().array());
+
+		//late viewer gets the stored chunks first without a copy
+		ChunkListener listener3 = new ChunkListener();
+		cacheManager.registerChunkListener(key, listener3);
+		assertTrue(listener3.getChunksQueue().peek().getData().isReadOnly());
+		assertArrayEquals(chunk1, pollChunk(listener3));
+
+		byte[] chunk2 = new byte[] {4, 5};
+		cacheManager.append(key, chunk2);
+		assertSame(chunk2, listener3.getChunksQueue().poll().getData().array());
+
+		cacheManager.removeChunkListener(key, listener2);
+		assertEquals(2, cacheManager.getListenerCount());
+
+		cacheManager.removeCache(key);
+		assertSame(chunk2, listener1.getChunksQueue().poll().getData().array());
+		assertTrue(listener1.getChunksQueue().poll().isEOF());
+		assertTrue(listener3.getChunksQueue().poll().isEOF());
+		assertFalse(cacheManager.hasCache(key));
+		assertEquals(0, cacheManager.getKeyCount());
+		assertEquals(0, cacheManager.getBytesHeld());
+		assertEquals(0, pool.getInUseBytes());
+
+		//listener of a missing key gets EOF immediately
+		ChunkListener listener4 = new ChunkListener();
+		cacheManager.registerChunkListener(key, listener4);
+		assertTrue(listener4.getChunksQueue().poll().isEOF());
+	}
+
+	@Test
+	public void testEvictionDelay() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		ChunkedCacheManager cacheManager = createCacheManager(pool);
+		Vertx vertx = Vertx.vertx();
+		try {
+			cacheManager.setVertx(vertx);
+			cacheManager.setEvictionDelayMs(500);
+
+			String key = "/tmp/streams/stream1_1.m4s";
+			cacheManager.addCache(key);
+			byte[] data = new byte[100];
+			data[99] = 7;
+			cacheManager.append(key, data);
+			cacheManager.removeCache(key);
+
+			//completed file is still in the cache and new viewer gets all of it with EOF
+			assertTrue(cacheManager.hasCache(key));
+			assertEquals(0, cacheManager.getActiveKeyCount());
+			ChunkListener listener = new ChunkListener();
+			cacheManager.registerChunkListener(key, listener);
+			QueuedChunk chunk = listener.getChunksQueue().poll();
+			assertTrue(listener.getChunksQueue().poll().isEOF());
+
+			Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !cacheManager.hasCache(key));
+			assertEquals(0, cacheManager.getBytesHeld());
+
+			//chunk is not returned to the pool while the viewer keeps it
+			assertTrue(pool.getInUseBytes() > 0);
+			assertEquals(100, chunk.getData().remaining());
+			assertEquals(7, chunk.getData().get(99));
+			chunk.release();
+			assertEquals(0, pool.getInUseBytes());
+		}
+		finally {
+			vertx.close();
+		}
+	}
+
+	@Test
+	public void testSizeLimit() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		ChunkedCacheManager cacheManager = createCacheManager(pool);
+		cacheManager.setMaxBytesPerKey(150);
+
+		String key = "/tmp/streams/stream1_2.m4s";
+		cacheManager.addCache(key);
+		ChunkListener listener = new ChunkListener();
+		cacheManager.registerChunkListener(key, listener);
+
+		cacheManager.append(key, new byte[100]);
+		cacheManager.append(key, new byte[100]);
+
+		//waiting viewer still gets the chunks but new viewers cannot join
+		assertEquals(100, pollChunk(listener).length);
+		assertEquals(100, pollChunk(listener).length);
+		assertFalse(cacheManager.hasCache(key));
+		assertEquals(1, cacheManager.getOverflowCount());
+		assertEquals(0, cacheManager.getBytesHeld());
+
+		//uploading same file again replaces the previous one
+		cacheManager.addCache(key);
+		assertTrue(listener.getChunksQueue().poll().isEOF());
+		assertTrue(cacheManager.hasCache(key));
+
+		cacheManager.destroy();
+		assertEquals(0, cacheManager.getKeyCount());
+		assertEquals(0, pool.getInUseBytes());
+	}
+
+	@Test
+	public void testViewerAfterOverflowWaitsForUpload() {
+		DirectBufferPool pool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_POOLED_BYTES_PER_CLASS);
+		ChunkedCacheManager cacheManager = createCacheManager(pool);
+		cacheManager.setMaxBytesPerKey(150);
+
+		String key = "/tmp/streams/stream1_3.m4s";
+		assertFalse(cacheManager.isUploading(key));
+		assertFalse(cacheManager.addUploadCompletionListener(key, () -> {}));
+
+		cacheManager.addCache(key);
+		cacheManager.append(key, new byte[100]);
+		cacheManager.append(key, new byte[100]);
+		assertFalse(cacheManager.hasCache(key));
+		assertTrue(cacheManager.isUploading(key));
+
+		AtomicInteger completedCount = new AtomicInteger();
+		assertTrue(cacheManager.addUploadCompletionListener(key, completedCount::incrementAndGet));
+		cacheManager.append(key, new byte[100]);
+		assertEquals(0, completedCount.get());
+
+		cacheManager.removeCache(key);
+		assertEquals(1, completedCount.get());
+		assertFalse(cacheManager.isUploading(key));
+		assertFalse(cacheManager.addUploadCompletionListener(key, completedCount::incrementAndGet));
+		assertEquals(1, completedCount.get());
+	}
+}
@@ -10,23 +10,30 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.catalina.Globals;
 import org.apache.catalina.connector.ClientAbortException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.web.context.ConfigurableWebApplicationContext;
 import org.springframework.web.context.WebApplicationContext;
 
 import com.google.common.io.Files;
 
+import io.antmedia.servlet.ChunkedCacheManager;
 import io.antmedia.servlet.ChunkedTransferServlet;
 import io.antmedia.servlet.ChunkedTransferServlet.ChunkListener;
+import io.antmedia.servlet.ChunkedTransferServlet.FileWriteListener;
 import io.antmedia.servlet.ChunkedTransferServlet.StatusListener;
+import io.antmedia.servlet.ChunkedTransferServlet.UploadReadListener;
 import io.antmedia.servlet.IChunkedCacheManager;
 import io.antmedia.servlet.MockChunkedCacheManager;
 import io.antmedia.servlet.cmafutils.AtomParser;
@@ -37,6 +44,7 @@ import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -116,22 +124,23 @@ public class ChunkedTransferServletTest {
 
 
 			Mockito.when(asyncContext.getRequest()).thenReturn(req);
-			Mockito.when(req.getInputStream()).thenReturn(Mockito.mock(ServletInputStream.class));
+			ServletInputStream inputStream = Mockito.mock(ServletInputStream.class);
+			Mockito.when(req.getInputStream()).thenReturn(inputStream);
 
 			Mockito.when(appContext.isRunning()).thenReturn(true);
 			servlet.handleIncomingStream(req, resp);
-			Mockito.verify(asyncContext).start(Mockito.any());
+			Mockito.verify(inputStream).setReadListener(Mockito.any());
 
 			Mockito.when(req.getPathInfo()).thenReturn("/stream" + (int)(Math.random()*10000) + ".mpd");
 			servlet.handleIncomingStream(req, resp);
-			Mockito.verify(asyncContext, Mockito.times(2)).start(Mockito.any());
+			Mockito.verify(inputStream, Mockito.times(2)).setReadListener(Mockito.any());
 
 
 			//no slash
 			Mockito.when(req.getPathInfo()).thenReturn("stream" + (int)(Math.random()*10000));
 			servlet.handleIncomingStream(req, resp);
 			//it should 2 again
-			Mockito.verify(asyncContext, Mockito.times(2)).start(Mockito.any());
+			Mockito.verify(inputStream, Mockito.times(2)).setReadListener(Mockito.any());
 
 
 			//
@@ -139,11 +148,11 @@ public class ChunkedTransferServletTest {
 			Mockito.when(req.getPathInfo()).thenReturn("/" + streamId +"/" + streamId + ".mpd");
 			servlet.handleIncomingStream(req, resp);
 			//it should 3 
-			Mockito.verify(asyncContext, Mockito.times(3)).start(Mockito.any());
+			Mockito.verify(inputStream, Mockito.times(3)).setReadListener(Mockito.any());
 
 			servlet.handleIncomingStream(req, resp);
 			//it should 4 
-			Mockito.verify(asyncContext, Mockito.times(4)).start(Mockito.any());
+			Mockito.verify(inputStream, Mockito.times(4)).setReadListener(Mockito.any());
 
 
 
@@ -155,10 +164,17 @@ public class ChunkedTransferServletTest {
 	}
 
 
+	private ServletInputStream mockServletInputStream(FileInputStream istream) throws IOException {
+		ServletInputStream inputStream = Mockito.mock(ServletInputStream.class);
+		Mockito.when(inputStream.isReady()).thenReturn(true);
+		Mockito.when(inputStream.read(Mockito.any(byte[].class), Mockito.anyInt(), Mockito.anyInt())).thenAnswer(invocation -> 
+			istream.read(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2))
+		);
+		return inputStream;
+	}
+
 	@Test
 	public void testReadInputStream() {
-		ChunkedTransferServlet servlet = new ChunkedTransferServlet();
-
 		IChunkedCacheManager cacheManager = Mockito.mock(IChunkedCacheManager.class);
 
 		String streamId = "streamId" + (int)(Math.random()*10000);
@@ -174,15 +190,29 @@ public class ChunkedTransferServletTest {
 		Mockito.when(asyncContext.getRequest()).thenReturn(req);
 		StatusListener statusListener = new StatusListener(tmpFile.getName());
 
+		File sourceFile = new File("src/test/resources/chunked-samples/chunk-stream0-00001.m4s");
 
-		try (FileInputStream istream = new FileInputStream("src/test/resources/chunked-samples/chunk-stream0-00001.m4s")) 
+		try (FileInputStream istream = new FileInputStream(sourceFile)) 
 		{
-			servlet.readInputStream(finalFile, tmpFile, cacheManager, Mockito.mock(AtomParser.class), asyncContext, istream, statusListener);
-
+			ServletInputStream inputStream = mockServletInputStream(istream);
+			AtomParser atomParser = Mockito.mock(AtomParser.class);
+			UploadReadListener readListener = new UploadReadListener(finalFile, tmpFile, cacheManager, atomParser, asyncContext, inputStream, statusListener);
+			
+			readListener.onDataAvailable();
+			//container calls onAllDataRead when the stream is finished
+			Mockito.verify(cacheManager, Mockito.never()).removeCache(finalFile.getAbsolutePath());
+			readListener.onAllDataRead();
 
 			Mockito.verify(cacheManager).removeCache(finalFile.getAbsolutePath());
+			Mockito.verify(asyncContext).complete();
+			Mockito.verify(atomParser, Mockito.atLeastOnce()).parse(Mockito.any(), Mockito.eq(0), Mockito.anyInt());
 			assertTrue(finalFile.exists());
+			assertEquals(sourceFile.length(), finalFile.length());
+			assertTrue(readListener.isFinished());
 
+			//it should be called once
+			readListener.onAllDataRead();
+			Mockito.verify(cacheManager).removeCache(finalFile.getAbsolutePath());
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -192,17 +222,17 @@ public class ChunkedTransferServletTest {
 
 		finalFile.delete();
 
-		try (FileInputStream istream = new FileInputStream("src/test/resources/chunked-samples/chunk-stream0-00001.m4s")) 
+		try (FileInputStream istream = new FileInputStream(sourceFile)) 
 		{
 			statusListener.onTimeout(null);
-			servlet.readInputStream(finalFile, tmpFile, cacheManager, Mockito.mock(AtomParser.class), asyncContext, istream, statusListener);
-
+			UploadReadListener readListener = new UploadReadListener(finalFile, tmpFile, cacheManager, Mockito.mock(AtomParser.class), asyncContext, mockServletInputStream(istream), statusListener);
+			readListener.onDataAvailable();
 
 			Mockito.verify(cacheManager, Mockito.times(2)).removeCache(finalFile.getAbsolutePath());
 			assertTrue(finalFile.exists());
 
-			//it should be just 2048 byte because it breaks the loop
-			assertEquals(2048, finalFile.length());
+			//it should be just one buffer because it breaks the loop
+			assertEquals(Math.min(ChunkedTransferServlet.IO_BUFFER_SIZE, sourceFile.length()), finalFile.length());
 
 		}
 		catch (Exception e) {
@@ -210,11 +240,61 @@ public class ChunkedTransferServletTest {
 			fail(e.getMessage());
 		}
 
+		finalFile.delete();
 
+		try (FileInputStream istream = new FileInputStream(sourceFile)) 
+		{
+			UploadReadListener readListener = new UploadReadListener(finalFile, tmpFile, cacheManager, Mockito.mock(AtomParser.class), asyncContext, mockServletInputStream(istream), new StatusListener(tmpFile.getName()));
+			readListener.onError(new IOException("connection reset"));
+
+			Mockito.verify(cacheManager, Mockito.times(3)).removeCache(finalFile.getAbsolutePath());
+			assertTrue(readListener.isFinished());
+			assertFalse(finalFile.exists());
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		tmpFile.delete();
 
 	}
 
 
+	@Test
+	public void testUploadIsCompletedWhenFileCannotBeMoved() throws IOException {
+		IChunkedCacheManager cacheManager = Mockito.mock(IChunkedCacheManager.class);
+		String streamId = "streamId" + (int)(Math.random()*10000);
+
+		//final file is a directory that is not empty, so the temporary file cannot replace it
+		File finalFile = new File(ChunkedTransferServlet.WEBAPPS + "/junit" + ChunkedTransferServlet.STREAMS + "/" + streamId);
+		File fileInFinalFile = new File(finalFile, "file");
+		fileInFinalFile.getParentFile().mkdirs();
+		fileInFinalFile.createNewFile();
+		File tmpFile = new File(ChunkedTransferServlet.WEBAPPS + "/junit" + ChunkedTransferServlet.STREAMS + "/" + streamId + ".tmp");
+
+		AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+		HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+		Mockito.when(asyncContext.getResponse()).thenReturn(resp);
+
+		File sourceFile = new File("src/test/resources/chunked-samples/chunk-stream0-00001.m4s");
+		try (FileInputStream istream = new FileInputStream(sourceFile)) 
+		{
+			UploadReadListener readListener = new UploadReadListener(finalFile, tmpFile, cacheManager, Mockito.mock(AtomParser.class), asyncContext, mockServletInputStream(istream), new StatusListener(tmpFile.getName()));
+			readListener.onDataAvailable();
+			readListener.onAllDataRead();
+
+			Mockito.verify(resp).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			Mockito.verify(asyncContext).complete();
+			Mockito.verify(cacheManager).removeCache(finalFile.getAbsolutePath());
+			assertFalse(tmpFile.exists());
+		}
+		finally {
+			fileInFinalFile.delete();
+			finalFile.delete();
+			tmpFile.delete();
+		}
+	}
+
 	@Test
 	public void testDeleteRequest() 
 	{
@@ -300,6 +380,72 @@ public class ChunkedTransferServletTest {
 
 		assertFalse(cacheManager.hasCache("key"));
 
+		assertFalse(cacheManager.isUploading("key"));
+
+		assertFalse(cacheManager.addUploadCompletionListener("key", () -> fail("it should not be run")));
+
+	}
+
+	@Test
+	public void testViewerAfterCacheOverflowGetsUploadedFile() throws IOException {
+		ChunkedTransferServlet servlet = new ChunkedTransferServlet();
+
+		HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+		HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+
+		ServletContext servletContext = Mockito.mock(ServletContext.class);
+		Mockito.when(req.getServletContext()).thenReturn(servletContext);
+		String streamId = "stream" + (int)(Math.random()*10000);
+		Mockito.when(req.getRequestURI()).thenReturn("/junit/streams/" + streamId + "_0.m4s");
+
+		ConfigurableWebApplicationContext appContext = Mockito.mock(ConfigurableWebApplicationContext.class);
+		Mockito.when(servletContext.getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE)).thenReturn(appContext);
+		Mockito.when(appContext.isRunning()).thenReturn(true);
+
+		ChunkedCacheManager cacheManager = new ChunkedCacheManager();
+		cacheManager.setEvictionDelayMs(0);
+		cacheManager.setMaxBytesPerKey(10);
+		Mockito.when(appContext.getBean(IChunkedCacheManager.BEAN_NAME)).thenReturn(cacheManager);
+
+		AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+		Mockito.when(req.startAsync()).thenReturn(asyncContext);
+		Mockito.when(asyncContext.getResponse()).thenReturn(resp);
+		ServletOutputStream outputStream = Mockito.mock(ServletOutputStream.class);
+		Mockito.when(resp.getOutputStream()).thenReturn(outputStream);
+
+		File file = new File(ChunkedTransferServlet.WEBAPPS + File.separator + req.getRequestURI());
+		String key = file.getAbsolutePath();
+		cacheManager.addCache(key);
+		cacheManager.append(key, new byte[20]);
+		assertFalse(cacheManager.hasCache(key));
+		assertTrue(cacheManager.isUploading(key));
+
+		//viewer that comes after the overflow waits for the upload instead of getting 404
+		servlet.handleGetRequest(req, resp);
+		Mockito.verify(req).startAsync();
+		Mockito.verify(resp, Mockito.never()).setStatus(HttpServletResponse.SC_NOT_FOUND);
+		assertEquals(1, cacheManager.getListenerCount());
+
+		try {
+			file.getParentFile().mkdirs();
+			Files.write(new byte[20], file);
+
+			cacheManager.removeCache(key);
+			Mockito.verify(resp).setContentLengthLong(20);
+			Mockito.verify(outputStream).setWriteListener(Mockito.any(FileWriteListener.class));
+			assertEquals(0, cacheManager.getListenerCount());
+		}
+		finally {
+			file.delete();
+		}
+
+		//upload fails after the viewer is waiting
+		cacheManager.addCache(key);
+		cacheManager.append(key, new byte[20]);
+		servlet.handleGetRequest(req, resp);
+		cacheManager.removeCache(key);
+		Mockito.verify(resp).setStatus(HttpServletResponse.SC_NOT_FOUND);
+		Mockito.verify(asyncContext).complete();
 	}
 
 
@@ -345,21 +491,31 @@ public class ChunkedTransferServletTest {
 
 			File f = new File(ChunkedTransferServlet.WEBAPPS + "/junit" + ChunkedTransferServlet.STREAMS + "/" + streamId);
 
+			ServletOutputStream outputStream = Mockito.mock(ServletOutputStream.class);
+			Mockito.when(resp.getOutputStream()).thenReturn(outputStream);
+
 			Mockito.when(cacheManager.hasCache(f.getAbsolutePath())).thenReturn(true);
 			servlet.handleGetRequest(req, resp);
 			Mockito.verify(cacheManager).registerChunkListener(Mockito.anyString(), Mockito.any());
-			Mockito.verify(asyncContext, Mockito.times(1)).start(Mockito.any());
+			Mockito.verify(outputStream, Mockito.times(1)).setWriteListener(Mockito.any(ChunkListener.class));
+			//no thread should be used for waiting the chunks
+			Mockito.verify(asyncContext, Mockito.never()).start(Mockito.any());
 
 			assertFalse(f.exists());
 			File realFile = new File("src/test/resources/chunked-samples/chunk-stream0-00001.m4s");
 			f.getParentFile().mkdirs();
 			Files.copy(realFile, f);
 
+			servlet.handleGetRequest(req, resp);
+			Mockito.verify(outputStream, Mockito.times(1)).setWriteListener(Mockito.any(FileWriteListener.class));
 
-			Mockito.when(resp.getOutputStream()).thenReturn(Mockito.mock(ServletOutputStream.class));
-
+			//sendfile is used if connector supports it and file is big enough
+			Mockito.when(req.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR)).thenReturn(Boolean.TRUE);
 			servlet.handleGetRequest(req, resp);
-			Mockito.verify(asyncContext, Mockito.times(2)).start(Mockito.any());
+			assertTrue(f.length() >= ChunkedTransferServlet.SENDFILE_MIN_SIZE);
+			Mockito.verify(req).setAttribute(Globals.SENDFILE_FILENAME_ATTR, f.getCanonicalPath());
+			Mockito.verify(req).setAttribute(Globals.SENDFILE_FILE_END_ATTR, f.length());
+			Mockito.verify(outputStream, Mockito.times(2)).setWriteListener(Mockito.any());
 
 
 		}
@@ -376,36 +532,71 @@ public class ChunkedTransferServletTest {
 			ChunkedTransferServlet chunkedTransferServlet = new ChunkedTransferServlet();
 			AsyncContext asynContext = Mockito.mock(AsyncContext.class);
 			IChunkedCacheManager cacheManager = Mockito.mock(IChunkedCacheManager.class);
-			File file = new File("src/test/resources/chunked-samples/chunk-stream0-00001.m4s");
-
 
 			ServletResponse response = Mockito.mock(ServletResponse.class);
 
 			Mockito.when(asynContext.getResponse()).thenReturn(response);
 			ServletOutputStream outputStream = Mockito.mock(ServletOutputStream.class);
 			Mockito.when(response.getOutputStream()).thenReturn(outputStream);
+			Mockito.when(outputStream.isReady()).thenReturn(true);
 
 			ChunkListener listener = new ChunkListener();
 
+			//chunks are queued until the output is started
 			byte[] data = new byte[1024];
 			listener.chunkCompleted(data);
-			listener.chunkCompleted(new byte[0]);
+			assertEquals(1, listener.getChunksQueue().size());
 
 			File f = new File("webapps/junit/streams");
 			f.getParentFile().mkdirs();
 			chunkedTransferServlet.writeChunks(f, cacheManager, asynContext, listener, "text");
+			Mockito.verify(outputStream).setWriteListener(listener);
+			Mockito.verify(response).setContentType("text");
 
 			Mockito.verify(outputStream).write(data, 0, 1024);
+			assertTrue(listener.getChunksQueue().isEmpty());
+
+			//next chunk is written in the thread that completes it
+			byte[] data2 = new byte[512];
+			listener.chunkCompleted(data2);
+			Mockito.verify(outputStream).write(data2, 0, 512);
+
+			//stored chunk is written through an IO buffer and released after it's written
+			AtomicInteger releaseCount = new AtomicInteger();
+			ByteBuffer storedChunk = ByteBuffer.allocateDirect(ChunkedTransferServlet.IO_BUFFER_SIZE + 100).asReadOnlyBuffer();
+			listener.chunkCompleted(storedChunk, releaseCount::incrementAndGet);
+			Mockito.verify(outputStream).write(Mockito.any(byte[].class), Mockito.eq(0), Mockito.eq(ChunkedTransferServlet.IO_BUFFER_SIZE));
+			Mockito.verify(outputStream).write(Mockito.any(byte[].class), Mockito.eq(0), Mockito.eq(100));
+			assertEquals(1, releaseCount.get());
+			assertTrue(listener.getChunksQueue().isEmpty());
+
+			//output is not ready so chunk waits for onWritePossible
+			Mockito.when(outputStream.isReady()).thenReturn(false);
+			byte[] data3 = new byte[256];
+			listener.chunkCompleted(data3);
+			Mockito.verify(outputStream, Mockito.never()).write(data3, 0, 256);
+			listener.chunkCompleted(null);
+
+			Mockito.when(outputStream.isReady()).thenReturn(true);
+			listener.onWritePossible();
+			Mockito.verify(outputStream).write(data3, 0, 256);
 			Mockito.verify(asynContext).complete();
+			Mockito.verify(cacheManager).removeChunkListener(f.getAbsolutePath(), listener);
+			assertTrue(listener.isFinished());
 
-			Mockito.doThrow(ClientAbortException.class).when(outputStream).flush();
+			//nothing is written after EOF
 			listener.chunkCompleted(data);
-			chunkedTransferServlet.writeChunks(f, cacheManager, asynContext, listener, "text");
+			Mockito.verify(outputStream, Mockito.times(1)).write(data, 0, 1024);
 
-			Mockito.verify(cacheManager, Mockito.times(2)).removeChunkListener(f.getAbsolutePath(), listener);
 
+			ChunkListener listener2 = new ChunkListener();
+			chunkedTransferServlet.writeChunks(f, cacheManager, asynContext, listener2, "text");
+			Mockito.doThrow(ClientAbortException.class).when(outputStream).flush();
+			listener2.chunkCompleted(data);
+			Mockito.verify(cacheManager).removeChunkListener(f.getAbsolutePath(), listener2);
+			assertTrue(listener2.isFinished());
 
-			listener.chunkCompleted(null);
+			listener2.chunkCompleted(null);
 			Mockito.verify(asynContext, Mockito.times(1)).complete();
 
 		}
@@ -429,13 +620,33 @@ public class ChunkedTransferServletTest {
 			HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
 
 			Mockito.when(response.getOutputStream()).thenReturn(ostream);
-
+			Mockito.when(ostream.isReady()).thenReturn(true);
 
 			Mockito.when(asyncContext.getResponse()).thenReturn(response);
 
 			servlet.writeOutputStream(istream, asyncContext, "text");
+			Mockito.verify(response).setContentLengthLong(istream.length());
+
+			ArgumentCaptor<WriteListener> captor = ArgumentCaptor.forClass(WriteListener.class);
+			Mockito.verify(ostream).setWriteListener(captor.capture());
+			FileWriteListener writeListener = (FileWriteListener) captor.getValue();
+			
+			Mockito.verify(asyncContext, Mockito.never()).complete();
+			writeListener.onWritePossible();
 
 			Mockito.verify(asyncContext).complete();
+			assertTrue(writeListener.isClosed());
+			long expectedWriteCount = (istream.length() + ChunkedTransferServlet.IO_BUFFER_SIZE - 1) / ChunkedTransferServlet.IO_BUFFER_SIZE;
+			Mockito.verify(ostream, Mockito.times((int)expectedWriteCount)).write(Mockito.any(byte[].class), Mockito.eq(0), Mockito.anyInt());
+
+			//error closes the file
+			servlet.writeOutputStream(istream, asyncContext, "text");
+			Mockito.verify(ostream, Mockito.times(2)).setWriteListener(captor.capture());
+			writeListener = (FileWriteListener) captor.getValue();
+			writeListener.onError(new IOException("connection reset"));
+			assertTrue(writeListener.isClosed());
+			writeListener.onWritePossible();
+			Mockito.verify(asyncContext, Mockito.times(1)).complete();
 
 		} catch (IOException e) {
 			e.printStackTrace();
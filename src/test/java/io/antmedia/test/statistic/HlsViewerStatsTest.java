@@ -143,6 +143,64 @@ public class HlsViewerStatsTest {
 		
 	}
 	
+	@Test
+	public void testSubscriberEventIsWrittenOncePerSession() {
+		HlsViewerStats viewerStats = new HlsViewerStats();
+		viewerStats.setType(ViewerStats.HLS_TYPE);
+		viewerStats.setServerSettings(new ServerSettings());
+
+		DataStore dataStore = new InMemoryDataStore("datastore");
+		viewerStats.setDataStore(dataStore);
+
+		String streamId = "stream1";
+		String sessionId = "session1";
+
+		//every segment and playlist request registers the viewer
+		for (int i = 0; i < 10; i++) {
+			viewerStats.registerNewViewer(streamId, sessionId, "subscriber1");
+		}
+		assertEquals(1, viewerStats.getViewerCount(streamId));
+		assertEquals(1, viewerStats.getIncreaseCounterMap(streamId));
+		assertEquals("subscriber1", viewerStats.getSessionId2subscriberId().get(sessionId));
+
+		viewerStats.flushSubscriberEvents();
+
+		Subscriber subscriber = dataStore.getSubscriber(streamId, "subscriber1");
+		List<ConnectionEvent> events = subscriber.getStats().getConnectionEvents();
+		assertEquals(1, events.size());
+		assertEquals(ConnectionEvent.CONNECTED_EVENT, events.get(0).getEventType());
+		assertEquals(ViewerStats.HLS_TYPE, events.get(0).getEventProtocol());
+	}
+	
+	@Test
+	public void testSubscriberIsWrittenOncePerFlush() {
+		HlsViewerStats viewerStats = new HlsViewerStats();
+		viewerStats.setType(ViewerStats.HLS_TYPE);
+		viewerStats.setServerSettings(new ServerSettings());
+
+		DataStore dataStore = Mockito.spy(new InMemoryDataStore("datastore"));
+		viewerStats.setDataStore(dataStore);
+
+		String streamId = "stream1";
+		//same subscriber plays in two sessions
+		viewerStats.registerNewViewer(streamId, "session1", "subscriber1");
+		viewerStats.registerNewViewer(streamId, "session2", "subscriber1");
+		viewerStats.registerNewViewer(streamId, "session3", "subscriber2");
+
+		viewerStats.flushSubscriberEvents();
+
+		Mockito.verify(dataStore, Mockito.times(1)).getSubscriber(streamId, "subscriber1");
+		Mockito.verify(dataStore, Mockito.times(1)).getSubscriber(streamId, "subscriber2");
+		Mockito.verify(dataStore, Mockito.times(2)).addSubscriberConnectionEvents(Mockito.eq(streamId), Mockito.any(), Mockito.any());
+		Mockito.verify(dataStore, Mockito.times(2)).addSubscriber(Mockito.eq(streamId), Mockito.any());
+
+		Subscriber subscriber = dataStore.getSubscriber(streamId, "subscriber1");
+		assertEquals(2, subscriber.getStats().getConnectionEvents().size());
+		assertEquals(2, subscriber.getCurrentConcurrentConnections());
+		assertTrue(subscriber.isConnected());
+		assertEquals(1, dataStore.getSubscriber(streamId, "subscriber2").getStats().getConnectionEvents().size());
+	}
+
 	@Test
 	public void testGetTimeout() {
 		AppSettings settings = mock(AppSettings.class);
@@ -0,0 +1,63 @@
+package io.antmedia.test.statistic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.antmedia.statistic.SessionExpiryWheel;
+
+public class SessionExpiryWheelTest {
+
+	private static class Session {
+		private final String id;
+		private long lastAccessTime;
+
+		Session(String id, long lastAccessTime) {
+			this.id = id;
+			this.lastAccessTime = lastAccessTime;
+		}
+	}
+
+	@Test
+	public void testExpiry() {
+		SessionExpiryWheel<Session> wheel = new SessionExpiryWheel<>(1000, 8);
+		List<String> expired = new ArrayList<>();
+
+		Session session1 = new Session("session1", 0);
+		Session session2 = new Session("session2", 0);
+		wheel.schedule(session1);
+		wheel.schedule(session2);
+
+		wheel.advance(500, session -> session.lastAccessTime + 3000, session -> expired.add(session.id));
+		assertTrue(expired.isEmpty());
+		assertEquals(2, wheel.size());
+
+		//accessed session is checked again later
+		session2.lastAccessTime = 2500;
+		wheel.advance(3200, session -> session.lastAccessTime + 3000, session -> expired.add(session.id));
+		assertEquals(Arrays.asList("session1"), expired);
+
+		wheel.advance(100000, session -> session.lastAccessTime + 3000, session -> expired.add(session.id));
+		assertEquals(Arrays.asList("session1", "session2"), expired);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testTimeoutLongerThanWheel() {
+		SessionExpiryWheel<Session> wheel = new SessionExpiryWheel<>(1000, 8);
+		List<String> expired = new ArrayList<>();
+
+		wheel.schedule(new Session("session1", 100000));
+		long time = 100000;
+		while (expired.isEmpty() && time < 200000) {
+			wheel.advance(time, session -> session.lastAccessTime + 20000, session -> expired.add(session.id));
+			time += 1000;
+		}
+		assertEquals(121000, time);
+	}
+}
@@ -387,7 +387,8 @@ public class StatsCollectorTest {
 		resMonitor.sendInstanceStats(null);
 		
 		
-		verify(kafkaProducer).send(producerRecord.capture());
+		//records are sent by the exporter thread
+		verify(kafkaProducer, Mockito.timeout(5000)).send(producerRecord.capture(), any());
 		
 		assertEquals(StatsCollector.INSTANCE_STATS_TOPIC_NAME, producerRecord.getValue().topic());
 	}
@@ -417,7 +418,8 @@ public class StatsCollectorTest {
 		resMonitor.sendWebRTCClientStats2Kafka(webRTCClientStatList, "stream1");
 		
 		
-		verify(kafkaProducer).send(producerRecord.capture());
+		//records are sent by the exporter thread
+		verify(kafkaProducer, Mockito.timeout(5000)).send(producerRecord.capture(), any());
 		
 		assertEquals(StatsCollector.WEBRTC_STATS_TOPIC_NAME, producerRecord.getValue().topic());
 	}
@@ -481,7 +483,7 @@ public class StatsCollectorTest {
 	
 		resMonitor.collectAndSendWebRTCClientsStats();
 		
-		verify(kafkaProducer, Mockito.times(1)).send(Mockito.any());		
+		verify(kafkaProducer, Mockito.timeout(5000).times(1)).send(Mockito.any(), Mockito.any());		
 		
 	}
 	
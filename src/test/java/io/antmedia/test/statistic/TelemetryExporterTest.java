@@ -0,0 +1,241 @@
+package io.antmedia.test.statistic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.awaitility.Awaitility;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import io.antmedia.rest.WebRTCClientStats;
+import io.antmedia.statistic.FileTelemetrySink;
+import io.antmedia.statistic.ITelemetrySink;
+import io.antmedia.statistic.KafkaTelemetrySink;
+import io.antmedia.statistic.StatsCollector;
+import io.antmedia.statistic.TelemetryExporter;
+
+public class TelemetryExporterTest {
+
+	private static class InMemorySink implements ITelemetrySink {
+		private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+		private final List<String> records = Collections.synchronizedList(new ArrayList<>());
+		private volatile boolean closed = false;
+
+		@Override
+		public void write(String topic, List<String> records) {
+			batchSizes.add(records.size());
+			this.records.addAll(records);
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@Test
+	public void testRecordsAreBatched() {
+		InMemorySink sink = new InMemorySink();
+		TelemetryExporter exporter = new TelemetryExporter(sink, 1000, 100, 200);
+		for (int i = 0; i < 250; i++) {
+			assertTrue(exporter.export(StatsCollector.WEBRTC_STATS_TOPIC_NAME, "{\"i\":" + i + "}"));
+		}
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> exporter.getExportedCount() == 250);
+
+		//records are exported in order in batches of at most batch size
+		for (int i = 0; i < 250; i++) {
+			assertEquals("{\"i\":" + i + "}", sink.records.get(i));
+		}
+		assertTrue(sink.batchSizes.size() >= 3);
+		for (int batchSize : sink.batchSizes) {
+			assertTrue(batchSize <= 100);
+		}
+		assertEquals(0, exporter.getBacklog());
+
+		exporter.close();
+		assertTrue(sink.closed);
+		assertFalse(exporter.export(StatsCollector.WEBRTC_STATS_TOPIC_NAME, "{}"));
+		assertEquals(1, exporter.getDroppedCount());
+	}
+
+	@Test
+	public void testRecordsAreDroppedWhenBufferIsFull() throws InterruptedException {
+		CountDownLatch blockSink = new CountDownLatch(1);
+		InMemorySink sink = new InMemorySink() {
+			@Override
+			public void write(String topic, List<String> records) {
+				try {
+					//slow sink
+					blockSink.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.write(topic, records);
+			}
+		};
+		TelemetryExporter exporter = new TelemetryExporter(sink, 10, 1, 0);
+		int exportedCount = 0;
+		for (int i = 0; i < 100; i++) {
+			if (exporter.export(StatsCollector.INSTANCE_STATS_TOPIC_NAME, "{}")) {
+				exportedCount++;
+			}
+		}
+		//export doesn't wait for the sink
+		assertTrue(exportedCount <= 11);
+		assertEquals(100 - exportedCount, exporter.getDroppedCount());
+		assertTrue(exporter.getBacklog() > 0);
+
+		blockSink.countDown();
+		int expectedCount = exportedCount;
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> exporter.getExportedCount() == expectedCount);
+		assertEquals(0, exporter.getBacklog());
+		exporter.close();
+	}
+
+	@Test
+	public void testFileSink() throws Exception {
+		File directory = Files.createTempDirectory("telemetry").toFile();
+		try {
+			FileTelemetrySink sink = new FileTelemetrySink(directory);
+			TelemetryExporter exporter = new TelemetryExporter(sink, 100, 10, 10);
+			exporter.export(StatsCollector.INSTANCE_STATS_TOPIC_NAME, "{\"a\":1}");
+			exporter.export(StatsCollector.WEBRTC_STATS_TOPIC_NAME, "{\"b\":2}");
+			exporter.export(StatsCollector.INSTANCE_STATS_TOPIC_NAME, "{\"a\":3}");
+			exporter.close();
+
+			assertEquals(3, exporter.getExportedCount());
+			assertEquals(List.of("{\"a\":1}", "{\"a\":3}"), Files.readAllLines(sink.getFile(StatsCollector.INSTANCE_STATS_TOPIC_NAME).toPath()));
+			assertEquals(List.of("{\"b\":2}"), Files.readAllLines(sink.getFile(StatsCollector.WEBRTC_STATS_TOPIC_NAME).toPath()));
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testFileSinkRotation() throws Exception {
+		File directory = Files.createTempDirectory("telemetry").toFile();
+		try {
+			String topic = StatsCollector.INSTANCE_STATS_TOPIC_NAME;
+			//each record is 8 bytes with the new line
+			FileTelemetrySink sink = new FileTelemetrySink(directory, 16, 2);
+			for (int i = 0; i < 10; i++) {
+				sink.write(topic, List.of("{\"a\":" + i + "}"));
+			}
+
+			//files are rotated after 2 records and only 2 rotated files are kept
+			assertEquals(List.of("{\"a\":8}", "{\"a\":9}"), Files.readAllLines(sink.getFile(topic).toPath()));
+			assertEquals(List.of("{\"a\":6}", "{\"a\":7}"), Files.readAllLines(sink.getRotatedFile(topic, 1).toPath()));
+			assertEquals(List.of("{\"a\":4}", "{\"a\":5}"), Files.readAllLines(sink.getRotatedFile(topic, 2).toPath()));
+			assertFalse(sink.getRotatedFile(topic, 3).exists());
+
+			//full file is deleted if no rotated file is kept
+			sink = new FileTelemetrySink(directory, 16, 0);
+			sink.write(topic, List.of("{\"b\":1}"));
+			assertEquals(List.of("{\"b\":1}"), Files.readAllLines(sink.getFile(topic).toPath()));
+		}
+		finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testKafkaFailuresAreCounted() {
+		MockProducer<Long, String> producer = new MockProducer<>(false, new LongSerializer(), new StringSerializer());
+		TelemetryExporter exporter = new TelemetryExporter(new KafkaTelemetrySink(producer), 100, 10, 10);
+		exporter.export(StatsCollector.INSTANCE_STATS_TOPIC_NAME, "{\"a\":1}");
+		exporter.export(StatsCollector.INSTANCE_STATS_TOPIC_NAME, "{\"a\":2}");
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> producer.history().size() == 2);
+
+		//records are exported when they're handed to the producer and failed when kafka doesn't accept them
+		assertEquals(2, exporter.getExportedCount());
+		assertEquals(0, exporter.getFailedCount());
+		producer.completeNext();
+		producer.errorNext(new RuntimeException("broker is not available"));
+		assertEquals(1, exporter.getFailedCount());
+		exporter.close();
+	}
+
+	@Test
+	public void testExporterIsRegisteredToJmx() throws Exception {
+		ObjectName objectName = new ObjectName("io.antmedia:type=TelemetryExporter");
+		CountDownLatch blockSink = new CountDownLatch(1);
+		InMemorySink sink = new InMemorySink() {
+			@Override
+			public void write(String topic, List<String> records) {
+				try {
+					blockSink.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.write(topic, records);
+			}
+		};
+		StatsCollector statsCollector = new StatsCollector();
+		statsCollector.setTelemetryExporter(new TelemetryExporter(sink, 2, 1, 0));
+		TelemetryExporter exporter = statsCollector.getTelemetryExporter();
+		for (int i = 0; i < 10; i++) {
+			exporter.export(StatsCollector.INSTANCE_STATS_TOPIC_NAME, "{}");
+		}
+
+		assertEquals(exporter.getBacklog(), ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Backlog"));
+		assertEquals(exporter.getDroppedCount(), ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "DroppedCount"));
+		assertTrue(exporter.getDroppedCount() > 0);
+
+		//new exporter replaces the previous one in JMX
+		blockSink.countDown();
+		statsCollector.setTelemetryExporter(new TelemetryExporter(new InMemorySink(), 100, 10, 10));
+		assertEquals(0L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "DroppedCount"));
+
+		statsCollector.getTelemetryExporter().close();
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+	}
+
+	@Test
+	public void testWebRTCClientStatsRecord() {
+		InMemorySink sink = new InMemorySink();
+		StatsCollector statsCollector = new StatsCollector();
+		statsCollector.setTelemetryExporter(new TelemetryExporter(sink, 100, 10, 10));
+
+		List<WebRTCClientStats> webRTCClientStatList = new ArrayList<>();
+		webRTCClientStatList.add(new WebRTCClientStats(100, 50, 40, 20, 60, 444, 9393838, "info", "192.168.1.1"));
+		webRTCClientStatList.add(new WebRTCClientStats(100, 50, 40, 20, 60, 444, 9393839, null, null));
+		statsCollector.sendWebRTCClientStats2Kafka(webRTCClientStatList, "stream1");
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> sink.records.size() == 2);
+
+		JsonObject record = new Gson().fromJson(sink.records.get(0), JsonObject.class);
+		assertEquals("stream1", record.get("streamId").getAsString());
+		assertEquals(9393838, record.get("webrtcClientId").getAsInt());
+		assertEquals("info", record.get("webrtcViewerInfo").getAsString());
+		assertEquals("192.168.1.1", record.get("ip-address").getAsString());
+		assertTrue(record.has("time"));
+
+		//null fields are omitted
+		record = new Gson().fromJson(sink.records.get(1), JsonObject.class);
+		assertFalse(record.has("webrtcViewerInfo"));
+		assertFalse(record.has("ip-address"));
+
+		statsCollector.getTelemetryExporter().close();
+	}
+}
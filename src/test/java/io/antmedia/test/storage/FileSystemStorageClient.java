@@ -0,0 +1,134 @@
+package io.antmedia.test.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.antmedia.storage.StorageClient;
+
+/**
+ * Stores the files in a local directory. Uploads can be held with {@link #setGate(CountDownLatch)} to simulate a slow storage
+ */
+public class FileSystemStorageClient extends StorageClient {
+
+	private final File root;
+
+	private volatile CountDownLatch gate;
+
+	private final List<String> savedKeys = Collections.synchronizedList(new ArrayList<>());
+
+	private final AtomicInteger activeUploads = new AtomicInteger();
+
+	private final AtomicInteger maxActiveUploads = new AtomicInteger();
+
+	public FileSystemStorageClient(File root) {
+		this.root = root;
+		setEnabled(true);
+	}
+
+	@Override
+	public void delete(String key) {
+		new File(root, key).delete();
+	}
+
+	@Override
+	public void save(String key, InputStream inputStream, boolean waitForCompletion) {
+		try {
+			write(key, target -> Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void save(String key, File file, boolean deleteLocalFile) {
+		if (saveAndWait(key, file) && deleteLocalFile) {
+			file.delete();
+		}
+	}
+
+	@Override
+	public boolean saveAndWait(String key, File file) {
+		try {
+			write(key, target -> Files.copy(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING));
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean saveAndWait(String key, byte[] data) {
+		try {
+			write(key, target -> Files.write(target, data));
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	private interface Writer {
+		void write(Path target) throws IOException;
+	}
+
+	private void write(String key, Writer writer) throws IOException {
+		int active = activeUploads.incrementAndGet();
+		maxActiveUploads.accumulateAndGet(active, Math::max);
+		try {
+			CountDownLatch currentGate = gate;
+			if (currentGate != null && !currentGate.await(10, TimeUnit.SECONDS)) {
+				throw new IOException("Gate is not opened for " + key);
+			}
+			Path target = new File(root, key).toPath();
+			Files.createDirectories(target.getParent());
+			writer.write(target);
+			savedKeys.add(key);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		finally {
+			activeUploads.decrementAndGet();
+		}
+	}
+
+	@Override
+	public boolean fileExist(String key) {
+		return new File(root, key).exists();
+	}
+
+	@Override
+	public void reset() {
+		//nothing to reset
+	}
+
+	public void setGate(CountDownLatch gate) {
+		this.gate = gate;
+	}
+
+	/**
+	 * @return keys in the order they are saved
+	 */
+	public List<String> getSavedKeys() {
+		synchronized (savedKeys) {
+			return new ArrayList<>(savedKeys);
+		}
+	}
+
+	public int getMaxActiveUploads() {
+		return maxActiveUploads.get();
+	}
+}
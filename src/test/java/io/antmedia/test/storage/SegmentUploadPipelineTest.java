@@ -0,0 +1,212 @@
+package io.antmedia.test.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.antmedia.muxer.HLSMuxer;
+import io.antmedia.storage.SegmentUploadPipeline;
+
+public class SegmentUploadPipelineTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File createSegment(String name) throws IOException {
+		File segment = folder.newFile(name);
+		Files.write(segment.toPath(), new byte[1024]);
+		return segment;
+	}
+
+	@Test
+	public void testPlaylistIsUploadedAfterSegments() throws Exception {
+		FileSystemStorageClient storageClient = new FileSystemStorageClient(folder.newFolder("storage"));
+		SegmentUploadPipeline pipeline = new SegmentUploadPipeline(storageClient, 4, 8);
+
+		CountDownLatch gate = new CountDownLatch(1);
+		storageClient.setGate(gate);
+
+		List<CompletableFuture<Boolean>> uploads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			String name = String.format("stream%09d.ts", i);
+			uploads.add(pipeline.uploadSegment("stream", "streams/" + name, createSegment(name)));
+		}
+		CompletableFuture<Boolean> playlist = pipeline.uploadPlaylist("stream", "streams/stream.m3u8", "#EXTM3U".getBytes(StandardCharsets.UTF_8));
+		assertEquals(4, pipeline.getPendingSegmentCount("stream"));
+
+		gate.countDown();
+		assertTrue(playlist.get(5, TimeUnit.SECONDS));
+		for (CompletableFuture<Boolean> upload : uploads) {
+			assertTrue(upload.get());
+		}
+
+		List<String> savedKeys = storageClient.getSavedKeys();
+		assertEquals(5, savedKeys.size());
+		assertEquals("streams/stream.m3u8", savedKeys.get(4));
+		//segments are uploaded in parallel
+		assertTrue(storageClient.getMaxActiveUploads() > 1);
+		assertEquals(5, pipeline.getUploadedCount());
+		assertEquals(4 * 1024 + 7, pipeline.getUploadedBytes());
+
+		pipeline.finish("stream").get(5, TimeUnit.SECONDS);
+		assertEquals(0, pipeline.getStreamCount());
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		FileSystemStorageClient storageClient = new FileSystemStorageClient(folder.newFolder("storage"));
+		SegmentUploadPipeline pipeline = new SegmentUploadPipeline(storageClient, 2, 2);
+
+		CountDownLatch gate = new CountDownLatch(1);
+		storageClient.setGate(gate);
+
+		CompletableFuture<Boolean> first = pipeline.uploadSegment("stream", "streams/a0.ts", createSegment("a0.ts"));
+		assertNotNull(pipeline.uploadSegment("stream", "streams/a1.ts", createSegment("a1.ts")));
+		assertNull(pipeline.uploadSegment("stream", "streams/a2.ts", createSegment("a2.ts")));
+		assertEquals(1, pipeline.getRejectedCount());
+
+		//other streams are not affected
+		assertNotNull(pipeline.uploadSegment("other", "streams/b0.ts", createSegment("b0.ts")));
+
+		gate.countDown();
+		assertTrue(first.get(5, TimeUnit.SECONDS));
+		pipeline.finish("stream").get(5, TimeUnit.SECONDS);
+		assertTrue(pipeline.uploadSegment("stream", "streams/a2.ts", new File(folder.getRoot(), "a2.ts")).get(5, TimeUnit.SECONDS));
+		assertTrue(storageClient.fileExist("streams/a2.ts"));
+	}
+
+	@Test
+	public void testOlderPlaylistIsSkipped() throws Exception {
+		FileSystemStorageClient storageClient = new FileSystemStorageClient(folder.newFolder("storage"));
+		SegmentUploadPipeline pipeline = new SegmentUploadPipeline(storageClient, 2, 8);
+
+		CountDownLatch gate = new CountDownLatch(1);
+		storageClient.setGate(gate);
+
+		pipeline.uploadSegment("stream", "streams/s0.ts", createSegment("s0.ts"));
+		CompletableFuture<Boolean> playlist1 = pipeline.uploadPlaylist("stream", "streams/s.m3u8", "v1".getBytes(StandardCharsets.UTF_8));
+		pipeline.uploadSegment("stream", "streams/s1.ts", createSegment("s1.ts"));
+		CompletableFuture<Boolean> playlist2 = pipeline.uploadPlaylist("stream", "streams/s.m3u8", "v2".getBytes(StandardCharsets.UTF_8));
+
+		gate.countDown();
+		assertTrue(playlist1.get(5, TimeUnit.SECONDS));
+		assertTrue(playlist2.get(5, TimeUnit.SECONDS));
+
+		assertEquals(1, pipeline.getSkippedPlaylistCount());
+		assertArrayEquals("v2".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(new File(folder.getRoot(), "storage/streams/s.m3u8").toPath()));
+		List<String> savedKeys = storageClient.getSavedKeys();
+		assertEquals(3, savedKeys.size());
+		assertEquals("streams/s.m3u8", savedKeys.get(2));
+	}
+
+	@Test
+	public void testFailedUpload() throws Exception {
+		FileSystemStorageClient storageClient = new FileSystemStorageClient(folder.newFolder("storage"));
+		SegmentUploadPipeline pipeline = new SegmentUploadPipeline(storageClient, 1, 8);
+
+		CompletableFuture<Boolean> upload = pipeline.uploadSegment("stream", "streams/missing.ts", new File(folder.getRoot(), "missing.ts"));
+		assertFalse(upload.get(5, TimeUnit.SECONDS));
+		assertEquals(1, pipeline.getFailedCount());
+
+		//playlist is still uploaded after the failed segment
+		assertTrue(pipeline.uploadPlaylist("stream", "streams/missing.m3u8", new byte[1]).get(5, TimeUnit.SECONDS));
+		assertTrue(storageClient.fileExist("streams/missing.m3u8"));
+	}
+
+	@Test
+	public void testDeleteSegmentAfterPlaylist() throws Exception {
+		FileSystemStorageClient storageClient = new FileSystemStorageClient(folder.newFolder("storage"));
+		SegmentUploadPipeline pipeline = new SegmentUploadPipeline(storageClient, 2, 8);
+
+		File segment0 = createSegment("d0.ts");
+		assertTrue(pipeline.uploadSegment("stream", "streams/d0.ts", segment0).get(5, TimeUnit.SECONDS));
+		assertTrue(storageClient.fileExist("streams/d0.ts"));
+
+		CountDownLatch gate = new CountDownLatch(1);
+		storageClient.setGate(gate);
+		CompletableFuture<Boolean> playlist = pipeline.uploadPlaylist("stream", "streams/d.m3u8", "v1".getBytes(StandardCharsets.UTF_8));
+		CompletableFuture<Void> delete = pipeline.deleteSegment("stream", "streams/d0.ts", segment0, true);
+
+		//segment is not deleted before the playlist that does not refer to it is uploaded
+		Thread.sleep(200);
+		assertFalse(delete.isDone());
+		assertTrue(segment0.exists());
+		assertTrue(storageClient.fileExist("streams/d0.ts"));
+
+		gate.countDown();
+		assertTrue(playlist.get(5, TimeUnit.SECONDS));
+		delete.get(5, TimeUnit.SECONDS);
+		assertFalse(segment0.exists());
+		assertFalse(storageClient.fileExist("streams/d0.ts"));
+		assertEquals(1, pipeline.getDeletedCount());
+
+		//segment that is not uploaded is only deleted from the disk
+		File segment1 = createSegment("d1.ts");
+		pipeline.deleteSegment("stream", "streams/d1.ts", segment1, false).get(5, TimeUnit.SECONDS);
+		assertFalse(segment1.exists());
+		assertEquals(1, pipeline.getDeletedCount());
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		FileSystemStorageClient storageClient = new FileSystemStorageClient(folder.newFolder("storage"));
+		SegmentUploadPipeline pipeline = storageClient.getSegmentUploadPipeline();
+
+		CompletableFuture<Boolean> upload = pipeline.uploadSegment("stream", "streams/e0.ts", createSegment("e0.ts"));
+		storageClient.shutdownSegmentUploadPipeline();
+
+		//queued uploads are completed before shutdown returns
+		assertTrue(upload.isDone());
+		assertTrue(upload.get());
+		assertNull(pipeline.uploadSegment("stream", "streams/e1.ts", createSegment("e1.ts")));
+		assertEquals(0, pipeline.getStreamCount());
+
+		//local file is deleted even if the pipeline is shut down
+		File segment = createSegment("e2.ts");
+		pipeline.deleteSegment("stream", "streams/e2.ts", segment, true).get(5, TimeUnit.SECONDS);
+		assertFalse(segment.exists());
+
+		assertTrue(pipeline != storageClient.getSegmentUploadPipeline());
+	}
+
+	@Test
+	public void testStorageClientPipeline() throws Exception {
+		FileSystemStorageClient storageClient = new FileSystemStorageClient(folder.newFolder("storage"));
+		storageClient.setSegmentUploadParallelism(2);
+		storageClient.setMaxPendingSegmentUploads(3);
+
+		SegmentUploadPipeline pipeline = storageClient.getSegmentUploadPipeline();
+		assertEquals(3, pipeline.getMaxPendingUploads());
+		assertTrue(pipeline == storageClient.getSegmentUploadPipeline());
+	}
+
+	@Test
+	public void testGetSegmentIndex() {
+		assertEquals(12, HLSMuxer.getSegmentIndex("stream000000012.ts", "stream"));
+		assertEquals(7, HLSMuxer.getSegmentIndex("stream_720p000000007.m4s", "stream_720p"));
+		//digits at the end of the stream name are not part of the index
+		assertEquals(1, HLSMuxer.getSegmentIndex("stream1000000001.ts", "stream1"));
+		assertEquals(1000000000L, HLSMuxer.getSegmentIndex("stream11000000000.ts", "stream1"));
+		assertEquals(-1, HLSMuxer.getSegmentIndex("stream2000000001.ts", "stream1"));
+		assertEquals(-1, HLSMuxer.getSegmentIndex("stream1_720p000000001.ts", "stream1"));
+		assertEquals(-1, HLSMuxer.getSegmentIndex("stream_init.mp4", "stream"));
+		assertEquals(-1, HLSMuxer.getSegmentIndex("stream.m3u8", "stream"));
+	}
+}
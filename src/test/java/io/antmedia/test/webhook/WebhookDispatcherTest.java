@@ -0,0 +1,179 @@
+package io.antmedia.test.webhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.entity.ContentType;
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.AppSettings;
+import io.antmedia.webhook.WebhookDispatcher;
+import io.antmedia.webhook.WebhookRequest;
+
+public class WebhookDispatcherTest {
+
+	private HttpServer server;
+
+	private final List<String> receivedBodies = Collections.synchronizedList(new ArrayList<>());
+
+	private final AtomicInteger responseCode = new AtomicInteger(200);
+
+	private File retryDirectory;
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/hook", exchange -> {
+			try (InputStream inputStream = exchange.getRequestBody()) {
+				receivedBodies.add(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			exchange.sendResponseHeaders(responseCode.get(), -1);
+			exchange.close();
+		});
+		server.start();
+		retryDirectory = Files.createTempDirectory("webhook-retries").toFile();
+	}
+
+	@After
+	public void after() throws IOException {
+		server.stop(0);
+		FileUtils.deleteDirectory(retryDirectory);
+	}
+
+	private String getHookURL() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+	}
+
+	@Test
+	public void testHooksOfAKeyAreSentInOrder() {
+		WebhookDispatcher dispatcher = new WebhookDispatcher(WebhookDispatcher.DEFAULT_THREAD_COUNT);
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		for (int i = 0; i < 100; i++) {
+			int index = i;
+			dispatcher.submit(getHookURL(), "stream1", () -> order.add(index));
+		}
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> order.size() == 100);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, (int) order.get(i));
+		}
+		assertEquals(0, dispatcher.getInFlightCount());
+		dispatcher.shutdown();
+	}
+
+	@Test
+	public void testSlowHostDoesNotDelayOtherHosts() throws Exception {
+		WebhookDispatcher dispatcher = new WebhookDispatcher(WebhookDispatcher.DEFAULT_THREAD_COUNT);
+		CountDownLatch slowHostLatch = new CountDownLatch(1);
+		//all lanes of the slow host are busy
+		for (int i = 0; i < 100; i++) {
+			dispatcher.submit("http://slow.example.com/hook", "stream" + i, () -> {
+				try {
+					slowHostLatch.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+
+		AtomicInteger sentCount = new AtomicInteger();
+		for (int i = 0; i < 100; i++) {
+			dispatcher.submit(getHookURL(), "stream" + i, sentCount::incrementAndGet);
+		}
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> sentCount.get() == 100);
+		assertEquals(2, dispatcher.getHostCount());
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.getInFlightCount() == WebhookDispatcher.DEFAULT_THREAD_COUNT);
+
+		slowHostLatch.countDown();
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.getInFlightCount() == 0);
+		dispatcher.shutdown();
+		assertTrue(dispatcher.isShutdown());
+	}
+
+	@Test
+	public void testGetHost() {
+		assertEquals("example.com:8080", WebhookDispatcher.getHost("http://example.com:8080/hook?a=1"));
+		assertEquals("example.com:-1", WebhookDispatcher.getHost("https://example.com/hook"));
+		assertEquals("not a url", WebhookDispatcher.getHost("not a url"));
+	}
+
+	@Test
+	public void testRetryIsSentAfterRestart() throws Exception {
+		WebhookDispatcher dispatcher = new WebhookDispatcher(WebhookDispatcher.DEFAULT_THREAD_COUNT);
+		assertEquals(0, dispatcher.loadRetries(retryDirectory, request -> {}));
+
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("id", "stream1");
+		variables.put("action", AntMediaApplicationAdapter.HOOK_ACTION_END_LIVE_STREAM);
+		dispatcher.scheduleRetry(new WebhookRequest(getHookURL(), variables, 1, ContentType.APPLICATION_JSON.getMimeType()), 500, request -> {});
+		assertEquals(1, dispatcher.getRetriedCount());
+		assertEquals(1, dispatcher.getPendingRetryCount());
+
+		//server stops before the retry is sent
+		dispatcher.shutdown();
+		assertEquals(1, retryDirectory.listFiles().length);
+
+		List<WebhookRequest> sentRequests = Collections.synchronizedList(new ArrayList<>());
+		WebhookDispatcher restartedDispatcher = new WebhookDispatcher(WebhookDispatcher.DEFAULT_THREAD_COUNT);
+		assertEquals(1, restartedDispatcher.loadRetries(retryDirectory, sentRequests::add));
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> retryDirectory.listFiles().length == 0);
+		assertEquals(1, sentRequests.size());
+		WebhookRequest request = sentRequests.get(0);
+		assertEquals(getHookURL(), request.getUrl());
+		assertEquals(variables, request.getVariables());
+		assertEquals(1, request.getRetryAttempts());
+		assertEquals(ContentType.APPLICATION_JSON.getMimeType(), request.getContentType());
+		assertEquals(0, restartedDispatcher.getPendingRetryCount());
+		restartedDispatcher.shutdown();
+	}
+
+	@Test
+	public void testSendPostToStub() {
+		AntMediaApplicationAdapter adapter = new AntMediaApplicationAdapter();
+		AppSettings appSettings = new AppSettings();
+		appSettings.setWebhookRetryCount(1);
+		appSettings.setWebhookRetryDelay(100);
+		adapter.setAppSettings(appSettings);
+		WebhookDispatcher dispatcher = adapter.getWebhookDispatcher();
+		dispatcher.loadRetries(retryDirectory, request -> {});
+
+		adapter.notifyHook(getHookURL(), "stream1", null, AntMediaApplicationAdapter.HOOK_ACTION_START_LIVE_STREAM, null, null, null, null, null, null);
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> receivedBodies.size() == 1);
+		assertTrue(receivedBodies.get(0).contains(AntMediaApplicationAdapter.HOOK_ACTION_START_LIVE_STREAM));
+		assertEquals(0, dispatcher.getRetriedCount());
+
+		//hook is retried once and dropped
+		responseCode.set(500);
+		adapter.notifyHook(getHookURL(), "stream1", null, AntMediaApplicationAdapter.HOOK_ACTION_END_LIVE_STREAM, null, null, null, null, null, null);
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.getDroppedCount() == 1);
+		assertEquals(3, receivedBodies.size());
+		assertEquals(1, dispatcher.getRetriedCount());
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> retryDirectory.listFiles().length == 0);
+
+		dispatcher.shutdown();
+	}
+}
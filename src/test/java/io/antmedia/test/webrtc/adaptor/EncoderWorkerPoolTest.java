@@ -0,0 +1,110 @@
+package io.antmedia.test.webrtc.adaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.Test;
+
+import io.antmedia.webrtc.adaptor.EncoderWorkerPool;
+import io.antmedia.webrtc.adaptor.EncoderWorkerPool.Lane;
+
+public class EncoderWorkerPoolTest {
+
+	@Test
+	public void testLanesRunInOrderInBoundedThreads() throws InterruptedException {
+		EncoderWorkerPool pool = new EncoderWorkerPool(2);
+		Set<String> threadNames = ConcurrentHashMap.newKeySet();
+		List<List<Integer>> results = new ArrayList<>();
+		List<Lane> lanes = new ArrayList<>();
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger overlaps = new AtomicInteger();
+
+		for (int i = 0; i < 20; i++) {
+			List<Integer> result = new CopyOnWriteArrayList<>();
+			results.add(result);
+			Lane lane = pool.newLane();
+			lanes.add(lane);
+			AtomicInteger laneRunning = new AtomicInteger();
+			for (int j = 0; j < 50; j++) {
+				int value = j;
+				lane.execute(() -> {
+					if (laneRunning.incrementAndGet() > 1) {
+						overlaps.incrementAndGet();
+					}
+					running.incrementAndGet();
+					threadNames.add(Thread.currentThread().getName());
+					result.add(value);
+					laneRunning.decrementAndGet();
+				});
+			}
+		}
+
+		Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> running.get() == 20 * 50);
+		//thread count doesn't grow with the number of lanes
+		assertTrue(threadNames.size() <= 2);
+		//tasks of a lane don't run concurrently and they run in order
+		assertEquals(0, overlaps.get());
+		for (List<Integer> result : results) {
+			for (int j = 0; j < 50; j++) {
+				assertEquals(j, (int) result.get(j));
+			}
+		}
+
+		for (Lane lane : lanes) {
+			lane.shutdown();
+			assertTrue(lane.awaitTermination(5, TimeUnit.SECONDS));
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testLaneShutdown() throws InterruptedException {
+		EncoderWorkerPool pool = new EncoderWorkerPool(1);
+		Lane lane1 = pool.newLane();
+		Lane lane2 = pool.newLane();
+
+		CountDownLatch blockTask = new CountDownLatch(1);
+		lane1.execute(() -> {
+			try {
+				blockTask.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		lane1.shutdown();
+		assertTrue(lane1.isShutdown());
+		assertFalse(lane1.isTerminated());
+		try {
+			lane1.execute(() -> {});
+			fail("Lane should reject the tasks after shutdown");
+		}
+		catch (RejectedExecutionException e) {
+			//expected
+		}
+
+		//shutting down a lane doesn't shut down the pool
+		AtomicInteger lane2Count = new AtomicInteger();
+		lane2.execute(lane2Count::incrementAndGet);
+		blockTask.countDown();
+		assertTrue(lane1.awaitTermination(5, TimeUnit.SECONDS));
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> lane2Count.get() == 1);
+		assertFalse(pool.getWorkers().isShutdown());
+
+		pool.shutdown();
+		assertTrue(pool.getWorkers().isShutdown());
+	}
+}
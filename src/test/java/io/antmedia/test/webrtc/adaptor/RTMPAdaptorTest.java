@@ -1,68 +1,166 @@
 package io.antmedia.test.webrtc.adaptor;
 
 import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.io.File;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.RandomStringUtils;
 import org.awaitility.Awaitility;
-import org.bytedeco.ffmpeg.avutil.AVFrame;
-import org.json.simple.JSONObject;
-import org.junit.Before;
-import org.junit.BeforeClass;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.TestRule;
-import org.junit.rules.TestWatcher;
-import org.junit.runner.Description;
 import org.mockito.Mockito;
-import org.red5.server.api.scope.IScope;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.context.ApplicationContext;
-import org.webrtc.IceCandidate;
-import org.webrtc.JavaI420Buffer;
-import org.webrtc.MediaStream;
-import org.webrtc.PeerConnectionFactory;
-import org.webrtc.SessionDescription;
-import org.webrtc.SessionDescription.Type;
 import org.webrtc.VideoFrame;
-import org.webrtc.audio.WebRtcAudioTrack;
+import org.webrtc.WrappedNativeI420Buffer;
 
-import io.antmedia.AntMediaApplicationAdapter;
-import io.antmedia.AppSettings;
-import io.antmedia.integration.MuxingTest;
 import io.antmedia.recorder.FFmpegFrameRecorder;
-import io.antmedia.recorder.Frame;
-import io.antmedia.webrtc.AudioFrameContext;
-import io.antmedia.webrtc.MockWebRTCAdaptor;
-import io.antmedia.webrtc.VideoCodec;
-import io.antmedia.webrtc.VideoFrameContext;
+import io.antmedia.webrtc.adaptor.EncoderWorkerPool;
 import io.antmedia.webrtc.adaptor.RTMPAdaptor;
-import io.antmedia.webrtc.adaptor.RTMPAdaptor.AudioFrame;
 import io.antmedia.webrtc.adaptor.RTMPAdaptor.WebRTCVideoSink;
 import io.antmedia.websocket.WebSocketCommunityHandler;
-import io.antmedia.websocket.WebSocketConstants;
-import jakarta.websocket.RemoteEndpoint;
-import jakarta.websocket.Session;
 
 public class RTMPAdaptorTest {
 
 	//moved to enterprise because it's crashing time to time in travis ci while loading the lib and I could not resolve
 	//mekya
+
+	//following tests do not create a peer connection, so they don't load the webrtc lib
+
+	/**
+	 * Keeps the images that are recorded instead of encoding them
+	 */
+	private static class RecordedImage {
+		final int width;
+		final int height;
+		final int[] stride;
+		final int pixelFormat;
+		final int planeCount;
+		final String threadName;
+
+		RecordedImage(int width, int height, int[] stride, int pixelFormat, int planeCount) {
+			this.width = width;
+			this.height = height;
+			this.stride = stride.clone();
+			this.pixelFormat = pixelFormat;
+			this.planeCount = planeCount;
+			this.threadName = Thread.currentThread().getName();
+		}
+	}
+
+	private FFmpegFrameRecorder createRecorder(List<RecordedImage> recordedImages) {
+		return new FFmpegFrameRecorder("target/rtmp_adaptor_test.flv", 360, 480, 1) {
+			@Override
+			public synchronized boolean recordPlanarImage(int width, int height, int[] stride, int pixelFormat, ByteBuffer... planes) {
+				recordedImages.add(new RecordedImage(width, height, stride, pixelFormat, planes.length));
+				return false;
+			}
+		};
+	}
+
+	private WrappedNativeI420Buffer createBuffer(int width, int height) {
+		WrappedNativeI420Buffer buffer = mock(WrappedNativeI420Buffer.class);
+		when(buffer.getWidth()).thenReturn(width);
+		when(buffer.getHeight()).thenReturn(height);
+		when(buffer.getStrideY()).thenReturn(width + 32);
+		when(buffer.getStrideU()).thenReturn(width / 2 + 16);
+		when(buffer.getStrideV()).thenReturn(width / 2 + 16);
+		when(buffer.getDataY()).thenReturn(ByteBuffer.allocateDirect((width + 32) * height));
+		when(buffer.getDataU()).thenReturn(ByteBuffer.allocateDirect((width / 2 + 16) * height / 2));
+		when(buffer.getDataV()).thenReturn(ByteBuffer.allocateDirect((width / 2 + 16) * height / 2));
+		return buffer;
+	}
+
+	private RTMPAdaptor createAdaptor() {
+		RTMPAdaptor adaptor = spy(new RTMPAdaptor("rtmp://127.0.0.1/LiveApp/stream1", mock(WebSocketCommunityHandler.class), 480));
+		adaptor.setStreamId("stream1");
+		doReturn(true).when(adaptor).initPeerConnection(Mockito.any());
+		return adaptor;
+	}
+
+	@Test
+	public void testFramesAreEncodedInEncoderExecutor() {
+		RTMPAdaptor adaptor = createAdaptor();
+		List<RecordedImage> recordedImages = new CopyOnWriteArrayList<>();
+		adaptor.setRecorder(createRecorder(recordedImages));
+
+		adaptor.start();
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(adaptor::isStarted);
+
+		WrappedNativeI420Buffer buffer = createBuffer(640, 480);
+		WebRTCVideoSink sink = adaptor.new WebRTCVideoSink();
+		sink.onFrame(new VideoFrame(buffer, 0, 0));
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> recordedImages.size() == 1);
+		RecordedImage image = recordedImages.get(0);
+		assertEquals(640, image.width);
+		assertEquals(480, image.height);
+		assertArrayEquals(new int[] {672, 336, 336}, image.stride);
+		assertEquals(AV_PIX_FMT_YUV420P, image.pixelFormat);
+		assertEquals(3, image.planeCount);
+		assertFalse(image.threadName.equals(Thread.currentThread().getName()));
+		//it's encoded in the shared encoder workers
+		assertTrue(image.threadName.startsWith("webrtc-rtmp-encoder-"));
+
+		//frame is released after it's encoded
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(buffer, times(1)).release());
+		verify(buffer, times(1)).retain();
+		assertTrue(adaptor.getVideoFrameQueue().isEmpty());
+
+		//deprecated getters return the executor that encodes both video and audio
+		assertTrue(adaptor.getEncoderExecutor() == adaptor.getVideoEncoderExecutor());
+		assertTrue(adaptor.getEncoderExecutor() == adaptor.getAudioEncoderExecutor());
+
+		adaptor.stop();
+		assertTrue(adaptor.getEncoderExecutor().isShutdown());
+		//stopping a publisher doesn't shut down the shared workers
+		assertFalse(EncoderWorkerPool.getInstance().getWorkers().isShutdown());
+
+		//frames are not queued after stop
+		sink.onFrame(new VideoFrame(createBuffer(640, 480), 0, 0));
+		assertTrue(adaptor.getVideoFrameQueue().isEmpty());
+	}
+
+	@Test
+	public void testRotatedFrameIsRecordedWithRotatedDimensions() throws Exception {
+		RTMPAdaptor adaptor = createAdaptor();
+		List<RecordedImage> recordedImages = new CopyOnWriteArrayList<>();
+		adaptor.setRecorder(createRecorder(recordedImages));
+		doNothing().when(adaptor).rotatePlanes(Mockito.any(), Mockito.anyInt(), Mockito.any(), Mockito.any());
+
+		WrappedNativeI420Buffer buffer = createBuffer(640, 480);
+		adaptor.recordFrame(buffer, 90);
+
+		verify(adaptor).rotatePlanes(Mockito.eq(buffer), Mockito.eq(90), Mockito.any(), Mockito.any());
+		RecordedImage image = recordedImages.get(0);
+		assertEquals(480, image.width);
+		assertEquals(640, image.height);
+		assertArrayEquals(new int[] {480, 240, 240}, image.stride);
+
+		//upside down frame keeps its dimensions
+		adaptor.recordFrame(buffer, 180);
+		image = recordedImages.get(1);
+		assertEquals(640, image.width);
+		assertEquals(480, image.height);
+		assertArrayEquals(new int[] {640, 320, 320}, image.stride);
+
+		//frame that is not rotated is recorded from its own planes
+		adaptor.recordFrame(buffer, 0);
+		verify(adaptor, never()).rotatePlanes(Mockito.any(), Mockito.eq(0), Mockito.any(), Mockito.any());
+		image = recordedImages.get(2);
+		assertEquals(640, image.width);
+		assertEquals(480, image.height);
+		assertArrayEquals(new int[] {672, 336, 336}, image.stride);
+	}
 }
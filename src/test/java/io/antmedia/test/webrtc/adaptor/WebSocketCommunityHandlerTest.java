@@ -44,7 +44,8 @@ import io.antmedia.webrtc.adaptor.RTMPAdaptor;
 import io.antmedia.websocket.WebSocketCommunityHandler;
 import io.antmedia.websocket.WebSocketConstants;
 import jakarta.websocket.RemoteEndpoint;
-import jakarta.websocket.RemoteEndpoint.Basic;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
 import jakarta.websocket.Session;
 
 public class WebSocketCommunityHandlerTest {
@@ -52,7 +53,7 @@ public class WebSocketCommunityHandlerTest {
 	private WebSocketEndpoint wsHandlerReal;
 	private WebSocketEndpoint wsHandler;
 	private Session session;
-	private Basic basicRemote;
+	private RemoteEndpoint.Async asyncRemote;
 	private HashMap userProperties;
 	private static ApplicationContext appContext;
 	private DataStore dataStore;
@@ -115,8 +116,12 @@ public class WebSocketCommunityHandlerTest {
 
 		
 		session = mock(Session.class);
-		basicRemote = mock(RemoteEndpoint.Basic.class);
-		when(session.getBasicRemote()).thenReturn(basicRemote);
+		asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+		Mockito.doAnswer(invocation -> {
+			invocation.getArgument(1, SendHandler.class).onResult(new SendResult());
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
 		
 
 		userProperties = new HashMap<>();
@@ -151,12 +156,7 @@ public class WebSocketCommunityHandlerTest {
 		jsonResponse.put(WebSocketConstants.COMMAND, WebSocketConstants.ERROR_COMMAND);
 		jsonResponse.put(WebSocketConstants.DEFINITION, WebSocketConstants.NO_STREAM_ID_SPECIFIED);
 
-		try {
-			verify(basicRemote).sendText(jsonResponse.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonResponse.toJSONString()), Mockito.any(SendHandler.class));
 	}
 	
 	@Test
@@ -257,12 +257,7 @@ public class WebSocketCommunityHandlerTest {
 		jsonResponse.put(WebSocketConstants.DEFINITION, WebSocketConstants.NO_STREAM_EXIST);
 		jsonResponse.put(WebSocketConstants.STREAM_ID, streamId);
 		
-		try {
-			verify(basicRemote).sendText(jsonResponse.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonResponse.toJSONString()), Mockito.any(SendHandler.class));
 	}
 	
 	@Test
@@ -281,12 +276,7 @@ public class WebSocketCommunityHandlerTest {
 		jsonResponse.put(WebSocketConstants.DEFINITION, WebSocketConstants.NO_STREAM_EXIST);
 		jsonResponse.put(WebSocketConstants.STREAM_ID, streamId);
 		
-		try {
-			verify(basicRemote).sendText(jsonResponse.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonResponse.toJSONString()), Mockito.any(SendHandler.class));
 	}
 	
 	@Test
@@ -485,21 +475,20 @@ public class WebSocketCommunityHandlerTest {
 	public void testThrowExceptionInSendMessage() {
 		wsHandler.setSession(session);
 		
-		try {
-			Mockito.doThrow(new IOException("exception")).when(basicRemote).sendText(Mockito.anyString());
-			wsHandler.sendMessage("test", session);
-			
-			
-			Mockito.doThrow(new IOException()).when(basicRemote).sendText(Mockito.anyString());
-			wsHandler.sendMessage("test", session);
-			
-			Mockito.doThrow(new IOException("WebSocket session has been closed")).when(basicRemote).sendText(Mockito.anyString());
-			wsHandler.sendMessage("test", session);		
-		} 
-		catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		Mockito.doThrow(new IllegalStateException("exception")).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+		wsHandler.sendMessage("test", session);
+		
+		Mockito.doThrow(new IllegalStateException()).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+		wsHandler.sendMessage("test", session);
+		
+		Mockito.doAnswer(invocation -> {
+			invocation.getArgument(1, SendHandler.class).onResult(new SendResult(new IOException("WebSocket session has been closed")));
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+		wsHandler.sendMessage("test", session);
+		
+		//failures do not stop the queue of the session
+		verify(asyncRemote, times(3)).sendText(Mockito.eq("test"), Mockito.any(SendHandler.class));
 	}
 	
 	@Test
@@ -517,7 +506,7 @@ public class WebSocketCommunityHandlerTest {
 		
 		
 		ArgumentCaptor<String> argument = ArgumentCaptor.forClass(String.class);
-		verify(wsHandler).sendMessage(argument.capture(), Mockito.eq(session));
+		verify(wsHandler).sendMessage(argument.capture(), Mockito.eq(session), Mockito.eq(WebSocketCommunityHandler.ROOM_INFORMATION_COALESCE_KEY + roomId));
 		
 		JSONArray jsonStreamIdArray = new JSONArray();
 		JSONArray jsonStreamNameArray = new JSONArray();
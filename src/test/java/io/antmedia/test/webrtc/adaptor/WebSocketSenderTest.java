@@ -0,0 +1,204 @@
+package io.antmedia.test.webrtc.adaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import io.antmedia.websocket.WebSocketSender;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.CloseReason.CloseCodes;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+
+public class WebSocketSenderTest {
+
+	private Session session;
+	private RemoteEndpoint.Async asyncRemote;
+
+	/**
+	 * Handlers of the messages that are not completed yet
+	 */
+	private List<SendHandler> pendingHandlers;
+
+	private boolean completeInline;
+
+	@Before
+	public void before() {
+		session = mock(Session.class);
+		asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getId()).thenReturn("session1");
+		when(session.isOpen()).thenReturn(true);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+		when(session.getUserProperties()).thenReturn(new HashMap<>());
+
+		pendingHandlers = new ArrayList<>();
+		completeInline = false;
+		Mockito.doAnswer(invocation -> {
+			SendHandler handler = invocation.getArgument(1, SendHandler.class);
+			if (completeInline) {
+				handler.onResult(new SendResult());
+			}
+			else {
+				pendingHandlers.add(handler);
+			}
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+	}
+
+	private void completePending() {
+		completeInline = true;
+		List<SendHandler> handlers = new ArrayList<>(pendingHandlers);
+		pendingHandlers.clear();
+		for (SendHandler handler : handlers) {
+			handler.onResult(new SendResult());
+		}
+	}
+
+	@Test
+	public void testCoalescing() {
+		WebSocketSender sender = WebSocketSender.getSender(session);
+		assertTrue(sender == WebSocketSender.getSender(session));
+
+		sender.send("first");
+		sender.send("room v1", "room1");
+		sender.send("other room", "room2");
+		sender.send("room v2", "room1");
+
+		assertEquals(2, sender.getQueuedMessageCount());
+		assertEquals("room v2".length() + "other room".length(), sender.getQueuedChars());
+		assertEquals(1, sender.getCoalescedCount());
+
+		completePending();
+
+		InOrder inOrder = Mockito.inOrder(asyncRemote);
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("first"), Mockito.any(SendHandler.class));
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("room v2"), Mockito.any(SendHandler.class));
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("other room"), Mockito.any(SendHandler.class));
+		verify(asyncRemote, Mockito.never()).sendText(Mockito.eq("room v1"), Mockito.any(SendHandler.class));
+		assertEquals(0, sender.getQueuedMessageCount());
+		assertEquals(3, sender.getSentCount());
+
+		//message in flight is not replaced
+		completeInline = false;
+		sender.send("room v3", "room1");
+		sender.send("room v4", "room1");
+		assertEquals(1, sender.getQueuedMessageCount());
+		completePending();
+		verify(asyncRemote).sendText(Mockito.eq("room v3"), Mockito.any(SendHandler.class));
+		verify(asyncRemote).sendText(Mockito.eq("room v4"), Mockito.any(SendHandler.class));
+	}
+
+	@Test
+	public void testMessagesAreNotBatched() throws Exception {
+		WebSocketSender sender = new WebSocketSender(session);
+
+		sender.send("sdp");
+		sender.send("candidate1");
+		sender.send("candidate2");
+		sender.send("candidate3");
+		completePending();
+
+		InOrder inOrder = Mockito.inOrder(asyncRemote);
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("sdp"), Mockito.any(SendHandler.class));
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("candidate1"), Mockito.any(SendHandler.class));
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("candidate2"), Mockito.any(SendHandler.class));
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("candidate3"), Mockito.any(SendHandler.class));
+
+		//disabling the batching flushes synchronously in some containers so it's not used
+		verify(asyncRemote, Mockito.never()).setBatchingAllowed(Mockito.anyBoolean());
+	}
+
+	@Test
+	public void testSlowConsumer() throws Exception {
+		WebSocketSender sender = new WebSocketSender(session, 2, 1000);
+		long slowConsumerCount = WebSocketSender.getSlowConsumerCount();
+
+		sender.send("in flight");
+		sender.send("queued1");
+		sender.send("queued2");
+		assertFalse(sender.isClosed());
+
+		sender.send("queued3");
+		assertTrue(sender.isClosed());
+		assertEquals(0, sender.getQueuedMessageCount());
+		assertEquals(slowConsumerCount + 1, WebSocketSender.getSlowConsumerCount());
+		assertEquals(slowConsumerCount + 1, ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName("io.antmedia:type=WebSocketSender"), "SlowConsumerCount"));
+
+		ArgumentCaptor<CloseReason> closeReason = ArgumentCaptor.forClass(CloseReason.class);
+		verify(session).close(closeReason.capture());
+		assertEquals(CloseCodes.TRY_AGAIN_LATER, closeReason.getValue().getCloseCode());
+
+		//nothing is sent after the session is closed
+		completePending();
+		sender.send("after close");
+		verify(asyncRemote, times(1)).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+	}
+
+	@Test
+	public void testQueueLengthLimit() throws Exception {
+		WebSocketSender sender = new WebSocketSender(session, 100, 10);
+		sender.send("in flight message is not counted");
+		sender.send("12345");
+		sender.send("67890");
+		assertFalse(sender.isClosed());
+		sender.send("1");
+		assertTrue(sender.isClosed());
+	}
+
+	@Test
+	public void testInlineCompletions() {
+		WebSocketSender sender = new WebSocketSender(session, 50000, Integer.MAX_VALUE);
+		sender.send("first");
+		for (int i = 0; i < 20000; i++) {
+			sender.send("message" + i);
+		}
+		//completions in the sending thread continue in a loop instead of a deeper stack
+		completePending();
+		assertEquals(20001, sender.getSentCount());
+		assertEquals(0, sender.getQueuedMessageCount());
+	}
+
+	@Test
+	public void testSendErrors() {
+		WebSocketSender sender = new WebSocketSender(session);
+		Mockito.doThrow(new IllegalStateException("exception")).when(asyncRemote).sendText(Mockito.eq("error"), Mockito.any(SendHandler.class));
+		completeInline = true;
+
+		sender.send("error");
+		sender.send("next");
+		verify(asyncRemote).sendText(Mockito.eq("next"), Mockito.any(SendHandler.class));
+
+		//failed result does not stop the queue
+		completeInline = false;
+		sender.send("failed result");
+		sender.send("after failed result");
+		pendingHandlers.remove(0).onResult(new SendResult(new IOException("broken pipe")));
+		completePending();
+		verify(asyncRemote).sendText(Mockito.eq("after failed result"), Mockito.any(SendHandler.class));
+
+		when(session.isOpen()).thenReturn(false);
+		sender.send("closed");
+		assertTrue(sender.isClosed());
+		verify(asyncRemote, Mockito.never()).sendText(Mockito.eq("closed"), Mockito.any(SendHandler.class));
+	}
+}
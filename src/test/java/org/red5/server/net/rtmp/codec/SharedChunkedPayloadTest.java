@@ -0,0 +1,168 @@
+package org.red5.server.net.rtmp.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.api.Red5;
+import org.red5.server.net.IConnectionManager;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+
+public class SharedChunkedPayloadTest {
+
+	private RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+
+	@After
+	public void after() {
+		Red5.setConnectionLocal(null);
+	}
+
+	private RTMPConnection createConnection(int chunkSize) {
+		RTMPConnection conn = mock(RTMPConnection.class);
+		RTMP state = new RTMP();
+		state.setWriteChunkSize(chunkSize);
+		when(conn.getState()).thenReturn(state);
+		return conn;
+	}
+
+	private Packet createPacket(IoBuffer payload, SharedChunkedPayload sharedPayload, int timestamp) {
+		VideoData videoData = new VideoData(payload.asReadOnlyBuffer());
+		videoData.setTimestamp(timestamp);
+		videoData.setSourceType(Constants.SOURCE_TYPE_LIVE);
+		videoData.setSharedPayload(sharedPayload);
+
+		Header header = new Header();
+		header.setChannelId(6);
+		header.setDataType(Constants.TYPE_VIDEO_DATA);
+		header.setStreamId(1);
+		header.setTimerBase(timestamp);
+		return new Packet(header, videoData);
+	}
+
+	private IoBuffer createPayload(int size) {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		return IoBuffer.wrap(data);
+	}
+
+	private byte[] toArray(IoBuffer buffer) {
+		byte[] array = new byte[buffer.remaining()];
+		buffer.get(array);
+		return array;
+	}
+
+	@Test
+	public void testSharedPayloadIsSameWithConnectionEncoding() {
+		IoBuffer payload = createPayload(10000);
+		SharedChunkedPayload sharedPayload = new SharedChunkedPayload();
+
+		for (int viewer = 0; viewer < 5; viewer++) {
+			RTMPConnection conn = createConnection(viewer < 3 ? 4096 : 128);
+
+			Red5.setConnectionLocal(conn);
+			IoBuffer expected = encoder.encodePacket(createPacket(payload, null, 1000));
+
+			//new connection for the same state as the first encoding
+			Red5.setConnectionLocal(createConnection(viewer < 3 ? 4096 : 128));
+			IoBuffer[] parts = encoder.encodePacketParts(createPacket(payload, sharedPayload, 1000));
+			assertEquals(2, parts.length);
+
+			IoBuffer actual = IoBuffer.allocate(parts[0].remaining() + parts[1].remaining());
+			actual.put(parts[0]).put(parts[1]).flip();
+			assertArrayEquals(toArray(expected), toArray(actual));
+		}
+
+		//payload is chunked once for each chunk size
+		assertEquals(2, sharedPayload.getEncodeCount());
+		assertEquals(10000, payload.remaining());
+	}
+
+	@Test
+	public void testExtendedTimestamp() {
+		IoBuffer payload = createPayload(1000);
+		SharedChunkedPayload sharedPayload = new SharedChunkedPayload();
+
+		Red5.setConnectionLocal(createConnection(128));
+		IoBuffer expected = encoder.encodePacket(createPacket(payload, null, 0x1000000));
+
+		Red5.setConnectionLocal(createConnection(128));
+		IoBuffer actual = encoder.encodePacket(createPacket(payload, sharedPayload, 0x1000000));
+		assertArrayEquals(toArray(expected), toArray(actual));
+	}
+
+	@Test
+	public void testSharedPayloadIsReusedForViewers() {
+		int viewerCount = 1000;
+		IoBuffer payload = createPayload(50000);
+		SharedChunkedPayload sharedPayload = new SharedChunkedPayload();
+
+		byte[] firstSharedPart = null;
+		for (int i = 0; i < viewerCount; i++) {
+			Red5.setConnectionLocal(createConnection(4096));
+			IoBuffer[] parts = encoder.encodePacketParts(createPacket(payload, sharedPayload, 40));
+			assertEquals(2, parts.length);
+			byte[] sharedPart = toArray(parts[1]);
+			if (firstSharedPart == null) {
+				firstSharedPart = sharedPart;
+			}
+			else {
+				assertArrayEquals(firstSharedPart, sharedPart);
+			}
+		}
+
+		//payload is chunked once and the other viewers only encode their headers
+		assertEquals(1, sharedPayload.getEncodeCount());
+	}
+
+	@Test
+	public void testLargeSharedPayloadIsWrittenInChunks() throws Exception {
+		IoBuffer payload = createPayload(50000);
+		RTMPConnection conn = createConnection(4096);
+		when(conn.getEncoderLock()).thenReturn(new Semaphore(1));
+		@SuppressWarnings("unchecked")
+		IConnectionManager<RTMPConnection> connManager = mock(IConnectionManager.class);
+		when(connManager.getConnectionBySessionId("session")).thenReturn(conn);
+		IoSession session = mock(IoSession.class);
+		when(session.getAttribute(RTMPConnection.RTMP_SESSION_ID)).thenReturn("session");
+		when(session.getAttribute(RTMPConnection.RTMP_CONN_MANAGER)).thenReturn(new WeakReference<>(connManager));
+
+		List<IoBuffer> writes = new ArrayList<>();
+		ProtocolEncoderOutput out = mock(ProtocolEncoderOutput.class);
+		doAnswer(invocation -> writes.add(invocation.getArgument(0))).when(out).write(any());
+
+		RTMPMinaProtocolEncoder minaEncoder = new RTMPMinaProtocolEncoder();
+		minaEncoder.encode(session, createPacket(payload, new SharedChunkedPayload(), 40), out);
+
+		//header is written as it is and the shared payload is split, each write has about one chunk
+		assertTrue(writes.size() > 2);
+		IoBuffer actual = IoBuffer.allocate(60000).setAutoExpand(true);
+		for (IoBuffer write : writes) {
+			assertTrue(write.remaining() <= 4096 + 18);
+			actual.put(write);
+		}
+		actual.flip();
+
+		Red5.setConnectionLocal(createConnection(4096));
+		IoBuffer expected = encoder.encodePacket(createPacket(payload, null, 40));
+		assertArrayEquals(toArray(expected), toArray(actual));
+	}
+}